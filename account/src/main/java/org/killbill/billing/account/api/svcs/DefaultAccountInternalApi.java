@@ -188,4 +188,15 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
                                                                         }
                                                                     }));
     }
+
+    @Override
+    public List<Account> getAccountsAfterRecordId(final Long recordId, final Long limit, final InternalTenantContext context) {
+        return ImmutableList.<Account>copyOf(Collections2.transform(accountDao.getAccountsAfterRecordId(recordId, limit, context),
+                                                                    new Function<AccountModelDao, Account>() {
+                                                                        @Override
+                                                                        public Account apply(final AccountModelDao input) {
+                                                                            return new DefaultAccount(input);
+                                                                        }
+                                                                    }));
+    }
 }
@@ -59,6 +59,13 @@ public interface AccountDao extends EntityDao<AccountModelDao, Account, AccountA
 
     List<AccountModelDao> getAccountsByParentId(UUID parentAccountId, InternalTenantContext context);
 
+    /**
+     * @param recordId the record id of the last account of the previous page (0 for the first page)
+     * @param limit    the maximum number of accounts to return
+     * @return the accounts of the tenant, ordered by record id
+     */
+    List<AccountModelDao> getAccountsAfterRecordId(Long recordId, Long limit, InternalTenantContext context);
+
     List<AuditLogWithHistory> getAuditLogsWithHistoryForId(UUID accountId, AuditLevel auditLevel, InternalTenantContext context) throws AccountApiException;
 
     List<AuditLogWithHistory> getEmailAuditLogsWithHistoryForId(UUID accountEmailId, AuditLevel auditLevel, InternalTenantContext context) throws AccountApiException;
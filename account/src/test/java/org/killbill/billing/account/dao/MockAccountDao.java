@@ -189,6 +189,11 @@ public class MockAccountDao extends MockEntityDaoBase<AccountModelDao, Account,
         }));
     }
 
+    @Override
+    public List<AccountModelDao> getAccountsAfterRecordId(final Long recordId, final Long limit, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<AuditLogWithHistory> getAuditLogsWithHistoryForId(final UUID accountId, final AuditLevel auditLevel, final InternalTenantContext context) throws AccountApiException {
         throw new UnsupportedOperationException();
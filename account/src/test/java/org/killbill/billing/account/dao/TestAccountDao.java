@@ -206,6 +206,27 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         Assert.assertEquals(accountId, account.getId());
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: keyset pagination")
+    public void testGetAccountsAfterRecordId() throws AccountApiException {
+        final AccountModelDao account1 = createTestAccount();
+        accountDao.create(account1, internalCallContext);
+        final AccountModelDao account2 = createTestAccount();
+        accountDao.create(account2, internalCallContext);
+        final AccountModelDao account3 = createTestAccount();
+        accountDao.create(account3, internalCallContext);
+
+        final List<AccountModelDao> firstPage = accountDao.getAccountsAfterRecordId(0L, 2L, internalCallContext);
+        Assert.assertEquals(firstPage.size(), 2);
+        Assert.assertEquals(firstPage.get(0).getId(), account1.getId());
+        Assert.assertEquals(firstPage.get(1).getId(), account2.getId());
+
+        final List<AccountModelDao> secondPage = accountDao.getAccountsAfterRecordId(firstPage.get(1).getRecordId(), 2L, internalCallContext);
+        Assert.assertEquals(secondPage.size(), 1);
+        Assert.assertEquals(secondPage.get(0).getId(), account3.getId());
+
+        Assert.assertEquals(accountDao.getAccountsAfterRecordId(secondPage.get(0).getRecordId(), 2L, internalCallContext).size(), 0);
+    }
+
     @Test(groups = "slow", expectedExceptions = AccountApiException.class, description = "Test Account DAO: retrieve by null externalKey throws an exception")
     public void testGetIdFromKeyForNullKey() throws AccountApiException {
         accountDao.getIdFromKey(null, internalCallContext);
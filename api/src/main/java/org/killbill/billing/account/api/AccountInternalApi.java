@@ -45,4 +45,6 @@ public interface AccountInternalApi extends ImmutableAccountInternalApi {
     UUID getByRecordId(Long recordId, InternalTenantContext context) throws AccountApiException;
 
     List<Account> getChildrenAccounts(UUID parentAccountId, InternalCallContext context) throws AccountApiException;
+
+    List<Account> getAccountsAfterRecordId(Long recordId, Long limit, InternalTenantContext context);
 }
@@ -23,4 +23,7 @@ public interface CatalogInternalApi {
 
     public VersionedCatalog getFullCatalog(boolean useDefaultCatalog, final boolean filterTemplateCatalog, InternalTenantContext context) throws CatalogApiException;
 
+    // Bulk load the overridden plans (other plan names are ignored), typically all the plans referenced by an account, before resolving them one by one
+    public void prefetchOverriddenPlans(Iterable<String> planNames, InternalTenantContext context);
+
 }
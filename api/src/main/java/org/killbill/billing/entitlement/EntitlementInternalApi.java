@@ -18,6 +18,8 @@
 
 package org.killbill.billing.entitlement;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -27,13 +29,21 @@ import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.entitlement.api.Entitlement;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.util.callcontext.TenantContext;
 
 public interface EntitlementInternalApi {
 
     AccountEntitlements getAllEntitlementsForAccount(InternalTenantContext context) throws EntitlementApiException;
 
+    // Read-only callers: the entitlements may reflect the state computed by a previous read, until the next change for the account is processed
+    AccountEntitlements getAllEntitlementsForAccountForRead(InternalTenantContext context) throws EntitlementApiException;
+
     Entitlement getEntitlementForId(final UUID uuid, final InternalTenantContext tenantContext) throws EntitlementApiException;
 
+    // Bulk variant of getEntitlementForId, for entitlements potentially across accounts: the entitlements are built once per account
+    // (see getAllEntitlementsForAccountForRead) and entitlements unknown to the tenant are omitted
+    Map<UUID, Entitlement> getEntitlementsForIds(final Collection<UUID> uuids, final TenantContext tenantContext) throws EntitlementApiException;
+
     Entitlement getEntitlementForExternalKey(final String externalKey, final InternalTenantContext tenantContext) throws EntitlementApiException;
 
     void pause(UUID bundleId, LocalDate effectiveDate, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
@@ -86,6 +86,9 @@ public interface InvoiceInternalApi {
 
     public List<InvoicePayment> getInvoicePaymentsByAccount(UUID accountId, TenantContext context);
 
+    // Same as getInvoicePaymentsByAccount, restricted to the specified payments
+    public List<InvoicePayment> getInvoicePaymentsByPaymentIds(UUID accountId, Collection<UUID> paymentIds, TenantContext context);
+
     public List<InvoicePayment> getInvoicePaymentsByInvoice(UUID invoiceId, InternalTenantContext context);
 
     public InvoicePayment getInvoicePaymentByCookieId(String cookieId, TenantContext context);
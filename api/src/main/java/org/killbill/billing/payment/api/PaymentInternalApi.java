@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.api;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+public interface PaymentInternalApi {
+
+    // Payments of the account with at least one transaction effective within [fromDate, upToDate) (null bounds are ignored)
+    public List<Payment> getAccountPaymentsWithinDates(UUID accountId, DateTime fromDate, DateTime upToDate, boolean withAttempts, TenantContext context) throws PaymentApiException;
+}
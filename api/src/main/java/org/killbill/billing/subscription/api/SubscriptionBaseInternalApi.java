@@ -18,6 +18,7 @@
 
 package org.killbill.billing.subscription.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -61,6 +62,12 @@ public interface SubscriptionBaseInternalApi {
 
     public List<SubscriptionBaseBundle> getBundlesForAccount(UUID accountId, InternalTenantContext context);
 
+    // Map account record id -> bundles, for accounts of the same tenant
+    public Map<Long, List<SubscriptionBaseBundle>> getBundlesForAccounts(Collection<Long> accountRecordIds, InternalTenantContext tenantContext);
+
+    // Map subscription id -> account record id, in a single query (subscriptions unknown to the tenant are omitted)
+    public Map<UUID, Long> getAccountRecordIdsForSubscriptions(Collection<UUID> subscriptionIds, InternalTenantContext tenantContext);
+
     public List<SubscriptionBaseBundle> getBundlesForKey(String bundleKey, InternalTenantContext context);
 
     public Pagination<SubscriptionBaseBundle> getBundles(Long offset, Long limit, InternalTenantContext context);
@@ -77,6 +84,9 @@ public interface SubscriptionBaseInternalApi {
     // TODO_CATALOG revisit which apis should take a Catalog
     public Map<UUID, List<SubscriptionBase>> getSubscriptionsForAccount(VersionedCatalog catalog, final InternalTenantContext context) throws SubscriptionBaseApiException;
 
+    // Map account record id -> (bundle id -> subscriptions), for accounts of the same tenant
+    public Map<Long, Map<UUID, List<SubscriptionBase>>> getSubscriptionsForAccounts(VersionedCatalog catalog, Collection<InternalTenantContext> contexts) throws SubscriptionBaseApiException;
+
     public SubscriptionBase getBaseSubscription(UUID bundleId, InternalTenantContext context) throws SubscriptionBaseApiException;
 
     public SubscriptionBase getSubscriptionFromId(UUID id, InternalTenantContext context) throws SubscriptionBaseApiException;
@@ -20,11 +20,15 @@ package org.killbill.billing.tenant.api;
 import java.util.List;
 import java.util.Locale;
 
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 
 public interface TenantInternalApi {
 
+    // Keys reserved to Kill Bill: they cannot be read or written through the (user) TenantUserApi
+    public static final String INTERNAL_KEY_PREFIX = "__KB_INTERNAL_";
+
     public interface CacheInvalidationCallback {
 
         /**
@@ -57,5 +61,8 @@ public interface TenantInternalApi {
 
     public List<String> getTenantValuesForKey(final String key, final InternalTenantContext tenantContext);
 
+    // Only for entries derived from other per tenant objects (e.g. compiled catalog), which are never broadcast: key must start with INTERNAL_KEY_PREFIX
+    public void updateInternalTenantValueForKey(final String key, final String value, final InternalCallContext context);
+
     public Tenant getTenantByApiKey(final String key) throws TenantApiException;
 }
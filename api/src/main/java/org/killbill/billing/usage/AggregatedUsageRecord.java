@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014-2019 Groupon, Inc
+ * Copyright 2014-2019 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage;
+
+import org.killbill.billing.usage.api.RawUsageRecord;
+
+//
+// Usage for a given {subscriptionId, unitType, date}, pre-aggregated across all raw records of that day:
+// getAmount() is the sum of the raw amounts and getMaxAmount() the largest single raw amount. There is no tracking id (null).
+//
+public interface AggregatedUsageRecord extends RawUsageRecord {
+
+    public Long getMaxAmount();
+
+    public Long getRecordCount();
+}
@@ -18,12 +18,30 @@
 package org.killbill.billing.usage;
 
 import java.util.List;
+import java.util.UUID;
 
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.usage.api.RawUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.entity.Pagination;
 
 public interface InternalUserApi {
 
     public List<RawUsageRecord> getRawUsageForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext tenantContext);
+
+    // Same as getRawUsageForAccount but reads the daily aggregates (one AggregatedUsageRecord per subscription, unit type and day, sorted by date)
+    public List<RawUsageRecord> getAggregatedUsageForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext tenantContext);
+
+    // Streaming variants of the above, ordered by subscriptionId (as a String) and then by date: the result needs to be closed
+    public Pagination<RawUsageRecord> getRawUsageStreamForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext tenantContext);
+
+    public Pagination<RawUsageRecord> getAggregatedUsageStreamForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext tenantContext);
+
+    // Rebuild the daily aggregates of the account from its raw usage (see AdminResource)
+    public void rebuildUsageAggregates(final UUID accountId, final CallContext callContext);
+
+    // Record usage for many subscriptions (potentially across accounts) at once: the results are in the same order as the records
+    public List<SubscriptionUsageRecordResult> recordRolledUpUsage(final List<SubscriptionUsageRecord> records, final CallContext callContext);
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage;
+
+import java.util.UUID;
+
+import org.killbill.billing.ErrorCode;
+
+//
+// Outcome of one SubscriptionUsageRecord of a bulk recording call: either accepted (all of its usage has been recorded)
+// or rejected (nothing has been recorded for it, getErrorCode() and getErrorMessage() explain why).
+//
+public interface SubscriptionUsageRecordResult {
+
+    public UUID getSubscriptionId();
+
+    public String getTrackingId();
+
+    public boolean isAccepted();
+
+    public ErrorCode getErrorCode();
+
+    public String getErrorMessage();
+}
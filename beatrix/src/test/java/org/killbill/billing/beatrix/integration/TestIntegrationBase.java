@@ -1154,6 +1154,56 @@ public class TestIntegrationBase extends BeatrixTestSuiteWithEmbeddedDB implemen
             return defaultInvoiceConfig.getMaxRawUsagePreviousPeriod();
         }
 
+        @Override
+        public boolean isReadUsageAggregatesEnabled() {
+            return defaultInvoiceConfig.isReadUsageAggregatesEnabled();
+        }
+
+        @Override
+        public boolean isReadUsageAggregatesEnabled(final InternalTenantContext tenantContext) {
+            return defaultInvoiceConfig.isReadUsageAggregatesEnabled();
+        }
+
+        @Override
+        public boolean isIncrementalGenerationEnabled() {
+            return defaultInvoiceConfig.isIncrementalGenerationEnabled();
+        }
+
+        @Override
+        public boolean isIncrementalGenerationEnabled(final InternalTenantContext tenantContext) {
+            return defaultInvoiceConfig.isIncrementalGenerationEnabled();
+        }
+
+        @Override
+        public boolean isArrayItemTreeEnabled() {
+            return defaultInvoiceConfig.isArrayItemTreeEnabled();
+        }
+
+        @Override
+        public boolean isArrayItemTreeEnabled(final InternalTenantContext tenantContext) {
+            return defaultInvoiceConfig.isArrayItemTreeEnabled();
+        }
+
+        @Override
+        public boolean isParallelItemGenerationEnabled() {
+            return defaultInvoiceConfig.isParallelItemGenerationEnabled();
+        }
+
+        @Override
+        public boolean isParallelItemGenerationEnabled(final InternalTenantContext tenantContext) {
+            return defaultInvoiceConfig.isParallelItemGenerationEnabled();
+        }
+
+        @Override
+        public int getParallelItemGenerationThreads() {
+            return defaultInvoiceConfig.getParallelItemGenerationThreads();
+        }
+
+        @Override
+        public int getParallelItemGenerationQueueSize() {
+            return defaultInvoiceConfig.getParallelItemGenerationQueueSize();
+        }
+
         @Override
         public int getMaxGlobalLockRetries() {
             return defaultInvoiceConfig.getMaxGlobalLockRetries();
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,14 +33,19 @@ import com.google.common.collect.Ordering;
 
 public class CatalogEntityCollection<T extends CatalogEntity> implements Collection<T>, Externalizable {
 
+    // Ordered view (used for iteration)
     private final Map<String, T> data;
+    // Unordered view, for constant time lookups by name
+    private final Map<String, T> index;
 
     public CatalogEntityCollection() {
         this.data = new TreeMap<String, T>(Ordering.<String>natural());
+        this.index = new HashMap<String, T>();
     }
 
     public CatalogEntityCollection(final T[] entities) {
         this.data = new TreeMap<String, T>(Ordering.<String>natural());
+        this.index = new HashMap<String, T>();
         for (final T cur : entities) {
             addEntry(cur);
         }
@@ -47,16 +53,17 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
 
     public CatalogEntityCollection(final Iterable<T> entities) {
         this.data = new TreeMap<String, T>(Ordering.<String>natural());
+        this.index = new HashMap<String, T>();
         for (final T cur : entities) {
             addEntry(cur);
         }
     }
 
     //
-    // Returning such entries will be log(N)
+    // Returning such entries will be O(1)
     //
     public T findByName(final String entryName) {
-        return data.get(entryName);
+        return index.get(entryName);
     }
 
     public Collection<T> getEntries() {
@@ -75,7 +82,7 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
 
     @Override
     public boolean contains(final Object o) {
-        return data.containsKey(((CatalogEntity) o).getName());
+        return index.containsKey(((CatalogEntity) o).getName());
     }
 
     @Override
@@ -102,6 +109,7 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
                 if (prevKey != null) {
                     keyIterator.remove();
                     data.remove(prevKey);
+                    index.remove(prevKey);
                 }
             }
         };
@@ -132,6 +140,7 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
     @Override
     public void clear() {
         data.clear();
+        index.clear();
     }
 
     @Override
@@ -145,6 +154,7 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
         while (iterator.hasNext()) {
             final CatalogEntity cur = (CatalogEntity) iterator.next();
             data.remove(cur.getName());
+            index.remove(cur.getName());
         }
         return true;
     }
@@ -154,7 +164,7 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
         final Iterator iterator = c.iterator();
         while (iterator.hasNext()) {
             final CatalogEntity cur = (CatalogEntity) iterator.next();
-            if (!data.containsKey(cur.getName())) {
+            if (!index.containsKey(cur.getName())) {
                 return false;
             }
         }
@@ -191,15 +201,18 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
 
     private void addEntry(final T entry) {
         data.put(entry.getName(), entry);
+        index.put(entry.getName(), entry);
     }
 
     private boolean removeEntry(final T entry) {
+        index.remove(entry.getName());
         return data.remove(entry.getName()) != null;
     }
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         data.putAll((Map<? extends String, ? extends T>) in.readObject());
+        index.putAll(data);
     }
 
     @Override
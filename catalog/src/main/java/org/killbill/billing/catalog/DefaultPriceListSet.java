@@ -25,7 +25,9 @@ import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -52,6 +54,9 @@ public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> imp
     @XmlElement(required = false, name = "childPriceList")
     private DefaultPriceList[] childPriceLists;
 
+    // Lazily built (the price lists are never modified once the set is built): first match wins, as for a linear scan
+    private volatile Map<String, DefaultPriceList> priceListsByName;
+
     // Required for deserialization
     public DefaultPriceListSet() {
     }
@@ -86,15 +91,28 @@ public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> imp
         if (priceListName == null) {
             throw new CatalogApiException(ErrorCode.CAT_NULL_PRICE_LIST_NAME);
         }
-        if (defaultPricelist.getName().equals(priceListName)) {
-            return defaultPricelist;
+        final DefaultPriceList result = getPriceListsByName().get(priceListName);
+        if (result != null) {
+            return result;
         }
-        for (final DefaultPriceList pl : childPriceLists) {
-            if (pl.getName().equals(priceListName)) {
-                return pl;
+        throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
+    }
+
+    private Map<String, DefaultPriceList> getPriceListsByName() {
+        Map<String, DefaultPriceList> result = priceListsByName;
+        if (result == null) {
+            result = new HashMap<String, DefaultPriceList>();
+            result.put(defaultPricelist.getName(), defaultPricelist);
+            if (childPriceLists != null) {
+                for (final DefaultPriceList pl : childPriceLists) {
+                    if (!result.containsKey(pl.getName())) {
+                        result.put(pl.getName(), pl);
+                    }
+                }
             }
+            priceListsByName = result;
         }
-        throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
+        return result;
     }
 
     @Override
@@ -185,5 +203,6 @@ public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> imp
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         this.defaultPricelist = (DefaultPriceList) in.readObject();
         this.childPriceLists = (DefaultPriceList[]) in.readObject();
+        this.priceListsByName = null;
     }
 }
@@ -20,18 +20,26 @@ package org.killbill.billing.catalog.api;
 import javax.inject.Inject;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.caching.OverriddenPlanCache;
 
 public class DefaultCatalogInternalApi implements CatalogInternalApi {
 
     private final CatalogService catalogService;
+    private final OverriddenPlanCache overriddenPlanCache;
 
     @Inject
-    public DefaultCatalogInternalApi(final CatalogService catalogService) {
+    public DefaultCatalogInternalApi(final CatalogService catalogService, final OverriddenPlanCache overriddenPlanCache) {
         this.catalogService = catalogService;
+        this.overriddenPlanCache = overriddenPlanCache;
     }
 
     @Override
     public VersionedCatalog getFullCatalog(final boolean useDefaultCatalog, final boolean filterTemplateCatalog, final InternalTenantContext context) throws CatalogApiException {
         return catalogService.getFullCatalogForInternalUse(useDefaultCatalog, filterTemplateCatalog, context);
     }
+
+    @Override
+    public void prefetchOverriddenPlans(final Iterable<String> planNames, final InternalTenantContext context) {
+        overriddenPlanCache.prefetchOverriddenPlans(planNames, context);
+    }
 }
@@ -136,6 +136,7 @@ public class DefaultCatalogUserApi implements CatalogUserApi {
 
             tenantApi.addTenantKeyValue(TenantKey.CATALOG.toString(), catalogXML, callContext);
             catalogCache.clearCatalog(internalTenantContext);
+            catalogCache.updateCatalogSnapshots(internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
         } catch (final TenantApiException e) {
             throw new CatalogApiException(e);
         } catch (final ValidationException e) {
@@ -165,6 +166,7 @@ public class DefaultCatalogUserApi implements CatalogUserApi {
 
             tenantApi.updateTenantKeyValue(TenantKey.CATALOG.toString(), catalogUpdater.getCatalogXML(internalTenantContext), callContext);
             catalogCache.clearCatalog(internalTenantContext);
+            catalogCache.updateCatalogSnapshots(internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
         } catch (TenantApiException e) {
             throw new CatalogApiException(e);
         }
@@ -183,6 +185,7 @@ public class DefaultCatalogUserApi implements CatalogUserApi {
 
             tenantApi.updateTenantKeyValue(TenantKey.CATALOG.toString(), catalogUpdater.getCatalogXML(internalTenantContext), callContext);
             catalogCache.clearCatalog(internalTenantContext);
+            catalogCache.updateCatalogSnapshots(internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext));
         } catch (TenantApiException e) {
             throw new CatalogApiException(e);
         }
@@ -17,6 +17,7 @@
 
 package org.killbill.billing.catalog.caching;
 
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.VersionedCatalog;
@@ -28,4 +29,7 @@ public interface CatalogCache {
     public VersionedCatalog getCatalog(final boolean useDefaultCatalog, final boolean filterTemplateCatalog, final boolean internalUse, InternalTenantContext tenantContext) throws CatalogApiException;
 
     public void clearCatalog(InternalTenantContext tenantContext);
+
+    // Rebuild the compiled form of the tenant catalog (no-op unless org.killbill.catalog.snapshot.enabled is set), after its XMLs have been updated
+    public void updateCatalogSnapshots(InternalCallContext context);
 }
@@ -17,6 +17,7 @@
 
 package org.killbill.billing.catalog.caching;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -25,6 +26,7 @@ import javax.inject.Inject;
 import org.joda.time.DateTime;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.DefaultVersionedCatalog;
 import org.killbill.billing.catalog.StandaloneCatalog;
@@ -33,12 +35,14 @@ import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.StaticCatalog;
 import org.killbill.billing.catalog.api.VersionedCatalog;
 import org.killbill.billing.catalog.io.VersionedCatalogLoader;
+import org.killbill.billing.catalog.io.VersionedCatalogSnapshot;
 import org.killbill.billing.catalog.override.PriceOverride;
 import org.killbill.billing.catalog.plugin.VersionedCatalogMapper;
 import org.killbill.billing.catalog.plugin.api.CatalogPluginApi;
 import org.killbill.billing.catalog.plugin.api.VersionedPluginCatalog;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
@@ -46,6 +50,7 @@ import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.cache.TenantCatalogCacheLoader.LoaderCallback;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.CatalogConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +60,12 @@ import com.google.common.collect.ImmutableList;
 
 public class DefaultCatalogCache implements CatalogCache {
 
+    // Internal keys: they cannot be written through the tenant APIs, and updating them doesn't trigger any broadcast
+    @VisibleForTesting
+    static final String CATALOG_SNAPSHOT_KEY = TenantInternalApi.INTERNAL_KEY_PREFIX + "COMPILED_CATALOG";
+    @VisibleForTesting
+    static final String CATALOG_SNAPSHOT_WITH_TEMPLATE_FILTERING_KEY = TenantInternalApi.INTERNAL_KEY_PREFIX + "COMPILED_CATALOG_WITH_TEMPLATE_FILTERING";
+
     private final Logger logger = LoggerFactory.getLogger(DefaultCatalogCache.class);
 
     private final CacheController<Long, DefaultVersionedCatalog> cacheController;
@@ -65,6 +76,8 @@ public class DefaultCatalogCache implements CatalogCache {
     private final VersionedCatalogMapper versionedCatalogMapper;
     private final PriceOverride priceOverride;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final TenantInternalApi tenantInternalApi;
+    private final CatalogConfig catalogConfig;
     private VersionedCatalog defaultCatalog;
 
     @Inject
@@ -73,13 +86,17 @@ public class DefaultCatalogCache implements CatalogCache {
                                final CacheControllerDispatcher cacheControllerDispatcher,
                                final VersionedCatalogLoader loader,
                                final PriceOverride priceOverride,
-                               final InternalCallContextFactory internalCallContextFactory) {
+                               final InternalCallContextFactory internalCallContextFactory,
+                               final TenantInternalApi tenantInternalApi,
+                               final CatalogConfig catalogConfig) {
         this.pluginRegistry = pluginRegistry;
         this.versionedCatalogMapper = versionedCatalogMapper;
         this.cacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CATALOG);
         this.loader = loader;
         this.priceOverride = priceOverride;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.tenantInternalApi = tenantInternalApi;
+        this.catalogConfig = catalogConfig;
         this.cacheLoaderArgumentWithTemplateFiltering = initializeCacheLoaderArgument(true);
         this.cacheLoaderArgument = initializeCacheLoaderArgument(false);
         setDefaultCatalog();
@@ -148,6 +165,33 @@ public class DefaultCatalogCache implements CatalogCache {
         }
     }
 
+    @Override
+    public void updateCatalogSnapshots(final InternalCallContext context) {
+        if (!catalogConfig.isCatalogSnapshotEnabled() || InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID.equals(context.getTenantRecordId())) {
+            return;
+        }
+
+        final List<String> catalogXMLs = tenantInternalApi.getTenantCatalogs(context);
+        if (catalogXMLs.isEmpty()) {
+            return;
+        }
+
+        for (final boolean filterTemplateCatalog : new boolean[]{false, true}) {
+            try {
+                final VersionedCatalog catalog = loader.load(catalogXMLs, filterTemplateCatalog, context.getTenantRecordId());
+                final String snapshot = VersionedCatalogSnapshot.serialize((DefaultVersionedCatalog) catalog, VersionedCatalogSnapshot.fingerprint(catalogXMLs, filterTemplateCatalog));
+                tenantInternalApi.updateInternalTenantValueForKey(getSnapshotKey(filterTemplateCatalog), snapshot, context);
+            } catch (final CatalogApiException e) {
+                logger.warn("Unable to write catalog snapshot for tenantRecordId='{}'", context.getTenantRecordId(), e);
+            } catch (final IOException e) {
+                logger.warn("Unable to write catalog snapshot for tenantRecordId='{}'", context.getTenantRecordId(), e);
+            } catch (final RuntimeException e) {
+                // The snapshot is an optimization only
+                logger.warn("Unable to write catalog snapshot for tenantRecordId='{}'", context.getTenantRecordId(), e);
+            }
+        }
+    }
+
     private VersionedCatalog getCatalogFromPlugins(final InternalTenantContext internalTenantContext) throws CatalogApiException {
         final TenantContext tenantContext = internalCallContextFactory.createTenantContext(internalTenantContext);
         final Set<String> allServices = pluginRegistry.getAllServices();
@@ -215,7 +259,11 @@ public class DefaultCatalogCache implements CatalogCache {
         final LoaderCallback loaderCallback = new LoaderCallback() {
             @Override
             public VersionedCatalog loadCatalog(final List<String> catalogXMLs, final Long tenantRecordId) throws CatalogApiException {
-                return loader.load(catalogXMLs, filterTemplateCatalog, tenantRecordId);
+                if (catalogConfig.isCatalogSnapshotEnabled()) {
+                    return loadCatalogFromSnapshot(catalogXMLs, filterTemplateCatalog, tenantRecordId);
+                } else {
+                    return loader.load(catalogXMLs, filterTemplateCatalog, tenantRecordId);
+                }
             }
         };
         final Object[] args = new Object[1];
@@ -225,6 +273,32 @@ public class DefaultCatalogCache implements CatalogCache {
         return new CacheLoaderArgument(irrelevant, args, notUsed);
     }
 
+    // Fall back to the XMLs if there is no snapshot, or if it doesn't match the current XMLs: snapshots are only written by updateCatalogSnapshots
+    private VersionedCatalog loadCatalogFromSnapshot(final List<String> catalogXMLs, final boolean filterTemplateCatalog, final Long tenantRecordId) throws CatalogApiException {
+        final String fingerprint = VersionedCatalogSnapshot.fingerprint(catalogXMLs, filterTemplateCatalog);
+
+        final List<String> snapshots = tenantInternalApi.getTenantValuesForKey(getSnapshotKey(filterTemplateCatalog), new InternalTenantContext(tenantRecordId));
+        if (!snapshots.isEmpty()) {
+            try {
+                final DefaultVersionedCatalog catalog = VersionedCatalogSnapshot.deserialize(snapshots.get(snapshots.size() - 1), fingerprint);
+                if (catalog != null) {
+                    // Transient state (price override, ...) is set by initializeCatalog, like for catalogs retrieved from Redis
+                    return catalog;
+                }
+            } catch (final IOException e) {
+                logger.warn("Unable to read catalog snapshot for tenantRecordId='{}'", tenantRecordId, e);
+            } catch (final ClassNotFoundException e) {
+                logger.warn("Unable to read catalog snapshot for tenantRecordId='{}'", tenantRecordId, e);
+            }
+        }
+
+        return loader.load(catalogXMLs, filterTemplateCatalog, tenantRecordId);
+    }
+
+    private static String getSnapshotKey(final boolean filterTemplateCatalog) {
+        return filterTemplateCatalog ? CATALOG_SNAPSHOT_WITH_TEMPLATE_FILTERING_KEY : CATALOG_SNAPSHOT_KEY;
+    }
+
     @VisibleForTesting
     void setDefaultCatalog() {
         try {
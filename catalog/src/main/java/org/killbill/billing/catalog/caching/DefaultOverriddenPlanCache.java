@@ -18,7 +18,9 @@
 package org.killbill.billing.catalog.caching;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 
 import javax.inject.Inject;
@@ -46,7 +48,9 @@ import org.killbill.billing.catalog.api.Usage;
 import org.killbill.billing.catalog.api.UsagePriceOverride;
 import org.killbill.billing.catalog.dao.CatalogOverrideBlockDefinitionModelDao;
 import org.killbill.billing.catalog.dao.CatalogOverrideDao;
+import org.killbill.billing.catalog.dao.CatalogOverrideDefinitions;
 import org.killbill.billing.catalog.dao.CatalogOverridePhaseDefinitionModelDao;
+import org.killbill.billing.catalog.dao.CatalogOverridePlanDefinitionModelDao;
 import org.killbill.billing.catalog.dao.CatalogOverrideTierDefinitionModelDao;
 import org.killbill.billing.catalog.dao.CatalogOverrideUsageDefinitionModelDao;
 import org.killbill.billing.catalog.override.DefaultPriceOverride;
@@ -57,18 +61,28 @@ import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.cache.OverriddenPlanCacheLoader.LoaderCallback;
 
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
 
+    private static final int MAX_PREFETCHED_DEFINITIONS = 10000;
+
     private final CacheController<String, Plan> cacheController;
     private final LoaderCallback loaderCallback;
     private final CatalogOverrideDao overrideDao;
+    // Override definitions loaded in bulk by prefetchOverriddenPlans, until the loader builds the plan (overrides are immutable)
+    private final Cache<Long, CatalogOverrideDefinitions> prefetchedDefinitions;
 
     @Inject
     public DefaultOverriddenPlanCache(final CatalogOverrideDao overrideDao, final CacheControllerDispatcher cacheControllerDispatcher) {
         this.overrideDao = overrideDao;
         this.cacheController = cacheControllerDispatcher.getCacheController(CacheType.OVERRIDDEN_PLAN);
+        this.prefetchedDefinitions = CacheBuilder.newBuilder()
+                                                 .maximumSize(MAX_PREFETCHED_DEFINITIONS)
+                                                 .<Long, CatalogOverrideDefinitions>build();
         this.loaderCallback = new LoaderCallback() {
             @Override
             public Plan loadPlan(final String planName, final StaticCatalog catalog, final InternalTenantContext context) throws CatalogApiException {
@@ -95,6 +109,30 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
         cacheController.putIfAbsent(planName, plan);
     }
 
+    @Override
+    public void prefetchOverriddenPlans(final Iterable<String> planNames, final InternalTenantContext context) {
+        final Map<Long, String> parentPlanNamesByPlanDefRecordId = new HashMap<Long, String>();
+        for (final String planName : planNames) {
+            final Matcher m = DefaultPriceOverride.CUSTOM_PLAN_NAME_PATTERN.matcher(planName);
+            if (m.matches() && !cacheController.isKeyInCache(planName)) {
+                parentPlanNamesByPlanDefRecordId.put(Long.parseLong(m.group(2)), m.group(1));
+            }
+        }
+        if (parentPlanNamesByPlanDefRecordId.isEmpty()) {
+            return;
+        }
+
+        // Only the definitions are loaded here: the plans are built by the loader, against the catalog version of the caller
+        final CatalogOverrideDefinitions definitions = overrideDao.getOverrideDefinitions(parentPlanNamesByPlanDefRecordId.keySet(), context);
+        for (final Long planDefRecordId : parentPlanNamesByPlanDefRecordId.keySet()) {
+            // Names which merely look like overridden plans (e.g. catalog plans ending with -<digits>) are left to the regular lookup path
+            final CatalogOverridePlanDefinitionModelDao planDef = definitions.getPlanDefinition(planDefRecordId);
+            if (planDef != null && parentPlanNamesByPlanDefRecordId.get(planDefRecordId).equals(planDef.getParentPlanName())) {
+                prefetchedDefinitions.put(planDefRecordId, definitions);
+            }
+        }
+    }
+
     private DefaultPlan loadOverriddenPlan(final String planName, final StandaloneCatalog catalog, final InternalTenantContext context) throws CatalogApiException {
         final Matcher m = DefaultPriceOverride.CUSTOM_PLAN_NAME_PATTERN.matcher(planName);
         if (!m.matches()) {
@@ -103,15 +141,25 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
         final String parentPlanName = m.group(1);
         final Long planDefRecordId = Long.parseLong(m.group(2));
 
-        final List<CatalogOverridePhaseDefinitionModelDao> phaseDefs = overrideDao.getOverriddenPlanPhases(planDefRecordId, context);
+        CatalogOverrideDefinitions definitions = prefetchedDefinitions.getIfPresent(planDefRecordId);
+        if (definitions != null) {
+            // The plan is cached from now on
+            prefetchedDefinitions.invalidate(planDefRecordId);
+        } else {
+            definitions = overrideDao.getOverrideDefinitions(ImmutableList.<Long>of(planDefRecordId), context);
+        }
         final DefaultPlan defaultPlan = catalog.findPlan(parentPlanName);
-        final PlanPhasePriceOverride[] overrides = createOverrides(defaultPlan, phaseDefs, context);
+        return createOverriddenPlan(planName, planDefRecordId, defaultPlan, definitions, catalog);
+    }
+
+    private DefaultPlan createOverriddenPlan(final String planName, final Long planDefRecordId, final DefaultPlan defaultPlan, final CatalogOverrideDefinitions definitions, final StandaloneCatalog catalog) {
+        final PlanPhasePriceOverride[] overrides = createOverrides(defaultPlan, definitions.getOverriddenPlanPhases(planDefRecordId), definitions);
         final DefaultPlan result = new DefaultPlan(planName, defaultPlan, overrides);
         result.initialize(catalog);
         return result;
     }
 
-    private PlanPhasePriceOverride[] createOverrides(final Plan defaultPlan, final List<CatalogOverridePhaseDefinitionModelDao> phaseDefs, final InternalTenantContext context) {
+    private PlanPhasePriceOverride[] createOverrides(final Plan defaultPlan, final List<CatalogOverridePhaseDefinitionModelDao> phaseDefs, final CatalogOverrideDefinitions definitions) {
 
         final PlanPhasePriceOverride[] result = new PlanPhasePriceOverride[defaultPlan.getAllPhases().length];
 
@@ -125,7 +173,7 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
             }).orNull();
 
             if (overriddenPhase != null) {
-                List<UsagePriceOverride> usagePriceOverrides = getUsagePriceOverrides(curPhase, overriddenPhase, context);
+                List<UsagePriceOverride> usagePriceOverrides = getUsagePriceOverrides(curPhase, overriddenPhase, definitions);
                 result[i] = new DefaultPlanPhasePriceOverride(curPhase.getName(), Currency.valueOf(overriddenPhase.getCurrency()), overriddenPhase.getFixedPrice(), overriddenPhase.getRecurringPrice(), usagePriceOverrides);
             } else {
                 result[i] = null;
@@ -134,10 +182,10 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
         return result;
     }
 
-    List<UsagePriceOverride> getUsagePriceOverrides(PlanPhase curPhase, CatalogOverridePhaseDefinitionModelDao overriddenPhase, final InternalTenantContext context) {
+    List<UsagePriceOverride> getUsagePriceOverrides(PlanPhase curPhase, CatalogOverridePhaseDefinitionModelDao overriddenPhase, final CatalogOverrideDefinitions definitions) {
 
         final List<UsagePriceOverride> usagePriceOverrides = new ArrayList<UsagePriceOverride>();
-        final List<CatalogOverrideUsageDefinitionModelDao> usageDefs = overrideDao.getOverriddenPhaseUsages(overriddenPhase.getRecordId(), context);
+        final List<CatalogOverrideUsageDefinitionModelDao> usageDefs = definitions.getOverriddenPhaseUsages(overriddenPhase.getRecordId());
 
         for (int i = 0; i < curPhase.getUsages().length; i++) {
             final Usage curUsage = curPhase.getUsages()[i];
@@ -149,18 +197,18 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
             }).orNull();
 
             if (overriddenUsage != null) {
-                List<TierPriceOverride> tierPriceOverrides = getTierPriceOverrides(curUsage, overriddenUsage, context);
+                List<TierPriceOverride> tierPriceOverrides = getTierPriceOverrides(curUsage, overriddenUsage, definitions);
                 usagePriceOverrides.add(new DefaultUsagePriceOverride(overriddenUsage.getParentUsageName(), curUsage.getUsageType(), tierPriceOverrides));
             }
         }
         return usagePriceOverrides;
     }
 
-    List<TierPriceOverride> getTierPriceOverrides(Usage curUsage, CatalogOverrideUsageDefinitionModelDao overriddenUsage, final InternalTenantContext context) {
+    List<TierPriceOverride> getTierPriceOverrides(Usage curUsage, CatalogOverrideUsageDefinitionModelDao overriddenUsage, final CatalogOverrideDefinitions definitions) {
 
         final List<TierPriceOverride> tierPriceOverrides = new ArrayList<TierPriceOverride>();
 
-        final List<CatalogOverrideTierDefinitionModelDao> tierDefs = overrideDao.getOverriddenUsageTiers(overriddenUsage.getRecordId(), context);
+        final List<CatalogOverrideTierDefinitionModelDao> tierDefs = definitions.getOverriddenUsageTiers(overriddenUsage.getRecordId());
         for (int i = 0; i < curUsage.getTiers().length; i++) {
             final Tier curTier = curUsage.getTiers()[i];
             final TieredBlock[] curTieredBlocks = curTier.getTieredBlocks();
@@ -168,7 +216,7 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
             final CatalogOverrideTierDefinitionModelDao overriddenTier = Iterables.tryFind(tierDefs, new Predicate<CatalogOverrideTierDefinitionModelDao>() {
                 @Override
                 public boolean apply(final CatalogOverrideTierDefinitionModelDao input) {
-                    final List<CatalogOverrideBlockDefinitionModelDao> blockDefs = overrideDao.getOverriddenTierBlocks(input.getRecordId(), context);
+                    final List<CatalogOverrideBlockDefinitionModelDao> blockDefs = definitions.getOverriddenTierBlocks(input.getRecordId());
                     for (CatalogOverrideBlockDefinitionModelDao blockDef : blockDefs) {
                         String unitName = blockDef.getParentUnitName();
                         Double max = blockDef.getMax();
@@ -188,17 +236,17 @@ public class DefaultOverriddenPlanCache implements OverriddenPlanCache {
             }).orNull();
 
             if (overriddenTier != null) {
-                List<TieredBlockPriceOverride> tieredBlockPriceOverrides = getTieredBlockPriceOverrides(curTier, overriddenTier, context);
+                List<TieredBlockPriceOverride> tieredBlockPriceOverrides = getTieredBlockPriceOverrides(curTier, overriddenTier, definitions);
                 tierPriceOverrides.add(new DefaultTierPriceOverride(tieredBlockPriceOverrides));
             }
         }
         return tierPriceOverrides;
     }
 
-    List<TieredBlockPriceOverride> getTieredBlockPriceOverrides(Tier curTier, CatalogOverrideTierDefinitionModelDao overriddenTier, final InternalTenantContext context) {
+    List<TieredBlockPriceOverride> getTieredBlockPriceOverrides(Tier curTier, CatalogOverrideTierDefinitionModelDao overriddenTier, final CatalogOverrideDefinitions definitions) {
 
         final List<TieredBlockPriceOverride> blockPriceOverrides = new ArrayList<TieredBlockPriceOverride>();
-        final List<CatalogOverrideBlockDefinitionModelDao> blockDefs = overrideDao.getOverriddenTierBlocks(overriddenTier.getRecordId(), context);
+        final List<CatalogOverrideBlockDefinitionModelDao> blockDefs = definitions.getOverriddenTierBlocks(overriddenTier.getRecordId());
 
         for (int i = 0; i < curTier.getTieredBlocks().length; i++) {
             final TieredBlock curTieredBlock = curTier.getTieredBlocks()[i];
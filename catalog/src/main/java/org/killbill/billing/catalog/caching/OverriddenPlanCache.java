@@ -28,4 +28,7 @@ public interface OverriddenPlanCache {
     DefaultPlan getOverriddenPlan(final String planName, final StandaloneCatalog catalog, final InternalTenantContext context) throws CatalogApiException;
 
     void addDryRunPlan(final String planName, final Plan plan);
+
+    // Load (in bulk) the override definitions of the overridden plans which are not cached yet: other plan names are ignored
+    void prefetchOverriddenPlans(final Iterable<String> planNames, final InternalTenantContext context);
 }
@@ -17,6 +17,7 @@
 
 package org.killbill.billing.catalog.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.joda.time.DateTime;
@@ -37,4 +38,7 @@ public interface CatalogOverrideDao {
 
     public List<CatalogOverrideBlockDefinitionModelDao> getOverriddenTierBlocks(final Long tierDefRecordId, final InternalTenantContext context);
 
+    // Set based equivalent of the getOverridden* calls above: a fixed number of queries, regardless of the number of plans, phases, usages and tiers
+    public CatalogOverrideDefinitions getOverrideDefinitions(final Collection<Long> planDefRecordIds, final InternalTenantContext context);
+
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.dao;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Fully resolved override trees (phases, usages, tiers and blocks) for a set of overridden plans, as returned by
+ * {@link CatalogOverrideDao#getOverrideDefinitions}. Children are returned in phase / usage / tier / block number order.
+ */
+public class CatalogOverrideDefinitions {
+
+    private final Map<Long, CatalogOverridePlanDefinitionModelDao> planDefinitions;
+    private final ListMultimap<Long, CatalogOverridePhaseDefinitionModelDao> phasesByPlanDefRecordId;
+    private final ListMultimap<Long, CatalogOverrideUsageDefinitionModelDao> usagesByPhaseDefRecordId;
+    private final ListMultimap<Long, CatalogOverrideTierDefinitionModelDao> tiersByUsageDefRecordId;
+    private final ListMultimap<Long, CatalogOverrideBlockDefinitionModelDao> blocksByTierDefRecordId;
+
+    public CatalogOverrideDefinitions(final Map<Long, CatalogOverridePlanDefinitionModelDao> planDefinitions,
+                                      final ListMultimap<Long, CatalogOverridePhaseDefinitionModelDao> phasesByPlanDefRecordId,
+                                      final ListMultimap<Long, CatalogOverrideUsageDefinitionModelDao> usagesByPhaseDefRecordId,
+                                      final ListMultimap<Long, CatalogOverrideTierDefinitionModelDao> tiersByUsageDefRecordId,
+                                      final ListMultimap<Long, CatalogOverrideBlockDefinitionModelDao> blocksByTierDefRecordId) {
+        this.planDefinitions = planDefinitions;
+        this.phasesByPlanDefRecordId = phasesByPlanDefRecordId;
+        this.usagesByPhaseDefRecordId = usagesByPhaseDefRecordId;
+        this.tiersByUsageDefRecordId = tiersByUsageDefRecordId;
+        this.blocksByTierDefRecordId = blocksByTierDefRecordId;
+    }
+
+    public CatalogOverridePlanDefinitionModelDao getPlanDefinition(final Long planDefRecordId) {
+        return planDefinitions.get(planDefRecordId);
+    }
+
+    public List<CatalogOverridePhaseDefinitionModelDao> getOverriddenPlanPhases(final Long planDefRecordId) {
+        return phasesByPlanDefRecordId.get(planDefRecordId);
+    }
+
+    public List<CatalogOverrideUsageDefinitionModelDao> getOverriddenPhaseUsages(final Long phaseDefRecordId) {
+        return usagesByPhaseDefRecordId.get(phaseDefRecordId);
+    }
+
+    public List<CatalogOverrideTierDefinitionModelDao> getOverriddenUsageTiers(final Long usageDefRecordId) {
+        return tiersByUsageDefRecordId.get(usageDefRecordId);
+    }
+
+    public List<CatalogOverrideBlockDefinitionModelDao> getOverriddenTierBlocks(final Long tierDefRecordId) {
+        return blocksByTierDefRecordId.get(tierDefRecordId);
+    }
+}
@@ -30,6 +30,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
@@ -48,4 +49,8 @@ public interface CatalogOverridePhaseUsageSqlDao extends Transactional<CatalogOv
     public List<Long> getTargetPhaseDefinition(@PhaseUsageKeysCollectionBinder final Collection<String> concatUsageNumAndUsageDefRecordId,
                                                @Bind("targetCount") final Integer targetCount,
                                                @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<CatalogOverridePhaseUsageModelDao> getByTargetPhaseDefRecordIds(@BindIn("targetPhaseDefRecordIds") final Collection<Long> targetPhaseDefRecordIds,
+                                                                                @SmartBindBean final InternalTenantContext context);
 }
@@ -17,6 +17,9 @@
 
 package org.killbill.billing.catalog.dao;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
@@ -27,6 +30,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
@@ -40,4 +44,8 @@ public interface CatalogOverridePlanDefinitionSqlDao extends Transactional<Catal
     @SqlQuery
     public CatalogOverridePlanDefinitionModelDao getByRecordId(@Bind("recordId") final Long recordId,
                                                                @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<CatalogOverridePlanDefinitionModelDao> getByRecordIds(@BindIn("recordIds") final Collection<Long> recordIds,
+                                                                      @SmartBindBean final InternalTenantContext context);
 }
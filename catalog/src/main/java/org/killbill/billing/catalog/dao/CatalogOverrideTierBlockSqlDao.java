@@ -18,6 +18,7 @@
 package org.killbill.billing.catalog.dao;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -29,6 +30,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
@@ -47,4 +49,8 @@ public interface CatalogOverrideTierBlockSqlDao extends Transactional<CatalogOve
     public Long getTargetTierDefinition(@TierBlockKeysCollectionBinder final Collection<String> concatBlockNumAndBlockDefRecordId,
                                         @Bind("targetCount") final Integer targetCount,
                                         @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<CatalogOverrideTierBlockModelDao> getByTargetTierDefRecordIds(@BindIn("targetTierDefRecordIds") final Collection<Long> targetTierDefRecordIds,
+                                                                              @SmartBindBean final InternalTenantContext context);
 }
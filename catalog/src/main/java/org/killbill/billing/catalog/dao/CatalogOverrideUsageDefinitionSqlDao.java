@@ -17,6 +17,7 @@
 
 package org.killbill.billing.catalog.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -29,6 +30,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
@@ -50,4 +52,8 @@ public interface CatalogOverrideUsageDefinitionSqlDao extends Transactional<Cata
     @SqlQuery
     public List<CatalogOverrideUsageDefinitionModelDao> getByAttributes(@Bind("parentUsageName") String parentUsageName,
                                                                         @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<CatalogOverrideUsageDefinitionModelDao> getByRecordIds(@BindIn("recordIds") final Collection<Long> recordIds,
+                                                                       @SmartBindBean final InternalTenantContext context);
 }
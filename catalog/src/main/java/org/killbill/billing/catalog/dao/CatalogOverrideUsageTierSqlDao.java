@@ -30,6 +30,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
@@ -48,4 +49,8 @@ public interface CatalogOverrideUsageTierSqlDao extends Transactional<CatalogOve
     public List<Long> getTargetUsageDefinition(@UsageTierKeysCollectionBinder final Collection<String> concatTierNumAndTierDefRecordId,
                                                @Bind("targetCount") final Integer targetCount,
                                                @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public List<CatalogOverrideUsageTierModelDao> getByTargetUsageDefRecordIds(@BindIn("targetUsageDefRecordIds") final Collection<Long> targetUsageDefRecordIds,
+                                                                               @SmartBindBean final InternalTenantContext context);
 }
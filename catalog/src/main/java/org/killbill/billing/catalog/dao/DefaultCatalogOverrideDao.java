@@ -18,7 +18,12 @@
 package org.killbill.billing.catalog.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -40,6 +45,8 @@ import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.TransactionCallback;
 import org.skife.jdbi.v2.TransactionStatus;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Inject;
 
 public class DefaultCatalogOverrideDao implements CatalogOverrideDao {
@@ -364,6 +371,98 @@ public class DefaultCatalogOverrideDao implements CatalogOverrideDao {
         });
     }
 
+    @Override
+    public CatalogOverrideDefinitions getOverrideDefinitions(final Collection<Long> planDefRecordIds, final InternalTenantContext context) {
+        return dbi.inTransaction(new TransactionCallback<CatalogOverrideDefinitions>() {
+            @Override
+            public CatalogOverrideDefinitions inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final Map<Long, CatalogOverridePlanDefinitionModelDao> planDefinitions = new HashMap<Long, CatalogOverridePlanDefinitionModelDao>();
+                final ListMultimap<Long, CatalogOverridePhaseDefinitionModelDao> phasesByPlanDefRecordId = ArrayListMultimap.<Long, CatalogOverridePhaseDefinitionModelDao>create();
+                final ListMultimap<Long, CatalogOverrideUsageDefinitionModelDao> usagesByPhaseDefRecordId = ArrayListMultimap.<Long, CatalogOverrideUsageDefinitionModelDao>create();
+                final ListMultimap<Long, CatalogOverrideTierDefinitionModelDao> tiersByUsageDefRecordId = ArrayListMultimap.<Long, CatalogOverrideTierDefinitionModelDao>create();
+                final ListMultimap<Long, CatalogOverrideBlockDefinitionModelDao> blocksByTierDefRecordId = ArrayListMultimap.<Long, CatalogOverrideBlockDefinitionModelDao>create();
+                final CatalogOverrideDefinitions result = new CatalogOverrideDefinitions(planDefinitions, phasesByPlanDefRecordId, usagesByPhaseDefRecordId, tiersByUsageDefRecordId, blocksByTierDefRecordId);
+                if (planDefRecordIds.isEmpty()) {
+                    return result;
+                }
+
+                for (final CatalogOverridePlanDefinitionModelDao planDef : handle.attach(CatalogOverridePlanDefinitionSqlDao.class).getByRecordIds(planDefRecordIds, context)) {
+                    planDefinitions.put(planDef.getRecordId(), planDef);
+                }
+
+                // Plan -> phases
+                final List<CatalogOverridePlanPhaseModelDao> planPhases = handle.attach(CatalogOverridePlanPhaseSqlDao.class).getByTargetPlanDefRecordIds(planDefRecordIds, context);
+                final Set<Long> phaseDefRecordIds = new LinkedHashSet<Long>();
+                for (final CatalogOverridePlanPhaseModelDao cur : planPhases) {
+                    phaseDefRecordIds.add(cur.getPhaseDefRecordId());
+                }
+                if (phaseDefRecordIds.isEmpty()) {
+                    return result;
+                }
+                final Map<Long, CatalogOverridePhaseDefinitionModelDao> phaseDefs = new HashMap<Long, CatalogOverridePhaseDefinitionModelDao>();
+                for (final CatalogOverridePhaseDefinitionModelDao phaseDef : handle.attach(CatalogOverridePhaseDefinitionSqlDao.class).getByRecordIds(phaseDefRecordIds, context)) {
+                    phaseDefs.put(phaseDef.getRecordId(), phaseDef);
+                }
+                for (final CatalogOverridePlanPhaseModelDao cur : planPhases) {
+                    phasesByPlanDefRecordId.put(cur.getTargetPlanDefRecordId(), phaseDefs.get(cur.getPhaseDefRecordId()));
+                }
+
+                // Phase -> usages
+                final List<CatalogOverridePhaseUsageModelDao> phaseUsages = handle.attach(CatalogOverridePhaseUsageSqlDao.class).getByTargetPhaseDefRecordIds(phaseDefRecordIds, context);
+                final Set<Long> usageDefRecordIds = new LinkedHashSet<Long>();
+                for (final CatalogOverridePhaseUsageModelDao cur : phaseUsages) {
+                    usageDefRecordIds.add(cur.getUsageDefRecordId());
+                }
+                if (usageDefRecordIds.isEmpty()) {
+                    return result;
+                }
+                final Map<Long, CatalogOverrideUsageDefinitionModelDao> usageDefs = new HashMap<Long, CatalogOverrideUsageDefinitionModelDao>();
+                for (final CatalogOverrideUsageDefinitionModelDao usageDef : handle.attach(CatalogOverrideUsageDefinitionSqlDao.class).getByRecordIds(usageDefRecordIds, context)) {
+                    usageDefs.put(usageDef.getRecordId(), usageDef);
+                }
+                for (final CatalogOverridePhaseUsageModelDao cur : phaseUsages) {
+                    usagesByPhaseDefRecordId.put(cur.getTargetPhaseDefRecordId(), usageDefs.get(cur.getUsageDefRecordId()));
+                }
+
+                // Usage -> tiers
+                final List<CatalogOverrideUsageTierModelDao> usageTiers = handle.attach(CatalogOverrideUsageTierSqlDao.class).getByTargetUsageDefRecordIds(usageDefRecordIds, context);
+                final Set<Long> tierDefRecordIds = new LinkedHashSet<Long>();
+                for (final CatalogOverrideUsageTierModelDao cur : usageTiers) {
+                    tierDefRecordIds.add(cur.getTierDefRecordId());
+                }
+                if (tierDefRecordIds.isEmpty()) {
+                    return result;
+                }
+                final Map<Long, CatalogOverrideTierDefinitionModelDao> tierDefs = new HashMap<Long, CatalogOverrideTierDefinitionModelDao>();
+                for (final CatalogOverrideTierDefinitionModelDao tierDef : handle.attach(CatalogOverrideTierDefinitionSqlDao.class).getByRecordIds(tierDefRecordIds, context)) {
+                    tierDefs.put(tierDef.getRecordId(), tierDef);
+                }
+                for (final CatalogOverrideUsageTierModelDao cur : usageTiers) {
+                    tiersByUsageDefRecordId.put(cur.getTargetUsageDefRecordId(), tierDefs.get(cur.getTierDefRecordId()));
+                }
+
+                // Tier -> blocks
+                final List<CatalogOverrideTierBlockModelDao> tierBlocks = handle.attach(CatalogOverrideTierBlockSqlDao.class).getByTargetTierDefRecordIds(tierDefRecordIds, context);
+                final Set<Long> blockDefRecordIds = new LinkedHashSet<Long>();
+                for (final CatalogOverrideTierBlockModelDao cur : tierBlocks) {
+                    blockDefRecordIds.add(cur.getBlockDefRecordId());
+                }
+                if (blockDefRecordIds.isEmpty()) {
+                    return result;
+                }
+                final Map<Long, CatalogOverrideBlockDefinitionModelDao> blockDefs = new HashMap<Long, CatalogOverrideBlockDefinitionModelDao>();
+                for (final CatalogOverrideBlockDefinitionModelDao blockDef : handle.attach(CatalogOverrideBlockDefinitionSqlDao.class).getByRecordIds(blockDefRecordIds, context)) {
+                    blockDefs.put(blockDef.getRecordId(), blockDef);
+                }
+                for (final CatalogOverrideTierBlockModelDao cur : tierBlocks) {
+                    blocksByTierDefRecordId.put(cur.getTargetTierDefRecordId(), blockDefs.get(cur.getBlockDefRecordId()));
+                }
+
+                return result;
+            }
+        });
+    }
+
 
     private boolean isUsageOverrideListHasOnlyNull(List<UsagePriceOverride> usagePriceOverrides) {
         for (UsagePriceOverride override : usagePriceOverrides) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.catalog.DefaultVersionedCatalog;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Compiled (i.e. already parsed and validated) form of a tenant catalog, relying on the Externalizable implementation of the catalog
+ * objects (also used by the Redis cache). A snapshot is only valid for the exact list of catalog XMLs it was built from: this is
+ * checked through a fingerprint of these XMLs, so that stale snapshots are simply ignored.
+ * <p/>
+ * Snapshots are only stored under internal tenant keys, but deserialization is nonetheless restricted to the classes making up a catalog.
+ * <p/>
+ * Format: FORMAT_VERSION:fingerprint:base64(serialized DefaultVersionedCatalog)
+ */
+public abstract class VersionedCatalogSnapshot {
+
+    // Bump when the serialized form of the catalog classes changes
+    @VisibleForTesting
+    static final String FORMAT_VERSION = "1";
+    @VisibleForTesting
+    static final String SEPARATOR = ":";
+
+    private static final String ALLOWED_PACKAGE_PREFIX = "org.killbill.billing.catalog.";
+    private static final Set<String> ALLOWED_CLASSES = ImmutableSet.<String>of("java.lang.Boolean",
+                                                                               "java.lang.Double",
+                                                                               "java.lang.Enum",
+                                                                               "java.lang.Integer",
+                                                                               "java.lang.Long",
+                                                                               "java.lang.Number",
+                                                                               "java.lang.String",
+                                                                               "java.math.BigDecimal",
+                                                                               "java.math.BigInteger",
+                                                                               "java.util.ArrayList",
+                                                                               "java.util.Date",
+                                                                               "java.util.HashMap",
+                                                                               "java.util.TreeMap",
+                                                                               "com.google.common.collect.NaturalOrdering");
+
+    public static String fingerprint(final List<String> catalogXMLs, final boolean filterTemplateCatalog) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putBoolean(filterTemplateCatalog);
+        for (final String catalogXML : catalogXMLs) {
+            // Length prefix to avoid ambiguities when concatenating
+            hasher.putInt(catalogXML.length());
+            hasher.putString(catalogXML, Charsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    public static String serialize(final DefaultVersionedCatalog catalog, final String fingerprint) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+        try {
+            objectOutputStream.writeObject(catalog);
+        } finally {
+            objectOutputStream.close();
+        }
+        return FORMAT_VERSION + SEPARATOR + fingerprint + SEPARATOR + BaseEncoding.base64().encode(out.toByteArray());
+    }
+
+    // Return null if the snapshot doesn't match the expected fingerprint or format
+    public static DefaultVersionedCatalog deserialize(@Nullable final String snapshot, final String fingerprint) throws IOException, ClassNotFoundException {
+        if (snapshot == null) {
+            return null;
+        }
+
+        final String[] parts = snapshot.split(SEPARATOR, 3);
+        if (parts.length != 3 || !FORMAT_VERSION.equals(parts[0]) || !fingerprint.equals(parts[1])) {
+            return null;
+        }
+
+        final ObjectInputStream objectInputStream = new CatalogObjectInputStream(new ByteArrayInputStream(BaseEncoding.base64().decode(parts[2])));
+        try {
+            return (DefaultVersionedCatalog) objectInputStream.readObject();
+        } finally {
+            objectInputStream.close();
+        }
+    }
+
+    // Reject anything which is not part of a catalog before it gets instantiated
+    private static final class CatalogObjectInputStream extends ObjectInputStream {
+
+        private CatalogObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class not allowed in a catalog snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes not allowed in a catalog snapshot");
+        }
+
+        private static boolean isAllowed(final String className) {
+            // Arrays of primitives (e.g. [I) or of allowed classes (e.g. [Lorg.killbill.billing.catalog.DefaultPlan;)
+            if (className.startsWith("[")) {
+                final String componentName = className.substring(className.lastIndexOf('[') + 1);
+                return componentName.length() == 1 ||
+                       (componentName.startsWith("L") && componentName.endsWith(";") && isAllowed(componentName.substring(1, componentName.length() - 1)));
+            }
+            return className.startsWith(ALLOWED_PACKAGE_PREFIX) || ALLOWED_CLASSES.contains(className);
+        }
+    }
+}
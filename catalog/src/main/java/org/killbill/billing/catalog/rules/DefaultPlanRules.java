@@ -24,6 +24,9 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+
+import javax.annotation.Nullable;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -37,6 +40,7 @@ import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.catalog.api.BillingAlignment;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.IllegalPlanChange;
+import org.killbill.billing.catalog.api.PhaseType;
 import org.killbill.billing.catalog.api.PlanAlignmentChange;
 import org.killbill.billing.catalog.api.PlanAlignmentCreate;
 import org.killbill.billing.catalog.api.PlanChangeResult;
@@ -54,6 +58,9 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 
 @XmlAccessorType(XmlAccessType.NONE)
@@ -83,6 +90,22 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
     @XmlElement(name = "priceListCase", required = false)
     private DefaultCasePriceList[] priceListCase;
 
+    //
+    // Rules resolution tables: the outcome of the (first match) case lookups only depends on the specifiers, as the catalog
+    // is immutable once initialized. Each table is filled on first lookup and reset when the rules or the catalog change.
+    // Lookups which fail (e.g. unknown plan) are never recorded. The tables are bounded, since catalog overrides create
+    // a new plan name per override: the least recently used resolutions are evicted first.
+    //
+    @VisibleForTesting
+    static final int MAX_RESOLUTIONS_PER_TABLE = 10000;
+
+    private final Cache<RulesResolutionKey, PlanAlignmentCreate> createAlignmentResolutions = newResolutionTable();
+    private final Cache<RulesResolutionKey, BillingActionPolicy> cancelPolicyResolutions = newResolutionTable();
+    private final Cache<RulesResolutionKey, BillingAlignment> billingAlignmentResolutions = newResolutionTable();
+    private final Cache<RulesResolutionKey, BillingActionPolicy> changePolicyResolutions = newResolutionTable();
+    private final Cache<RulesResolutionKey, PlanAlignmentChange> changeAlignmentResolutions = newResolutionTable();
+    private final Cache<RulesResolutionKey, DefaultPriceList> priceListResolutions = newResolutionTable();
+
     // Required for deserialization
     public DefaultPlanRules() {
     }
@@ -125,20 +148,38 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
 
     @Override
     public PlanAlignmentCreate getPlanCreateAlignment(final PlanSpecifier specifier) throws CatalogApiException {
-        final PlanAlignmentCreate result = DefaultCase.getResult(createAlignmentCase, specifier, root);
-        return (result != null) ? result : PlanAlignmentCreate.START_OF_BUNDLE;
+        final RulesResolutionKey key = new RulesResolutionKey(specifier, null, null);
+        PlanAlignmentCreate result = createAlignmentResolutions.getIfPresent(key);
+        if (result == null) {
+            result = DefaultCase.getResult(createAlignmentCase, specifier, root);
+            result = (result != null) ? result : PlanAlignmentCreate.START_OF_BUNDLE;
+            createAlignmentResolutions.put(key, result);
+        }
+        return result;
     }
 
     @Override
     public BillingActionPolicy getPlanCancelPolicy(final PlanPhaseSpecifier planPhase) throws CatalogApiException {
-        final BillingActionPolicy result = DefaultCasePhase.getResult(cancelCase, planPhase, root);
-        return (result != null) ? result : BillingActionPolicy.END_OF_TERM;
+        final RulesResolutionKey key = new RulesResolutionKey(planPhase);
+        BillingActionPolicy result = cancelPolicyResolutions.getIfPresent(key);
+        if (result == null) {
+            result = DefaultCasePhase.getResult(cancelCase, planPhase, root);
+            result = (result != null) ? result : BillingActionPolicy.END_OF_TERM;
+            cancelPolicyResolutions.put(key, result);
+        }
+        return result;
     }
 
     @Override
     public BillingAlignment getBillingAlignment(final PlanPhaseSpecifier planPhase) throws CatalogApiException {
-        final BillingAlignment result = DefaultCasePhase.getResult(billingAlignmentCase, planPhase, root);
-        return (result != null) ? result : BillingAlignment.ACCOUNT;
+        final RulesResolutionKey key = new RulesResolutionKey(planPhase);
+        BillingAlignment result = billingAlignmentResolutions.getIfPresent(key);
+        if (result == null) {
+            result = DefaultCasePhase.getResult(billingAlignmentCase, planPhase, root);
+            result = (result != null) ? result : BillingAlignment.ACCOUNT;
+            billingAlignmentResolutions.put(key, result);
+        }
+        return result;
     }
 
     @Override
@@ -166,25 +207,58 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
 
     private PlanAlignmentChange getPlanChangeAlignment(final PlanPhaseSpecifier from,
                                                        final PlanSpecifier to) throws CatalogApiException {
-        final PlanAlignmentChange result = DefaultCaseChange.getResult(changeAlignmentCase, from, to, root);
-        return (result != null) ? result : PlanAlignmentChange.START_OF_BUNDLE;
+        final RulesResolutionKey key = new RulesResolutionKey(from, to);
+        PlanAlignmentChange result = changeAlignmentResolutions.getIfPresent(key);
+        if (result == null) {
+            result = DefaultCaseChange.getResult(changeAlignmentCase, from, to, root);
+            result = (result != null) ? result : PlanAlignmentChange.START_OF_BUNDLE;
+            changeAlignmentResolutions.put(key, result);
+        }
+        return result;
     }
 
     private BillingActionPolicy getPlanChangePolicy(final PlanPhaseSpecifier from,
                                                     final PlanSpecifier to) throws CatalogApiException {
-        final BillingActionPolicy result = DefaultCaseChange.getResult(changeCase, from, to, root);
-        return (result != null) ? result : BillingActionPolicy.END_OF_TERM;
+        final RulesResolutionKey key = new RulesResolutionKey(from, to);
+        BillingActionPolicy result = changePolicyResolutions.getIfPresent(key);
+        if (result == null) {
+            result = DefaultCaseChange.getResult(changeCase, from, to, root);
+            result = (result != null) ? result : BillingActionPolicy.END_OF_TERM;
+            changePolicyResolutions.put(key, result);
+        }
+        return result;
     }
 
     private DefaultPriceList findPriceList(final PlanSpecifier specifier) throws CatalogApiException {
-        DefaultPriceList result = DefaultCasePriceList.getResult(priceListCase, specifier, root);
+        final RulesResolutionKey key = new RulesResolutionKey(specifier, null, null);
+        DefaultPriceList result = priceListResolutions.getIfPresent(key);
         if (result == null) {
-            final String priceListName = specifier.getPlanName() != null ? root.findPlan(specifier.getPlanName()).getPriceList().getName() : specifier.getPriceListName();
-            result = (DefaultPriceList) root.findPriceList(priceListName);
+            result = DefaultCasePriceList.getResult(priceListCase, specifier, root);
+            if (result == null) {
+                final String priceListName = specifier.getPlanName() != null ? root.findPlan(specifier.getPlanName()).getPriceList().getName() : specifier.getPriceListName();
+                result = (DefaultPriceList) root.findPriceList(priceListName);
+            }
+            priceListResolutions.put(key, result);
         }
         return result;
     }
 
+    private static <V> Cache<RulesResolutionKey, V> newResolutionTable() {
+        return CacheBuilder.newBuilder()
+                           .maximumSize(MAX_RESOLUTIONS_PER_TABLE)
+                           .<RulesResolutionKey, V>build();
+    }
+
+    @VisibleForTesting
+    void resetResolutions() {
+        createAlignmentResolutions.invalidateAll();
+        cancelPolicyResolutions.invalidateAll();
+        billingAlignmentResolutions.invalidateAll();
+        changePolicyResolutions.invalidateAll();
+        changeAlignmentResolutions.invalidateAll();
+        priceListResolutions.invalidateAll();
+    }
+
     @Override
     public ValidationErrors validate(final StandaloneCatalog catalog, final ValidationErrors errors) {
         //
@@ -282,6 +356,7 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
     public void initialize(final StandaloneCatalog catalog) {
         super.initialize(catalog);
         CatalogSafetyInitializer.initializeNonRequiredNullFieldsWithDefaultValue(this);
+        resetResolutions();
 
         for (final DefaultCaseChangePlanPolicy cur : changeCase) {
             cur.initialize(catalog);
@@ -309,33 +384,39 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
 
     public DefaultPlanRules setChangeCase(final DefaultCaseChangePlanPolicy[] changeCase) {
         this.changeCase = changeCase;
+        resetResolutions();
         return this;
     }
 
     public DefaultPlanRules setChangeAlignmentCase(
             final DefaultCaseChangePlanAlignment[] changeAlignmentCase) {
         this.changeAlignmentCase = changeAlignmentCase;
+        resetResolutions();
         return this;
     }
 
     public DefaultPlanRules setCancelCase(final DefaultCaseCancelPolicy[] cancelCase) {
         this.cancelCase = cancelCase;
+        resetResolutions();
         return this;
     }
 
     public DefaultPlanRules setCreateAlignmentCase(final DefaultCaseCreateAlignment[] createAlignmentCase) {
         this.createAlignmentCase = createAlignmentCase;
+        resetResolutions();
         return this;
     }
 
     public DefaultPlanRules setBillingAlignmentCase(
             final DefaultCaseBillingAlignment[] billingAlignmentCase) {
         this.billingAlignmentCase = billingAlignmentCase;
+        resetResolutions();
         return this;
     }
 
     public DefaultPlanRules setPriceListCase(final DefaultCasePriceList[] priceListCase) {
         this.priceListCase = priceListCase;
+        resetResolutions();
         return this;
     }
 
@@ -402,4 +483,42 @@ public class DefaultPlanRules extends ValidatingConfig<StandaloneCatalog> implem
         this.billingAlignmentCase = (DefaultCaseBillingAlignment[]) in.readObject();
         this.priceListCase = (DefaultCasePriceList[]) in.readObject();
     }
+
+    private static final class RulesResolutionKey {
+
+        private final List<Object> values;
+
+        private RulesResolutionKey(final PlanPhaseSpecifier planPhase) {
+            this(new PlanSpecifier(planPhase), planPhase.getPhaseType(), null);
+        }
+
+        private RulesResolutionKey(final PlanPhaseSpecifier from, final PlanSpecifier to) {
+            this(new PlanSpecifier(from), from.getPhaseType(), to);
+        }
+
+        private RulesResolutionKey(final PlanSpecifier from, @Nullable final PhaseType fromPhaseType, @Nullable final PlanSpecifier to) {
+            // Arrays#asList supports null elements, unlike ImmutableList
+            this.values = Arrays.<Object>asList(from.getPlanName(), from.getProductName(), from.getBillingPeriod(), from.getPriceListName(), fromPhaseType,
+                                                to == null ? null : to.getPlanName(),
+                                                to == null ? null : to.getProductName(),
+                                                to == null ? null : to.getBillingPeriod(),
+                                                to == null ? null : to.getPriceListName());
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RulesResolutionKey)) {
+                return false;
+            }
+            return values.equals(((RulesResolutionKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return values.hashCode();
+        }
+    }
 }
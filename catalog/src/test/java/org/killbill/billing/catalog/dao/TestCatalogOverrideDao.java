@@ -39,6 +39,7 @@ import org.killbill.xmlloader.XMLLoader;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 
 import static org.testng.Assert.assertEquals;
@@ -211,5 +212,62 @@ public class TestCatalogOverrideDao extends CatalogTestSuiteWithEmbeddedDB {
         assertEquals(curTieredBlock.getMax(),tieredBlockPriceOverride.getMax());
     }
 
-}
+    @Test(groups = "slow")
+    public void testGetOverrideDefinitions() throws Exception {
+
+        final StandaloneCatalog catalog = XMLLoader.getObjectFromString(Resources.getResource("SpyCarAdvanced.xml").toExternalForm(), StandaloneCatalog.class);
 
+        final Plan gasPlan = catalog.findPlan("gas-monthly");
+        final List<TieredBlockPriceOverride> tieredBlockPriceOverrides = ImmutableList.<TieredBlockPriceOverride>of(new DefaultTieredBlockPriceOverride("gallons", new Double("1"), new BigDecimal(4), Currency.USD, new Double("100")));
+        final List<TierPriceOverride> tierPriceOverrides = ImmutableList.<TierPriceOverride>of(new DefaultTierPriceOverride(tieredBlockPriceOverrides));
+        final List<UsagePriceOverride> usagePriceOverrides = ImmutableList.<UsagePriceOverride>of(new DefaultUsagePriceOverride("gas-monthly-in-arrear", UsageType.CONSUMABLE, tierPriceOverrides));
+        final PlanPhasePriceOverride[] gasOverrides = new PlanPhasePriceOverride[gasPlan.getAllPhases().length];
+        gasOverrides[0] = new DefaultPlanPhasePriceOverride(gasPlan.getFinalPhase().getName(), Currency.USD, BigDecimal.ZERO, new BigDecimal("348.64"), usagePriceOverrides);
+        final CatalogOverridePlanDefinitionModelDao gasPlanDef = catalogOverrideDao.getOrCreateOverridePlanDefinition(gasPlan, new DateTime(catalog.getEffectiveDate()), gasOverrides, internalCallContext);
+
+        final Plan discountPlan = catalog.findPlan("discount-standard-monthly");
+        final PlanPhasePriceOverride[] discountOverrides = new PlanPhasePriceOverride[discountPlan.getAllPhases().length];
+        discountOverrides[0] = new DefaultPlanPhasePriceOverride(discountPlan.getAllPhases()[0].getName(), Currency.USD, BigDecimal.TEN, null, null);
+        discountOverrides[2] = new DefaultPlanPhasePriceOverride(discountPlan.getFinalPhase().getName(), Currency.USD, null, new BigDecimal("348.64"), null);
+        final CatalogOverridePlanDefinitionModelDao discountPlanDef = catalogOverrideDao.getOrCreateOverridePlanDefinition(discountPlan, new DateTime(catalog.getEffectiveDate()), discountOverrides, internalCallContext);
+
+        final CatalogOverrideDefinitions definitions = catalogOverrideDao.getOverrideDefinitions(ImmutableList.<Long>of(gasPlanDef.getRecordId(), discountPlanDef.getRecordId(), -1L), internalCallContext);
+        Assert.assertNull(definitions.getPlanDefinition(-1L));
+
+        // The bulk load must return the exact same tree as the per-level lookups
+        for (final CatalogOverridePlanDefinitionModelDao planDef : ImmutableList.<CatalogOverridePlanDefinitionModelDao>of(gasPlanDef, discountPlanDef)) {
+            assertEquals(definitions.getPlanDefinition(planDef.getRecordId()).getParentPlanName(), planDef.getParentPlanName());
+
+            final List<CatalogOverridePhaseDefinitionModelDao> phases = catalogOverrideDao.getOverriddenPlanPhases(planDef.getRecordId(), internalCallContext);
+            final List<CatalogOverridePhaseDefinitionModelDao> bulkPhases = definitions.getOverriddenPlanPhases(planDef.getRecordId());
+            assertEquals(bulkPhases.size(), phases.size());
+            for (int i = 0; i < phases.size(); i++) {
+                final CatalogOverridePhaseDefinitionModelDao phase = phases.get(i);
+                assertEquals(bulkPhases.get(i).getRecordId(), phase.getRecordId());
+                final List<CatalogOverrideUsageDefinitionModelDao> usages = catalogOverrideDao.getOverriddenPhaseUsages(phase.getRecordId(), internalCallContext);
+                final List<CatalogOverrideUsageDefinitionModelDao> bulkUsages = definitions.getOverriddenPhaseUsages(phase.getRecordId());
+                assertEquals(bulkUsages.size(), usages.size());
+                for (int j = 0; j < usages.size(); j++) {
+                    final CatalogOverrideUsageDefinitionModelDao usage = usages.get(j);
+                    assertEquals(bulkUsages.get(j).getRecordId(), usage.getRecordId());
+                    final List<CatalogOverrideTierDefinitionModelDao> tiers = catalogOverrideDao.getOverriddenUsageTiers(usage.getRecordId(), internalCallContext);
+                    final List<CatalogOverrideTierDefinitionModelDao> bulkTiers = definitions.getOverriddenUsageTiers(usage.getRecordId());
+                    assertEquals(bulkTiers.size(), tiers.size());
+                    for (int k = 0; k < tiers.size(); k++) {
+                        final CatalogOverrideTierDefinitionModelDao tier = tiers.get(k);
+                        assertEquals(bulkTiers.get(k).getRecordId(), tier.getRecordId());
+                        final List<CatalogOverrideBlockDefinitionModelDao> blocks = catalogOverrideDao.getOverriddenTierBlocks(tier.getRecordId(), internalCallContext);
+                        final List<CatalogOverrideBlockDefinitionModelDao> bulkBlocks = definitions.getOverriddenTierBlocks(tier.getRecordId());
+                        assertEquals(bulkBlocks.size(), blocks.size());
+                        for (int l = 0; l < blocks.size(); l++) {
+                            assertEquals(bulkBlocks.get(l).getRecordId(), blocks.get(l).getRecordId());
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(definitions.getOverriddenPlanPhases(gasPlanDef.getRecordId()).size(), 1);
+        assertEquals(definitions.getOverriddenPlanPhases(discountPlanDef.getRecordId()).size(), 2);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.List;
+
+import org.killbill.billing.catalog.CatalogTestSuiteNoDB;
+import org.killbill.billing.catalog.DefaultVersionedCatalog;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Resources;
+
+public class TestVersionedCatalogSnapshot extends CatalogTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testFingerprint() {
+        final List<String> catalogXMLs = ImmutableList.<String>of("<catalog>A</catalog>", "<catalog>B</catalog>");
+        final String fingerprint = VersionedCatalogSnapshot.fingerprint(catalogXMLs, false);
+
+        Assert.assertEquals(VersionedCatalogSnapshot.fingerprint(ImmutableList.<String>copyOf(catalogXMLs), false), fingerprint);
+        Assert.assertNotEquals(VersionedCatalogSnapshot.fingerprint(catalogXMLs, true), fingerprint);
+        Assert.assertNotEquals(VersionedCatalogSnapshot.fingerprint(catalogXMLs.subList(0, 1), false), fingerprint);
+        Assert.assertNotEquals(VersionedCatalogSnapshot.fingerprint(ImmutableList.<String>of("<catalog>A</catalog><catalog>B</catalog>"), false), fingerprint);
+    }
+
+    @Test(groups = "fast")
+    public void testSerializeAndDeserialize() throws Exception {
+        final DefaultVersionedCatalog catalog = (DefaultVersionedCatalog) loader.loadDefaultCatalog(Resources.getResource("versionedCatalog").toString());
+        final String fingerprint = VersionedCatalogSnapshot.fingerprint(ImmutableList.<String>of("versionedCatalog"), false);
+
+        final String snapshot = VersionedCatalogSnapshot.serialize(catalog, fingerprint);
+        Assert.assertEquals(VersionedCatalogSnapshot.deserialize(snapshot, fingerprint), catalog);
+
+        // Stale or invalid snapshots are ignored
+        final String otherFingerprint = VersionedCatalogSnapshot.fingerprint(ImmutableList.<String>of("versionedCatalog"), true);
+        Assert.assertNull(VersionedCatalogSnapshot.deserialize(snapshot, otherFingerprint));
+        Assert.assertNull(VersionedCatalogSnapshot.deserialize("0:" + fingerprint + ":", fingerprint));
+        Assert.assertNull(VersionedCatalogSnapshot.deserialize(null, fingerprint));
+    }
+
+    @Test(groups = "fast")
+    public void testDeserializeRejectsNonCatalogClasses() throws Exception {
+        final String fingerprint = VersionedCatalogSnapshot.fingerprint(ImmutableList.<String>of("versionedCatalog"), false);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+        objectOutputStream.writeObject(new HashSet<String>(ImmutableList.<String>of("foo")));
+        objectOutputStream.close();
+        final String snapshot = VersionedCatalogSnapshot.FORMAT_VERSION + VersionedCatalogSnapshot.SEPARATOR + fingerprint + VersionedCatalogSnapshot.SEPARATOR + BaseEncoding.base64().encode(out.toByteArray());
+
+        try {
+            VersionedCatalogSnapshot.deserialize(snapshot, fingerprint);
+            Assert.fail();
+        } catch (final InvalidClassException e) {
+            Assert.assertEquals(e.classname, HashSet.class.getName());
+        }
+    }
+}
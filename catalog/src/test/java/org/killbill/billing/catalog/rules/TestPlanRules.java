@@ -100,4 +100,23 @@ public class TestPlanRules extends CatalogTestSuiteNoDB {
         Assert.assertEquals(result.getAlignment(), PlanAlignmentChange.START_OF_SUBSCRIPTION);
         Assert.assertEquals(result.getNewPriceList(), priceList2);
     }
+
+    @Test(groups = "fast")
+    public void testResolutionsAreResetWhenRulesChange() throws CatalogApiException {
+        final DefaultProduct product1 = cat.getCurrentProduct(0);
+        final DefaultProduct product2 = cat.getCurrentProduct(1);
+        final DefaultPriceList priceList1 = (DefaultPriceList) cat.findPriceList(PriceListSet.DEFAULT_PRICELIST_NAME);
+
+        final PlanPhaseSpecifier from = new PlanPhaseSpecifier(product1.getName(), BillingPeriod.MONTHLY, priceList1.getName(), PhaseType.EVERGREEN);
+        final PlanSpecifier to = new PlanSpecifier(product2.getName(), BillingPeriod.MONTHLY, priceList1.getName());
+
+        final DefaultPlanRules planRules = (DefaultPlanRules) cat.getPlanRules();
+        Assert.assertEquals(planRules.getPlanChangeResult(from, to).getPolicy(), BillingActionPolicy.END_OF_TERM);
+        // Second lookup is served by the resolution table
+        Assert.assertEquals(planRules.getPlanChangeResult(from, to).getPolicy(), BillingActionPolicy.END_OF_TERM);
+
+        final DefaultCaseChangePlanPolicy immediateCase = new DefaultCaseChangePlanPolicy().setPolicy(BillingActionPolicy.IMMEDIATE);
+        planRules.setChangeCase(new DefaultCaseChangePlanPolicy[]{immediateCase});
+        Assert.assertEquals(planRules.getPlanChangeResult(from, to).getPolicy(), BillingActionPolicy.IMMEDIATE);
+    }
 }
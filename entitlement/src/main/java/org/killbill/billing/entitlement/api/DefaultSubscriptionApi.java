@@ -137,25 +137,37 @@ public class DefaultSubscriptionApi implements SubscriptionApi {
     public Subscription getSubscriptionForEntitlementId(final UUID entitlementId, final TenantContext tenantContext) throws SubscriptionApiException {
 
         // Retrieve entitlements
+        final InternalTenantContext internalTenantContextWithValidAccountRecordId;
         final AccountEntitlements accountEntitlements;
         try {
             final UUID accountId = internalCallContextFactory.getAccountId(entitlementId, ObjectType.SUBSCRIPTION, tenantContext);
-            final InternalTenantContext internalTenantContextWithValidAccountRecordId = internalCallContextFactory.createInternalTenantContext(accountId, tenantContext);
-            accountEntitlements = entitlementInternalApi.getAllEntitlementsForAccount(internalTenantContextWithValidAccountRecordId);
+            internalTenantContextWithValidAccountRecordId = internalCallContextFactory.createInternalTenantContext(accountId, tenantContext);
+            accountEntitlements = entitlementInternalApi.getAllEntitlementsForAccountForRead(internalTenantContextWithValidAccountRecordId);
         } catch (final EntitlementApiException e) {
             throw new SubscriptionApiException(e);
         }
 
+        final Predicate<Subscription> isEntitlement = new Predicate<Subscription>() {
+            @Override
+            public boolean apply(final Subscription subscription) {
+                return subscription.getId().equals(entitlementId);
+            }
+        };
+
         // Build subscriptions
-        final Iterable<Subscription> accountSubscriptions = Iterables.<Subscription>concat(buildSubscriptionsFromEntitlements(accountEntitlements).values());
-
-        return Iterables.<Subscription>find(accountSubscriptions,
-                                            new Predicate<Subscription>() {
-                                                @Override
-                                                public boolean apply(final Subscription subscription) {
-                                                    return subscription.getId().equals(entitlementId);
-                                                }
-                                            });
+        final Optional<Subscription> subscription = Iterables.<Subscription>tryFind(Iterables.<Subscription>concat(buildSubscriptionsFromEntitlements(accountEntitlements).values()), isEntitlement);
+        if (subscription.isPresent()) {
+            return subscription.get();
+        }
+
+        // The entitlement may have been created since the entitlement state of the account was computed (e.g. on another node)
+        final AccountEntitlements refreshedAccountEntitlements;
+        try {
+            refreshedAccountEntitlements = entitlementInternalApi.getAllEntitlementsForAccount(internalTenantContextWithValidAccountRecordId);
+        } catch (final EntitlementApiException e) {
+            throw new SubscriptionApiException(e);
+        }
+        return Iterables.<Subscription>find(Iterables.<Subscription>concat(buildSubscriptionsFromEntitlements(refreshedAccountEntitlements).values()), isEntitlement);
     }
 
     @Override
@@ -500,7 +512,7 @@ public class DefaultSubscriptionApi implements SubscriptionApi {
         // Retrieve entitlements
         final AccountEntitlements accountEntitlements;
         try {
-            accountEntitlements = entitlementInternalApi.getAllEntitlementsForAccount(internalTenantContextWithValidAccountRecordId);
+            accountEntitlements = entitlementInternalApi.getAllEntitlementsForAccountForRead(internalTenantContextWithValidAccountRecordId);
         } catch (final EntitlementApiException e) {
             throw new SubscriptionApiException(e);
         }
@@ -116,7 +116,10 @@ public class DefaultEntitlementApiBase {
 
     public AccountEntitlements getAllEntitlementsForAccount(final InternalTenantContext tenantContext) throws EntitlementApiException {
         final AccountEventsStreams accountEventsStreams = eventsStreamBuilder.buildForAccount(tenantContext);
+        return getAllEntitlementsForAccount(accountEventsStreams, tenantContext);
+    }
 
+    protected AccountEntitlements getAllEntitlementsForAccount(final AccountEventsStreams accountEventsStreams, final InternalTenantContext tenantContext) {
         final Map<UUID, Collection<Entitlement>> entitlementsPerBundle = new HashMap<UUID, Collection<Entitlement>>();
         for (final UUID bundleId : accountEventsStreams.getEventsStreams().keySet()) {
             if (entitlementsPerBundle.get(bundleId) == null) {
@@ -37,6 +37,11 @@ import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.CatalogInternalApi;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+import org.killbill.billing.entitlement.AccountEntitlements;
+import org.killbill.billing.entitlement.AccountEventsStreams;
 import org.killbill.billing.entitlement.DefaultEntitlementService;
 import org.killbill.billing.entitlement.EntitlementInternalApi;
 import org.killbill.billing.entitlement.api.BaseEntitlementWithAddOnsSpecifier;
@@ -54,6 +59,7 @@ import org.killbill.billing.entitlement.api.EntitlementPluginExecution;
 import org.killbill.billing.entitlement.api.EntitlementPluginExecution.WithEntitlementPlugin;
 import org.killbill.billing.entitlement.block.BlockingChecker;
 import org.killbill.billing.entitlement.dao.BlockingStateDao;
+import org.killbill.billing.entitlement.engine.core.EntitlementStateCache;
 import org.killbill.billing.entitlement.engine.core.EntitlementUtils;
 import org.killbill.billing.entitlement.engine.core.EventsStreamBuilder;
 import org.killbill.billing.entitlement.plugin.api.EntitlementContext;
@@ -65,8 +71,11 @@ import org.killbill.billing.security.api.SecurityApi;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
+import org.killbill.billing.util.audit.dao.AuditDao;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.EntitlementConfig;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationEvent;
@@ -76,10 +85,15 @@ import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificatio
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase implements EntitlementInternalApi {
 
     private final BlockingStateDao blockingStateDao;
+    private final CatalogInternalApi catalogInternalApi;
+    private final EntitlementStateCache entitlementStateCache;
+    private final EntitlementConfig entitlementConfig;
+    private final AuditDao auditDao;
 
     @Inject
     public DefaultEntitlementInternalApi(final PersistentBus eventBus,
@@ -88,9 +102,59 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
                                          final SubscriptionBaseInternalApi subscriptionInternalApi,
                                          final AccountInternalApi accountApi, final BlockingStateDao blockingStateDao, final Clock clock,
                                          final BlockingChecker checker, final NotificationQueueService notificationQueueService,
-                                         final EventsStreamBuilder eventsStreamBuilder, final EntitlementUtils entitlementUtils, final SecurityApi securityApi) {
+                                         final EventsStreamBuilder eventsStreamBuilder, final EntitlementUtils entitlementUtils, final SecurityApi securityApi,
+                                         final CatalogInternalApi catalogInternalApi, final EntitlementStateCache entitlementStateCache, final EntitlementConfig entitlementConfig,
+                                         final AuditDao auditDao) {
         super(eventBus, entitlementApi, pluginExecution, internalCallContextFactory, subscriptionInternalApi, accountApi, blockingStateDao, clock, checker, notificationQueueService, eventsStreamBuilder, entitlementUtils, securityApi);
         this.blockingStateDao = blockingStateDao;
+        this.catalogInternalApi = catalogInternalApi;
+        this.entitlementStateCache = entitlementStateCache;
+        this.entitlementConfig = entitlementConfig;
+        this.auditDao = auditDao;
+    }
+
+    @Override
+    public AccountEntitlements getAllEntitlementsForAccountForRead(final InternalTenantContext tenantContext) throws EntitlementApiException {
+        if (!entitlementConfig.isEntitlementStateCacheEnabled()) {
+            return getAllEntitlementsForAccount(tenantContext);
+        }
+
+        final VersionedCatalog catalog;
+        try {
+            catalog = catalogInternalApi.getFullCatalog(true, true, tenantContext);
+        } catch (final CatalogApiException e) {
+            throw new EntitlementApiException(e);
+        }
+
+        // Read before the events streams are built: a concurrent change will only cause a rebuild on the next call
+        final Long marker = auditDao.getLatestAuditLogRecordIdForAccountRecordId(tenantContext);
+        AccountEventsStreams accountEventsStreams = entitlementStateCache.getAccountEventsStreams(marker, catalog, tenantContext);
+        if (accountEventsStreams == null) {
+            final DateTime builtAt = clock.getUTCNow();
+            accountEventsStreams = eventsStreamBuilder.buildForAccount(tenantContext);
+            entitlementStateCache.putAccountEventsStreams(marker, catalog, accountEventsStreams, builtAt, tenantContext);
+        }
+        return getAllEntitlementsForAccount(accountEventsStreams, tenantContext);
+    }
+
+    @Override
+    public Map<UUID, Entitlement> getEntitlementsForIds(final Collection<UUID> uuids, final TenantContext tenantContext) throws EntitlementApiException {
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext);
+        // Single lookup for all the subscriptions, instead of one per subscription
+        final Map<UUID, Long> accountRecordIds = subscriptionInternalApi.getAccountRecordIdsForSubscriptions(ImmutableSet.<UUID>copyOf(uuids), internalTenantContext);
+
+        final Map<UUID, Entitlement> result = new HashMap<UUID, Entitlement>();
+        for (final Long accountRecordId : ImmutableSet.<Long>copyOf(accountRecordIds.values())) {
+            final InternalTenantContext accountContext = internalCallContextFactory.createInternalTenantContext(internalTenantContext.getTenantRecordId(), accountRecordId);
+            for (final Collection<Entitlement> entitlements : getAllEntitlementsForAccountForRead(accountContext).getEntitlements().values()) {
+                for (final Entitlement entitlement : entitlements) {
+                    if (accountRecordIds.containsKey(entitlement.getId())) {
+                        result.put(entitlement.getId(), entitlement);
+                    }
+                }
+            }
+        }
+        return result;
     }
 
 
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -203,6 +204,24 @@ public class DefaultBlockingStateDao extends EntityDaoBase<BlockingStateModelDao
         });
     }
 
+    // Map account record id -> blocking states (on disk), for accounts of the same tenant
+    public Map<Long, List<BlockingState>> getBlockingAllForAccountRecordIds(final Collection<Long> accountRecordIds, final InternalTenantContext tenantContext) {
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<Long, List<BlockingState>>>() {
+            @Override
+            public Map<Long, List<BlockingState>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final BlockingStateSqlDao sqlDao = entitySqlDaoWrapperFactory.become(BlockingStateSqlDao.class);
+                final Map<Long, List<BlockingState>> result = new HashMap<Long, List<BlockingState>>();
+                for (final BlockingStateModelDao model : sqlDao.getByAccountRecordIds(accountRecordIds, tenantContext)) {
+                    if (result.get(model.getAccountRecordId()) == null) {
+                        result.put(model.getAccountRecordId(), new ArrayList<BlockingState>());
+                    }
+                    result.get(model.getAccountRecordId()).add(BlockingStateModelDao.toBlockingState(model));
+                }
+                return result;
+            }
+        });
+    }
+
     @Override
     public void setBlockingStatesAndPostBlockingTransitionEvent(final Map<BlockingState, Optional<UUID>> states, final InternalCallContext context) {
         transactionalSqlDao.execute(false, new EntitySqlDaoTransactionWrapper<Void>() {
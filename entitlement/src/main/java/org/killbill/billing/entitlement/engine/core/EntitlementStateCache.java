@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+import org.killbill.billing.entitlement.AccountEventsStreams;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+import org.killbill.billing.util.catalog.CatalogVersionHelper;
+import org.killbill.clock.Clock;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+//
+// Per-account projection of the entitlement state, for read-only callers (see DefaultSubscriptionApi), keyed on a change marker
+// read from the database:
+// - the marker (see AuditDao#getLatestAuditLogRecordIdForAccountRecordId) changes in the same transaction as any change of the
+//   account, its subscriptions, blocking states or charged through dates, on any node
+// - the marker is read before the events streams are built, so a concurrent change only causes a rebuild
+// - the events streams are only valid for the catalog versions they were built with (see CatalogVersionHelper)
+// - the events streams capture the current time when built, so they are only valid until their next transition (subscription
+//   transition, blocking state or entitlement date), and until the end of the current day in the account time zone
+//
+public class EntitlementStateCache {
+
+    private static final long MAX_CACHED_ACCOUNTS = 1000;
+
+    private final Cache<Long, CachedEventsStreams> cache;
+    private final Clock clock;
+
+    @Inject
+    public EntitlementStateCache(final Clock clock) {
+        this.clock = clock;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(MAX_CACHED_ACCOUNTS)
+                                 .build();
+    }
+
+    @Nullable
+    public AccountEventsStreams getAccountEventsStreams(final Long marker, final VersionedCatalog catalog, final InternalTenantContext context) {
+        final CachedEventsStreams cachedEventsStreams = cache.getIfPresent(context.getAccountRecordId());
+        if (cachedEventsStreams == null ||
+            !cachedEventsStreams.getMarker().equals(marker) ||
+            !cachedEventsStreams.getCatalogVersionKey().equals(CatalogVersionHelper.getCatalogVersionKey(catalog)) ||
+            !clock.getUTCNow().isBefore(cachedEventsStreams.getValidUntil())) {
+            return null;
+        }
+        return cachedEventsStreams.getAccountEventsStreams();
+    }
+
+    // The marker and builtAt must be taken before the events streams are built
+    public void putAccountEventsStreams(final Long marker, final VersionedCatalog catalog, final AccountEventsStreams accountEventsStreams, final DateTime builtAt, final InternalTenantContext context) {
+        final DateTime validUntil = computeValidUntil(accountEventsStreams, builtAt, context);
+        cache.put(context.getAccountRecordId(), new CachedEventsStreams(marker, CatalogVersionHelper.getCatalogVersionKey(catalog), accountEventsStreams, validUntil));
+    }
+
+    private DateTime computeValidUntil(final AccountEventsStreams accountEventsStreams, final DateTime builtAt, final InternalTenantContext context) {
+        // Some states are computed on the local date (e.g. entitlement end date)
+        final DateTimeZone timeZone = MoreObjects.firstNonNull(context.getFixedOffsetTimeZone(), DateTimeZone.UTC);
+        DateTime validUntil = context.toLocalDate(builtAt).plusDays(1).toDateTimeAtStartOfDay(timeZone);
+
+        for (final Collection<EventsStream> eventsStreams : accountEventsStreams.getEventsStreams().values()) {
+            for (final EventsStream eventsStream : eventsStreams) {
+                validUntil = nextTransition(validUntil, builtAt, eventsStream.getEntitlementEffectiveStartDateTime());
+                validUntil = nextTransition(validUntil, builtAt, eventsStream.getEntitlementEffectiveEndDateTime());
+                for (final BlockingState blockingState : eventsStream.getBlockingStates()) {
+                    validUntil = nextTransition(validUntil, builtAt, blockingState.getEffectiveDate());
+                }
+                // The base plan transitions (add-ons cancellation) are covered by the base plan events stream of the bundle
+                for (final SubscriptionBaseTransition transition : eventsStream.getSubscriptionBase().getAllTransitions()) {
+                    validUntil = nextTransition(validUntil, builtAt, transition.getEffectiveTransitionTime());
+                }
+            }
+        }
+        return validUntil;
+    }
+
+    private DateTime nextTransition(final DateTime validUntil, final DateTime builtAt, @Nullable final DateTime transitionTime) {
+        return transitionTime != null && transitionTime.isAfter(builtAt) && transitionTime.isBefore(validUntil) ? transitionTime : validUntil;
+    }
+
+    private static final class CachedEventsStreams {
+
+        private final Long marker;
+        private final String catalogVersionKey;
+        private final AccountEventsStreams accountEventsStreams;
+        private final DateTime validUntil;
+
+        private CachedEventsStreams(final Long marker, final String catalogVersionKey, final AccountEventsStreams accountEventsStreams, final DateTime validUntil) {
+            this.marker = marker;
+            this.catalogVersionKey = catalogVersionKey;
+            this.accountEventsStreams = accountEventsStreams;
+            this.validUntil = validUntil;
+        }
+
+        public Long getMarker() {
+            return marker;
+        }
+
+        public String getCatalogVersionKey() {
+            return catalogVersionKey;
+        }
+
+        public AccountEventsStreams getAccountEventsStreams() {
+            return accountEventsStreams;
+        }
+
+        public DateTime getValidUntil() {
+            return validUntil;
+        }
+    }
+}
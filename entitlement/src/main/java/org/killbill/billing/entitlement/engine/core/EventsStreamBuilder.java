@@ -18,8 +18,10 @@
 
 package org.killbill.billing.entitlement.engine.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -71,16 +73,21 @@ import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.skife.jdbi.v2.IDBI;
 
+import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 
 import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 
 @Singleton
 public class EventsStreamBuilder {
 
+    private static final int MAX_ACCOUNTS_PER_CHUNK = 100;
+
     private final AccountInternalApi accountInternalApi;
     private final SubscriptionBaseInternalApi subscriptionInternalApi;
     private final CatalogInternalApi catalogInternalApi;
@@ -149,6 +156,66 @@ public class EventsStreamBuilder {
 
     // Special signature for ProxyBlockingStateDao to save a DAO call
     public AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions, final VersionedCatalog catalog, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        return buildForAccount(subscriptions, null, null, catalog, internalTenantContext);
+    }
+
+    // Bulk version of buildForAccount, for jobs walking many accounts of the same tenant: subscriptions, events, bundles and blocking states
+    // are retrieved with set-based queries. Accounts are processed lazily, MAX_ACCOUNTS_PER_CHUNK at a time, to bound memory
+    // (EntitlementApiException are re-thrown as RuntimeException while iterating).
+    public Iterable<AccountEventsStreams> buildForAccounts(final Iterable<Long> accountRecordIds, final InternalTenantContext tenantContext) {
+        return new Iterable<AccountEventsStreams>() {
+            @Override
+            public Iterator<AccountEventsStreams> iterator() {
+                final Iterator<List<Long>> chunks = Iterables.partition(accountRecordIds, MAX_ACCOUNTS_PER_CHUNK).iterator();
+                return Iterators.concat(Iterators.transform(chunks, new Function<List<Long>, Iterator<AccountEventsStreams>>() {
+                    @Override
+                    public Iterator<AccountEventsStreams> apply(final List<Long> chunk) {
+                        try {
+                            return buildForAccounts(chunk, tenantContext).iterator();
+                        } catch (final EntitlementApiException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }));
+            }
+        };
+    }
+
+    private List<AccountEventsStreams> buildForAccounts(final List<Long> accountRecordIds, final InternalTenantContext tenantContext) throws EntitlementApiException {
+        final VersionedCatalog catalog = getCatalog(tenantContext);
+
+        // Account specific contexts (time zone and reference time), needed to rebuild the subscriptions
+        final List<InternalTenantContext> accountContexts = new ArrayList<InternalTenantContext>(accountRecordIds.size());
+        for (final Long accountRecordId : accountRecordIds) {
+            accountContexts.add(internalCallContextFactory.createInternalTenantContext(tenantContext.getTenantRecordId(), accountRecordId));
+        }
+
+        final Map<Long, Map<UUID, List<SubscriptionBase>>> subscriptionsPerAccount;
+        try {
+            subscriptionsPerAccount = subscriptionInternalApi.getSubscriptionsForAccounts(catalog, accountContexts);
+        } catch (final SubscriptionBaseApiException e) {
+            throw new EntitlementApiException(e);
+        }
+        final Map<Long, List<SubscriptionBaseBundle>> bundlesPerAccount = subscriptionInternalApi.getBundlesForAccounts(accountRecordIds, tenantContext);
+        final Map<Long, List<BlockingState>> blockingStatesPerAccount = defaultBlockingStateDao.getBlockingAllForAccountRecordIds(accountRecordIds, tenantContext);
+
+        final List<AccountEventsStreams> result = new ArrayList<AccountEventsStreams>(accountContexts.size());
+        for (final InternalTenantContext accountContext : accountContexts) {
+            final Long accountRecordId = accountContext.getAccountRecordId();
+            result.add(buildForAccount(MoreObjects.firstNonNull(subscriptionsPerAccount.get(accountRecordId), ImmutableMap.<UUID, List<SubscriptionBase>>of()),
+                                       MoreObjects.firstNonNull(bundlesPerAccount.get(accountRecordId), ImmutableList.<SubscriptionBaseBundle>of()),
+                                       MoreObjects.firstNonNull(blockingStatesPerAccount.get(accountRecordId), ImmutableList.<BlockingState>of()),
+                                       catalog,
+                                       accountContext));
+        }
+        return result;
+    }
+
+    private AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions,
+                                                 @Nullable final List<SubscriptionBaseBundle> prefetchedBundles,
+                                                 @Nullable final List<BlockingState> prefetchedBlockingStates,
+                                                 final VersionedCatalog catalog,
+                                                 final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         // Retrieve the account
         final ImmutableAccountData account;
         final int accountBCD;
@@ -165,7 +232,7 @@ public class EventsStreamBuilder {
         }
 
         // Retrieve the bundles
-        final List<SubscriptionBaseBundle> bundles = subscriptionInternalApi.getBundlesForAccount(account.getId(), internalTenantContext);
+        final List<SubscriptionBaseBundle> bundles = prefetchedBundles != null ? prefetchedBundles : subscriptionInternalApi.getBundlesForAccount(account.getId(), internalTenantContext);
         // Map bundle id -> bundles
         final Map<UUID, SubscriptionBaseBundle> bundlesPerId = new HashMap<UUID, SubscriptionBaseBundle>();
         for (final SubscriptionBaseBundle bundle : bundles) {
@@ -173,7 +240,7 @@ public class EventsStreamBuilder {
         }
 
         // Retrieve the blocking states
-        final List<BlockingState> blockingStatesForAccount = defaultBlockingStateDao.getBlockingAllForAccountRecordId(catalog, internalTenantContext);
+        final List<BlockingState> blockingStatesForAccount = prefetchedBlockingStates != null ? prefetchedBlockingStates : defaultBlockingStateDao.getBlockingAllForAccountRecordId(catalog, internalTenantContext);
 
         // Optimization: build lookup tables for blocking states states
         final Collection<BlockingState> accountBlockingStates = new LinkedList<BlockingState>();
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.account.api.ImmutableAccountData;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.StaticCatalog;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+import org.killbill.billing.entitlement.AccountEventsStreams;
+import org.killbill.billing.entitlement.EntitlementTestSuiteNoDB;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class TestEntitlementStateCache extends EntitlementTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testMarker() throws Exception {
+        final EntitlementStateCache entitlementStateCache = new EntitlementStateCache(clock);
+        final InternalTenantContext context = createContext(1L);
+        final VersionedCatalog catalog = createCatalog(new Date(1000L));
+        final AccountEventsStreams accountEventsStreams = createAccountEventsStreams(UUID.randomUUID(), clock.getUTCNow().minusDays(1));
+
+        assertNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, context));
+
+        entitlementStateCache.putAccountEventsStreams(10L, catalog, accountEventsStreams, clock.getUTCNow(), context);
+        assertEquals(entitlementStateCache.getAccountEventsStreams(10L, catalog, context), accountEventsStreams);
+        // Other account
+        assertNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, createContext(2L)));
+
+        // The account changed since the events streams were built (on any node)
+        assertNull(entitlementStateCache.getAccountEventsStreams(11L, catalog, context));
+
+        // Built again, after the change
+        entitlementStateCache.putAccountEventsStreams(11L, catalog, accountEventsStreams, clock.getUTCNow(), context);
+        assertNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, context));
+        assertNotNull(entitlementStateCache.getAccountEventsStreams(11L, catalog, context));
+    }
+
+    @Test(groups = "fast")
+    public void testCatalogChanges() throws Exception {
+        final EntitlementStateCache entitlementStateCache = new EntitlementStateCache(clock);
+        final InternalTenantContext context = createContext(1L);
+        final VersionedCatalog catalog = createCatalog(new Date(1000L));
+        final AccountEventsStreams accountEventsStreams = createAccountEventsStreams(UUID.randomUUID(), clock.getUTCNow().minusDays(1));
+
+        entitlementStateCache.putAccountEventsStreams(10L, catalog, accountEventsStreams, clock.getUTCNow(), context);
+        assertNotNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, context));
+
+        // Same catalog, different instance (e.g. deserialized from the Redis catalog cache)
+        assertNotNull(entitlementStateCache.getAccountEventsStreams(10L, createCatalog(new Date(1000L)), context));
+
+        // Catalog update
+        assertNull(entitlementStateCache.getAccountEventsStreams(10L, createCatalog(new Date(1000L), new Date(2000L)), context));
+    }
+
+    @Test(groups = "fast")
+    public void testValidUntilNextTransition() throws Exception {
+        final EntitlementStateCache entitlementStateCache = new EntitlementStateCache(clock);
+        final InternalTenantContext context = createContext(1L);
+        final VersionedCatalog catalog = createCatalog(new Date(1000L));
+        final DateTime builtAt = clock.getUTCNow();
+        final AccountEventsStreams accountEventsStreams = createAccountEventsStreams(UUID.randomUUID(), builtAt.plusHours(1));
+
+        entitlementStateCache.putAccountEventsStreams(10L, catalog, accountEventsStreams, builtAt, context);
+        assertNotNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, context));
+
+        // Future phase, without any change event yet
+        clock.addDeltaFromReality(3600 * 1000);
+        assertNull(entitlementStateCache.getAccountEventsStreams(10L, catalog, context));
+    }
+
+    private AccountEventsStreams createAccountEventsStreams(final UUID accountId, final DateTime transitionTime) {
+        final ImmutableAccountData account = Mockito.mock(ImmutableAccountData.class);
+        Mockito.when(account.getId()).thenReturn(accountId);
+
+        final SubscriptionBaseTransition transition = Mockito.mock(SubscriptionBaseTransition.class);
+        Mockito.when(transition.getEffectiveTransitionTime()).thenReturn(transitionTime);
+        final SubscriptionBase subscriptionBase = Mockito.mock(SubscriptionBase.class);
+        Mockito.when(subscriptionBase.getAllTransitions()).thenReturn(ImmutableList.<SubscriptionBaseTransition>of(transition));
+
+        final EventsStream eventsStream = Mockito.mock(EventsStream.class);
+        Mockito.when(eventsStream.getSubscriptionBase()).thenReturn(subscriptionBase);
+        Mockito.when(eventsStream.getBlockingStates()).thenReturn(ImmutableList.<BlockingState>of());
+
+        final AccountEventsStreams accountEventsStreams = Mockito.mock(AccountEventsStreams.class);
+        Mockito.when(accountEventsStreams.getAccount()).thenReturn(account);
+        Mockito.when(accountEventsStreams.getEventsStreams()).thenReturn(ImmutableMap.<UUID, Collection<EventsStream>>of(UUID.randomUUID(), ImmutableList.<EventsStream>of(eventsStream)));
+        return accountEventsStreams;
+    }
+
+    private VersionedCatalog createCatalog(final Date... effectiveDates) {
+        final ImmutableList.Builder<StaticCatalog> versions = ImmutableList.<StaticCatalog>builder();
+        for (final Date effectiveDate : effectiveDates) {
+            final StaticCatalog version = Mockito.mock(StaticCatalog.class);
+            Mockito.when(version.getEffectiveDate()).thenReturn(effectiveDate);
+            versions.add(version);
+        }
+
+        final VersionedCatalog catalog = Mockito.mock(VersionedCatalog.class);
+        Mockito.when(catalog.getCatalogName()).thenReturn("Firearms");
+        Mockito.when(catalog.getVersions()).thenReturn(versions.build());
+        return catalog;
+    }
+
+    private InternalTenantContext createContext(final Long accountRecordId) {
+        return new InternalTenantContext(1L, accountRecordId, DateTimeZone.UTC, clock.getUTCNow());
+    }
+}
@@ -139,6 +139,43 @@ public class TestEntitlementUtils extends EntitlementTestSuiteWithEmbeddedDB {
         checkBlockingStatesDAO(cancelledBaseEntitlement, cancelledAddOnEntitlement, baseEffectiveCancellationOrChangeDate, true);
     }
 
+    @Test(groups = "slow", description = "Verify the bulk EventsStream construction matches the per-account one")
+    public void testBuildForAccounts() throws Exception {
+        // Add-on blocking states are computed (not on disk yet)
+        baseEntitlement.cancelEntitlementWithPolicyOverrideBillingPolicy(EntitlementActionPolicy.END_OF_TERM, BillingActionPolicy.END_OF_TERM, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+
+        // Account without any subscription
+        final Account otherAccount = createAccount(getAccountData(7));
+        final Long otherAccountRecordId = internalCallContextFactory.createInternalTenantContext(otherAccount.getId(), callContext).getAccountRecordId();
+
+        final List<AccountEventsStreams> accountsEventsStreams = ImmutableList.<AccountEventsStreams>copyOf(eventsStreamBuilder.buildForAccounts(ImmutableList.<Long>of(internalCallContext.getAccountRecordId(), otherAccountRecordId), internalCallContext));
+        Assert.assertEquals(accountsEventsStreams.size(), 2);
+
+        final AccountEventsStreams expected = eventsStreamBuilder.buildForAccount(internalCallContext);
+        final AccountEventsStreams actual = accountsEventsStreams.get(0);
+        Assert.assertEquals(actual.getAccount().getId(), expected.getAccount().getId());
+        Assert.assertEquals(actual.getBundles().keySet(), expected.getBundles().keySet());
+        Assert.assertEquals(actual.getEventsStreams().keySet(), expected.getEventsStreams().keySet());
+        for (final EventsStream expectedEventsStream : Iterables.<EventsStream>concat(expected.getEventsStreams().values())) {
+            final EventsStream actualEventsStream = Iterables.<EventsStream>find(Iterables.<EventsStream>concat(actual.getEventsStreams().values()),
+                                                                                new Predicate<EventsStream>() {
+                                                                                    @Override
+                                                                                    public boolean apply(final EventsStream input) {
+                                                                                        return input.getEntitlementId().equals(expectedEventsStream.getEntitlementId());
+                                                                                    }
+                                                                                });
+            Assert.assertEquals(actualEventsStream.getEntitlementState(), expectedEventsStream.getEntitlementState());
+            Assert.assertEquals(actualEventsStream.getEntitlementEffectiveEndDate(), expectedEventsStream.getEntitlementEffectiveEndDate());
+            Assert.assertEquals(actualEventsStream.getBlockingStates().size(), expectedEventsStream.getBlockingStates().size());
+            Assert.assertEquals(actualEventsStream.getPendingEntitlementCancellationEvents().size(), expectedEventsStream.getPendingEntitlementCancellationEvents().size());
+            Assert.assertEquals(actualEventsStream.getDefaultBillCycleDayLocal(), expectedEventsStream.getDefaultBillCycleDayLocal());
+        }
+
+        Assert.assertEquals(accountsEventsStreams.get(1).getAccount().getId(), otherAccount.getId());
+        Assert.assertTrue(accountsEventsStreams.get(1).getEventsStreams().isEmpty());
+    }
+
     @Test(groups = "slow", description = "Verify add-ons blocking states are not impacted for add-on IMM cancellations")
     public void testCancellationBaseEOTAddOnIMM() throws Exception {
         // Cancel the base plan
@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -65,12 +66,14 @@ import org.killbill.billing.invoice.api.user.DefaultInvoiceNotificationInternalE
 import org.killbill.billing.invoice.api.user.DefaultNullInvoiceEvent;
 import org.killbill.billing.invoice.calculator.InvoiceCalculatorUtils;
 import org.killbill.billing.invoice.dao.ExistingInvoiceMetadata;
+import org.killbill.billing.invoice.dao.InvoiceBillingWatermarkModelDao;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDaoHelper;
 import org.killbill.billing.invoice.dao.InvoiceParentChildModelDao;
 import org.killbill.billing.invoice.dao.InvoiceTrackingModelDao;
+import org.killbill.billing.invoice.generator.BillingWatermarks;
 import org.killbill.billing.invoice.generator.InvoiceGenerator;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.SubscriptionFutureNotificationDates;
@@ -351,7 +354,8 @@ public class InvoiceDispatcher {
                                                                                                         }));
             final Invoice invoice;
             if (!isDryRun) {
-                final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, inputTargetDate, billingEvents, existingInvoices, false, isRescheduled, context);
+                final BillingWatermarks billingWatermarks = getBillingWatermarks(billingEvents, existingInvoices, inputTargetDate, context);
+                final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, inputTargetDate, billingEvents, existingInvoices, billingWatermarks, false, isRescheduled, context);
                 invoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
                 if (parkedAccount) {
                     try {
@@ -442,7 +446,7 @@ public class InvoiceDispatcher {
 
     private Invoice processDryRun_UPCOMING_INVOICE_Invoice(final UUID accountId, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
         for (final LocalDate curTargetDate : allCandidateTargetDates) {
-            final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, curTargetDate, billingEvents, existingInvoices, true, false, context);
+            final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, curTargetDate, billingEvents, existingInvoices, BillingWatermarks.none(), true, false, context);
             final Invoice invoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
             if (invoice != null) {
                 return invoice;
@@ -476,7 +480,7 @@ public class InvoiceDispatcher {
                 break;
             }
             // Loop through each boundary date prior to our given targetDate
-            final InvoiceWithFutureNotifications result = processAccountWithLockAndInputTargetDate(accountId, cur, billingEvents, augmentedExistingInvoices, true, false, context);
+            final InvoiceWithFutureNotifications result = processAccountWithLockAndInputTargetDate(accountId, cur, billingEvents, augmentedExistingInvoices, BillingWatermarks.none(), true, false, context);
             additionalInvoice = result != null ? result.getInvoice() : null;
             if (additionalInvoice != null) {
                 for (LocalDate k : result.getNotifications().getNotificationsForTrigger().keySet()) {
@@ -488,7 +492,7 @@ public class InvoiceDispatcher {
             }
         }
 
-        final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, targetDate, billingEvents, augmentedExistingInvoices, true, false, context);
+        final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, targetDate, billingEvents, augmentedExistingInvoices, BillingWatermarks.none(), true, false, context);
         final Invoice targetInvoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
         return targetInvoice != null ? targetInvoice : additionalInvoice;
     }
@@ -529,6 +533,7 @@ public class InvoiceDispatcher {
                                                                                     final LocalDate originalTargetDate,
                                                                                     final BillingEventSet billingEvents,
                                                                                     final List<Invoice> existingInvoices,
+                                                                                    final BillingWatermarks billingWatermarks,
                                                                                     final boolean isDryRun,
                                                                                     final boolean isRescheduled,
                                                                                     final InternalCallContext internalCallContext) throws InvoiceApiException {
@@ -554,7 +559,7 @@ public class InvoiceDispatcher {
             return null;
         }
 
-        final InvoiceWithMetadata invoiceWithMetadata = generateKillBillInvoice(account, originalTargetDate, billingEvents, existingInvoices, internalCallContext);
+        final InvoiceWithMetadata invoiceWithMetadata = generateKillBillInvoice(account, originalTargetDate, billingEvents, existingInvoices, billingWatermarks, internalCallContext);
         final DefaultInvoice invoice = invoiceWithMetadata.getInvoice();
 
         // Compute future notifications
@@ -572,7 +577,8 @@ public class InvoiceDispatcher {
                 final BusInternalEvent event = new DefaultNullInvoiceEvent(accountId, clock.getUTCToday(),
                                                                            internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(), internalCallContext.getUserToken());
 
-                commitInvoiceAndSetFutureNotifications(account, futureAccountNotifications, internalCallContext);
+                final List<InvoiceBillingWatermarkModelDao> changedBillingWatermarks = computeChangedBillingWatermarks(billingEvents, existingInvoices, null, originalTargetDate, billingWatermarks, internalCallContext);
+                commitInvoiceAndSetFutureNotifications(account, futureAccountNotifications, changedBillingWatermarks, internalCallContext);
                 postEvent(event);
             }
             return null;
@@ -625,7 +631,8 @@ public class InvoiceDispatcher {
 
                 // Commit invoice on disk
                 final ExistingInvoiceMetadata existingInvoiceMetadata = new ExistingInvoiceMetadata(existingInvoices);
-                commitInvoiceAndSetFutureNotifications(account, invoiceModelDao, billingEvents, trackingIds, futureAccountNotifications, existingInvoiceMetadata, internalCallContext);
+                final List<InvoiceBillingWatermarkModelDao> changedBillingWatermarks = computeChangedBillingWatermarks(billingEvents, existingInvoices, invoice, actualTargetDate, billingWatermarks, internalCallContext);
+                commitInvoiceAndSetFutureNotifications(account, invoiceModelDao, billingEvents, trackingIds, futureAccountNotifications, existingInvoiceMetadata, changedBillingWatermarks, internalCallContext);
                 success = true;
 
                 try {
@@ -652,7 +659,7 @@ public class InvoiceDispatcher {
         return new InvoiceWithFutureNotifications(invoice, futureAccountNotifications);
     }
 
-    private InvoiceWithMetadata generateKillBillInvoice(final ImmutableAccountData account, final LocalDate targetDate, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
+    private InvoiceWithMetadata generateKillBillInvoice(final ImmutableAccountData account, final LocalDate targetDate, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final BillingWatermarks billingWatermarks, final InternalCallContext context) throws InvoiceApiException {
         final UUID targetInvoiceId;
         // Filter out DRAFT invoices for computation  of existing items unless Account is in AUTO_INVOICING_REUSE_DRAFT
         if (billingEvents.isAccountAutoInvoiceReuseDraft()) {
@@ -667,7 +674,41 @@ public class InvoiceDispatcher {
             targetInvoiceId = null;
         }
 
-        return generator.generateInvoice(account, billingEvents, existingInvoices, targetInvoiceId, targetDate, account.getCurrency(), context);
+        return generator.generateInvoice(account, billingEvents, existingInvoices, billingWatermarks, targetInvoiceId, targetDate, account.getCurrency(), context);
+    }
+
+    private BillingWatermarks getBillingWatermarks(final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final LocalDate targetDate, final InternalCallContext context) {
+        if (!invoiceConfig.isIncrementalGenerationEnabled(context)) {
+            return BillingWatermarks.none();
+        }
+        return BillingWatermarks.fromPersistedWatermarks(invoiceDao.getBillingWatermarks(context), billingEvents, existingInvoices, targetDate, context);
+    }
+
+    // The watermarks are recorded in the same transaction as the invoice: only the ones which changed since the beginning of the run are returned
+    private List<InvoiceBillingWatermarkModelDao> computeChangedBillingWatermarks(final BillingEventSet billingEvents,
+                                                                                 final List<Invoice> existingInvoices,
+                                                                                 @Nullable final Invoice invoice,
+                                                                                 final LocalDate reconciledDate,
+                                                                                 final BillingWatermarks billingWatermarks,
+                                                                                 final InternalCallContext context) {
+        if (!invoiceConfig.isIncrementalGenerationEnabled(context)) {
+            return ImmutableList.<InvoiceBillingWatermarkModelDao>of();
+        }
+
+        // Items of the new invoice override the existing ones (AUTO_INVOICING_REUSE_DRAFT, amounts updated by plugins)
+        final Map<UUID, InvoiceItem> items = new LinkedHashMap<UUID, InvoiceItem>();
+        for (final Invoice existingInvoice : existingInvoices) {
+            for (final InvoiceItem item : existingInvoice.getInvoiceItems()) {
+                items.put(item.getId(), item);
+            }
+        }
+        if (invoice != null) {
+            for (final InvoiceItem item : invoice.getInvoiceItems()) {
+                items.put(item.getId(), item);
+            }
+        }
+
+        return billingWatermarks.getChangedWatermarks(BillingWatermarks.computeWatermarks(billingEvents, items.values(), reconciledDate, context));
     }
 
     private FutureAccountNotifications createNextFutureNotificationDate(final DateTime rescheduleDate, final BillingEventSet billingEvents, final InternalCallContext context) {
@@ -813,7 +854,14 @@ public class InvoiceDispatcher {
     private void commitInvoiceAndSetFutureNotifications(final ImmutableAccountData account,
                                                         final FutureAccountNotifications futureAccountNotifications,
                                                         final InternalCallContext context) {
-        commitInvoiceAndSetFutureNotifications(account,  null, null, ImmutableSet.of(), futureAccountNotifications, null, context);
+        commitInvoiceAndSetFutureNotifications(account, futureAccountNotifications, ImmutableList.<InvoiceBillingWatermarkModelDao>of(), context);
+    }
+
+    private void commitInvoiceAndSetFutureNotifications(final ImmutableAccountData account,
+                                                        final FutureAccountNotifications futureAccountNotifications,
+                                                        final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
+                                                        final InternalCallContext context) {
+        commitInvoiceAndSetFutureNotifications(account,  null, null, ImmutableSet.of(), futureAccountNotifications, null, billingWatermarks, context);
     }
 
 
@@ -823,12 +871,13 @@ public class InvoiceDispatcher {
                                                         final Set<InvoiceTrackingModelDao> trackingIds,
                                                         final FutureAccountNotifications futureAccountNotifications,
                                                         final ExistingInvoiceMetadata existingInvoiceMetadata,
+                                                        final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                                                         final InternalCallContext context) {
         final boolean isThereAnyItemsLeft = invoiceModelDao != null && !invoiceModelDao.getInvoiceItems().isEmpty();
         if (isThereAnyItemsLeft) {
-            invoiceDao.createInvoice(invoiceModelDao, billingEvents, trackingIds, futureAccountNotifications, existingInvoiceMetadata, context);
+            invoiceDao.createInvoice(invoiceModelDao, billingEvents, trackingIds, futureAccountNotifications, existingInvoiceMetadata, billingWatermarks, context);
         } else {
-            invoiceDao.setFutureAccountNotificationsForEmptyInvoice(account.getId(), futureAccountNotifications, context);
+            invoiceDao.setFutureAccountNotificationsForEmptyInvoice(account.getId(), futureAccountNotifications, billingWatermarks, context);
         }
     }
 
@@ -22,30 +22,38 @@ import org.killbill.billing.invoice.notification.ParentInvoiceCommitmentNotifier
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
+import org.killbill.billing.invoice.generator.InvoiceExecutors;
 import org.killbill.billing.invoice.notification.NextBillingDateNotifier;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
 import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 
 public class DefaultInvoiceService implements InvoiceService {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultInvoiceService.class);
+
     private final NextBillingDateNotifier dateNotifier;
     private final InvoiceListener invoiceListener;
     private final InvoiceTagHandler tagHandler;
     private final PersistentBus eventBus;
     private final ParentInvoiceCommitmentNotifier parentInvoiceNotifier;
+    private final InvoiceExecutors invoiceExecutors;
 
     @Inject
     public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus,
-                                 final NextBillingDateNotifier dateNotifier, final ParentInvoiceCommitmentNotifier parentInvoiceNotifier) {
+                                 final NextBillingDateNotifier dateNotifier, final ParentInvoiceCommitmentNotifier parentInvoiceNotifier,
+                                 final InvoiceExecutors invoiceExecutors) {
         this.invoiceListener = invoiceListener;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
         this.dateNotifier = dateNotifier;
         this.parentInvoiceNotifier = parentInvoiceNotifier;
+        this.invoiceExecutors = invoiceExecutors;
     }
 
     @Override
@@ -68,6 +76,7 @@ public class DefaultInvoiceService implements InvoiceService {
         }
         dateNotifier.initialize();
         parentInvoiceNotifier.initialize();
+        invoiceExecutors.initialize();
     }
 
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
@@ -86,5 +95,11 @@ public class DefaultInvoiceService implements InvoiceService {
         }
         dateNotifier.stop();
         parentInvoiceNotifier.stop();
+        try {
+            invoiceExecutors.stop();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("InvoiceService got interrupted", e);
+        }
     }
 }
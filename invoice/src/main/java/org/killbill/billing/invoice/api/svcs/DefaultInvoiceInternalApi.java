@@ -211,6 +211,18 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
                                                                           ));
     }
 
+    @Override
+    public List<InvoicePayment> getInvoicePaymentsByPaymentIds(final UUID accountId, final Collection<UUID> paymentIds, final TenantContext context) {
+        return ImmutableList.<InvoicePayment>copyOf(Collections2.transform(dao.getInvoicePaymentsByPaymentIds(paymentIds, internalCallContextFactory.createInternalTenantContext(accountId, ObjectType.ACCOUNT, context)),
+                                                                           new Function<InvoicePaymentModelDao, InvoicePayment>() {
+                                                                               @Override
+                                                                               public InvoicePayment apply(final InvoicePaymentModelDao input) {
+                                                                                   return new DefaultInvoicePayment(input);
+                                                                               }
+                                                                           }
+                                                                          ));
+    }
+
     @Override
     public List<InvoicePayment> getInvoicePaymentsByAccount(final UUID accountId, final TenantContext context) {
         return ImmutableList.<InvoicePayment>copyOf(Collections2.transform(dao.getInvoicePaymentsByAccount(internalCallContextFactory.createInternalTenantContext(accountId, ObjectType.ACCOUNT, context)),
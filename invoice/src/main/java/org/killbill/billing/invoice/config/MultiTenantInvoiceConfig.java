@@ -111,6 +111,72 @@ public class MultiTenantInvoiceConfig extends MultiTenantConfigBase implements I
         return getMaxRawUsagePreviousPeriod();
     }
 
+    @Override
+    public boolean isReadUsageAggregatesEnabled() {
+        return staticConfig.isReadUsageAggregatesEnabled();
+    }
+
+    @Override
+    public boolean isReadUsageAggregatesEnabled(final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("isReadUsageAggregatesEnabled", tenantContext);
+        if (result != null) {
+            return Boolean.parseBoolean(result);
+        }
+        return isReadUsageAggregatesEnabled();
+    }
+
+    @Override
+    public boolean isIncrementalGenerationEnabled() {
+        return staticConfig.isIncrementalGenerationEnabled();
+    }
+
+    @Override
+    public boolean isIncrementalGenerationEnabled(final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("isIncrementalGenerationEnabled", tenantContext);
+        if (result != null) {
+            return Boolean.parseBoolean(result);
+        }
+        return isIncrementalGenerationEnabled();
+    }
+
+    @Override
+    public boolean isArrayItemTreeEnabled() {
+        return staticConfig.isArrayItemTreeEnabled();
+    }
+
+    @Override
+    public boolean isArrayItemTreeEnabled(final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("isArrayItemTreeEnabled", tenantContext);
+        if (result != null) {
+            return Boolean.parseBoolean(result);
+        }
+        return isArrayItemTreeEnabled();
+    }
+
+    @Override
+    public boolean isParallelItemGenerationEnabled() {
+        return staticConfig.isParallelItemGenerationEnabled();
+    }
+
+    @Override
+    public boolean isParallelItemGenerationEnabled(final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("isParallelItemGenerationEnabled", tenantContext);
+        if (result != null) {
+            return Boolean.parseBoolean(result);
+        }
+        return isParallelItemGenerationEnabled();
+    }
+
+    @Override
+    public int getParallelItemGenerationThreads() {
+        return staticConfig.getParallelItemGenerationThreads();
+    }
+
+    @Override
+    public int getParallelItemGenerationQueueSize() {
+        return staticConfig.getParallelItemGenerationQueueSize();
+    }
+
     @Override
     public boolean isEmailNotificationsEnabled() {
         return staticConfig.isEmailNotificationsEnabled();
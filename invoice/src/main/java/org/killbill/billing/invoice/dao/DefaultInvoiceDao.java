@@ -91,6 +91,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -107,6 +108,8 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     private static final Logger log = LoggerFactory.getLogger(DefaultInvoiceDao.class);
 
+    private static final int PAYMENT_IDS_CHUNK_SIZE = 1000;
+
     private static final Ordering<InvoiceModelDao> INVOICE_MODEL_DAO_ORDERING = Ordering.natural()
                                                                                         .onResultOf(new Function<InvoiceModelDao, Comparable>() {
                                                                                             @Override
@@ -223,13 +226,15 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
     }
 
     private List<InvoiceModelDao> getAllNonMigratedInvoicesByAccountAfterDate(final Boolean includeVoidedInvoices, final InvoiceSqlDao invoiceSqlDao, final LocalDate fromDate, final LocalDate upToDate, final InternalTenantContext context) {
-        return ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getByAccountRecordId(context),
+        // Only the invoices within the window are retrieved (and their children populated)
+        final List<InvoiceModelDao> invoicesInRange = invoiceSqlDao.getByAccountRecordIdAndTargetDateRange(fromDate != null ? fromDate.toDate() : null,
+                                                                                                           upToDate != null ? upToDate.toDate() : null,
+                                                                                                           context);
+        return ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoicesInRange,
                                                                                                                              new Predicate<InvoiceModelDao>() {
                                                                                                                                  @Override
                                                                                                                                  public boolean apply(final InvoiceModelDao invoice) {
                                                                                                                                      return !invoice.isMigrated() &&
-                                                                                                                                            (fromDate == null || invoice.getTargetDate().compareTo(fromDate) >= 0) &&
-                                                                                                                                            (upToDate == null || invoice.getTargetDate().compareTo(upToDate) <= 0) &&
                                                                                                                                             (includeVoidedInvoices ? true : !InvoiceStatus.VOID.equals(invoice.getStatus()));
                                                                                                                                  }
                                                                                                                              })));
@@ -305,12 +310,14 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public void setFutureAccountNotificationsForEmptyInvoice(final UUID accountId, final FutureAccountNotifications callbackDateTimePerSubscriptions,
+                                                             @Nullable final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                                                              final InternalCallContext context) {
 
         transactionalSqlDao.execute(false, new EntitySqlDaoTransactionWrapper<Void>() {
             @Override
             public Void inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
                 notifyOfFutureBillingEvents(entitySqlDaoWrapperFactory, accountId, callbackDateTimePerSubscriptions, context);
+                setBillingWatermarksFromTransaction(entitySqlDaoWrapperFactory, billingWatermarks, context);
                 return null;
             }
         });
@@ -323,8 +330,9 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                               final Set<InvoiceTrackingModelDao> trackingIds,
                               final FutureAccountNotifications callbackDateTimePerSubscriptions,
                               final ExistingInvoiceMetadata existingInvoiceMetadata,
+                              @Nullable final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                               final InternalCallContext context) {
-        createInvoices(ImmutableList.<InvoiceModelDao>of(invoice), billingEvents, trackingIds, callbackDateTimePerSubscriptions, existingInvoiceMetadata, false, context);
+        createInvoices(ImmutableList.<InvoiceModelDao>of(invoice), billingEvents, trackingIds, callbackDateTimePerSubscriptions, existingInvoiceMetadata, billingWatermarks, false, context);
     }
 
     @Override
@@ -332,7 +340,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                     final BillingEventSet billingEvents,
                                                     final Set<InvoiceTrackingModelDao> trackingIds,
                                                     final InternalCallContext context) {
-        return createInvoices(invoices, billingEvents, trackingIds, new FutureAccountNotifications(), null, true, context);
+        return createInvoices(invoices, billingEvents, trackingIds, new FutureAccountNotifications(), null, null, true, context);
     }
 
     private List<InvoiceItemModelDao> createInvoices(final Iterable<InvoiceModelDao> invoices,
@@ -340,6 +348,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                      final Set<InvoiceTrackingModelDao> trackingIds,
                                                      final FutureAccountNotifications callbackDateTimePerSubscriptions,
                                                      @Nullable final ExistingInvoiceMetadata existingInvoiceMetadataOrNull,
+                                                     @Nullable final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                                                      final boolean returnCreatedInvoiceItems,
                                                      final InternalCallContext context) {
         // Track invoices that are being created
@@ -458,6 +467,8 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                     trackingIdsSqlDao.create(trackingIds, context);
                 }
 
+                setBillingWatermarksFromTransaction(entitySqlDaoWrapperFactory, billingWatermarks, context);
+
                 if (returnCreatedInvoiceItems) {
                     if (invoiceItemsToCreate.isEmpty()) {
                         return ImmutableList.<InvoiceItemModelDao>of();
@@ -613,6 +624,26 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoicePaymentModelDao> getInvoicePaymentsByPaymentIds(final Collection<UUID> paymentIds, final InternalTenantContext context) {
+        if (paymentIds.isEmpty()) {
+            return ImmutableList.<InvoicePaymentModelDao>of();
+        }
+
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<InvoicePaymentModelDao>>() {
+            @Override
+            public List<InvoicePaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final InvoicePaymentSqlDao invoicePaymentSqlDao = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+                final List<InvoicePaymentModelDao> result = new ArrayList<InvoicePaymentModelDao>();
+                // Keep the IN clause to a reasonable size
+                for (final List<UUID> chunk : Iterables.partition(paymentIds, PAYMENT_IDS_CHUNK_SIZE)) {
+                    result.addAll(invoicePaymentSqlDao.getByPaymentIds(Collections2.transform(chunk, Functions.toStringFunction()), context));
+                }
+                return result;
+            }
+        });
+    }
+
     @Override
     public List<InvoicePaymentModelDao> getInvoicePaymentsByInvoice(final UUID invoiceId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<InvoicePaymentModelDao>>() {
@@ -1120,6 +1151,39 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    // Only the changed watermarks are expected here: the existing ones are updated in place
+    private void setBillingWatermarksFromTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
+                                                     @Nullable final Iterable<InvoiceBillingWatermarkModelDao> watermarks,
+                                                     final InternalCallContext context) {
+        if (watermarks == null || Iterables.isEmpty(watermarks)) {
+            return;
+        }
+
+        final InvoiceBillingWatermarkSqlDao transactional = entitySqlDaoWrapperFactory.become(InvoiceBillingWatermarkSqlDao.class);
+
+        final Map<UUID, InvoiceBillingWatermarkModelDao> existingWatermarks = new HashMap<UUID, InvoiceBillingWatermarkModelDao>();
+        for (final InvoiceBillingWatermarkModelDao existingWatermark : transactional.getByAccountRecordId(context)) {
+            existingWatermarks.put(existingWatermark.getSubscriptionId(), existingWatermark);
+        }
+
+        final List<InvoiceBillingWatermarkModelDao> watermarksToCreate = new LinkedList<InvoiceBillingWatermarkModelDao>();
+        for (final InvoiceBillingWatermarkModelDao watermark : watermarks) {
+            final InvoiceBillingWatermarkModelDao existingWatermark = existingWatermarks.get(watermark.getSubscriptionId());
+            if (existingWatermark == null) {
+                watermarksToCreate.add(watermark);
+            } else {
+                transactional.updateWatermark(existingWatermark.getId().toString(),
+                                              watermark.getReconciledDate().toDate(),
+                                              watermark.getBillingEventsHash(),
+                                              watermark.getItemsHash(),
+                                              context);
+            }
+        }
+        if (!watermarksToCreate.isEmpty()) {
+            transactional.create(watermarksToCreate, context);
+        }
+    }
+
     private void notifyOfFutureBillingEvents(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
                                              final UUID accountId,
                                              final FutureAccountNotifications callbackDateTimePerSubscriptions,
@@ -1484,6 +1548,16 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceBillingWatermarkModelDao> getBillingWatermarks(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<InvoiceBillingWatermarkModelDao>>() {
+            @Override
+            public List<InvoiceBillingWatermarkModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(InvoiceBillingWatermarkSqlDao.class).getByAccountRecordId(context);
+            }
+        });
+    }
+
     @Override
     public List<AuditLogWithHistory> getInvoiceAuditLogsWithHistoryForId(final UUID invoiceId, final AuditLevel auditLevel, final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<AuditLogWithHistory>>() {
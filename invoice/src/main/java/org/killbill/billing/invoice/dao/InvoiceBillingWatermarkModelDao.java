@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.Entity;
+import org.killbill.billing.util.entity.dao.EntityModelDao;
+import org.killbill.billing.util.entity.dao.EntityModelDaoBase;
+
+//
+// Per-subscription state recorded after a successful invoice run: all recurring and fixed items ending on or before
+// reconciledDate match the billing events, as long as both the events up to that date (billingEventsHash) and the
+// subscription items (itemsHash) are left untouched.
+//
+public class InvoiceBillingWatermarkModelDao extends EntityModelDaoBase implements EntityModelDao<Entity> {
+
+    private UUID subscriptionId;
+    private LocalDate reconciledDate;
+    private String billingEventsHash;
+    private String itemsHash;
+
+    /* For the DAO mapper */
+    public InvoiceBillingWatermarkModelDao() {
+    }
+
+    public InvoiceBillingWatermarkModelDao(final UUID subscriptionId, final LocalDate reconciledDate, final String billingEventsHash,
+                                           final String itemsHash, @Nullable final DateTime createdDate) {
+        super(UUIDs.randomUUID(), createdDate, createdDate);
+        this.subscriptionId = subscriptionId;
+        this.reconciledDate = reconciledDate;
+        this.billingEventsHash = billingEventsHash;
+        this.itemsHash = itemsHash;
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public void setSubscriptionId(final UUID subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
+    public LocalDate getReconciledDate() {
+        return reconciledDate;
+    }
+
+    public void setReconciledDate(final LocalDate reconciledDate) {
+        this.reconciledDate = reconciledDate;
+    }
+
+    public String getBillingEventsHash() {
+        return billingEventsHash;
+    }
+
+    public void setBillingEventsHash(final String billingEventsHash) {
+        this.billingEventsHash = billingEventsHash;
+    }
+
+    public String getItemsHash() {
+        return itemsHash;
+    }
+
+    public void setItemsHash(final String itemsHash) {
+        this.itemsHash = itemsHash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InvoiceBillingWatermarkModelDao{");
+        sb.append("subscriptionId=").append(subscriptionId);
+        sb.append(", reconciledDate=").append(reconciledDate);
+        sb.append(", billingEventsHash='").append(billingEventsHash).append('\'');
+        sb.append(", itemsHash='").append(itemsHash).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public TableName getTableName() {
+        return TableName.INVOICE_BILLING_WATERMARKS;
+    }
+
+    @Override
+    public TableName getHistoryTableName() {
+        return null;
+    }
+}
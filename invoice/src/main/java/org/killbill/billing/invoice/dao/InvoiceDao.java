@@ -19,6 +19,7 @@
 package org.killbill.billing.invoice.dao;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,12 +44,13 @@ import org.killbill.billing.util.entity.dao.EntityDao;
 
 public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceApiException> {
 
-    // Used by InvoiceDispatcher only for regular invoice runs
+    // Used by InvoiceDispatcher only for regular invoice runs (billingWatermarks are the changed watermarks, recorded in the same transaction)
     void createInvoice(final InvoiceModelDao invoice,
                        final BillingEventSet billingEvents,
                        final Set<InvoiceTrackingModelDao> trackingIds,
                        final FutureAccountNotifications callbackDateTimePerSubscriptions,
                        final ExistingInvoiceMetadata existingInvoiceMetadata,
+                       @Nullable final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                        final InternalCallContext context);
 
     // Used by APIs, for HA, etc.
@@ -58,6 +60,7 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
                                              final InternalCallContext context);
 
     public void setFutureAccountNotificationsForEmptyInvoice(final UUID accountId, final FutureAccountNotifications callbackDateTimePerSubscriptions,
+                                                             @Nullable final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                                                              final InternalCallContext context);
 
     InvoiceModelDao getByNumber(Integer number, InternalTenantContext context) throws InvoiceApiException;
@@ -78,6 +81,8 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoicePaymentModelDao> getInvoicePaymentsByAccount(InternalTenantContext context);
 
+    List<InvoicePaymentModelDao> getInvoicePaymentsByPaymentIds(Collection<UUID> paymentIds, InternalTenantContext context);
+
     List<InvoicePaymentModelDao> getInvoicePaymentsByInvoice(final UUID invoiceId, InternalTenantContext context);
 
     InvoicePaymentModelDao getInvoicePaymentByCookieId(String cookieId, InternalTenantContext internalTenantContext);
@@ -235,6 +240,14 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceTrackingModelDao> getTrackingsByDateRange(LocalDate startDate, LocalDate endDate, InternalCallContext context);
 
+    /**
+     * Retrieve the billing watermarks recorded for the account subscriptions (incremental invoice generation)
+     *
+     * @param context the tenant context
+     * @return the watermarks, at most one per subscription
+     */
+    List<InvoiceBillingWatermarkModelDao> getBillingWatermarks(InternalTenantContext context);
+
     public List<AuditLogWithHistory> getInvoiceAuditLogsWithHistoryForId(final UUID invoiceId, final AuditLevel auditLevel, final InternalTenantContext context);
 
     public List<AuditLogWithHistory> getInvoiceItemAuditLogsWithHistoryForId(final UUID invoiceItemId, final AuditLevel auditLevel, final InternalTenantContext context);
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.invoice.dao;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,6 +31,7 @@ import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
@@ -40,6 +42,12 @@ public interface InvoiceSqlDao extends EntitySqlDao<InvoiceModelDao, Invoice> {
     List<InvoiceModelDao> getInvoicesBySubscription(@Bind("subscriptionId") final String subscriptionId,
                                                     @SmartBindBean final InternalTenantContext context);
 
+    // Null bounds are ignored
+    @SqlQuery
+    List<InvoiceModelDao> getByAccountRecordIdAndTargetDateRange(@Bind("fromDate") @Define("fromDate") final Date fromDate,
+                                                                 @Bind("upToDate") @Define("upToDate") final Date upToDate,
+                                                                 @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     UUID getInvoiceIdByPaymentId(@Bind("paymentId") final String paymentId,
                                  @SmartBindBean final InternalTenantContext context);
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.dao.InvoiceBillingWatermarkModelDao;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.BillingEventSet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+//
+// Per-subscription dates up to which (inclusive) the existing RECURRING and FIXED items are known to match the billing events.
+//
+// Items whose service period ends on or before that date (and the REPAIR_ADJ / ITEM_ADJ linked to them) can be left out of
+// the AccountItemTree: the billing events being unchanged, the proposed items for that period are the same as the ones
+// reconciled by the previous run and the merge would not generate anything for them. A persisted watermark is only honored when
+// both the billing events up to the watermark and the (compact) summary of the subscription items are unchanged, so that any
+// repair, adjustment or change in history results in a full rebuild for that subscription.
+//
+public class BillingWatermarks {
+
+    private static final BillingWatermarks NONE = new BillingWatermarks(ImmutableMap.<UUID, LocalDate>of());
+
+    private static final Comparator<InvoiceItem> ITEM_ID_COMPARATOR = new Comparator<InvoiceItem>() {
+        @Override
+        public int compare(final InvoiceItem o1, final InvoiceItem o2) {
+            return o1.getId().compareTo(o2.getId());
+        }
+    };
+
+    private final Map<UUID, LocalDate> reconciledDates;
+    // All the watermarks read at the beginning of the run (valid or not), to only record the ones which changed
+    private final Map<UUID, InvoiceBillingWatermarkModelDao> persistedWatermarks;
+
+    @VisibleForTesting
+    BillingWatermarks(final Map<UUID, LocalDate> reconciledDates) {
+        this(reconciledDates, ImmutableMap.<UUID, InvoiceBillingWatermarkModelDao>of());
+    }
+
+    private BillingWatermarks(final Map<UUID, LocalDate> reconciledDates, final Map<UUID, InvoiceBillingWatermarkModelDao> persistedWatermarks) {
+        this.reconciledDates = reconciledDates;
+        this.persistedWatermarks = persistedWatermarks;
+    }
+
+    public static BillingWatermarks none() {
+        return NONE;
+    }
+
+    /**
+     * @param persistedWatermarks the watermarks recorded by previous runs
+     * @param billingEvents       the current billing events
+     * @param existingInvoices    the current invoices
+     * @param targetDate          the target date of the run
+     * @param context             the tenant context
+     * @return the watermarks which are still valid, i.e. for which the reconciled history is unchanged
+     */
+    public static BillingWatermarks fromPersistedWatermarks(final Iterable<InvoiceBillingWatermarkModelDao> persistedWatermarks,
+                                                            final BillingEventSet billingEvents,
+                                                            @Nullable final Iterable<Invoice> existingInvoices,
+                                                            final LocalDate targetDate,
+                                                            final InternalTenantContext context) {
+        if (!persistedWatermarks.iterator().hasNext()) {
+            return NONE;
+        }
+
+        final Map<UUID, List<BillingEvent>> billingEventsPerSubscription = getBillingEventsPerSubscription(billingEvents);
+        final Map<UUID, String> itemsHashPerSubscription = computeItemsHashPerSubscription(getInvoiceItems(existingInvoices));
+
+        final Map<UUID, LocalDate> reconciledDates = new HashMap<UUID, LocalDate>();
+        final Map<UUID, InvoiceBillingWatermarkModelDao> persistedWatermarksPerSubscription = new HashMap<UUID, InvoiceBillingWatermarkModelDao>();
+        for (final InvoiceBillingWatermarkModelDao persistedWatermark : persistedWatermarks) {
+            final UUID subscriptionId = persistedWatermark.getSubscriptionId();
+            persistedWatermarksPerSubscription.put(subscriptionId, persistedWatermark);
+            final LocalDate reconciledDate = persistedWatermark.getReconciledDate();
+            final List<BillingEvent> subscriptionBillingEvents = billingEventsPerSubscription.get(subscriptionId);
+            if (subscriptionBillingEvents == null ||
+                // The proposed items up to the watermark are only stable for later target dates
+                reconciledDate.isAfter(targetDate) ||
+                !persistedWatermark.getBillingEventsHash().equals(computeBillingEventsHash(subscriptionBillingEvents, reconciledDate, context)) ||
+                !persistedWatermark.getItemsHash().equals(getItemsHash(itemsHashPerSubscription, subscriptionId))) {
+                continue;
+            }
+            reconciledDates.put(subscriptionId, reconciledDate);
+        }
+        return new BillingWatermarks(reconciledDates, persistedWatermarksPerSubscription);
+    }
+
+    /**
+     * @param billingEvents  the billing events used by the run
+     * @param items          all items of the account once the run has been committed
+     * @param reconciledDate the target date of the run
+     * @param context        the call context
+     * @return the watermarks to record for the subscriptions reconciled by the run
+     */
+    public static List<InvoiceBillingWatermarkModelDao> computeWatermarks(final BillingEventSet billingEvents,
+                                                                          final Iterable<InvoiceItem> items,
+                                                                          final LocalDate reconciledDate,
+                                                                          final InternalCallContext context) {
+        final Map<UUID, List<BillingEvent>> billingEventsPerSubscription = getBillingEventsPerSubscription(billingEvents);
+        final Map<UUID, String> itemsHashPerSubscription = computeItemsHashPerSubscription(items);
+
+        final List<InvoiceBillingWatermarkModelDao> watermarks = new LinkedList<InvoiceBillingWatermarkModelDao>();
+        for (final UUID subscriptionId : billingEventsPerSubscription.keySet()) {
+            watermarks.add(new InvoiceBillingWatermarkModelDao(subscriptionId,
+                                                               reconciledDate,
+                                                               computeBillingEventsHash(billingEventsPerSubscription.get(subscriptionId), reconciledDate, context),
+                                                               getItemsHash(itemsHashPerSubscription, subscriptionId),
+                                                               context.getCreatedDate()));
+        }
+        return watermarks;
+    }
+
+    /**
+     * @param watermarks the watermarks computed at the end of the run
+     * @return the watermarks which differ from the ones read at the beginning of the run, i.e. the ones to record
+     */
+    public List<InvoiceBillingWatermarkModelDao> getChangedWatermarks(final Iterable<InvoiceBillingWatermarkModelDao> watermarks) {
+        final List<InvoiceBillingWatermarkModelDao> changedWatermarks = new LinkedList<InvoiceBillingWatermarkModelDao>();
+        for (final InvoiceBillingWatermarkModelDao watermark : watermarks) {
+            final InvoiceBillingWatermarkModelDao persistedWatermark = persistedWatermarks.get(watermark.getSubscriptionId());
+            if (persistedWatermark == null ||
+                !persistedWatermark.getReconciledDate().equals(watermark.getReconciledDate()) ||
+                !persistedWatermark.getBillingEventsHash().equals(watermark.getBillingEventsHash()) ||
+                !persistedWatermark.getItemsHash().equals(watermark.getItemsHash())) {
+                changedWatermarks.add(watermark);
+            }
+        }
+        return changedWatermarks;
+    }
+
+    public boolean isEmpty() {
+        return reconciledDates.isEmpty();
+    }
+
+    @Nullable
+    public LocalDate getReconciledDate(final UUID subscriptionId) {
+        return reconciledDates.get(subscriptionId);
+    }
+
+    /**
+     * @param item      an existing or proposed item
+     * @param itemsById the existing items, to resolve the targets of REPAIR_ADJ and ITEM_ADJ items
+     * @return true if the item doesn't need to be part of the tree
+     */
+    public boolean isReconciled(final InvoiceItem item, final Map<UUID, InvoiceItem> itemsById) {
+        final InvoiceItem target = isRecurringOrFixed(item) ? item : itemsById.get(item.getLinkedItemId());
+        if (target == null || !isRecurringOrFixed(target) || target.getSubscriptionId() == null) {
+            return false;
+        }
+
+        final LocalDate reconciledDate = reconciledDates.get(target.getSubscriptionId());
+        if (reconciledDate == null) {
+            return false;
+        }
+
+        // FIXED items don't have an end date
+        final LocalDate lastServiceDate = target.getEndDate() != null ? target.getEndDate() : target.getStartDate();
+        return !lastServiceDate.isAfter(reconciledDate);
+    }
+
+    private static boolean isRecurringOrFixed(final InvoiceItem item) {
+        return item.getInvoiceItemType() == InvoiceItemType.RECURRING || item.getInvoiceItemType() == InvoiceItemType.FIXED;
+    }
+
+    private static Map<UUID, List<BillingEvent>> getBillingEventsPerSubscription(final BillingEventSet billingEvents) {
+        final Map<UUID, List<BillingEvent>> billingEventsPerSubscription = new LinkedHashMap<UUID, List<BillingEvent>>();
+        for (final BillingEvent billingEvent : billingEvents) {
+            // Subscriptions with AUTO_INVOICING_OFF are not reconciled
+            if (billingEvents.getSubscriptionIdsWithAutoInvoiceOff().contains(billingEvent.getSubscriptionId())) {
+                continue;
+            }
+
+            List<BillingEvent> subscriptionBillingEvents = billingEventsPerSubscription.get(billingEvent.getSubscriptionId());
+            if (subscriptionBillingEvents == null) {
+                subscriptionBillingEvents = new LinkedList<BillingEvent>();
+                billingEventsPerSubscription.put(billingEvent.getSubscriptionId(), subscriptionBillingEvents);
+            }
+            subscriptionBillingEvents.add(billingEvent);
+        }
+        return billingEventsPerSubscription;
+    }
+
+    // Events after the watermark only impact items ending after the watermark
+    @VisibleForTesting
+    static String computeBillingEventsHash(final Iterable<BillingEvent> subscriptionBillingEvents, final LocalDate reconciledDate, final InternalTenantContext context) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final BillingEvent billingEvent : subscriptionBillingEvents) {
+            if (context.toLocalDate(billingEvent.getEffectiveDate()).isAfter(reconciledDate)) {
+                continue;
+            }
+
+            hasher.putLong(billingEvent.getEffectiveDate().getMillis());
+            putString(hasher, billingEvent.getTransitionType());
+            putString(hasher, billingEvent.getPlan() != null ? billingEvent.getPlan().getName() : null);
+            putString(hasher, billingEvent.getPlanPhase() != null ? billingEvent.getPlanPhase().getName() : null);
+            putString(hasher, billingEvent.getBillingPeriod());
+            hasher.putInt(billingEvent.getBillCycleDayLocal());
+            putString(hasher, normalize(billingEvent.getFixedPrice()));
+            putString(hasher, normalize(billingEvent.getRecurringPrice()));
+            putString(hasher, billingEvent.getCurrency());
+            putString(hasher, billingEvent.getCatalogEffectiveDate() != null ? billingEvent.getCatalogEffectiveDate().getMillis() : null);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static String getItemsHash(final Map<UUID, String> itemsHashPerSubscription, final UUID subscriptionId) {
+        final String itemsHash = itemsHashPerSubscription.get(subscriptionId);
+        return itemsHash != null ? itemsHash : Hashing.sha256().newHasher().hash().toString();
+    }
+
+    @VisibleForTesting
+    static Map<UUID, String> computeItemsHashPerSubscription(final Iterable<InvoiceItem> items) {
+        final Map<UUID, InvoiceItem> itemsById = new HashMap<UUID, InvoiceItem>();
+        for (final InvoiceItem item : items) {
+            itemsById.put(item.getId(), item);
+        }
+
+        final Map<UUID, List<InvoiceItem>> itemsPerSubscription = new HashMap<UUID, List<InvoiceItem>>();
+        for (final InvoiceItem item : itemsById.values()) {
+            final UUID subscriptionId = getSubscriptionId(item, itemsById);
+            if (subscriptionId == null) {
+                continue;
+            }
+
+            List<InvoiceItem> subscriptionItems = itemsPerSubscription.get(subscriptionId);
+            if (subscriptionItems == null) {
+                subscriptionItems = new ArrayList<InvoiceItem>();
+                itemsPerSubscription.put(subscriptionId, subscriptionItems);
+            }
+            subscriptionItems.add(item);
+        }
+
+        final Map<UUID, String> itemsHashPerSubscription = new HashMap<UUID, String>();
+        for (final UUID subscriptionId : itemsPerSubscription.keySet()) {
+            final List<InvoiceItem> subscriptionItems = itemsPerSubscription.get(subscriptionId);
+            Collections.sort(subscriptionItems, ITEM_ID_COMPARATOR);
+
+            final Hasher hasher = Hashing.sha256().newHasher();
+            for (final InvoiceItem item : subscriptionItems) {
+                putString(hasher, item.getId());
+                putString(hasher, item.getInvoiceItemType());
+                putString(hasher, normalize(item.getAmount()));
+            }
+            itemsHashPerSubscription.put(subscriptionId, hasher.hash().toString());
+        }
+        return itemsHashPerSubscription;
+    }
+
+    @Nullable
+    private static UUID getSubscriptionId(final InvoiceItem item, final Map<UUID, InvoiceItem> itemsById) {
+        if (item.getSubscriptionId() != null) {
+            return item.getSubscriptionId();
+        }
+        final InvoiceItem linkedItem = item.getLinkedItemId() != null ? itemsById.get(item.getLinkedItemId()) : null;
+        return linkedItem != null ? linkedItem.getSubscriptionId() : null;
+    }
+
+    private static Iterable<InvoiceItem> getInvoiceItems(@Nullable final Iterable<Invoice> invoices) {
+        final List<InvoiceItem> items = new LinkedList<InvoiceItem>();
+        if (invoices != null) {
+            for (final Invoice invoice : invoices) {
+                items.addAll(invoice.getInvoiceItems());
+            }
+        }
+        return items;
+    }
+
+    // Amounts read from disk don't have the same scale as the ones computed in memory
+    @Nullable
+    private static String normalize(@Nullable final BigDecimal amount) {
+        return amount != null ? amount.stripTrailingZeros().toPlainString() : null;
+    }
+
+    private static void putString(final Hasher hasher, @Nullable final Object value) {
+        final String stringValue = String.valueOf(value);
+        hasher.putInt(stringValue.length());
+        hasher.putString(stringValue, Charsets.UTF_8);
+    }
+}
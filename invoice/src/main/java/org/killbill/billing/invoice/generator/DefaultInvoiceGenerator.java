@@ -81,6 +81,18 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
                                                final LocalDate targetDate,
                                                final Currency targetCurrency,
                                                final InternalCallContext context) throws InvoiceApiException {
+        return generateInvoice(account, events, existingInvoices, BillingWatermarks.none(), targetInvoiceId, targetDate, targetCurrency, context);
+    }
+
+    @Override
+    public InvoiceWithMetadata generateInvoice(final ImmutableAccountData account,
+                                               @Nullable final BillingEventSet events,
+                                               @Nullable final Iterable<Invoice> existingInvoices,
+                                               final BillingWatermarks billingWatermarks,
+                                               @Nullable final UUID targetInvoiceId,
+                                               final LocalDate targetDate,
+                                               final Currency targetCurrency,
+                                               final InternalCallContext context) throws InvoiceApiException {
         if ((events == null)  || events.isAccountAutoInvoiceOff()) {
             return new InvoiceWithMetadata(null, ImmutableSet.of(), ImmutableMap.<UUID, SubscriptionFutureNotificationDates>of());
         }
@@ -96,7 +108,7 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
 
         final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
 
-        final InvoiceGeneratorResult fixedAndRecurringItems = recurringInvoiceItemGenerator.generateItems(account, invoice.getId(), events, existingInvoices, adjustedTargetDate, targetCurrency, perSubscriptionFutureNotificationDates, context);
+        final InvoiceGeneratorResult fixedAndRecurringItems = recurringInvoiceItemGenerator.generateItems(account, invoice.getId(), events, existingInvoices, billingWatermarks, adjustedTargetDate, targetCurrency, perSubscriptionFutureNotificationDates, context);
         invoice.addInvoiceItems(fixedAndRecurringItems.getItems());
 
         final InvoiceGeneratorResult usageItemsWithTrackingIds = usageInvoiceItemGenerator.generateItems(account, invoice.getId(), events, existingInvoices, adjustedTargetDate, targetCurrency, perSubscriptionFutureNotificationDates, context);
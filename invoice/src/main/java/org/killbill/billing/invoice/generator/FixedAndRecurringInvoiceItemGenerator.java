@@ -21,11 +21,18 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -62,6 +69,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
@@ -79,11 +87,14 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
 
     private final InvoiceConfig config;
 
+    private final InvoiceExecutors invoiceExecutors;
+
     private final Clock clock;
 
     @Inject
-    public FixedAndRecurringInvoiceItemGenerator(final InvoiceConfig config, final Clock clock) {
+    public FixedAndRecurringInvoiceItemGenerator(final InvoiceConfig config, final InvoiceExecutors invoiceExecutors, final Clock clock) {
         this.config = config;
+        this.invoiceExecutors = invoiceExecutors;
         this.clock = clock;
     }
 
@@ -91,11 +102,23 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
                                                 @Nullable final Iterable<Invoice> existingInvoices, final LocalDate targetDate,
                                                 final Currency targetCurrency, final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
                                                 final InternalCallContext internalCallContext) throws InvoiceApiException {
+        return generateItems(account, invoiceId, eventSet, existingInvoices, BillingWatermarks.none(), targetDate, targetCurrency, perSubscriptionFutureNotificationDate, internalCallContext);
+    }
+
+    public InvoiceGeneratorResult generateItems(final ImmutableAccountData account, final UUID invoiceId, final BillingEventSet eventSet,
+                                                @Nullable final Iterable<Invoice> existingInvoices, final BillingWatermarks billingWatermarks, final LocalDate targetDate,
+                                                final Currency targetCurrency, final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                final InternalCallContext internalCallContext) throws InvoiceApiException {
+        final ExecutorService executor = config.isParallelItemGenerationEnabled(internalCallContext) ? invoiceExecutors.getItemGenerationExecutorService() : null;
+        final long startNanos = System.nanoTime();
+
         final Multimap<UUID, LocalDate> createdItemsPerDayPerSubscription = LinkedListMultimap.<UUID, LocalDate>create();
 
         final InvoicePruner invoicePruner = new InvoicePruner(existingInvoices);
         final Set<UUID> toBeIgnored = invoicePruner.getFullyRepairedItemsClosure();
-        final AccountItemTree accountItemTree = new AccountItemTree(account.getId(), invoiceId);
+        // Only needed to resolve the targets of linked items when skipping the reconciled part of the tree
+        final Map<UUID, InvoiceItem> existingItemsById = billingWatermarks.isEmpty() ? ImmutableMap.<UUID, InvoiceItem>of() : getInvoiceItemsById(existingInvoices);
+        final AccountItemTree accountItemTree = new AccountItemTree(account.getId(), invoiceId, config.isArrayItemTreeEnabled(internalCallContext));
         if (existingInvoices != null) {
             for (final Invoice invoice : existingInvoices) {
                 for (final InvoiceItem item : invoice.getInvoiceItems()) {
@@ -107,7 +130,9 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
                         !eventSet.getSubscriptionIdsWithAutoInvoiceOff()
                                  .contains(item.getSubscriptionId())) { //don't add items with auto_invoice_off tag
 
-                        accountItemTree.addExistingItem(item);
+                        if (!billingWatermarks.isReconciled(item, existingItemsById)) {
+                            accountItemTree.addExistingItem(item);
+                        }
 
                         trackInvoiceItemCreatedDay(item, createdItemsPerDayPerSubscription, internalCallContext);
                     }
@@ -115,26 +140,130 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
             }
         }
 
+        final long existingItemsNanos = System.nanoTime();
+
         // Generate list of proposed invoice items based on billing events from junction-- proposed items are ALL items since beginning of time
         final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
-        processRecurringBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate, internalCallContext);
-        processFixedBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, internalCallContext);
+        if (executor == null) {
+            processRecurringBillingEvents(invoiceId, account.getId(), eventSet, eventSet.getSubscriptionIdsWithAutoInvoiceOff(), targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate, internalCallContext);
+            processFixedBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, internalCallContext);
+        } else {
+            processBillingEventsInParallel(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate, executor, internalCallContext);
+        }
+
+        // Existing items for the reconciled periods have been left out of the tree, so must the matching proposed items
+        if (!billingWatermarks.isEmpty()) {
+            final Iterator<InvoiceItem> proposedItemsIterator = proposedItems.iterator();
+            while (proposedItemsIterator.hasNext()) {
+                if (billingWatermarks.isReconciled(proposedItemsIterator.next(), existingItemsById)) {
+                    proposedItemsIterator.remove();
+                }
+            }
+        }
+
+        final long proposedItemsNanos = System.nanoTime();
 
         try {
-            accountItemTree.mergeWithProposedItems(proposedItems);
+            accountItemTree.mergeWithProposedItems(proposedItems, executor);
         } catch (final IllegalStateException e) {
             // Proposed items have already been logged
             throw new InvoiceApiException(e, ErrorCode.UNEXPECTED_ERROR, String.format("ILLEGAL INVOICING STATE accountItemTree=%s", accountItemTree.toString()));
         }
 
         final List<InvoiceItem> resultingItems = accountItemTree.getResultingItemList();
+        final long mergeNanos = System.nanoTime();
+
+        log.debug("Generated fixed and recurring items for accountId='{}', invoiceId='{}', parallel='{}': existingItemsMs='{}', proposedItemsMs='{}', mergeMs='{}'",
+                  account.getId(), invoiceId, executor != null,
+                  TimeUnit.NANOSECONDS.toMillis(existingItemsNanos - startNanos),
+                  TimeUnit.NANOSECONDS.toMillis(proposedItemsNanos - existingItemsNanos),
+                  TimeUnit.NANOSECONDS.toMillis(mergeNanos - proposedItemsNanos));
+
         safetyBounds(resultingItems, createdItemsPerDayPerSubscription, internalCallContext);
 
         return new InvoiceGeneratorResult(resultingItems, ImmutableSet.of());
     }
 
-    private void processRecurringBillingEvents(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
-                                               final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
+    //
+    // Billing events are sorted by subscription first, and subscriptions don't share any state (neither billing events, proposed
+    // items nor future notification dates): each subscription is processed by its own task, and the results are collected
+    // in the billing events order so the proposed items are the same as in the sequential case.
+    //
+    private void processBillingEventsInParallel(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
+                                                final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
+                                                final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                final ExecutorService executor,
+                                                final InternalCallContext internalCallContext) throws InvoiceApiException {
+        final Set<UUID> subscriptionIdsWithAutoInvoiceOff = new HashSet<UUID>(events.getSubscriptionIdsWithAutoInvoiceOff());
+        final Map<UUID, List<BillingEvent>> perSubscriptionEvents = new LinkedHashMap<UUID, List<BillingEvent>>();
+        for (final BillingEvent event : events) {
+            if (subscriptionIdsWithAutoInvoiceOff.contains(event.getSubscriptionId())) {
+                continue;
+            }
+            List<BillingEvent> subscriptionEvents = perSubscriptionEvents.get(event.getSubscriptionId());
+            if (subscriptionEvents == null) {
+                subscriptionEvents = new ArrayList<BillingEvent>();
+                perSubscriptionEvents.put(event.getSubscriptionId(), subscriptionEvents);
+            }
+            subscriptionEvents.add(event);
+        }
+
+        final List<Future<List<InvoiceItem>>> futures = new ArrayList<Future<List<InvoiceItem>>>(perSubscriptionEvents.size());
+        final List<Map<UUID, SubscriptionFutureNotificationDates>> futureNotificationDates = new ArrayList<Map<UUID, SubscriptionFutureNotificationDates>>(perSubscriptionEvents.size());
+        for (final Map.Entry<UUID, List<BillingEvent>> entry : perSubscriptionEvents.entrySet()) {
+            final Map<UUID, SubscriptionFutureNotificationDates> subscriptionFutureNotificationDate = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+            if (perSubscriptionFutureNotificationDate.containsKey(entry.getKey())) {
+                subscriptionFutureNotificationDate.put(entry.getKey(), perSubscriptionFutureNotificationDate.get(entry.getKey()));
+            }
+            futureNotificationDates.add(subscriptionFutureNotificationDate);
+
+            final List<BillingEvent> subscriptionEvents = entry.getValue();
+            futures.add(executor.submit(new Callable<List<InvoiceItem>>() {
+                @Override
+                public List<InvoiceItem> call() throws InvoiceApiException {
+                    final List<InvoiceItem> subscriptionProposedItems = new ArrayList<InvoiceItem>();
+                    processRecurringBillingEvents(invoiceId, accountId, subscriptionEvents, ImmutableSet.<UUID>of(), targetDate, currency, subscriptionProposedItems, subscriptionFutureNotificationDate, internalCallContext);
+                    processFixedBillingEvents(invoiceId, accountId, subscriptionEvents, targetDate, currency, subscriptionProposedItems, internalCallContext);
+                    return subscriptionProposedItems;
+                }
+            }));
+        }
+
+        // Recurring items first, then fixed items (same order as the sequential case)
+        final List<InvoiceItem> fixedProposedItems = new ArrayList<InvoiceItem>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                for (final InvoiceItem item : futures.get(i).get()) {
+                    if (item.getInvoiceItemType() == InvoiceItemType.FIXED) {
+                        fixedProposedItems.add(item);
+                    } else {
+                        proposedItems.add(item);
+                    }
+                }
+                perSubscriptionFutureNotificationDate.putAll(futureNotificationDates.get(i));
+            }
+            proposedItems.addAll(fixedProposedItems);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvoiceApiException(e, ErrorCode.UNEXPECTED_ERROR, "Interrupted while generating fixed and recurring items");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof InvoiceApiException) {
+                throw (InvoiceApiException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new InvoiceApiException(e.getCause(), ErrorCode.UNEXPECTED_ERROR, "Failed to generate fixed and recurring items");
+        } finally {
+            for (final Future<List<InvoiceItem>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void processRecurringBillingEvents(final UUID invoiceId, final UUID accountId, final Collection<BillingEvent> events,
+                                               final Collection<UUID> subscriptionIdsWithAutoInvoiceOff, final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
                                                final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
                                                final InternalCallContext internalCallContext) throws InvoiceApiException {
         if (events.isEmpty()) {
@@ -149,7 +278,7 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
         while (eventIt.hasNext()) {
             final BillingEvent thisEvent = nextEvent;
             nextEvent = eventIt.next();
-            if (!events.getSubscriptionIdsWithAutoInvoiceOff().
+            if (!subscriptionIdsWithAutoInvoiceOff.
                     contains(thisEvent.getSubscriptionId())) { // don't consider events for subscriptions that have auto_invoice_off
                 final BillingEvent adjustedNextEvent = (thisEvent.getSubscriptionId() == nextEvent.getSubscriptionId()) ? nextEvent : null;
                 final List<InvoiceItem> newProposedItems = processRecurringEvent(invoiceId, accountId, thisEvent, adjustedNextEvent, targetDate, currency, invoiceItemGeneratorLogger, perSubscriptionFutureNotificationDate, internalCallContext);
@@ -164,7 +293,7 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
     }
 
     @VisibleForTesting
-    void processFixedBillingEvents(final UUID invoiceId, final UUID accountId, final BillingEventSet events, final LocalDate targetDate,
+    void processFixedBillingEvents(final UUID invoiceId, final UUID accountId, final Collection<BillingEvent> events, final LocalDate targetDate,
                                    final Currency currency, final List<InvoiceItem> proposedItems, final InternalCallContext internalCallContext) throws InvoiceApiException {
         if (events.isEmpty()) {
             return;
@@ -513,6 +642,18 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
         }
     }
 
+    private Map<UUID, InvoiceItem> getInvoiceItemsById(@Nullable final Iterable<Invoice> existingInvoices) {
+        final Map<UUID, InvoiceItem> itemsById = new HashMap<UUID, InvoiceItem>();
+        if (existingInvoices != null) {
+            for (final Invoice invoice : existingInvoices) {
+                for (final InvoiceItem item : invoice.getInvoiceItems()) {
+                    itemsById.put(item.getId(), item);
+                }
+            }
+        }
+        return itemsById;
+    }
+
     private LocalDate trackInvoiceItemCreatedDay(final InvoiceItem invoiceItem, final Multimap<UUID, LocalDate> createdItemsPerDayPerSubscription, final InternalCallContext internalCallContext) {
         final UUID subscriptionId = invoiceItem.getSubscriptionId();
         if (subscriptionId == null) {
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.killbill.commons.concurrent.WithProfilingThreadPoolExecutor;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.slf4j.MDC;
+
+public class InvoiceExecutors {
+
+    private static final long TIMEOUT_EXECUTOR_SEC = 3L;
+
+    private static final String ITEM_GENERATION_THREAD_PREFIX = "invoice-generator-th-";
+    private static final String ITEM_GENERATION_TH_GROUP_NAME = "invoice-generator-grp";
+
+    private final InvoiceConfig invoiceConfig;
+
+    private volatile ThreadPoolExecutor itemGenerationExecutorService;
+
+    @Inject
+    public InvoiceExecutors(final InvoiceConfig invoiceConfig) {
+        this.invoiceConfig = invoiceConfig;
+    }
+
+    public void initialize() {
+        this.itemGenerationExecutorService = createItemGenerationExecutorService();
+    }
+
+    public void stop() throws InterruptedException {
+        final ThreadPoolExecutor executorService = itemGenerationExecutorService;
+        itemGenerationExecutorService = null;
+        if (executorService != null) {
+            // Tasks which never ran are cancelled, so that invoicing threads waiting on them are released
+            for (final Runnable runnable : executorService.shutdownNow()) {
+                if (runnable instanceof Future) {
+                    ((Future<?>) runnable).cancel(false);
+                }
+            }
+            executorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
+        }
+    }
+
+    // Null when the service isn't started (items are then generated sequentially)
+    @Nullable
+    public ExecutorService getItemGenerationExecutorService() {
+        return itemGenerationExecutorService;
+    }
+
+    private ThreadPoolExecutor createItemGenerationExecutorService() {
+        final int nbThreads = invoiceConfig.getParallelItemGenerationThreads();
+        final ThreadPoolExecutor executor = new WithProfilingThreadPoolExecutor(nbThreads,
+                                                                                nbThreads,
+                                                                                1,
+                                                                                TimeUnit.MINUTES,
+                                                                                new ArrayBlockingQueue<Runnable>(invoiceConfig.getParallelItemGenerationQueueSize()),
+                                                                                new ThreadFactory() {
+
+                                                                                    @Override
+                                                                                    public Thread newThread(final Runnable r) {
+                                                                                        final Thread th = new Thread(new ThreadGroup(ITEM_GENERATION_TH_GROUP_NAME), r);
+                                                                                        th.setName(ITEM_GENERATION_THREAD_PREFIX + th.getId());
+                                                                                        return th;
+                                                                                    }
+                                                                                }) {
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+                // Invoked by the submitting thread
+                return super.newTaskFor(new CallableWithRequestData<T>(Request.getPerThreadRequestData(), MDC.getCopyOfContextMap(), callable));
+            }
+        };
+        // The pool is shared by all invoicing threads: once it is saturated, the invoicing thread generates the items itself
+        executor.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Invoice item generation executor has been stopped");
+                }
+                r.run();
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Tasks can also run on the submitting thread (when the pool is saturated), so the previous state is restored instead of cleared
+    private static final class CallableWithRequestData<T> implements Callable<T> {
+
+        private final RequestData requestData;
+        private final Map<String, String> mdcContextMap;
+        private final Callable<T> delegate;
+
+        private CallableWithRequestData(@Nullable final RequestData requestData,
+                                        @Nullable final Map<String, String> mdcContextMap,
+                                        final Callable<T> delegate) {
+            this.requestData = requestData;
+            this.mdcContextMap = mdcContextMap;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T call() throws Exception {
+            final RequestData previousRequestData = Request.getPerThreadRequestData();
+            final Map<String, String> previousMdcContextMap = MDC.getCopyOfContextMap();
+            try {
+                setState(requestData, mdcContextMap);
+                return delegate.call();
+            } finally {
+                setState(previousRequestData, previousMdcContextMap);
+            }
+        }
+
+        private static void setState(@Nullable final RequestData requestData, @Nullable final Map<String, String> mdcContextMap) {
+            if (requestData == null) {
+                Request.resetPerThreadRequestData();
+            } else {
+                Request.setPerThreadRequestData(requestData);
+            }
+            if (mdcContextMap == null) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(mdcContextMap);
+            }
+        }
+    }
+}
@@ -17,9 +17,10 @@
 
 package org.killbill.billing.invoice.generator;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -59,12 +60,20 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.inject.Inject;
 
 public class UsageInvoiceItemGenerator extends InvoiceItemGenerator {
 
     private static final Logger log = LoggerFactory.getLogger(UsageInvoiceItemGenerator.class);
 
+    private static final Ordering<UUID> SUBSCRIPTION_ID_ORDERING = Ordering.natural().onResultOf(new Function<UUID, String>() {
+        @Override
+        public String apply(final UUID input) {
+            return input.toString();
+        }
+    });
+
     private final RawUsageOptimizer rawUsageOptimizer;
     private final InvoiceConfig invoiceConfig;
 
@@ -93,60 +102,62 @@ public class UsageInvoiceItemGenerator extends InvoiceItemGenerator {
 
             final Set<TrackingRecordId> trackingIds = new HashSet<>();
             final List<InvoiceItem> items = Lists.newArrayList();
-            final Iterator<BillingEvent> events = eventSet.iterator();
 
-            RawUsageOptimizerResult rawUsgRes = null;
-            List<BillingEvent> curEvents = Lists.newArrayList();
-            UUID curSubscriptionId = null;
-            while (events.hasNext()) {
-                final BillingEvent event = events.next();
+            // Billing events are ordered by subscription: group them (in that order), skipping everything until we see some usage IN_ARREAR sections
+            final Map<UUID, List<BillingEvent>> perSubscriptionEvents = new LinkedHashMap<UUID, List<BillingEvent>>();
+            boolean hasInArrearUsage = false;
+            for (final BillingEvent event : eventSet) {
                 // Skip events that are posterior to the targetDate
                 final LocalDate eventLocalEffectiveDate = internalCallContext.toLocalDate(event.getEffectiveDate());
                 if (eventLocalEffectiveDate.isAfter(targetDate)) {
                     continue;
                 }
 
-                // Optimize to do the usage query only once after we know there are indeed some usage items
-                if (rawUsgRes == null &&
+                if (!hasInArrearUsage &&
                     Iterables.any(event.getUsages(), new Predicate<Usage>() {
                         @Override
                         public boolean apply(@Nullable final Usage input) {
                             return input.getBillingMode() == BillingMode.IN_ARREAR;
                         }
                     })) {
-                    rawUsgRes = rawUsageOptimizer.getInArrearUsage(minBillingEventDate, targetDate, Iterables.concat(perSubscriptionInArrearUsageItems.values()), eventSet.getUsages(), internalCallContext);
+                    hasInArrearUsage = true;
                 }
 
-                // None of the billing events report any usage IN_ARREAR sections
-                if (rawUsgRes == null) {
+                // None of the billing events so far report any usage IN_ARREAR sections
+                if (!hasInArrearUsage) {
                     continue;
                 }
 
-                final UUID subscriptionId = event.getSubscriptionId();
-                if (curSubscriptionId != null && !curSubscriptionId.equals(subscriptionId)) {
-                    final SubscriptionUsageInArrear subscriptionUsageInArrear = new SubscriptionUsageInArrear(account.getId(), invoiceId, curEvents, rawUsgRes.getRawUsage(), rawUsgRes.getExistingTrackingIds(), targetDate, rawUsgRes.getRawUsageStartDate(), usageDetailMode, internalCallContext);
-                    final List<InvoiceItem> usageInArrearItems = perSubscriptionInArrearUsageItems.get(curSubscriptionId);
-
-                    final SubscriptionUsageInArrearItemsAndNextNotificationDate subscriptionResult = subscriptionUsageInArrear.computeMissingUsageInvoiceItems(usageInArrearItems != null ? usageInArrearItems : ImmutableList.<InvoiceItem>of(), invoiceItemGeneratorLogger);
-                    final List<InvoiceItem> newInArrearUsageItems = subscriptionResult.getInvoiceItems();
-                    items.addAll(newInArrearUsageItems);
-                    trackingIds.addAll(subscriptionResult.getTrackingIds());
-
-                    updatePerSubscriptionNextNotificationUsageDate(curSubscriptionId, subscriptionResult.getPerUsageNotificationDates(), BillingMode.IN_ARREAR, perSubscriptionFutureNotificationDates);
+                List<BillingEvent> curEvents = perSubscriptionEvents.get(event.getSubscriptionId());
+                if (curEvents == null) {
                     curEvents = Lists.newArrayList();
+                    perSubscriptionEvents.put(event.getSubscriptionId(), curEvents);
                 }
-                curSubscriptionId = subscriptionId;
                 curEvents.add(event);
             }
-            if (curSubscriptionId != null) {
-                final SubscriptionUsageInArrear subscriptionUsageInArrear = new SubscriptionUsageInArrear(account.getId(), invoiceId, curEvents, rawUsgRes.getRawUsage(), rawUsgRes.getExistingTrackingIds(), targetDate, rawUsgRes.getRawUsageStartDate(), usageDetailMode, internalCallContext);
-                final List<InvoiceItem> usageInArrearItems = perSubscriptionInArrearUsageItems.get(curSubscriptionId);
-
-                final SubscriptionUsageInArrearItemsAndNextNotificationDate subscriptionResult = subscriptionUsageInArrear.computeMissingUsageInvoiceItems(usageInArrearItems != null ? usageInArrearItems : ImmutableList.<InvoiceItem>of(), invoiceItemGeneratorLogger);
-                final List<InvoiceItem> newInArrearUsageItems = subscriptionResult.getInvoiceItems();
-                items.addAll(newInArrearUsageItems);
-                trackingIds.addAll(subscriptionResult.getTrackingIds());
-                updatePerSubscriptionNextNotificationUsageDate(curSubscriptionId, subscriptionResult.getPerUsageNotificationDates(), BillingMode.IN_ARREAR, perSubscriptionFutureNotificationDates);
+
+            if (!perSubscriptionEvents.isEmpty()) {
+                // Do the usage query only once we know there are indeed some usage items
+                final RawUsageOptimizerResult rawUsgRes = rawUsageOptimizer.getInArrearUsage(minBillingEventDate, targetDate, Iterables.concat(perSubscriptionInArrearUsageItems.values()), eventSet.getUsages(), internalCallContext);
+                final Map<UUID, SubscriptionUsageInArrearItemsAndNextNotificationDate> perSubscriptionResult = new HashMap<UUID, SubscriptionUsageInArrearItemsAndNextNotificationDate>();
+                try {
+                    // The raw usage is streamed in subscriptionId order: walk the subscriptions in the same order
+                    for (final UUID subscriptionId : SUBSCRIPTION_ID_ORDERING.sortedCopy(perSubscriptionEvents.keySet())) {
+                        final SubscriptionUsageInArrear subscriptionUsageInArrear = new SubscriptionUsageInArrear(account.getId(), invoiceId, perSubscriptionEvents.get(subscriptionId), rawUsgRes.getRawUsageForSubscription(subscriptionId), rawUsgRes.getExistingTrackingIds(), targetDate, rawUsgRes.getRawUsageStartDate(), usageDetailMode, internalCallContext);
+                        final List<InvoiceItem> usageInArrearItems = perSubscriptionInArrearUsageItems.get(subscriptionId);
+                        perSubscriptionResult.put(subscriptionId, subscriptionUsageInArrear.computeMissingUsageInvoiceItems(usageInArrearItems != null ? usageInArrearItems : ImmutableList.<InvoiceItem>of(), invoiceItemGeneratorLogger));
+                    }
+                } finally {
+                    closeRawUsage(rawUsgRes);
+                }
+
+                // Keep the items in billing events order
+                for (final UUID subscriptionId : perSubscriptionEvents.keySet()) {
+                    final SubscriptionUsageInArrearItemsAndNextNotificationDate subscriptionResult = perSubscriptionResult.get(subscriptionId);
+                    items.addAll(subscriptionResult.getInvoiceItems());
+                    trackingIds.addAll(subscriptionResult.getTrackingIds());
+                    updatePerSubscriptionNextNotificationUsageDate(subscriptionId, subscriptionResult.getPerUsageNotificationDates(), BillingMode.IN_ARREAR, perSubscriptionFutureNotificationDates);
+                }
             }
             invoiceItemGeneratorLogger.logItems();
 
@@ -156,6 +167,14 @@ public class UsageInvoiceItemGenerator extends InvoiceItemGenerator {
         }
     }
 
+    private void closeRawUsage(final RawUsageOptimizerResult rawUsgRes) {
+        try {
+            rawUsgRes.close();
+        } catch (final IOException e) {
+            log.warn("Unable to close raw usage stream", e);
+        }
+    }
+
     private LocalDate getMinBillingEventDate(final BillingEventSet eventSet, final InternalCallContext internalCallContext) {
         DateTime minDate = null;
         for (final BillingEvent cur : eventSet) {
@@ -40,6 +40,7 @@ import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceDaoHelper;
 import org.killbill.billing.invoice.generator.DefaultInvoiceGenerator;
 import org.killbill.billing.invoice.generator.FixedAndRecurringInvoiceItemGenerator;
+import org.killbill.billing.invoice.generator.InvoiceExecutors;
 import org.killbill.billing.invoice.generator.InvoiceGenerator;
 import org.killbill.billing.invoice.generator.UsageInvoiceItemGenerator;
 import org.killbill.billing.invoice.notification.DefaultNextBillingDateNotifier;
@@ -126,6 +127,7 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
     protected void installInvoiceGenerator() {
         bind(InvoiceGenerator.class).to(DefaultInvoiceGenerator.class).asEagerSingleton();
         bind(FixedAndRecurringInvoiceItemGenerator.class).asEagerSingleton();
+        bind(InvoiceExecutors.class).asEagerSingleton();
         bind(UsageInvoiceItemGenerator.class).asEagerSingleton();
     }
 
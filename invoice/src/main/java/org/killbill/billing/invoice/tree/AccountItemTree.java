@@ -20,10 +20,19 @@ package org.killbill.billing.invoice.tree;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
@@ -53,17 +62,26 @@ public class AccountItemTree {
     private final UUID targetInvoiceId;
     private final Map<UUID, SubscriptionItemTree> subscriptionItemTree;
     private final List<InvoiceItem> allExistingItems;
+    private final boolean useArrayTree;
     private List<InvoiceItem> pendingItemAdj;
 
     private boolean isBuilt;
 
     public AccountItemTree(final UUID accountId, final UUID targetInvoiceId) {
+        this(accountId, targetInvoiceId, false);
+    }
+
+    /**
+     * @param useArrayTree whether the subscription trees are backed by an ArrayItemsTree instead of ItemsNodeInterval nodes
+     */
+    public AccountItemTree(final UUID accountId, final UUID targetInvoiceId, final boolean useArrayTree) {
         this.accountId = accountId;
         this.targetInvoiceId = targetInvoiceId;
         this.subscriptionItemTree = new HashMap<UUID, SubscriptionItemTree>();
         this.isBuilt = false;
         this.allExistingItems = new LinkedList<InvoiceItem>();
         this.pendingItemAdj = new LinkedList<InvoiceItem>();
+        this.useArrayTree = useArrayTree;
     }
 
     /**
@@ -72,16 +90,20 @@ public class AccountItemTree {
     public void build() {
         Preconditions.checkState(!isBuilt);
 
+        addPendingItemAdj();
+        for (SubscriptionItemTree tree : subscriptionItemTree.values()) {
+            tree.build();
+        }
+        isBuilt = true;
+    }
+
+    private void addPendingItemAdj() {
         if (pendingItemAdj.size() > 0) {
             for (InvoiceItem item : pendingItemAdj) {
                 addExistingItem(item, true);
             }
             pendingItemAdj.clear();
         }
-        for (SubscriptionItemTree tree : subscriptionItemTree.values()) {
-            tree.build();
-        }
-        isBuilt = true;
     }
 
     /**
@@ -119,7 +141,7 @@ public class AccountItemTree {
         }
 
         if (!subscriptionItemTree.containsKey(subscriptionId)) {
-            subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId));
+            subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId, useArrayTree));
         }
         final SubscriptionItemTree tree = subscriptionItemTree.get(subscriptionId);
         tree.addItem(existingItem);
@@ -141,7 +163,7 @@ public class AccountItemTree {
             final UUID subscriptionId = getSubscriptionId(item, null);
             SubscriptionItemTree tree = subscriptionItemTree.get(subscriptionId);
             if (tree == null) {
-                tree = new SubscriptionItemTree(subscriptionId, targetInvoiceId);
+                tree = new SubscriptionItemTree(subscriptionId, targetInvoiceId, useArrayTree);
                 subscriptionItemTree.put(subscriptionId, tree);
             }
             tree.mergeProposedItem(item);
@@ -152,6 +174,84 @@ public class AccountItemTree {
         }
     }
 
+    /**
+     * Same as {@link #mergeWithProposedItems(List)}, but each subscription tree is built and merged by the specified executor.
+     * <p/>
+     * Subscription trees are independent from each other, so the resulting list of items is the same.
+     *
+     * @param proposedItems list of proposed item that should be merged with current existing view
+     * @param executor      the executor to use, or null to merge the subscription trees in the current thread
+     */
+    public void mergeWithProposedItems(final List<InvoiceItem> proposedItems, @Nullable final ExecutorService executor) {
+        if (executor == null) {
+            mergeWithProposedItems(proposedItems);
+            return;
+        }
+
+        Preconditions.checkState(!isBuilt);
+        addPendingItemAdj();
+        isBuilt = true;
+
+        // Trees for subscriptions with only proposed items are neither built nor flattened
+        final Set<UUID> existingSubscriptionIds = new HashSet<UUID>(subscriptionItemTree.keySet());
+        final Map<UUID, List<InvoiceItem>> proposedItemsPerSubscription = new LinkedHashMap<UUID, List<InvoiceItem>>();
+        for (InvoiceItem item : proposedItems) {
+            final UUID subscriptionId = getSubscriptionId(item, null);
+            List<InvoiceItem> subscriptionProposedItems = proposedItemsPerSubscription.get(subscriptionId);
+            if (subscriptionProposedItems == null) {
+                subscriptionProposedItems = new LinkedList<InvoiceItem>();
+                proposedItemsPerSubscription.put(subscriptionId, subscriptionProposedItems);
+            }
+            subscriptionProposedItems.add(item);
+            if (!subscriptionItemTree.containsKey(subscriptionId)) {
+                subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId, useArrayTree));
+            }
+        }
+
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(subscriptionItemTree.size());
+        for (final Map.Entry<UUID, SubscriptionItemTree> entry : subscriptionItemTree.entrySet()) {
+            final SubscriptionItemTree tree = entry.getValue();
+            final boolean isExisting = existingSubscriptionIds.contains(entry.getKey());
+            final List<InvoiceItem> subscriptionProposedItems = proposedItemsPerSubscription.get(entry.getKey());
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (isExisting) {
+                        tree.build();
+                        tree.flatten(true);
+                    }
+                    if (subscriptionProposedItems != null) {
+                        for (InvoiceItem item : subscriptionProposedItems) {
+                            tree.mergeProposedItem(item);
+                        }
+                    }
+                    tree.buildForMerge();
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while merging subscription trees", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (final Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
     /**
      * @return the resulting list of items that should be written to disk
      */
@@ -0,0 +1,791 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.tree.Item.ItemAction;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Array-backed alternative to the ItemsNodeInterval tree.
+ * <p/>
+ * Nodes are indexes in flat arrays (parent, left child and right sibling links), intervals are stored as epoch days and
+ * the items of each node in a small list. The insertion, build and merge logic is the one of NodeInterval, ItemsNodeInterval
+ * and ItemsInterval, node for node, so that both implementations produce the same items: only the representation differs
+ * (no node object, no LocalDate comparison, no predicate filtering on the hot paths).
+ * <p/>
+ * The root node (index 0) covers the union of all the intervals inserted.
+ */
+public class ArrayItemsTree {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Comparator<Item> JOIN_COMPARATOR = new Comparator<Item>() {
+        @Override
+        public int compare(final Item o1, final Item o2) {
+            return o1.getStartDate().compareTo(o2.getEndDate());
+        }
+    };
+
+    private final List<List<Item>> items = new ArrayList<List<Item>>(INITIAL_CAPACITY);
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] leftChild = new int[INITIAL_CAPACITY];
+    private int[] rightSibling = new int[INITIAL_CAPACITY];
+    private int[] start = new int[INITIAL_CAPACITY];
+    private int[] end = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final AddNodeCallback existingItemCallback = new AddNodeCallback() {
+        @Override
+        public boolean onExistingNode(final int existingNode, final int newNode) {
+            // There is no new node added but instead we just populated the list of items for the already existing node
+            items.get(existingNode).add(items.get(newNode).get(0));
+            return false;
+        }
+
+        @Override
+        public boolean shouldInsertNode(final int insertionNode, final int newNode) {
+            // Always want to insert node in the tree when we find the right place.
+            return true;
+        }
+    };
+
+    public ArrayItemsTree() {
+        reset();
+    }
+
+    /**
+     * Remove all the nodes, only leaving an empty root.
+     */
+    public void reset() {
+        size = 0;
+        items.clear();
+        // The root interval is computed as nodes get inserted
+        newNode(NONE, Integer.MAX_VALUE, Integer.MIN_VALUE, null);
+    }
+
+    /**
+     * Add existing item into the tree
+     *
+     * @param item an existing item
+     */
+    public void addExistingItem(final Item item) {
+        addNode(ROOT, newNode(ROOT, item), existingItemCallback);
+    }
+
+    /**
+     * Build the items of the tree, @see ItemsNodeInterval#buildForExistingItems
+     *
+     * @param output          result list of built items
+     * @param targetInvoiceId the new invoice id being generated
+     */
+    public void buildForExistingItems(final Collection<Item> output, final UUID targetInvoiceId) {
+        // Sanity on the tree
+        validateTree(ROOT);
+        build(output, targetInvoiceId, false);
+    }
+
+    /**
+     * Add proposed item into the (flattened and reversed) tree, @see ItemsNodeInterval#addProposedItem
+     *
+     * @param item a new proposed item
+     * @return the items which are kept as-is, outside of the tree
+     */
+    public List<Item> addProposedItem(final Item item) {
+        final List<Integer> newNodes = new LinkedList<Integer>();
+
+        addNode(ROOT, newNode(ROOT, item), new AddNodeCallback() {
+            @Override
+            public boolean onExistingNode(final int existingNode, final int newNode) {
+                final Item newItem = items.get(newNode).get(0);
+
+                // If we receive a new proposed that is the same kind as the reversed existing (current node),
+                // we match existing and proposed. If not, we keep the proposed item as-is outside of the tree.
+                if (isSameKind(existingNode, newItem)) {
+                    cancelItems(existingNode, newItem);
+                    return true;
+                } else {
+                    newNodes.add(newNode);
+                    return false;
+                }
+            }
+
+            @Override
+            public boolean shouldInsertNode(final int insertionNode, final int newNode) {
+                final Item newItem = items.get(newNode).get(0);
+
+                // If this new node is about to be inserted at the root level, this means the proposed item overlaps any
+                // existing item. We keep these as-is, outside of the tree: they will become part of the resulting list.
+                if (insertionNode == ROOT) {
+                    // If the new node was rebalanced and it is fully repaired by its children it just gets canceled out.
+                    int curDate = start[newNode];
+                    int curChild = leftChild[newNode];
+                    while (curChild != NONE &&
+                           start[curChild] == curDate &&
+                           isSameKind(curChild, newItem)) {
+                        curDate = end[curChild];
+                        curChild = rightSibling[curChild];
+                    }
+
+                    if (curDate == end[newNode]) {
+                        items.get(newNode).clear();
+                        curChild = leftChild[newNode];
+                        while (curChild != NONE) {
+                            items.get(curChild).clear();
+                            curChild = rightSibling[curChild];
+                        }
+                        return false;
+                    }
+
+                    newNodes.add(newNode);
+                    return false;
+                }
+
+                // If we receive a new proposed that is the same kind as the reversed existing (parent node),
+                // we want to insert it to generate a piece of repair (see SubscriptionItemTree#buildForMerge).
+                // If not, we keep the proposed item as-is outside of the tree.
+                final boolean result = isSameKind(insertionNode, newItem);
+                if (!result) {
+                    newNodes.add(newNode);
+                }
+                return result;
+            }
+        });
+
+        // Items are only collected at the end, nodes kept outside of the tree may have been canceled out in the meantime
+        final List<Item> result = new LinkedList<Item>();
+        for (final Integer newNode : newNodes) {
+            result.addAll(items.get(newNode));
+        }
+        return result;
+    }
+
+    /**
+     * Build the repair items from the merged tree, @see ItemsNodeInterval#mergeExistingAndProposed
+     *
+     * @param output          result list of built items
+     * @param targetInvoiceId the new invoice id being generated
+     */
+    public void mergeExistingAndProposed(final Collection<Item> output, final UUID targetInvoiceId) {
+        build(output, targetInvoiceId, true);
+    }
+
+    /**
+     * Add the adjustment amount on the item specified by the targetId.
+     *
+     * @param item the ITEM_ADJ item
+     */
+    public void addAdjustment(final InvoiceItem item) {
+        final UUID targetId = item.getLinkedItemId();
+
+        final Item targetItem = findItem(ROOT, targetId);
+        Preconditions.checkNotNull(targetItem, "Unable to find item interval for id='%s', tree=%s", targetId, this);
+
+        final BigDecimal adjustmentAmount = item.getAmount().negate();
+        targetItem.incrementAdjustedAmount(adjustmentAmount);
+    }
+
+    private int newNode(final int parentNode, final Item item) {
+        return newNode(parentNode, toEpochDay(item.getStartDate()), toEpochDay(item.getEndDate()), item);
+    }
+
+    private int newNode(final int parentNode, final int startDay, final int endDay, @Nullable final Item item) {
+        if (size == start.length) {
+            final int capacity = size * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            leftChild = Arrays.copyOf(leftChild, capacity);
+            rightSibling = Arrays.copyOf(rightSibling, capacity);
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+        }
+
+        parent[size] = parentNode;
+        leftChild[size] = NONE;
+        rightSibling[size] = NONE;
+        start[size] = startDay;
+        end[size] = endDay;
+
+        final List<Item> nodeItems = new ArrayList<Item>(2);
+        if (item != null) {
+            nodeItems.add(item);
+        }
+        items.add(nodeItems);
+
+        return size++;
+    }
+
+    //
+    // Tree structure, @see NodeInterval
+    //
+
+    private boolean addNode(final int node, final int newNode, final AddNodeCallback callback) {
+        if (node != ROOT && start[newNode] == start[node] && end[newNode] == end[node]) {
+            return callback.onExistingNode(node, newNode);
+        }
+
+        if (node == ROOT) {
+            start[ROOT] = Math.min(start[ROOT], start[newNode]);
+            end[ROOT] = Math.max(end[ROOT], end[newNode]);
+        }
+
+        parent[newNode] = node;
+        if (leftChild[node] == NONE) {
+            if (callback.shouldInsertNode(node, newNode)) {
+                leftChild[node] = newNode;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        int prevChild = NONE;
+        int curChild = leftChild[node];
+        while (curChild != NONE) {
+
+            // newNode is contained, we go deeper in the tree
+            if (isItemContained(curChild, newNode)) {
+                return addNode(curChild, newNode, callback);
+            }
+
+            // newNode overlaps, we have to rebalance
+            if (isItemOverlap(curChild, newNode)) {
+                if (rebalance(node, newNode)) {
+                    return callback.shouldInsertNode(node, newNode);
+                }
+            }
+
+            // newNode starts before cur element, try to insert before
+            if (start[newNode] < start[curChild]) {
+
+                // We have not implemented all cases so adding preconditions
+                Preconditions.checkState(end[newNode] <= start[curChild],
+                                         "Failed to insert new node %s, end date overlaps with right child %s", toString(newNode), toString(curChild));
+
+                Preconditions.checkState(prevChild == NONE || start[newNode] >= end[prevChild],
+                                         "Failed to insert new node %s, start date overlaps with left child %s", toString(newNode), toString(prevChild));
+
+                if (callback.shouldInsertNode(node, newNode)) {
+                    rightSibling[newNode] = curChild;
+                    if (prevChild == NONE) {
+                        leftChild[node] = newNode;
+                    } else {
+                        rightSibling[prevChild] = newNode;
+                    }
+                    return true;
+                } else {
+                    return false;
+                }
+
+            } else if (start[newNode] < end[curChild]) {
+
+                Preconditions.checkState(start[newNode] >= start[curChild],
+                                         "Failed to insert new node %s, start date is prior last child start date %s", toString(newNode), toString(curChild));
+
+                // newNode will need to be split so it can be inserted
+                final int[] newNodes = split(newNode, end[curChild]);
+                addNode(parent[curChild], newNodes[0], callback);
+                addNode(parent[curChild], newNodes[1], callback);
+                return true;
+            }
+            prevChild = curChild;
+            curChild = rightSibling[curChild];
+        }
+
+        if (start[newNode] < end[prevChild]) {
+            final int[] newNodes = split(newNode, end[prevChild]);
+            addNode(parent[prevChild], newNodes[0], callback);
+            addNode(parent[prevChild], newNodes[1], callback);
+            return true;
+        }
+
+        Preconditions.checkState(start[newNode] >= end[prevChild],
+                                 "Failed to insert new node %s, start date overlaps with left child %s", toString(newNode), toString(prevChild));
+
+        if (callback.shouldInsertNode(node, newNode)) {
+            rightSibling[prevChild] = newNode;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private int[] split(final int node, final int splitDay) {
+        Preconditions.checkState(splitDay > start[node] && splitDay < end[node],
+                                 String.format("Unexpected item split with startDate='%s' and endDate='%s'", fromEpochDay(start[node]), fromEpochDay(end[node])));
+
+        Preconditions.checkState(leftChild[node] == NONE);
+        Preconditions.checkState(rightSibling[node] == NONE);
+
+        final List<Item> rawItems = items.get(node);
+        Preconditions.checkState(rawItems.size() == 1);
+
+        final Item[] splitItems = rawItems.get(0).split(fromEpochDay(splitDay));
+
+        final int[] result = new int[2];
+        result[0] = newNode(parent[node], start[node], splitDay, splitItems[0]);
+        result[1] = newNode(parent[node], splitDay, end[node], splitItems[1]);
+        return result;
+    }
+
+    private boolean isItemContained(final int node, final int newNode) {
+        return start[newNode] >= start[node] &&
+               start[newNode] <= end[node] &&
+               end[newNode] >= start[node] &&
+               end[newNode] <= end[node];
+    }
+
+    private boolean isItemOverlap(final int node, final int newNode) {
+        return (start[newNode] < start[node] && end[newNode] >= end[node]) ||
+               (start[newNode] <= start[node] && end[newNode] > end[node]);
+    }
+
+    // Move the (contiguous) children of node overlapped by newNode below newNode
+    private boolean rebalance(final int node, final int newNode) {
+        int prevRebalanced = NONE;
+        int firstToBeRebalanced = NONE;
+        int lastToBeRebalanced = NONE;
+        int curChild = leftChild[node];
+        do {
+            if (isItemOverlap(curChild, newNode)) {
+                if (firstToBeRebalanced == NONE) {
+                    firstToBeRebalanced = curChild;
+                }
+                lastToBeRebalanced = curChild;
+            } else {
+                if (firstToBeRebalanced != NONE) {
+                    break;
+                }
+                prevRebalanced = curChild;
+            }
+            curChild = rightSibling[curChild];
+        } while (curChild != NONE);
+
+        if (firstToBeRebalanced == NONE) {
+            return false;
+        }
+
+        parent[newNode] = node;
+        rightSibling[newNode] = rightSibling[lastToBeRebalanced];
+        rightSibling[lastToBeRebalanced] = NONE;
+        if (prevRebalanced == NONE) {
+            leftChild[node] = newNode;
+        } else {
+            rightSibling[prevRebalanced] = newNode;
+        }
+
+        leftChild[newNode] = firstToBeRebalanced;
+        for (int cur = firstToBeRebalanced; cur != NONE; cur = rightSibling[cur]) {
+            parent[cur] = newNode;
+        }
+        return true;
+    }
+
+    //
+    // Build logic, @see ItemsNodeInterval
+    //
+
+    private void build(final Collection<Item> output, final UUID targetInvoiceId, final boolean mergeMode) {
+        final List<Item> tmpOutput = new LinkedList<Item>(output);
+        output.clear();
+        build(ROOT, tmpOutput, targetInvoiceId, mergeMode);
+
+        //
+        // Join items that were previously split to fit in the tree as necessary.
+        //
+        // 1. Build a map for each item pointing to a heap of (potential) split items
+        final Map<UUID, PriorityQueue<Item>> joinMap = new HashMap<UUID, PriorityQueue<Item>>();
+        for (final Item i : tmpOutput) {
+            PriorityQueue<Item> l = joinMap.get(i.getId());
+            if (l == null) {
+                l = new PriorityQueue<Item>(JOIN_COMPARATOR);
+                joinMap.put(i.getId(), l);
+            }
+            l.add(i);
+        }
+
+        // 2. For each entry in the map, check which items can be re-joined based on their contiguous periods
+        for (final PriorityQueue<Item> v : joinMap.values()) {
+            Item prev = v.poll();
+            Item cur;
+            while ((cur = v.poll()) != null) {
+                if (prev.getEndDate().compareTo(cur.getStartDate()) == 0) {
+                    prev = Item.join(prev, cur);
+                } else {
+                    output.add(prev);
+                    prev = cur;
+                }
+            }
+            if (prev != null) {
+                output.add(prev);
+            }
+        }
+    }
+
+    private void build(final int node, final Collection<Item> output, final UUID targetInvoiceId, final boolean mergeMode) {
+        if (leftChild[node] == NONE) {
+            addIfNotNull(createNewItem(node, null, null, null, mergeMode), output);
+            return;
+        }
+
+        int curDate = start[node];
+        int curChild = leftChild[node];
+        while (curChild != NONE) {
+            if (start[curChild] > curDate) {
+                addIfNotNull(createNewItem(node, fromEpochDay(curDate), fromEpochDay(start[curChild]), targetInvoiceId, mergeMode), output);
+            }
+            build(curChild, output, targetInvoiceId, mergeMode);
+            // Note that skip to child endDate, meaning that we always consider the child [start end]
+            curDate = end[curChild];
+            curChild = rightSibling[curChild];
+        }
+
+        // Finally if there is a hole at the end, we build the missing piece from ourselves
+        if (curDate < end[node]) {
+            addIfNotNull(createNewItem(node, fromEpochDay(curDate), fromEpochDay(end[node]), targetInvoiceId, mergeMode), output);
+        }
+    }
+
+    private static void addIfNotNull(@Nullable final Item item, final Collection<Item> output) {
+        if (item != null) {
+            output.add(item);
+        }
+    }
+
+    //
+    // Items of a given node, @see ItemsInterval
+    //
+
+    private Item createNewItem(final int node, @Nullable final LocalDate startDate, @Nullable final LocalDate endDate, @Nullable final UUID targetInvoiceId, final boolean mergeMode) {
+        // Find the ADD (build phase) or CANCEL (merge phase) item of this interval
+        final Item item = mergeMode ? getResultingCancelItem(node) : getResultingAddItem(node);
+        if (item == null || startDate == null || endDate == null || targetInvoiceId == null) {
+            return item;
+        }
+
+        // Prorate (build phase) or repair (merge phase) this item, as needed
+        final InvoiceItem proratedInvoiceItem = item.toProratedInvoiceItem(startDate, endDate);
+        if (proratedInvoiceItem == null) {
+            return null;
+        } else {
+            // Keep track of the repaired amount for this item
+            item.incrementCurrentRepairedAmount(proratedInvoiceItem.getAmount().abs());
+            return new Item(proratedInvoiceItem, targetInvoiceId, item.getAction());
+        }
+    }
+
+    private Item getResultingCancelItem(final int node) {
+        final List<Item> nodeItems = items.get(node);
+        Preconditions.checkState(nodeItems.size() <= 1, "Too many items=%s", nodeItems);
+        return findSingleItem(nodeItems, ItemAction.CANCEL);
+    }
+
+    private Item getResultingAddItem(final int node) {
+        // See ItemsInterval#getResulting_ADD_Item for the possible states of the node at this point
+        final List<Item> nodeItems = items.get(node);
+        Preconditions.checkState(nodeItems.size() <= 2, "Double billing detected: %s", nodeItems);
+        Preconditions.checkState(countItems(nodeItems, ItemAction.ADD) <= 1, "Double billing detected: %s", nodeItems);
+
+        final Item item = findSingleItem(nodeItems, ItemAction.ADD);
+
+        // Double billing sanity check across nodes
+        if (item != null) {
+            final Set<UUID> addItemsCancelled = new HashSet<UUID>();
+            final Item cancelItem = findSingleItem(nodeItems, ItemAction.CANCEL);
+            if (cancelItem != null) {
+                Preconditions.checkState(cancelItem.getLinkedId() != null, "Invalid CANCEL item=%s", cancelItem);
+                addItemsCancelled.add(cancelItem.getLinkedId());
+            }
+            final Set<UUID> addItemsToBeCancelled = new HashSet<UUID>();
+            checkDoubleBilling(node, addItemsCancelled, addItemsToBeCancelled);
+        }
+
+        return item;
+    }
+
+    private void checkDoubleBilling(final int node, final Set<UUID> addItemsCancelled, final Set<UUID> addItemsToBeCancelled) {
+        final int parentNode = parent[node];
+        if (parentNode == NONE) {
+            Preconditions.checkState(addItemsCancelled.equals(addItemsToBeCancelled), "Double billing detected: addItemsCancelled=%s, addItemsToBeCancelled=%s", addItemsCancelled, addItemsToBeCancelled);
+            return;
+        }
+
+        final Item parentAddItem = getResultingAddItem(parentNode);
+        if (parentAddItem != null) {
+            Preconditions.checkState(parentAddItem.getId() != null, "Invalid ADD item=%s", parentAddItem);
+            addItemsToBeCancelled.add(parentAddItem.getId());
+
+            // Old behavior compatibility for full item adjustment (Temp code should go away as move in time)
+            // discard as double billing potential old full item adj data that looks like REPAIR
+            if (parentAddItem.isFullyAdjusted()) {
+                addItemsCancelled.add(parentAddItem.getId());
+            }
+        }
+
+        final Item parentCancelItem = findSingleItem(items.get(parentNode), ItemAction.CANCEL);
+        if (parentCancelItem != null) {
+            Preconditions.checkState(parentCancelItem.getLinkedId() != null, "Invalid CANCEL item=%s", parentCancelItem);
+            addItemsCancelled.add(parentCancelItem.getLinkedId());
+        }
+
+        checkDoubleBilling(parentNode, addItemsCancelled, addItemsToBeCancelled);
+    }
+
+    private boolean isSameKind(final int node, final Item item) {
+        final List<Item> nodeItems = items.get(node);
+        Preconditions.checkState(nodeItems.size() == 1, "Expected existing node to have only one item");
+        return nodeItems.get(0).isSameKind(item);
+    }
+
+    private void cancelItems(final int node, final Item item) {
+        final List<Item> nodeItems = items.get(node);
+        Preconditions.checkState(item.getAction() == ItemAction.ADD);
+        Preconditions.checkState(nodeItems.size() == 1);
+        Preconditions.checkState(nodeItems.get(0).getAction() == ItemAction.CANCEL);
+        nodeItems.clear();
+    }
+
+    // First item (depth first search) with the specified id
+    private Item findItem(final int node, final UUID targetId) {
+        final List<Item> nodeItems = items.get(node);
+        Item result = null;
+        int nbMatchingItems = 0;
+        for (final Item item : nodeItems) {
+            if (item.getId().equals(targetId)) {
+                result = item;
+                nbMatchingItems++;
+            }
+        }
+        Preconditions.checkState(nbMatchingItems < 2, "Too many items matching id='%s' among items='%s'", targetId, nodeItems);
+        if (result != null) {
+            return result;
+        }
+
+        for (int curChild = leftChild[node]; curChild != NONE; curChild = rightSibling[curChild]) {
+            final Item childResult = findItem(curChild, targetId);
+            if (childResult != null) {
+                return childResult;
+            }
+        }
+        return null;
+    }
+
+    private static int countItems(final List<Item> nodeItems, final ItemAction itemAction) {
+        int result = 0;
+        for (final Item item : nodeItems) {
+            if (item.getAction() == itemAction) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    // Returns the item with the specified action, as long as there is exactly one
+    private static Item findSingleItem(final List<Item> nodeItems, final ItemAction itemAction) {
+        Item result = null;
+        for (final Item item : nodeItems) {
+            if (item.getAction() == itemAction) {
+                if (result != null) {
+                    return null;
+                }
+                result = item;
+            }
+        }
+        return result;
+    }
+
+    //
+    // This is not strictly necessary -- just there to add a layer of sanity on what our tree contains, @see ItemsNodeInterval#validateTree
+    //
+    private void validateTree(final int node) {
+        if (node != ROOT) {
+            validateNode(node);
+        }
+        for (int curChild = leftChild[node]; curChild != NONE; curChild = rightSibling[curChild]) {
+            validateTree(curChild);
+        }
+    }
+
+    private void validateNode(final int node) {
+        final List<Item> nodeItems = items.get(node);
+        final int firstChild = leftChild[node];
+
+        for (final Item curCancelItem : nodeItems) {
+            if (curCancelItem.getAction() != ItemAction.CANCEL) {
+                continue;
+            }
+
+            // Sanity: cancelled items should only be in the same node or parents (only the first child sub-tree is walked, as in NodeInterval)
+            if (firstChild != NONE) {
+                final Item cancelledItem = findCancelledItem(firstChild, curCancelItem.getLinkedId(), false);
+                Preconditions.checkState(cancelledItem == null, "Invalid cancelledItem=%s for cancelItem=%s", cancelledItem, curCancelItem);
+            }
+
+            // Sanity: make sure the CANCEL item points to an ADD item
+            Preconditions.checkState(findCancelledItem(ROOT, curCancelItem.getLinkedId(), true) != null, "Missing cancelledItem for cancelItem=%s", curCancelItem);
+        }
+
+        for (final Item curAddItem : nodeItems) {
+            if (curAddItem.getAction() != ItemAction.ADD) {
+                continue;
+            }
+
+            // Sanity: verify the item hasn't been repaired too much
+            if (firstChild != NONE) {
+                final BigDecimal totalRepaired = getTotalRepaired(firstChild, curAddItem.getId());
+                Preconditions.checkState(curAddItem.getNetAmount().compareTo(totalRepaired) >= 0, "Item %s overly repaired", curAddItem);
+            }
+
+            // Old behavior compatibility for full item adjustment (Temp code should go away as move in time)
+            // If we see a fully adjusted item and an existing child (one ADD item), we discard the fully adjusted item
+            // in such a way that we are left with the child that will look like the proposed and nothing will be generated.
+            if (curAddItem.isFullyAdjusted() && firstChild != NONE) {
+                final List<Item> firstChildItems = items.get(firstChild);
+                if (firstChildItems.size() == 1 && firstChildItems.get(0).getAction() == ItemAction.ADD) {
+                    nodeItems.remove(curAddItem);
+                    // Like the (live) iteration over the linked list, the scan of the node stops there
+                    break;
+                }
+            }
+        }
+    }
+
+    // First ADD item with the specified id in the sub-tree of node (and its right siblings sub-trees, if specified)
+    private Item findCancelledItem(final int node, final UUID linkedId, final boolean includeSiblings) {
+        for (int curNode = node; curNode != NONE; curNode = includeSiblings ? rightSibling[curNode] : NONE) {
+            for (final Item item : items.get(curNode)) {
+                if (item.getAction() == ItemAction.ADD && item.getId().equals(linkedId)) {
+                    return item;
+                }
+            }
+            if (leftChild[curNode] != NONE) {
+                final Item result = findCancelledItem(leftChild[curNode], linkedId, true);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Sum of the first CANCEL item pointing to targetId of each node of the sub-tree of node
+    private BigDecimal getTotalRepaired(final int node, final UUID targetId) {
+        BigDecimal result = BigDecimal.ZERO;
+        for (final Item item : items.get(node)) {
+            if (item.getAction() == ItemAction.CANCEL && item.getLinkedId().equals(targetId)) {
+                result = result.add(item.getAmount());
+                break;
+            }
+        }
+        for (int curChild = leftChild[node]; curChild != NONE; curChild = rightSibling[curChild]) {
+            result = result.add(getTotalRepaired(curChild, targetId));
+        }
+        return result;
+    }
+
+    //
+    // Epoch days (proleptic Gregorian calendar), to avoid LocalDate comparisons when walking the tree
+    //
+
+    @VisibleForTesting
+    static int toEpochDay(final LocalDate date) {
+        final int month = date.getMonthOfYear();
+        final int year = month <= 2 ? date.getYear() - 1 : date.getYear();
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yearOfEra = year - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + date.getDayOfMonth() - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    @VisibleForTesting
+    static LocalDate fromEpochDay(final int epochDay) {
+        final int days = epochDay + 719468;
+        final int era = (days >= 0 ? days : days - 146096) / 146097;
+        final int dayOfEra = days - era * 146097;
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new LocalDate(year, month, day);
+    }
+
+    private String toString(final int node) {
+        if (node == NONE) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[")
+          .append(node == ROOT && leftChild[ROOT] == NONE ? null : fromEpochDay(start[node]))
+          .append(",")
+          .append(node == ROOT && leftChild[ROOT] == NONE ? null : fromEpochDay(end[node]))
+          .append("]");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ArrayItemsTree{");
+        sb.append("nodes=[");
+        appendNode(ROOT, 0, sb);
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private void appendNode(final int node, final int depth, final StringBuilder sb) {
+        if (node != ROOT) {
+            sb.append(depth > 1 || node != leftChild[ROOT] ? ", " : "")
+              .append(depth)
+              .append(":")
+              .append(toString(node))
+              .append(items.get(node));
+        }
+        for (int curChild = leftChild[node]; curChild != NONE; curChild = rightSibling[curChild]) {
+            appendNode(curChild, depth + 1, sb);
+        }
+    }
+
+    private interface AddNodeCallback {
+
+        boolean onExistingNode(final int existingNode, final int newNode);
+
+        boolean shouldInsertNode(final int insertionNode, final int newNode);
+    }
+}
@@ -52,6 +52,8 @@ public class SubscriptionItemTree {
     private final UUID subscriptionId;
 
     private ItemsNodeInterval root =new ItemsNodeInterval();
+    // Array-backed alternative to root, used instead when set
+    private final ArrayItemsTree arrayRoot;
     private boolean isBuilt = false;
     private boolean isMerged = false;
 
@@ -77,8 +79,13 @@ public class SubscriptionItemTree {
 
     // targetInvoiceId is the new invoice id being generated
     public SubscriptionItemTree(final UUID subscriptionId, final UUID targetInvoiceId) {
+        this(subscriptionId, targetInvoiceId, false);
+    }
+
+    public SubscriptionItemTree(final UUID subscriptionId, final UUID targetInvoiceId, final boolean useArrayTree) {
         this.subscriptionId = subscriptionId;
         this.targetInvoiceId = targetInvoiceId;
+        this.arrayRoot = useArrayTree ? new ArrayItemsTree() : null;
     }
 
     /**
@@ -95,12 +102,12 @@ public class SubscriptionItemTree {
                     // Nothing to repair -- https://github.com/killbill/killbill/issues/783
                     existingIgnoredItems.add(invoiceItem);
                 } else {
-                    root.addExistingItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.ADD)));
+                    addExistingItem(new Item(invoiceItem, targetInvoiceId, ItemAction.ADD));
                 }
                 break;
 
             case REPAIR_ADJ:
-                root.addExistingItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.CANCEL)));
+                addExistingItem(new Item(invoiceItem, targetInvoiceId, ItemAction.CANCEL));
                 break;
 
             case FIXED:
@@ -116,6 +123,14 @@ public class SubscriptionItemTree {
         }
     }
 
+    private void addExistingItem(final Item item) {
+        if (arrayRoot != null) {
+            arrayRoot.addExistingItem(item);
+        } else {
+            root.addExistingItem(new ItemsNodeInterval(root, item));
+        }
+    }
+
     /**
      * Build the tree and process adjustments
      */
@@ -131,13 +146,20 @@ public class SubscriptionItemTree {
                 }
             }).orNull();
             if (ignoredLinkedItem == null) {
-                root.addAdjustment(item);
+                if (arrayRoot != null) {
+                    arrayRoot.addAdjustment(item);
+                } else {
+                    root.addAdjustment(item);
+                }
             }
         }
         pendingItemAdj.clear();
 
-        root.buildForExistingItems(items, targetInvoiceId);
-
+        if (arrayRoot != null) {
+            arrayRoot.buildForExistingItems(items, targetInvoiceId);
+        } else {
+            root.buildForExistingItems(items, targetInvoiceId);
+        }
 
         isBuilt = true;
     }
@@ -154,10 +176,14 @@ public class SubscriptionItemTree {
             build();
         }
 
-        root = new ItemsNodeInterval();
+        if (arrayRoot != null) {
+            arrayRoot.reset();
+        } else {
+            root = new ItemsNodeInterval();
+        }
         for (final Item item : items) {
             Preconditions.checkState(item.getAction() == ItemAction.ADD);
-            root.addExistingItem(new ItemsNodeInterval(root, new Item(item, reverse ? ItemAction.CANCEL : ItemAction.ADD)));
+            addExistingItem(new Item(item, reverse ? ItemAction.CANCEL : ItemAction.ADD));
         }
         items.clear();
         isBuilt = false;
@@ -185,9 +211,14 @@ public class SubscriptionItemTree {
         switch (invoiceItem.getInvoiceItemType()) {
             case RECURRING:
                 // merged means we've either matched the proposed to an existing, or triggered a repair
-                final List<ItemsNodeInterval> newNodes = root.addProposedItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.ADD)));
-                for (final ItemsNodeInterval cur : newNodes) {
-                    items.addAll(cur.getItems());
+                final Item item = new Item(invoiceItem, targetInvoiceId, ItemAction.ADD);
+                if (arrayRoot != null) {
+                    items.addAll(arrayRoot.addProposedItem(item));
+                } else {
+                    final List<ItemsNodeInterval> newNodes = root.addProposedItem(new ItemsNodeInterval(root, item));
+                    for (final ItemsNodeInterval cur : newNodes) {
+                        items.addAll(cur.getItems());
+                    }
                 }
                 break;
 
@@ -203,7 +234,11 @@ public class SubscriptionItemTree {
     // Build tree post merge
     public void buildForMerge() {
         Preconditions.checkState(!isBuilt, "Tree already built");
-        root.mergeExistingAndProposed(items, targetInvoiceId);
+        if (arrayRoot != null) {
+            arrayRoot.mergeExistingAndProposed(items, targetInvoiceId);
+        } else {
+            root.mergeExistingAndProposed(items, targetInvoiceId);
+        }
         isBuilt = true;
         isMerged = true;
     }
@@ -273,7 +308,7 @@ public class SubscriptionItemTree {
         final StringBuilder sb = new StringBuilder("SubscriptionItemTree{");
         sb.append("targetInvoiceId=").append(targetInvoiceId);
         sb.append(", subscriptionId=").append(subscriptionId);
-        sb.append(", root=").append(root);
+        sb.append(", root=").append(arrayRoot != null ? arrayRoot : root);
         sb.append(", isBuilt=").append(isBuilt);
         sb.append(", isMerged=").append(isMerged);
         sb.append(", items=").append(items);
@@ -298,6 +333,9 @@ public class SubscriptionItemTree {
         if (root != null ? !root.equals(that.root) : that.root != null) {
             return false;
         }
+        if (arrayRoot != null ? !arrayRoot.equals(that.arrayRoot) : that.arrayRoot != null) {
+            return false;
+        }
         if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
             return false;
         }
@@ -309,11 +347,13 @@ public class SubscriptionItemTree {
     public int hashCode() {
         int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
         result = 31 * result + (root != null ? root.hashCode() : 0);
+        result = 31 * result + (arrayRoot != null ? arrayRoot.hashCode() : 0);
         return result;
     }
 
     @VisibleForTesting
     ItemsNodeInterval getRoot() {
+        Preconditions.checkState(arrayRoot == null, "Not supported by the array-backed tree");
         return root;
     }
 }
@@ -47,6 +47,7 @@ import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecord
 import org.killbill.billing.invoice.model.UsageInvoiceItem;
 import org.killbill.billing.invoice.usage.details.UsageInArrearAggregate;
 import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.usage.AggregatedUsageRecord;
 import org.killbill.billing.usage.api.RawUsageRecord;
 import org.killbill.billing.usage.api.RolledUpUnit;
 import org.killbill.billing.usage.api.RolledUpUsage;
@@ -386,10 +387,7 @@ public abstract class ContiguousIntervalUsageInArrear {
                 // Start consuming prevRawUsage element if it exists and falls into the range
                 if (prevRawUsage != null) {
                     if (prevRawUsage.getDate().compareTo(prevDate) >= 0 && prevRawUsage.getDate().compareTo(curDate) < 0) {
-                        final Long currentAmount = perRangeUnitToAmount.get(prevRawUsage.getUnitType());
-                        final Long updatedAmount = computeUpdatedAmount(currentAmount, prevRawUsage.getAmount());
-                        perRangeUnitToAmount.put(prevRawUsage.getUnitType(), updatedAmount);
-                        trackingIds.add(new TrackingRecordId(prevRawUsage.getTrackingId(), invoiceId, prevRawUsage.getSubscriptionId(), prevRawUsage.getUnitType(), prevRawUsage.getDate()));
+                        consumeRawUsage(prevRawUsage, perRangeUnitToAmount, trackingIds);
                         prevRawUsage = null;
                     }
                 }
@@ -408,10 +406,7 @@ public abstract class ContiguousIntervalUsageInArrear {
                             break;
                         }
 
-                        final Long currentAmount = perRangeUnitToAmount.get(curRawUsage.getUnitType());
-                        final Long updatedAmount = computeUpdatedAmount(currentAmount, curRawUsage.getAmount());
-                        perRangeUnitToAmount.put(curRawUsage.getUnitType(), updatedAmount);
-                        trackingIds.add(new TrackingRecordId(curRawUsage.getTrackingId(), invoiceId, curRawUsage.getSubscriptionId(), curRawUsage.getUnitType(), curRawUsage.getDate()));
+                        consumeRawUsage(curRawUsage, perRangeUnitToAmount, trackingIds);
                     }
                 }
 
@@ -430,6 +425,20 @@ public abstract class ContiguousIntervalUsageInArrear {
         return new RolledUpUnitsWithTracking(result, trackingIds);
     }
 
+    private void consumeRawUsage(final RawUsageRecord rawUsage, final Map<String, Long> perRangeUnitToAmount, final Set<TrackingRecordId> trackingIds) {
+        // Daily aggregates carry both the sum and the max of the raw amounts for that day: CAPACITY needs the latter
+        final Long rawAmount = (usage.getUsageType() == UsageType.CAPACITY && rawUsage instanceof AggregatedUsageRecord) ?
+                               ((AggregatedUsageRecord) rawUsage).getMaxAmount() :
+                               rawUsage.getAmount();
+        final Long currentAmount = perRangeUnitToAmount.get(rawUsage.getUnitType());
+        final Long updatedAmount = computeUpdatedAmount(currentAmount, rawAmount);
+        perRangeUnitToAmount.put(rawUsage.getUnitType(), updatedAmount);
+        // Aggregated usage doesn't have any tracking id
+        if (rawUsage.getTrackingId() != null) {
+            trackingIds.add(new TrackingRecordId(rawUsage.getTrackingId(), invoiceId, rawUsage.getSubscriptionId(), rawUsage.getUnitType(), rawUsage.getDate()));
+        }
+    }
+
     private List<RolledUpUsageWithMetadata> getEmptyRolledUpUsage() {
         final List<RolledUpUsageWithMetadata> result = new ArrayList<RolledUpUsageWithMetadata>();
 
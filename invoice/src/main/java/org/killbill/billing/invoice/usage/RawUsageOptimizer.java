@@ -17,10 +17,15 @@
 
 package org.killbill.billing.invoice.usage;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -38,11 +43,13 @@ import org.killbill.billing.invoice.model.UsageInvoiceItem;
 import org.killbill.billing.usage.InternalUserApi;
 import org.killbill.billing.usage.api.RawUsageRecord;
 import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.killbill.billing.util.entity.Pagination;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
@@ -74,7 +81,9 @@ public class RawUsageOptimizer {
         final LocalDate targetStartDate = config.getMaxRawUsagePreviousPeriod(internalCallContext) >= 0 ? getOptimizedRawUsageStartDate(firstEventStartDate, targetDate, existingUsageItems, knownUsage, internalCallContext) : firstEventStartDate;
         log.debug("ConsumableInArrear accountRecordId='{}', rawUsageStartDate='{}', firstEventStartDate='{}'",
                   internalCallContext.getAccountRecordId(), targetStartDate, firstEventStartDate);
-        final List<RawUsageRecord> rawUsageData = usageApi.getRawUsageForAccount(targetStartDate, targetDate, internalCallContext);
+        final Pagination<RawUsageRecord> rawUsageData = config.isReadUsageAggregatesEnabled(internalCallContext) ?
+                                                        usageApi.getAggregatedUsageStreamForAccount(targetStartDate, targetDate, internalCallContext) :
+                                                        usageApi.getRawUsageStreamForAccount(targetStartDate, targetDate, internalCallContext);
 
         final List<InvoiceTrackingModelDao> trackingIds = invoiceDao.getTrackingsByDateRange(targetStartDate, targetDate, internalCallContext);
         final Set<TrackingRecordId> existingTrackingIds = ImmutableSet.copyOf(Iterables.transform(trackingIds, new Function<InvoiceTrackingModelDao, TrackingRecordId>() {
@@ -166,15 +175,25 @@ public class RawUsageOptimizer {
         return result;
     }
 
-    public static class RawUsageOptimizerResult {
+    //
+    // The raw usage is streamed (ordered by subscriptionId and date) and consumed in one pass through getRawUsageForSubscription,
+    // so only the usage of the subscription being processed is kept in memory. The result needs to be closed.
+    //
+    public static class RawUsageOptimizerResult implements Closeable {
 
         private final LocalDate rawUsageStartDate;
-        private final List<RawUsageRecord> rawUsage;
+        private final Pagination<RawUsageRecord> rawUsage;
+        private final Iterator<RawUsageRecord> rawUsageIterator;
         private final Set<TrackingRecordId> existingTrackingIds;
 
-        public RawUsageOptimizerResult(final LocalDate rawUsageStartDate, final List<RawUsageRecord> rawUsage, final Set<TrackingRecordId> existingTrackingIds) {
+        // First record not consumed yet
+        private RawUsageRecord nextRawUsage;
+        private String lastSubscriptionId;
+
+        public RawUsageOptimizerResult(final LocalDate rawUsageStartDate, final Pagination<RawUsageRecord> rawUsage, final Set<TrackingRecordId> existingTrackingIds) {
             this.rawUsageStartDate = rawUsageStartDate;
             this.rawUsage = rawUsage;
+            this.rawUsageIterator = rawUsage.iterator();
             this.existingTrackingIds = existingTrackingIds;
         }
 
@@ -182,12 +201,38 @@ public class RawUsageOptimizer {
             return rawUsageStartDate;
         }
 
-        public List<RawUsageRecord> getRawUsage() {
-            return rawUsage;
+        // Subscriptions need to be requested in increasing subscriptionId.toString() order
+        public List<RawUsageRecord> getRawUsageForSubscription(final UUID subscriptionId) {
+            final String targetSubscriptionId = subscriptionId.toString();
+            Preconditions.checkState(lastSubscriptionId == null || lastSubscriptionId.compareTo(targetSubscriptionId) < 0,
+                                     "Raw usage for subscriptionId='%s' requested after subscriptionId='%s'", targetSubscriptionId, lastSubscriptionId);
+            lastSubscriptionId = targetSubscriptionId;
+
+            final List<RawUsageRecord> result = new ArrayList<RawUsageRecord>();
+            while (nextRawUsage != null || rawUsageIterator.hasNext()) {
+                if (nextRawUsage == null) {
+                    nextRawUsage = rawUsageIterator.next();
+                }
+
+                final int compared = nextRawUsage.getSubscriptionId().toString().compareTo(targetSubscriptionId);
+                if (compared > 0) {
+                    break;
+                } else if (compared == 0) {
+                    result.add(nextRawUsage);
+                }
+                // Usage for subscriptions without any billing event is simply skipped
+                nextRawUsage = null;
+            }
+            return result;
         }
 
         public Set<TrackingRecordId> getExistingTrackingIds() {
             return existingTrackingIds;
         }
+
+        @Override
+        public void close() throws IOException {
+            rawUsage.close();
+        }
     }
 }
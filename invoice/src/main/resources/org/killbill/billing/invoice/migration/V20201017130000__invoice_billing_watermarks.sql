@@ -0,0 +1,18 @@
+CREATE TABLE invoice_billing_watermarks (
+    record_id serial unique,
+    id varchar(36) NOT NULL,
+    subscription_id varchar(36) NOT NULL,
+    reconciled_date date NOT NULL,
+    billing_events_hash varchar(64) NOT NULL,
+    items_hash varchar(64) NOT NULL,
+    created_by varchar(50) NOT NULL,
+    created_date datetime NOT NULL,
+    updated_by varchar(50) NOT NULL,
+    updated_date datetime NOT NULL,
+    account_record_id bigint /*! unsigned */ not null,
+    tenant_record_id bigint /*! unsigned */ not null default 0,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX invoice_billing_watermarks_id ON invoice_billing_watermarks(id);
+CREATE UNIQUE INDEX invoice_billing_watermarks_subscription_id ON invoice_billing_watermarks(subscription_id);
+CREATE INDEX invoice_billing_watermarks_tenant_account_record_id ON invoice_billing_watermarks(tenant_record_id, account_record_id);
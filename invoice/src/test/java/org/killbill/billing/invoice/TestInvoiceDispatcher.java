@@ -27,7 +27,9 @@ import org.joda.time.LocalDate;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.ImmutableAccountData;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.MockPlan;
 import org.killbill.billing.catalog.MockPlanPhase;
 import org.killbill.billing.catalog.api.BillingMode;
@@ -43,15 +45,21 @@ import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.dao.InvoiceBillingWatermarkModelDao;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
+import org.killbill.billing.invoice.generator.BillingWatermarks;
+import org.killbill.billing.invoice.generator.InvoiceGenerator;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
 import org.killbill.billing.util.api.TagDefinitionApiException;
+import org.killbill.billing.util.config.definition.InvoiceConfig;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.SystemTags;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.tweak.HandleCallback;
@@ -341,4 +349,45 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
             Assert.assertEquals(item.getSubscriptionId(), subscription.getId());
         }
     }
+
+    @Test(groups = "slow")
+    public void testIncrementalGenerationWithBillingWatermarks() throws Exception {
+        final BillingEventSet events = new MockBillingEventSet();
+        final Plan plan = MockPlan.createBicycleNoTrialEvergreen1USD();
+        final PlanPhase planPhase = MockPlanPhase.create1USDMonthlyEvergreen();
+        events.add(invoiceUtil.createMockBillingEvent(account, subscription, new DateTime("2012-05-01T00:03:42.000Z"), plan, planPhase,
+                                                      null, BigDecimal.ONE, account.getCurrency(), BillingPeriod.MONTHLY, 1,
+                                                      BillingMode.IN_ADVANCE, "CREATE", 1L, SubscriptionBaseTransitionType.CREATE));
+        Mockito.when(billingApi.getBillingEventsForAccountAndUpdateAccountBCD(Mockito.<UUID>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any())).thenReturn(events);
+
+        final InvoiceConfig incrementalInvoiceConfig = Mockito.mock(InvoiceConfig.class, AdditionalAnswers.delegatesTo(invoiceConfig));
+        Mockito.doReturn(true).when(incrementalInvoiceConfig).isIncrementalGenerationEnabled(Mockito.<InternalTenantContext>any());
+        final InvoiceGenerator spiedGenerator = Mockito.spy(generator);
+        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(spiedGenerator, accountApi, billingApi, subscriptionApi, invoiceDao,
+                                                                   internalCallContextFactory, invoicePluginDispatcher, locker, busService.getBus(),
+                                                                   notificationQueueService, incrementalInvoiceConfig, clock, parkedAccountsManager);
+
+        // First invoice: nothing reconciled yet, the watermark is recorded with the invoice
+        Assert.assertNotNull(dispatcher.processAccountFromNotificationOrBusEvent(account.getId(), new LocalDate("2012-05-01"), null, false, context));
+        List<InvoiceBillingWatermarkModelDao> watermarks = invoiceDao.getBillingWatermarks(context);
+        Assert.assertEquals(watermarks.size(), 1);
+        Assert.assertEquals(watermarks.get(0).getSubscriptionId(), subscription.getId());
+        Assert.assertEquals(watermarks.get(0).getReconciledDate(), new LocalDate("2012-05-01"));
+
+        // Next period: the generator starts from the persisted watermark, which is moved forward in place
+        Assert.assertNotNull(dispatcher.processAccountFromNotificationOrBusEvent(account.getId(), new LocalDate("2012-06-01"), null, false, context));
+        watermarks = invoiceDao.getBillingWatermarks(context);
+        Assert.assertEquals(watermarks.size(), 1);
+        Assert.assertEquals(watermarks.get(0).getReconciledDate(), new LocalDate("2012-06-01"));
+
+        final ArgumentCaptor<BillingWatermarks> billingWatermarksCaptor = ArgumentCaptor.forClass(BillingWatermarks.class);
+        Mockito.verify(spiedGenerator, Mockito.times(2)).generateInvoice(Mockito.<ImmutableAccountData>any(), Mockito.<BillingEventSet>any(), Mockito.<Iterable<Invoice>>any(),
+                                                                          billingWatermarksCaptor.capture(), Mockito.<UUID>any(), Mockito.<LocalDate>any(),
+                                                                          Mockito.<Currency>any(), Mockito.<InternalCallContext>any());
+        Assert.assertTrue(billingWatermarksCaptor.getAllValues().get(0).isEmpty());
+        Assert.assertEquals(billingWatermarksCaptor.getAllValues().get(1).getReconciledDate(subscription.getId()), new LocalDate("2012-05-01"));
+
+        final List<InvoiceModelDao> invoices = invoiceDao.getInvoicesByAccount(false, context);
+        Assert.assertEquals(invoices.size(), 2);
+    }
 }
@@ -70,6 +70,7 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
                               final Set<InvoiceTrackingModelDao> trackingIds,
                               final FutureAccountNotifications callbackDateTimePerSubscriptions,
                               final ExistingInvoiceMetadata existingInvoiceMetadata,
+                              final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks,
                               final InternalCallContext context) {
         synchronized (monitor) {
             storeInvoice(invoice, context);
@@ -84,7 +85,7 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
     }
 
     @Override
-    public void setFutureAccountNotificationsForEmptyInvoice(final UUID accountId, final FutureAccountNotifications callbackDateTimePerSubscriptions, final InternalCallContext context) {
+    public void setFutureAccountNotificationsForEmptyInvoice(final UUID accountId, final FutureAccountNotifications callbackDateTimePerSubscriptions, final Iterable<InvoiceBillingWatermarkModelDao> billingWatermarks, final InternalCallContext context) {
 
     }
 
@@ -257,6 +258,11 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return result;
     }
 
+    @Override
+    public List<InvoicePaymentModelDao> getInvoicePaymentsByPaymentIds(final Collection<UUID> paymentIds, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<InvoicePaymentModelDao> getInvoicePaymentsByAccount(final InternalTenantContext context) {
 
@@ -457,6 +463,11 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<InvoiceBillingWatermarkModelDao> getBillingWatermarks(final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<AuditLogWithHistory> getInvoiceAuditLogsWithHistoryForId(final UUID invoiceId, final AuditLevel auditLevel, final InternalTenantContext context) {
         return null;
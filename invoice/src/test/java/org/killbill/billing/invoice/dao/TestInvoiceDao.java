@@ -130,6 +130,7 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
                                  ImmutableSet.<InvoiceTrackingModelDao>of(),
                                  new FutureAccountNotifications(),
                                  new ExistingInvoiceMetadata(ImmutableList.<Invoice>of()),
+                                 null,
                                  context);
 
         final Invoice invoice = invoiceUserApi.getInvoice(invoiceForExternalCharge.getId(), callContext);
@@ -547,6 +548,29 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
 
     }
 
+    @Test(groups = "slow")
+    public void testGetInvoicesForAccountWithinDates() throws EntityPersistenceException {
+        final UUID accountId = account.getId();
+        final LocalDate targetDate1 = new LocalDate(2011, 10, 6);
+        final Invoice invoice1 = new DefaultInvoice(accountId, clock.getUTCToday(), targetDate1, Currency.USD);
+        invoiceUtil.createInvoice(invoice1, context);
+
+        final LocalDate targetDate2 = new LocalDate(2011, 12, 6);
+        final Invoice invoice2 = new DefaultInvoice(accountId, clock.getUTCToday(), targetDate2, Currency.USD);
+        invoiceUtil.createInvoice(invoice2, context);
+
+        List<InvoiceModelDao> invoices;
+        invoices = invoiceDao.getInvoicesByAccount(false, new LocalDate(2011, 10, 6), new LocalDate(2011, 12, 6), context);
+        assertEquals(invoices.size(), 2);
+
+        invoices = invoiceDao.getInvoicesByAccount(false, new LocalDate(2011, 10, 7), new LocalDate(2011, 12, 6), context);
+        assertEquals(invoices.size(), 1);
+        assertEquals(invoices.get(0).getId(), invoice2.getId());
+
+        invoices = invoiceDao.getInvoicesByAccount(false, new LocalDate(2011, 10, 7), new LocalDate(2011, 12, 5), context);
+        assertEquals(invoices.size(), 0);
+    }
+
 
     @Test(groups = "slow")
     public void testAccountBalance() throws EntityPersistenceException {
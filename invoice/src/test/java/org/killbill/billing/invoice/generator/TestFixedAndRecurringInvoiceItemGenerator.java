@@ -30,6 +30,7 @@ import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.DefaultPrice;
 import org.killbill.billing.catalog.MockInternationalPrice;
 import org.killbill.billing.catalog.MockPlan;
@@ -59,12 +60,16 @@ import org.killbill.billing.junction.plumbing.billing.DefaultBillingEvent;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 
@@ -1984,6 +1989,162 @@ public class TestFixedAndRecurringInvoiceItemGenerator extends InvoiceTestSuiteN
     }
 
 
+    @Test(groups = "fast")
+    public void testGenerateItemsWithBillingWatermarks() throws InvoiceApiException {
+        final LocalDate startDate = new LocalDate("2016-01-01");
+
+        final BillingEventSet events = new MockBillingEventSet();
+        final BigDecimal amount = BigDecimal.TEN;
+        final MockInternationalPrice price = new MockInternationalPrice(new DefaultPrice(amount, account.getCurrency()));
+        final Plan plan = new MockPlan("my-plan");
+        final PlanPhase planPhase = new MockPlanPhase(price, null, BillingPeriod.MONTHLY, PhaseType.EVERGREEN);
+        final BillingEvent event = invoiceUtil.createMockBillingEvent(account,
+                                                                     subscription,
+                                                                     startDate.toDateTimeAtStartOfDay(),
+                                                                     plan,
+                                                                     planPhase,
+                                                                     null,
+                                                                     amount,
+                                                                     account.getCurrency(),
+                                                                     BillingPeriod.MONTHLY,
+                                                                     1,
+                                                                     BillingMode.IN_ADVANCE,
+                                                                     "Billing Event Desc",
+                                                                     1L,
+                                                                     SubscriptionBaseTransitionType.CREATE);
+        events.add(event);
+
+        // Subscription correctly invoiced for the first two periods
+        final List<Invoice> existingInvoices = new LinkedList<Invoice>();
+        for (int i = 0; i < 2; i++) {
+            final Invoice invoice = new DefaultInvoice(account.getId(), clock.getUTCToday(), startDate.plusMonths(i), account.getCurrency());
+            invoice.addInvoiceItem(new RecurringInvoiceItem(UUID.randomUUID(),
+                                                            startDate.plusMonths(i).toDateTimeAtStartOfDay(),
+                                                            invoice.getId(),
+                                                            account.getId(),
+                                                            subscription.getBundleId(),
+                                                            subscription.getId(),
+                                                            null,
+                                                            plan.getName(),
+                                                            planPhase.getName(),
+                                                            null,
+                                                            startDate.plusMonths(i),
+                                                            startDate.plusMonths(i + 1),
+                                                            amount,
+                                                            amount,
+                                                            account.getCurrency()));
+            existingInvoices.add(invoice);
+        }
+
+        final LocalDate targetDate = startDate.plusMonths(2);
+        final List<InvoiceItem> fullyGeneratedItems = fixedAndRecurringInvoiceItemGenerator.generateItems(account,
+                                                                                                          UUID.randomUUID(),
+                                                                                                          events,
+                                                                                                          existingInvoices,
+                                                                                                          targetDate,
+                                                                                                          account.getCurrency(),
+                                                                                                          new HashMap<UUID, SubscriptionFutureNotificationDates>(),
+                                                                                                          internalCallContext).getItems();
+        assertEquals(fullyGeneratedItems.size(), 1);
+        assertEquals(fullyGeneratedItems.get(0).getStartDate(), targetDate);
+        assertEquals(fullyGeneratedItems.get(0).getEndDate(), targetDate.plusMonths(1));
+
+        // The first two periods are known to be reconciled
+        final BillingWatermarks billingWatermarks = new BillingWatermarks(ImmutableMap.<UUID, LocalDate>of(subscription.getId(), targetDate));
+        final List<InvoiceItem> incrementallyGeneratedItems = fixedAndRecurringInvoiceItemGenerator.generateItems(account,
+                                                                                                                  UUID.randomUUID(),
+                                                                                                                  events,
+                                                                                                                  existingInvoices,
+                                                                                                                  billingWatermarks,
+                                                                                                                  targetDate,
+                                                                                                                  account.getCurrency(),
+                                                                                                                  new HashMap<UUID, SubscriptionFutureNotificationDates>(),
+                                                                                                                  internalCallContext).getItems();
+        assertEquals(incrementallyGeneratedItems.size(), 1);
+        assertEquals(incrementallyGeneratedItems.get(0).getStartDate(), fullyGeneratedItems.get(0).getStartDate());
+        assertEquals(incrementallyGeneratedItems.get(0).getEndDate(), fullyGeneratedItems.get(0).getEndDate());
+        assertEquals(incrementallyGeneratedItems.get(0).getAmount().compareTo(fullyGeneratedItems.get(0).getAmount()), 0);
+
+        // Only the billing events up to the watermark are part of the summary
+        final String billingEventsHash = BillingWatermarks.computeBillingEventsHash(events, startDate, internalCallContext);
+        assertEquals(BillingWatermarks.computeBillingEventsHash(events, targetDate, internalCallContext), billingEventsHash);
+        assertFalse(BillingWatermarks.computeBillingEventsHash(events, startDate.minusDays(1), internalCallContext).equals(billingEventsHash));
+
+        // Any adjustment invalidates the summary of the subscription items
+        final List<InvoiceItem> existingItems = new LinkedList<InvoiceItem>();
+        for (final Invoice invoice : existingInvoices) {
+            existingItems.addAll(invoice.getInvoiceItems());
+        }
+        final String itemsHash = BillingWatermarks.computeItemsHashPerSubscription(existingItems).get(subscription.getId());
+        assertNotNull(itemsHash);
+        existingItems.add(new ItemAdjInvoiceItem(existingItems.get(0), startDate, BigDecimal.ONE.negate(), account.getCurrency()));
+        assertFalse(BillingWatermarks.computeItemsHashPerSubscription(existingItems).get(subscription.getId()).equals(itemsHash));
+    }
+
+    @Test(groups = "fast")
+    public void testParallelItemGenerationSameResultingItems() throws Exception {
+        final LocalDate startDate = new LocalDate("2016-01-01");
+        final Plan plan = new MockPlan("my-plan");
+        final BigDecimal amount = BigDecimal.TEN;
+        final MockInternationalPrice price = new MockInternationalPrice(new DefaultPrice(amount, account.getCurrency()));
+        final PlanPhase trialPhase = new MockPlanPhase(null, null, BillingPeriod.NO_BILLING_PERIOD, PhaseType.TRIAL);
+        final PlanPhase evergreenPhase = new MockPlanPhase(price, null, BillingPeriod.MONTHLY, PhaseType.EVERGREEN);
+
+        final BillingEventSet events = new MockBillingEventSet();
+        final List<Invoice> existingInvoices = new LinkedList<Invoice>();
+        for (int i = 0; i < 5; i++) {
+            final SubscriptionBase sub = invoiceUtil.createSubscription();
+            final LocalDate subStartDate = startDate.plusDays(i);
+            events.add(invoiceUtil.createMockBillingEvent(account, sub, subStartDate.toDateTimeAtStartOfDay(), plan, trialPhase, BigDecimal.ONE, null,
+                                                          account.getCurrency(), BillingPeriod.NO_BILLING_PERIOD, 1, BillingMode.IN_ADVANCE, "Billing Event Desc", 1L,
+                                                          SubscriptionBaseTransitionType.CREATE));
+            events.add(invoiceUtil.createMockBillingEvent(account, sub, subStartDate.plusDays(30).toDateTimeAtStartOfDay(), plan, evergreenPhase, null, amount,
+                                                          account.getCurrency(), BillingPeriod.MONTHLY, 1, BillingMode.IN_ADVANCE, "Billing Event Desc", 2L,
+                                                          SubscriptionBaseTransitionType.PHASE));
+
+            // Only some of the subscriptions have been invoiced already
+            if (i % 2 == 0) {
+                final Invoice invoice = new DefaultInvoice(account.getId(), clock.getUTCToday(), subStartDate, account.getCurrency());
+                invoice.addInvoiceItem(new FixedPriceInvoiceItem(invoice.getId(), account.getId(), sub.getBundleId(), sub.getId(), null, plan.getName(),
+                                                                 trialPhase.getName(), null, subStartDate, BigDecimal.ONE, account.getCurrency()));
+                existingInvoices.add(invoice);
+            }
+        }
+
+        final InvoiceConfig parallelInvoiceConfig = Mockito.mock(InvoiceConfig.class, AdditionalAnswers.delegatesTo(invoiceConfig));
+        Mockito.doReturn(true).when(parallelInvoiceConfig).isParallelItemGenerationEnabled(Mockito.<InternalTenantContext>any());
+        Mockito.doReturn(2).when(parallelInvoiceConfig).getParallelItemGenerationThreads();
+        // Small queue, so that some of the tasks are run by the calling thread
+        Mockito.doReturn(1).when(parallelInvoiceConfig).getParallelItemGenerationQueueSize();
+        final InvoiceExecutors invoiceExecutors = new InvoiceExecutors(parallelInvoiceConfig);
+        invoiceExecutors.initialize();
+        final FixedAndRecurringInvoiceItemGenerator parallelGenerator = new FixedAndRecurringInvoiceItemGenerator(parallelInvoiceConfig, invoiceExecutors, clock);
+
+        final LocalDate targetDate = startDate.plusMonths(3);
+        final Map<UUID, SubscriptionFutureNotificationDates> sequentialNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+        final List<InvoiceItem> sequentialItems = fixedAndRecurringInvoiceItemGenerator.generateItems(account, UUID.randomUUID(), events, existingInvoices, targetDate,
+                                                                                                      account.getCurrency(), sequentialNotificationDates, internalCallContext).getItems();
+        final Map<UUID, SubscriptionFutureNotificationDates> parallelNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+        final List<InvoiceItem> parallelItems;
+        try {
+            parallelItems = parallelGenerator.generateItems(account, UUID.randomUUID(), events, existingInvoices, targetDate,
+                                                            account.getCurrency(), parallelNotificationDates, internalCallContext).getItems();
+        } finally {
+            invoiceExecutors.stop();
+        }
+
+        assertFalse(sequentialItems.isEmpty());
+        assertEquals(parallelItems.size(), sequentialItems.size());
+        for (int i = 0; i < sequentialItems.size(); i++) {
+            assertTrue(parallelItems.get(i).matches(sequentialItems.get(i)));
+        }
+
+        assertEquals(parallelNotificationDates.keySet(), sequentialNotificationDates.keySet());
+        for (final UUID subscriptionId : sequentialNotificationDates.keySet()) {
+            assertEquals(parallelNotificationDates.get(subscriptionId).getNextRecurringDate(), sequentialNotificationDates.get(subscriptionId).getNextRecurringDate());
+        }
+    }
+
     private BillingEvent createDefaultBillingEvent(final LocalDate eventDate, final BigDecimal fixedAmount, final BigDecimal recurringPrice, final SubscriptionBaseTransitionType eventType, final int billCycleDay, final long ordering, final BillingMode billingMode) {
 
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestInvoiceExecutors extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testRequestDataAndMDCArePropagated() throws Exception {
+        final InvoiceExecutors invoiceExecutors = createInvoiceExecutors(2, 10);
+        final RequestData requestData = new RequestData("12345");
+        try {
+            Request.setPerThreadRequestData(requestData);
+            MDC.put("testKey", "testValue");
+
+            final ExecutorService executor = invoiceExecutors.getItemGenerationExecutorService();
+            final Future<String> future = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    Assert.assertEquals(Request.getPerThreadRequestData(), requestData);
+                    return MDC.get("testKey");
+                }
+            });
+            Assert.assertEquals(future.get(5, TimeUnit.SECONDS), "testValue");
+        } finally {
+            Request.resetPerThreadRequestData();
+            MDC.remove("testKey");
+            invoiceExecutors.stop();
+        }
+        Assert.assertNull(invoiceExecutors.getItemGenerationExecutorService());
+    }
+
+    @Test(groups = "fast")
+    public void testCallerRunsWhenSaturated() throws Exception {
+        final InvoiceExecutors invoiceExecutors = createInvoiceExecutors(1, 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            final ExecutorService executor = invoiceExecutors.getItemGenerationExecutorService();
+            final Callable<Thread> blockingTask = new Callable<Thread>() {
+                @Override
+                public Thread call() throws InterruptedException {
+                    latch.await();
+                    return Thread.currentThread();
+                }
+            };
+            // One task running, one task queued
+            final Future<Thread> runningFuture = executor.submit(blockingTask);
+            final Future<Thread> queuedFuture = executor.submit(blockingTask);
+
+            // The queue is full: the task is run by the submitting thread
+            final Thread callerThread = Thread.currentThread();
+            final Future<Thread> callerRunsFuture = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            });
+            Assert.assertTrue(callerRunsFuture.isDone());
+            Assert.assertEquals(callerRunsFuture.get(), callerThread);
+
+            latch.countDown();
+            Assert.assertNotEquals(runningFuture.get(5, TimeUnit.SECONDS), callerThread);
+            Assert.assertNotEquals(queuedFuture.get(5, TimeUnit.SECONDS), callerThread);
+        } finally {
+            latch.countDown();
+            invoiceExecutors.stop();
+        }
+    }
+
+    private InvoiceExecutors createInvoiceExecutors(final int nbThreads, final int queueSize) {
+        final InvoiceConfig testInvoiceConfig = Mockito.mock(InvoiceConfig.class, AdditionalAnswers.delegatesTo(invoiceConfig));
+        Mockito.doReturn(nbThreads).when(testInvoiceConfig).getParallelItemGenerationThreads();
+        Mockito.doReturn(queueSize).when(testInvoiceConfig).getParallelItemGenerationQueueSize();
+        final InvoiceExecutors invoiceExecutors = new InvoiceExecutors(testInvoiceConfig);
+        invoiceExecutors.initialize();
+        return invoiceExecutors;
+    }
+}
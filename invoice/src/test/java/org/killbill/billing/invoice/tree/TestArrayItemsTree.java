@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.model.ItemAdjInvoiceItem;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
+import org.killbill.billing.invoice.model.RepairAdjInvoiceItem;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+// The array-backed tree must produce the same items as the ItemsNodeInterval tree (or fail the same way)
+public class TestArrayItemsTree extends InvoiceTestSuiteNoDB {
+
+    private static final BigDecimal RATE1 = new BigDecimal("10.00");
+    private static final BigDecimal RATE2 = new BigDecimal("20.00");
+
+    private static final Comparator<InvoiceItem> ITEM_ORDERING = new Comparator<InvoiceItem>() {
+        @Override
+        public int compare(final InvoiceItem o1, final InvoiceItem o2) {
+            int result = o1.getStartDate().compareTo(o2.getStartDate());
+            if (result == 0) {
+                result = o1.getInvoiceItemType().compareTo(o2.getInvoiceItemType());
+            }
+            if (result == 0) {
+                result = o1.getAmount().compareTo(o2.getAmount());
+            }
+            return result;
+        }
+    };
+
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID bundleId = UUID.randomUUID();
+    private final UUID subscriptionId = UUID.randomUUID();
+    private final UUID invoiceId = UUID.randomUUID();
+
+    @Test(groups = "fast")
+    public void testEpochDays() {
+        assertEquals(ArrayItemsTree.toEpochDay(new LocalDate(1970, 1, 1)), 0);
+        assertEquals(ArrayItemsTree.toEpochDay(new LocalDate(1969, 12, 31)), -1);
+        assertEquals(ArrayItemsTree.toEpochDay(new LocalDate(2000, 3, 1)), 11017);
+
+        LocalDate date = new LocalDate(1899, 1, 1);
+        int epochDay = ArrayItemsTree.toEpochDay(date);
+        while (date.getYear() < 2101) {
+            assertEquals(ArrayItemsTree.toEpochDay(date), epochDay);
+            assertEquals(ArrayItemsTree.fromEpochDay(epochDay), date);
+            date = date.plusDays(1);
+            epochDay++;
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testExistingItemsWithRepairAndAdjustment() {
+        final LocalDate startDate = new LocalDate(2014, 1, 1);
+        final LocalDate endDate = new LocalDate(2015, 1, 1);
+        final LocalDate repairDate = new LocalDate(2014, 8, 13);
+
+        final InvoiceItem annual = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "product", "plan1", "phase1", null, startDate, endDate, new BigDecimal("120.00"), new BigDecimal("120.00"), Currency.USD);
+        final InvoiceItem repair = new RepairAdjInvoiceItem(invoiceId, accountId, repairDate, endDate, new BigDecimal("-46.36"), Currency.USD, annual.getId());
+        final InvoiceItem newAnnual = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "product", "plan2", "phase2", null, repairDate, endDate, new BigDecimal("92.72"), new BigDecimal("240.00"), Currency.USD);
+        final InvoiceItem itemAdj = new ItemAdjInvoiceItem(newAnnual, repairDate, new BigDecimal("-2.00"), Currency.USD);
+
+        final List<InvoiceItem> existingItems = new LinkedList<InvoiceItem>();
+        existingItems.add(annual);
+        existingItems.add(repair);
+        existingItems.add(newAnnual);
+        existingItems.add(itemAdj);
+
+        final List<InvoiceItem> expected = getExistingItemsView(existingItems, false);
+        assertTrue(expected.size() > 0);
+        assertSameItems(getExistingItemsView(existingItems, true), expected);
+    }
+
+    @Test(groups = "fast")
+    public void testSameResultingItemsAsNodeIntervalTree() {
+        // Three years of monthly items, with a change of plan in the middle of the 12th period (and an item adjustment on the 21st).
+        // The change of plan is now effective one period later, and the subscription is cancelled in the middle of the 30th period.
+        final Scenario scenario = new Scenario(new LocalDate(2016, 1, 1), 36, 11, 10, 20, 12, 10, 29, 15);
+
+        final List<InvoiceItem> expected = getResultingItems(scenario, false);
+        assertTrue(expected.size() > 0);
+        assertSameItems(getResultingItems(scenario, true), expected);
+    }
+
+    @Test(groups = "fast")
+    public void testRandomScenarios() {
+        final Random random = new Random(4242L);
+        int nbSuccessfulScenarios = 0;
+        for (int i = 0; i < 200; i++) {
+            final int nbExistingPeriods = 1 + random.nextInt(36);
+            final int nbProposedPeriods = 1 + random.nextInt(nbExistingPeriods + 6);
+            final Scenario scenario = new Scenario(new LocalDate(2016, 1, 1).plusDays(random.nextInt(365)),
+                                                   nbExistingPeriods,
+                                                   random.nextInt(nbExistingPeriods + 1),
+                                                   1 + random.nextInt(27),
+                                                   random.nextInt(nbExistingPeriods + 1),
+                                                   random.nextInt(nbProposedPeriods + 1),
+                                                   1 + random.nextInt(27),
+                                                   random.nextInt(nbProposedPeriods + 1),
+                                                   1 + random.nextInt(27));
+
+            List<InvoiceItem> expected = null;
+            RuntimeException expectedFailure = null;
+            try {
+                expected = getResultingItems(scenario, false);
+            } catch (final RuntimeException e) {
+                expectedFailure = e;
+            }
+
+            if (expectedFailure != null) {
+                try {
+                    getResultingItems(scenario, true);
+                    throw new AssertionError(String.format("%s: expected %s", scenario, expectedFailure));
+                } catch (final RuntimeException e) {
+                    assertEquals(e.getClass(), expectedFailure.getClass(), scenario.toString());
+                }
+            } else {
+                assertSameItems(getResultingItems(scenario, true), expected);
+                nbSuccessfulScenarios++;
+            }
+        }
+        assertTrue(nbSuccessfulScenarios > 0);
+    }
+
+    private List<InvoiceItem> getExistingItemsView(final Iterable<InvoiceItem> existingItems, final boolean useArrayTree) {
+        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId, useArrayTree);
+        for (final InvoiceItem existingItem : existingItems) {
+            tree.addItem(existingItem);
+        }
+        tree.build();
+        return new ArrayList<InvoiceItem>(tree.getView());
+    }
+
+    private List<InvoiceItem> getResultingItems(final Scenario scenario, final boolean useArrayTree) {
+        final AccountItemTree tree = new AccountItemTree(accountId, invoiceId, useArrayTree);
+        for (final InvoiceItem existingItem : scenario.existingItems) {
+            tree.addExistingItem(existingItem);
+        }
+        tree.mergeWithProposedItems(scenario.proposedItems);
+        return tree.getResultingItemList();
+    }
+
+    private void assertSameItems(final List<InvoiceItem> actual, final List<InvoiceItem> expected) {
+        final List<InvoiceItem> sortedActual = new ArrayList<InvoiceItem>(actual);
+        Collections.sort(sortedActual, ITEM_ORDERING);
+        final List<InvoiceItem> sortedExpected = new ArrayList<InvoiceItem>(expected);
+        Collections.sort(sortedExpected, ITEM_ORDERING);
+
+        assertEquals(sortedActual.size(), sortedExpected.size());
+        for (int i = 0; i < sortedExpected.size(); i++) {
+            // Ids of the generated repairs are random
+            assertTrue(sortedActual.get(i).matches(sortedExpected.get(i)), String.format("%s != %s", sortedActual.get(i), sortedExpected.get(i)));
+        }
+    }
+
+    // Monthly items, with a change of plan (existing and proposed) and an optional cancellation (proposed): a period index past the last period means none
+    private final class Scenario {
+
+        private final String description;
+        private final List<InvoiceItem> existingItems = new LinkedList<InvoiceItem>();
+        private final List<InvoiceItem> proposedItems = new LinkedList<InvoiceItem>();
+
+        private Scenario(final LocalDate startDate,
+                         final int nbExistingPeriods,
+                         final int existingChangePeriod,
+                         final int existingChangeDay,
+                         final int itemAdjPeriod,
+                         final int proposedChangePeriod,
+                         final int proposedChangeDay,
+                         final int cancelPeriod,
+                         final int cancelDay) {
+            this.description = String.format("Scenario{startDate=%s, nbExistingPeriods=%s, existingChange=%s/%s, itemAdjPeriod=%s, proposedChange=%s/%s, cancel=%s/%s}",
+                                              startDate, nbExistingPeriods, existingChangePeriod, existingChangeDay, itemAdjPeriod, proposedChangePeriod, proposedChangeDay, cancelPeriod, cancelDay);
+
+            for (int i = 0; i < nbExistingPeriods; i++) {
+                final LocalDate periodStartDate = startDate.plusMonths(i);
+                final LocalDate periodEndDate = startDate.plusMonths(i + 1);
+                final boolean isPlan1 = i <= existingChangePeriod;
+                final InvoiceItem item = createRecurringItem(isPlan1, periodStartDate, periodEndDate, periodStartDate);
+                existingItems.add(item);
+                if (i == existingChangePeriod) {
+                    final LocalDate changeDate = periodStartDate.plusDays(existingChangeDay);
+                    existingItems.add(new RepairAdjInvoiceItem(invoiceId, accountId, changeDate, periodEndDate, prorate(RATE1, changeDate, periodEndDate, periodStartDate).negate(), Currency.USD, item.getId()));
+                    existingItems.add(createRecurringItem(false, changeDate, periodEndDate, periodStartDate));
+                } else if (i == itemAdjPeriod) {
+                    existingItems.add(new ItemAdjInvoiceItem(item, periodStartDate, BigDecimal.ONE.negate(), Currency.USD));
+                }
+            }
+
+            for (int i = 0; i < cancelPeriod + 1 && i < nbExistingPeriods + 6; i++) {
+                final LocalDate periodStartDate = startDate.plusMonths(i);
+                final LocalDate periodEndDate = i == cancelPeriod ? periodStartDate.plusDays(cancelDay) : startDate.plusMonths(i + 1);
+                if (i == proposedChangePeriod) {
+                    final LocalDate changeDate = periodStartDate.plusDays(proposedChangeDay);
+                    if (changeDate.compareTo(periodEndDate) < 0) {
+                        proposedItems.add(createRecurringItem(true, periodStartDate, changeDate, periodStartDate));
+                        proposedItems.add(createRecurringItem(false, changeDate, periodEndDate, periodStartDate));
+                        continue;
+                    }
+                }
+                proposedItems.add(createRecurringItem(i < proposedChangePeriod, periodStartDate, periodEndDate, periodStartDate));
+            }
+        }
+
+        private InvoiceItem createRecurringItem(final boolean isPlan1, final LocalDate startDate, final LocalDate endDate, final LocalDate periodStartDate) {
+            final BigDecimal rate = isPlan1 ? RATE1 : RATE2;
+            final BigDecimal amount = prorate(rate, startDate, endDate, periodStartDate);
+            return new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "product", isPlan1 ? "plan1" : "plan2", isPlan1 ? "phase1" : "phase2",
+                                            null, startDate, endDate, amount, rate, Currency.USD);
+        }
+
+        // Amount for [startDate, endDate) out of the monthly period starting at periodStartDate
+        private BigDecimal prorate(final BigDecimal rate, final LocalDate startDate, final LocalDate endDate, final LocalDate periodStartDate) {
+            final int nbDays = ArrayItemsTree.toEpochDay(endDate) - ArrayItemsTree.toEpochDay(startDate);
+            final int nbDaysInPeriod = ArrayItemsTree.toEpochDay(periodStartDate.plusMonths(1)) - ArrayItemsTree.toEpochDay(periodStartDate);
+            return rate.multiply(new BigDecimal(nbDays)).divide(new BigDecimal(nbDaysInPeriod), 2, RoundingMode.HALF_UP);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
@@ -27,6 +27,9 @@ import javax.inject.Inject;
 import org.killbill.billing.util.config.definition.JaxrsConfig;
 import org.killbill.commons.concurrent.WithProfilingThreadPoolExecutor;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
 public class JaxrsExecutors {
 
 
@@ -38,7 +41,7 @@ public class JaxrsExecutors {
 
     private final JaxrsConfig JaxrsConfig;
 
-    private volatile ExecutorService jaxrsExecutorService;
+    private volatile ListeningExecutorService jaxrsExecutorService;
 
     @Inject
     public JaxrsExecutors(JaxrsConfig JaxrsConfig) {
@@ -47,7 +50,7 @@ public class JaxrsExecutors {
     }
 
     public void initialize() {
-        this.jaxrsExecutorService = createJaxrsExecutorService();
+        this.jaxrsExecutorService = MoreExecutors.listeningDecorator(createJaxrsExecutorService());
     }
 
 
@@ -58,7 +61,7 @@ public class JaxrsExecutors {
 
     }
 
-    public ExecutorService getJaxrsExecutorService() {
+    public ListeningExecutorService getJaxrsExecutorService() {
         return jaxrsExecutorService;
     }
 
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.jaxrs.json;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -39,6 +40,7 @@ import org.killbill.billing.util.audit.AuditLog;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.collect.ImmutableList;
 import io.swagger.annotations.ApiModel;
 
@@ -76,6 +78,60 @@ public class AccountTimelineJson {
 
         this.invoices = new LinkedList<InvoiceJson>();
         // Extract the credits from the invoices first
+        final List<InvoiceItemJson> credits = extractCredits(invoices, accountAuditLogs);
+        // Create now the invoice json objects
+        for (final Invoice invoice : invoices) {
+            this.invoices.add(toInvoiceJson(invoice, credits, bundles, accountAuditLogs));
+        }
+
+        this.payments = new LinkedList<InvoicePaymentJson>();
+        for (final Payment payment : payments) {
+            final UUID invoiceId = JaxRsResourceBase.getInvoiceId(invoicePayments, payment);
+            this.payments.add(new InvoicePaymentJson(payment, invoiceId, accountAuditLogs));
+        }
+    }
+
+    /**
+     * Write the timeline (same format as AccountTimelineJson) section by section, instead of building the whole JSON tree in memory first.
+     * Sections must be written in order (account, bundles, invoices, payments), followed by {@link #writeEnd}.
+     */
+    public static void writeAccount(final JsonGenerator generator, final Account account, final AccountAuditLogs accountAuditLogs) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("account", new AccountJson(account, null, null, accountAuditLogs));
+    }
+
+    // Bundles are converted beforehand, since the conversion can fail (catalog lookups)
+    public static void writeBundles(final JsonGenerator generator, final Iterable<BundleJson> bundles) throws IOException {
+        generator.writeArrayFieldStart("bundles");
+        for (final BundleJson bundle : bundles) {
+            generator.writeObject(bundle);
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writeInvoices(final JsonGenerator generator, final List<Invoice> invoices, final List<SubscriptionBundle> bundles, final AccountAuditLogs accountAuditLogs) throws IOException {
+        generator.writeArrayFieldStart("invoices");
+        final List<InvoiceItemJson> credits = extractCredits(invoices, accountAuditLogs);
+        for (final Invoice invoice : invoices) {
+            generator.writeObject(toInvoiceJson(invoice, credits, bundles, accountAuditLogs));
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writePayments(final JsonGenerator generator, final List<Payment> payments, final List<InvoicePayment> invoicePayments, final AccountAuditLogs accountAuditLogs) throws IOException {
+        generator.writeArrayFieldStart("payments");
+        for (final Payment payment : payments) {
+            final UUID invoiceId = JaxRsResourceBase.getInvoiceId(invoicePayments, payment);
+            generator.writeObject(new InvoicePaymentJson(payment, invoiceId, accountAuditLogs));
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writeEnd(final JsonGenerator generator) throws IOException {
+        generator.writeEndObject();
+    }
+
+    private static List<InvoiceItemJson> extractCredits(final List<Invoice> invoices, final AccountAuditLogs accountAuditLogs) {
         final List<InvoiceItemJson> credits = new ArrayList<InvoiceItemJson>();
         for (final Invoice invoice : invoices) {
             for (final InvoiceItem invoiceItem : invoice.getInvoiceItems()) {
@@ -85,20 +141,15 @@ public class AccountTimelineJson {
                 }
             }
         }
-        // Create now the invoice json objects
-        for (final Invoice invoice : invoices) {
-            final List<AuditLog> auditLogs = accountAuditLogs.getAuditLogsForInvoice(invoice.getId());
-            this.invoices.add(new InvoiceJson(invoice,
-                                              getBundleExternalKey(invoice, bundles),
-                                              credits,
-                                              auditLogs));
-        }
+        return credits;
+    }
 
-        this.payments = new LinkedList<InvoicePaymentJson>();
-        for (final Payment payment : payments) {
-            final UUID invoiceId = JaxRsResourceBase.getInvoiceId(invoicePayments, payment);
-            this.payments.add(new InvoicePaymentJson(payment, invoiceId, accountAuditLogs));
-        }
+    private static InvoiceJson toInvoiceJson(final Invoice invoice, final List<InvoiceItemJson> credits, final List<SubscriptionBundle> bundles, final AccountAuditLogs accountAuditLogs) {
+        final List<AuditLog> auditLogs = accountAuditLogs.getAuditLogsForInvoice(invoice.getId());
+        return new InvoiceJson(invoice,
+                               getBundleExternalKey(invoice, bundles),
+                               credits,
+                               auditLogs);
     }
 
     public AccountJson getAccount() {
@@ -177,7 +228,7 @@ public class AccountTimelineJson {
         return null;
     }
 
-    private String getBundleExternalKey(final Invoice invoice, final List<SubscriptionBundle> bundles) {
+    private static String getBundleExternalKey(final Invoice invoice, final List<SubscriptionBundle> bundles) {
         final Set<UUID> b = new HashSet<UUID>();
         for (final InvoiceItem cur : invoice.getInvoiceItems()) {
             b.add(cur.getBundleId());
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import org.killbill.billing.util.cache.CacheStats;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModel;
+
+@ApiModel(value="CacheStats")
+public class CacheStatsJson {
+
+    private final String cacheName;
+    private final Integer size;
+    private final Long hits;
+    private final Long misses;
+    private final Long evictions;
+    private final Long duplicateLoadsAvoided;
+    private final Long loads;
+    private final Double meanLoadTimeMs;
+    private final Double p95LoadTimeMs;
+    private final Double p99LoadTimeMs;
+    private final Double maxLoadTimeMs;
+
+    @JsonCreator
+    public CacheStatsJson(@JsonProperty("cacheName") final String cacheName,
+                          @JsonProperty("size") final Integer size,
+                          @JsonProperty("hits") final Long hits,
+                          @JsonProperty("misses") final Long misses,
+                          @JsonProperty("evictions") final Long evictions,
+                          @JsonProperty("duplicateLoadsAvoided") final Long duplicateLoadsAvoided,
+                          @JsonProperty("loads") final Long loads,
+                          @JsonProperty("meanLoadTimeMs") final Double meanLoadTimeMs,
+                          @JsonProperty("p95LoadTimeMs") final Double p95LoadTimeMs,
+                          @JsonProperty("p99LoadTimeMs") final Double p99LoadTimeMs,
+                          @JsonProperty("maxLoadTimeMs") final Double maxLoadTimeMs) {
+        this.cacheName = cacheName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.duplicateLoadsAvoided = duplicateLoadsAvoided;
+        this.loads = loads;
+        this.meanLoadTimeMs = meanLoadTimeMs;
+        this.p95LoadTimeMs = p95LoadTimeMs;
+        this.p99LoadTimeMs = p99LoadTimeMs;
+        this.maxLoadTimeMs = maxLoadTimeMs;
+    }
+
+    public CacheStatsJson(final CacheStats input) {
+        this(input.getCacheName(),
+             input.getSize(),
+             input.getHits(),
+             input.getMisses(),
+             input.getEvictions(),
+             input.getDuplicateLoadsAvoided(),
+             input.getLoads(),
+             input.getMeanLoadTimeMs(),
+             input.getP95LoadTimeMs(),
+             input.getP99LoadTimeMs(),
+             input.getMaxLoadTimeMs());
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public Long getHits() {
+        return hits;
+    }
+
+    public Long getMisses() {
+        return misses;
+    }
+
+    public Long getEvictions() {
+        return evictions;
+    }
+
+    public Long getDuplicateLoadsAvoided() {
+        return duplicateLoadsAvoided;
+    }
+
+    public Long getLoads() {
+        return loads;
+    }
+
+    public Double getMeanLoadTimeMs() {
+        return meanLoadTimeMs;
+    }
+
+    public Double getP95LoadTimeMs() {
+        return p95LoadTimeMs;
+    }
+
+    public Double getP99LoadTimeMs() {
+        return p99LoadTimeMs;
+    }
+
+    public Double getMaxLoadTimeMs() {
+        return maxLoadTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CacheStatsJson{");
+        sb.append("cacheName='").append(cacheName).append('\'');
+        sb.append(", size=").append(size);
+        sb.append(", hits=").append(hits);
+        sb.append(", misses=").append(misses);
+        sb.append(", evictions=").append(evictions);
+        sb.append(", duplicateLoadsAvoided=").append(duplicateLoadsAvoided);
+        sb.append(", loads=").append(loads);
+        sb.append(", meanLoadTimeMs=").append(meanLoadTimeMs);
+        sb.append(", p95LoadTimeMs=").append(p95LoadTimeMs);
+        sb.append(", p99LoadTimeMs=").append(p99LoadTimeMs);
+        sb.append(", maxLoadTimeMs=").append(maxLoadTimeMs);
+        sb.append('}');
+        return sb.toString();
+    }
+}
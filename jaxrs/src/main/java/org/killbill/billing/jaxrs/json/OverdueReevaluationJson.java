@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModel;
+
+@ApiModel(value="OverdueReevaluation")
+public class OverdueReevaluationJson {
+
+    private final String state;
+    private final DateTime startDate;
+    private final DateTime endDate;
+    private final Long fromAccountRecordId;
+    private final Long lastAccountRecordId;
+    private final Long nbAccountsProcessed;
+    private final Long nbAccountsDeferred;
+    private final Long nbErrors;
+    private final List<String> lastErrors;
+    private final Double accountsPerSecond;
+
+    @JsonCreator
+    public OverdueReevaluationJson(@JsonProperty("state") final String state,
+                                   @JsonProperty("startDate") final DateTime startDate,
+                                   @JsonProperty("endDate") final DateTime endDate,
+                                   @JsonProperty("fromAccountRecordId") final Long fromAccountRecordId,
+                                   @JsonProperty("lastAccountRecordId") final Long lastAccountRecordId,
+                                   @JsonProperty("nbAccountsProcessed") final Long nbAccountsProcessed,
+                                   @JsonProperty("nbAccountsDeferred") final Long nbAccountsDeferred,
+                                   @JsonProperty("nbErrors") final Long nbErrors,
+                                   @JsonProperty("lastErrors") final List<String> lastErrors,
+                                   @JsonProperty("accountsPerSecond") final Double accountsPerSecond) {
+        this.state = state;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.fromAccountRecordId = fromAccountRecordId;
+        this.lastAccountRecordId = lastAccountRecordId;
+        this.nbAccountsProcessed = nbAccountsProcessed;
+        this.nbAccountsDeferred = nbAccountsDeferred;
+        this.nbErrors = nbErrors;
+        this.lastErrors = lastErrors;
+        this.accountsPerSecond = accountsPerSecond;
+    }
+
+    public OverdueReevaluationJson(final OverdueReevaluationStatus input) {
+        this(input.getState().toString(),
+             input.getStartDate(),
+             input.getEndDate(),
+             input.getFromAccountRecordId(),
+             input.getLastAccountRecordId(),
+             input.getNbAccountsProcessed(),
+             input.getNbAccountsDeferred(),
+             input.getNbErrors(),
+             input.getLastErrors(),
+             input.getAccountsPerSecond());
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    public DateTime getEndDate() {
+        return endDate;
+    }
+
+    public Long getFromAccountRecordId() {
+        return fromAccountRecordId;
+    }
+
+    public Long getLastAccountRecordId() {
+        return lastAccountRecordId;
+    }
+
+    public Long getNbAccountsProcessed() {
+        return nbAccountsProcessed;
+    }
+
+    public Long getNbAccountsDeferred() {
+        return nbAccountsDeferred;
+    }
+
+    public Long getNbErrors() {
+        return nbErrors;
+    }
+
+    public List<String> getLastErrors() {
+        return lastErrors;
+    }
+
+    public Double getAccountsPerSecond() {
+        return accountsPerSecond;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModel;
+
+@ApiModel(value="SubscriptionUsageRecordResult")
+public class SubscriptionUsageRecordResultJson {
+
+    private final UUID subscriptionId;
+    private final String trackingId;
+    private final Boolean isAccepted;
+    private final Integer errorCode;
+    private final String errorMessage;
+
+    @JsonCreator
+    public SubscriptionUsageRecordResultJson(@JsonProperty("subscriptionId") final UUID subscriptionId,
+                                             @JsonProperty("trackingId") @Nullable final String trackingId,
+                                             @JsonProperty("isAccepted") final Boolean isAccepted,
+                                             @JsonProperty("errorCode") @Nullable final Integer errorCode,
+                                             @JsonProperty("errorMessage") @Nullable final String errorMessage) {
+        this.subscriptionId = subscriptionId;
+        this.trackingId = trackingId;
+        this.isAccepted = isAccepted;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public SubscriptionUsageRecordResultJson(final SubscriptionUsageRecordResult input) {
+        this(input.getSubscriptionId(),
+             input.getTrackingId(),
+             input.isAccepted(),
+             input.getErrorCode() != null ? input.getErrorCode().getCode() : null,
+             input.getErrorMessage());
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    @JsonProperty("isAccepted")
+    public Boolean isAccepted() {
+        return isAccepted;
+    }
+
+    public Integer getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("SubscriptionUsageRecordResultJson{");
+        sb.append("subscriptionId=").append(subscriptionId);
+        sb.append(", trackingId='").append(trackingId).append('\'');
+        sb.append(", isAccepted=").append(isAccepted);
+        sb.append(", errorCode=").append(errorCode);
+        sb.append(", errorMessage='").append(errorMessage).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.killbill.billing.jaxrs.resources;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
@@ -30,7 +32,6 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -48,8 +49,10 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.joda.time.DateTime;
@@ -62,6 +65,7 @@ import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountData;
 import org.killbill.billing.account.api.AccountEmail;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.Currency;
@@ -76,6 +80,7 @@ import org.killbill.billing.entitlement.api.SubscriptionApiException;
 import org.killbill.billing.entitlement.api.SubscriptionBundle;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.api.InvoicePayment;
@@ -105,6 +110,7 @@ import org.killbill.billing.payment.api.InvoicePaymentApi;
 import org.killbill.billing.payment.api.Payment;
 import org.killbill.billing.payment.api.PaymentApi;
 import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentInternalApi;
 import org.killbill.billing.payment.api.PaymentMethod;
 import org.killbill.billing.payment.api.PaymentOptions;
 import org.killbill.billing.payment.api.PaymentTransaction;
@@ -136,6 +142,8 @@ import org.killbill.commons.metrics.TimedResource;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -143,6 +151,11 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.swagger.annotations.Api;
@@ -168,6 +181,9 @@ public class AccountResource extends JaxRsResourceBase {
     private final JaxrsConfig jaxrsConfig;
     private final RecordIdApi recordIdApi;
     private final NotificationQueueService notificationQueueService;
+    private final PaymentInternalApi paymentInternalApi;
+    private final InvoiceInternalApi invoiceInternalApi;
+    private final AuditInternalApi auditInternalApi;
 
     @Inject
     public AccountResource(final JaxrsUriBuilder uriBuilder,
@@ -185,7 +201,10 @@ public class AccountResource extends JaxRsResourceBase {
                            final JaxrsConfig jaxrsConfig,
                            final Context context,
                            final RecordIdApi recordIdApi,
-                           final NotificationQueueService notificationQueueService) {
+                           final NotificationQueueService notificationQueueService,
+                           final PaymentInternalApi paymentInternalApi,
+                           final InvoiceInternalApi invoiceInternalApi,
+                           final AuditInternalApi auditInternalApi) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountApi, paymentApi, invoicePaymentApi, subscriptionApi, clock, context);
         this.subscriptionApi = subscriptionApi;
         this.invoiceApi = invoiceApi;
@@ -195,6 +214,9 @@ public class AccountResource extends JaxRsResourceBase {
         this.jaxrsConfig = jaxrsConfig;
         this.recordIdApi = recordIdApi;
         this.notificationQueueService = notificationQueueService;
+        this.paymentInternalApi = paymentInternalApi;
+        this.invoiceInternalApi = invoiceInternalApi;
+        this.auditInternalApi = auditInternalApi;
     }
 
     @TimedResource
@@ -485,16 +507,29 @@ public class AccountResource extends JaxRsResourceBase {
     @Produces(APPLICATION_JSON)
     @ApiOperation(value = "Retrieve account timeline", response = AccountTimelineJson.class)
     @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid account id supplied"),
-                           @ApiResponse(code = 404, message = "Account not found")})
+                           @ApiResponse(code = 404, message = "Account not found"),
+                           @ApiResponse(code = 503, message = "Timeout while retrieving the timeline in parallel")})
     public Response getAccountTimeline(@PathParam("accountId") final UUID accountId,
                                        @QueryParam(QUERY_PARALLEL) @DefaultValue("false") final Boolean parallel,
+                                       @QueryParam(QUERY_CALL_TIMEOUT) final Long timeoutSec,
+                                       @QueryParam(QUERY_START_DATE) final String startDateStr,
+                                       @QueryParam(QUERY_END_DATE) final String endDateStr,
                                        @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                        @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException, PaymentApiException, SubscriptionApiException, InvoiceApiException, CatalogApiException {
+        // Deadline of the parallel retrieval, from the beginning of the request (defaults to the global jaxrs timeout)
+        final long deadlineMs = System.currentTimeMillis() + (timeoutSec != null ? TimeUnit.SECONDS.toMillis(timeoutSec) : jaxrsConfig.getJaxrsTimeout().getMillis());
 
         final TenantContext tenantContext = context.createTenantContextWithAccountId(accountId, request);
 
         final Account account = accountUserApi.getAccountById(accountId, tenantContext);
 
+        // Optional window, used by clients to page through the history: every source is then restricted to that window and streamed (the parallel flag is ignored)
+        final LocalDate startDate = startDateStr != null ? LOCAL_DATE_FORMATTER.parseLocalDate(startDateStr) : null;
+        final LocalDate endDate = endDateStr != null ? LOCAL_DATE_FORMATTER.parseLocalDate(endDateStr) : null;
+        if (startDate != null || endDate != null) {
+            return Response.status(Status.OK).entity(streamAccountTimeline(account, startDate, endDate, auditMode, tenantContext)).build();
+        }
+
         final Callable<List<SubscriptionBundle>> bundlesCallable = new Callable<List<SubscriptionBundle>>() {
             @Override
             public List<SubscriptionBundle> call() throws Exception {
@@ -535,28 +570,32 @@ public class AccountResource extends JaxRsResourceBase {
         AccountAuditLogs accountAuditLogs = null;
 
         if (parallel) {
-            final ExecutorService executor = jaxrsExecutors.getJaxrsExecutorService();
-            final Future<List<SubscriptionBundle>> futureBundlesCallable = executor.submit(bundlesCallable);
-            final Future<List<Invoice>> futureInvoicesCallable = executor.submit(invoicesCallable);
-            final Future<List<InvoicePayment>> futureInvoicePaymentsCallable = executor.submit(invoicePaymentsCallable);
-            final Future<List<Payment>> futurePaymentsCallable = executor.submit(paymentsCallable);
-            final Future<AccountAuditLogs> futureAuditsCallable = executor.submit(auditsCallable);
-            final ImmutableList<Future> toBeCancelled = ImmutableList.<Future>of(futureBundlesCallable, futureInvoicesCallable, futureInvoicePaymentsCallable, futurePaymentsCallable, futureAuditsCallable);
-            final int timeoutMsec = 100;
-
-            final long ini = System.currentTimeMillis();
-            do {
-                bundles = (bundles == null) ? waitOnFutureAndHandleTimeout("bundles", futureBundlesCallable, timeoutMsec, toBeCancelled) : bundles;
-                invoices = (invoices == null) ? waitOnFutureAndHandleTimeout("invoices", futureInvoicesCallable, timeoutMsec, toBeCancelled) : invoices;
-                invoicePayments = (invoicePayments == null) ? waitOnFutureAndHandleTimeout("invoicePayments", futureInvoicePaymentsCallable, timeoutMsec, toBeCancelled) : invoicePayments;
-                payments = (payments == null) ? waitOnFutureAndHandleTimeout("payments", futurePaymentsCallable, timeoutMsec, toBeCancelled) : payments;
-                accountAuditLogs = (accountAuditLogs == null) ? waitOnFutureAndHandleTimeout("accountAuditLogs", futureAuditsCallable, timeoutMsec, toBeCancelled) : accountAuditLogs;
-            } while ((System.currentTimeMillis() - ini < jaxrsConfig.getJaxrsTimeout().getMillis()) &&
-                     (bundles == null || invoices == null || invoicePayments == null || payments == null || accountAuditLogs == null));
-
-            if (bundles == null || invoices == null || invoicePayments == null || payments == null || accountAuditLogs == null) {
-                Response.status(Status.SERVICE_UNAVAILABLE).build();
+            final ListeningExecutorService executor = jaxrsExecutors.getJaxrsExecutorService();
+            final ListenableFuture<List<SubscriptionBundle>> futureBundlesCallable = executor.submit(bundlesCallable);
+            final ListenableFuture<List<Invoice>> futureInvoicesCallable = executor.submit(invoicesCallable);
+            final ListenableFuture<List<InvoicePayment>> futureInvoicePaymentsCallable = executor.submit(invoicePaymentsCallable);
+            final ListenableFuture<List<Payment>> futurePaymentsCallable = executor.submit(paymentsCallable);
+            final ListenableFuture<AccountAuditLogs> futureAuditsCallable = executor.submit(auditsCallable);
+            final List<ListenableFuture<?>> futures = ImmutableList.<ListenableFuture<?>>of(futureBundlesCallable, futureInvoicesCallable, futureInvoicePaymentsCallable, futurePaymentsCallable, futureAuditsCallable);
+
+            try {
+                awaitAllOrCancel(futures, deadlineMs - System.currentTimeMillis());
+            } catch (final TimeoutException e) {
+                log.warn("Timeout while retrieving timeline for accountId='{}'", accountId);
+                return Response.status(Status.SERVICE_UNAVAILABLE).build();
+            } catch (final InterruptedException e) {
+                log.warn("InterruptedException while retrieving timeline for accountId='{}'", accountId, e);
+                handleCallableException(e);
+            } catch (final ExecutionException e) {
+                log.warn("ExecutionException while retrieving timeline for accountId='{}'", accountId, e);
+                handleCallableException(e.getCause());
             }
+
+            bundles = Futures.getUnchecked(futureBundlesCallable);
+            invoices = Futures.getUnchecked(futureInvoicesCallable);
+            invoicePayments = Futures.getUnchecked(futureInvoicePaymentsCallable);
+            payments = Futures.getUnchecked(futurePaymentsCallable);
+            accountAuditLogs = Futures.getUnchecked(futureAuditsCallable);
         } else {
             invoices = runCallable("invoices", invoicesCallable);
             payments = runCallable("payments", paymentsCallable);
@@ -569,27 +608,77 @@ public class AccountResource extends JaxRsResourceBase {
         return Response.status(Status.OK).entity(json).build();
     }
 
-    private <T> T waitOnFutureAndHandleTimeout(final String logSuffix, final Future<T> future, final long timeoutMsec, final Iterable<Future> toBeCancelled) throws PaymentApiException, AccountApiException, InvoiceApiException, SubscriptionApiException {
-        try {
-            return waitOnFutureAndHandleTimeout(future, timeoutMsec);
-        } catch (final InterruptedException e) {
-            log.warn("InterruptedException while retrieving {}", logSuffix, e);
-            handleCallableException(e, toBeCancelled);
-        } catch (final ExecutionException e) {
-            log.warn("ExecutionException while retrieving {}", logSuffix, e);
-            handleCallableException(e.getCause(), toBeCancelled);
+    private StreamingOutput streamAccountTimeline(final Account account,
+                                                  @Nullable final LocalDate startDate,
+                                                  @Nullable final LocalDate endDate,
+                                                  final AuditMode auditMode,
+                                                  final TenantContext tenantContext) throws SubscriptionApiException, PaymentApiException, CatalogApiException {
+        // Invoices are windowed on their target date, payments on their transactions effective date and audit logs on their creation date
+        final DateTime fromDate = startDate != null ? startDate.toDateTimeAtStartOfDay(account.getTimeZone()) : null;
+        final DateTime upToDate = endDate != null ? endDate.plusDays(1).toDateTimeAtStartOfDay(account.getTimeZone()) : null;
+
+        // Everything that can fail is loaded before the response is committed, so that failures are reported with a proper status
+        // instead of a truncated body: the window bounds what is held in memory, only the JSON tree of the timeline isn't built
+        final AccountAuditLogs accountAuditLogs = auditInternalApi.getAccountAuditLogsWithinDates(account.getId(), fromDate, upToDate, auditMode.getLevel(), tenantContext);
+
+        // Bundles are still rebuilt from the account entitlement state: only the ones active within the window are returned
+        // (the full list is kept to resolve the bundle external keys of the invoice items)
+        final List<SubscriptionBundle> bundles = subscriptionApi.getSubscriptionBundlesForAccountId(account.getId(), tenantContext);
+        final List<BundleJson> bundlesJson = new LinkedList<BundleJson>();
+        for (final SubscriptionBundle bundle : filterBundlesInWindow(bundles, startDate, endDate)) {
+            bundlesJson.add(new BundleJson(bundle, account.getCurrency(), accountAuditLogs));
         }
 
-        // Never reached
-        return null;
+        final List<Invoice> invoices = invoiceApi.getInvoicesByAccount(account.getId(), startDate, endDate, false, tenantContext);
+
+        final List<Payment> payments = paymentInternalApi.getAccountPaymentsWithinDates(account.getId(), fromDate, upToDate, false, tenantContext);
+        final Collection<UUID> paymentIds = Collections2.<Payment, UUID>transform(payments,
+                                                                                 new Function<Payment, UUID>() {
+                                                                                     @Override
+                                                                                     public UUID apply(final Payment payment) {
+                                                                                         return payment.getId();
+                                                                                     }
+                                                                                 });
+        final List<InvoicePayment> invoicePayments = invoiceInternalApi.getInvoicePaymentsByPaymentIds(account.getId(), paymentIds, tenantContext);
+
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                final JsonGenerator generator = mapper.getFactory().createGenerator(output);
+                generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+                try {
+                    AccountTimelineJson.writeAccount(generator, account, accountAuditLogs);
+                    AccountTimelineJson.writeBundles(generator, bundlesJson);
+                    generator.flush();
+
+                    AccountTimelineJson.writeInvoices(generator, invoices, bundles, accountAuditLogs);
+                    generator.flush();
+
+                    AccountTimelineJson.writePayments(generator, payments, invoicePayments, accountAuditLogs);
+                    AccountTimelineJson.writeEnd(generator);
+                } finally {
+                    generator.close();
+                }
+            }
+        };
     }
 
-    private <T> T waitOnFutureAndHandleTimeout(final Future<T> future, final long timeoutMsec) throws ExecutionException, InterruptedException {
-        try {
-            return future.get(timeoutMsec, TimeUnit.MILLISECONDS);
-        } catch (final TimeoutException e) {
-            return null;
-        }
+    private Iterable<SubscriptionBundle> filterBundlesInWindow(final List<SubscriptionBundle> bundles, @Nullable final LocalDate startDate, @Nullable final LocalDate endDate) {
+        return Iterables.<SubscriptionBundle>filter(bundles,
+                                                    new Predicate<SubscriptionBundle>() {
+                                                        @Override
+                                                        public boolean apply(final SubscriptionBundle bundle) {
+                                                            for (final Subscription subscription : bundle.getSubscriptions()) {
+                                                                final LocalDate subscriptionStartDate = subscription.getEffectiveStartDate();
+                                                                final LocalDate subscriptionEndDate = subscription.getEffectiveEndDate();
+                                                                if ((endDate == null || subscriptionStartDate == null || subscriptionStartDate.compareTo(endDate) <= 0) &&
+                                                                    (startDate == null || subscriptionEndDate == null || subscriptionEndDate.compareTo(startDate) >= 0)) {
+                                                                    return true;
+                                                                }
+                                                            }
+                                                            return false;
+                                                        }
+                                                    });
     }
 
     private <T> T runCallable(final String logSuffix, final Callable<T> callable) throws PaymentApiException, AccountApiException, InvoiceApiException, SubscriptionApiException {
@@ -604,11 +693,41 @@ public class AccountResource extends JaxRsResourceBase {
         return null;
     }
 
-    private void handleCallableException(final Throwable causeOrException, final Iterable<Future> toBeCancelled) throws AccountApiException, SubscriptionApiException, PaymentApiException, InvoiceApiException {
-        for (final Future f : toBeCancelled) {
-            f.cancel(true);
+    // Waits until all the futures are done: as soon as one of them fails, or when the timeout expires (or the wait is interrupted), the others are cancelled
+    @VisibleForTesting
+    static void awaitAllOrCancel(final List<ListenableFuture<?>> futures, final long timeoutMs) throws InterruptedException, ExecutionException, TimeoutException {
+        // Created first, so that it records the original failure before the others are cancelled
+        final ListenableFuture<List<Object>> futureAll = Futures.<Object>allAsList(futures);
+
+        final FutureCallback<Object> cancelOthersOnFailure = new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(@Nullable final Object result) {
+            }
+
+            @Override
+            public void onFailure(final Throwable t) {
+                cancelAll(futures);
+            }
+        };
+        for (final ListenableFuture<?> future : futures) {
+            Futures.addCallback(future, cancelOthersOnFailure, MoreExecutors.directExecutor());
+        }
+
+        boolean success = false;
+        try {
+            futureAll.get(Math.max(timeoutMs, 0), TimeUnit.MILLISECONDS);
+            success = true;
+        } finally {
+            if (!success) {
+                cancelAll(futures);
+            }
+        }
+    }
+
+    private static void cancelAll(final Iterable<ListenableFuture<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
         }
-        handleCallableException(causeOrException);
     }
 
     private void handleCallableException(final Throwable causeOrException) throws AccountApiException, SubscriptionApiException, PaymentApiException, InvoiceApiException {
@@ -20,6 +20,7 @@ package org.killbill.billing.jaxrs.resources;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
@@ -54,8 +55,12 @@ import org.killbill.billing.catalog.api.VersionedCatalog;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceUserApi;
 import org.killbill.billing.jaxrs.json.AdminPaymentJson;
+import org.killbill.billing.jaxrs.json.CacheStatsJson;
+import org.killbill.billing.jaxrs.json.OverdueReevaluationJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluator;
 import org.killbill.billing.payment.api.AdminPaymentApi;
 import org.killbill.billing.payment.api.InvoicePaymentApi;
 import org.killbill.billing.payment.api.Payment;
@@ -68,6 +73,7 @@ import org.killbill.billing.server.healthchecks.KillbillHealthcheck;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.usage.InternalUserApi;
 import org.killbill.billing.util.api.AuditUserApi;
 import org.killbill.billing.util.api.CustomFieldUserApi;
 import org.killbill.billing.util.api.RecordIdApi;
@@ -75,6 +81,7 @@ import org.killbill.billing.util.api.TagUserApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheStats;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.config.tenant.PerTenantConfig;
@@ -121,6 +128,8 @@ public class AdminResource extends JaxRsResourceBase {
     private final PersistentBus persistentBus;
     private final NotificationQueueService notificationQueueService;
     private final KillbillHealthcheck killbillHealthcheck;
+    private final OverdueReevaluator overdueReevaluator;
+    private final InternalUserApi internalUserApi;
 
     @Inject
     public AdminResource(final JaxrsUriBuilder uriBuilder,
@@ -138,6 +147,8 @@ public class AdminResource extends JaxRsResourceBase {
                          final PersistentBus persistentBus,
                          final NotificationQueueService notificationQueueService,
                          final KillbillHealthcheck killbillHealthcheck,
+                         final OverdueReevaluator overdueReevaluator,
+                         final InternalUserApi internalUserApi,
                          final Clock clock,
                          final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, invoicePaymentApi, null, clock, context);
@@ -149,6 +160,8 @@ public class AdminResource extends JaxRsResourceBase {
         this.persistentBus = persistentBus;
         this.notificationQueueService = notificationQueueService;
         this.killbillHealthcheck = killbillHealthcheck;
+        this.overdueReevaluator = overdueReevaluator;
+        this.internalUserApi = internalUserApi;
     }
 
     @GET
@@ -325,6 +338,83 @@ public class AdminResource extends JaxRsResourceBase {
                        .build();
     }
 
+    @POST
+    @Path("/" + OVERDUE)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Re-evaluate the overdue state of all accounts on this node (e.g. after an overdue config upload)", response = OverdueReevaluationJson.class)
+    @ApiResponses(value = {@ApiResponse(code = 202, message = "Re-evaluation started"),
+                           @ApiResponse(code = 409, message = "Re-evaluation already running on this node")})
+    public Response triggerOverdueReevaluation(@QueryParam(QUERY_FROM_ACCOUNT_RECORD_ID) @DefaultValue("0") final Long fromAccountRecordId,
+                                               @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                               @HeaderParam(HDR_REASON) final String reason,
+                                               @HeaderParam(HDR_COMMENT) final String comment,
+                                               @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
+        final OverdueReevaluationStatus status = overdueReevaluator.start(fromAccountRecordId, callContext);
+        if (status == null) {
+            return Response.status(Status.CONFLICT).entity(new OverdueReevaluationJson(overdueReevaluator.getStatus(callContext))).build();
+        }
+        return Response.status(Status.ACCEPTED).entity(new OverdueReevaluationJson(status)).build();
+    }
+
+    @GET
+    @Path("/" + OVERDUE)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Retrieve the progress of the last overdue re-evaluation on this node", response = OverdueReevaluationJson.class)
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Successful operation"),
+                           @ApiResponse(code = 404, message = "No re-evaluation found")})
+    public Response getOverdueReevaluation(@javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createTenantContextNoAccountId(request);
+        final OverdueReevaluationStatus status = overdueReevaluator.getStatus(tenantContext);
+        if (status == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.status(Status.OK).entity(new OverdueReevaluationJson(status)).build();
+    }
+
+    @DELETE
+    @Path("/" + OVERDUE)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Stop the running overdue re-evaluation on this node, once its current batch of accounts is processed")
+    @ApiResponses(value = {@ApiResponse(code = 204, message = "Successful operation"),
+                           @ApiResponse(code = 404, message = "No re-evaluation found")})
+    public Response stopOverdueReevaluation(@javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createTenantContextNoAccountId(request);
+        if (overdueReevaluator.stop(tenantContext) == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.status(Status.NO_CONTENT).build();
+    }
+
+    @PUT
+    @Path("/" + USAGES + "/{accountId:" + UUID_PATTERN + "}/" + AGGREGATES)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Rebuild the daily usage aggregates of an account from its raw usage (e.g. after a manual fix of the usage records)")
+    @ApiResponses(value = {@ApiResponse(code = 204, message = "Successful operation"),
+                           @ApiResponse(code = 400, message = "Invalid account id supplied")})
+    public Response rebuildUsageAggregates(@PathParam("accountId") final UUID accountId,
+                                           @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                           @HeaderParam(HDR_REASON) final String reason,
+                                           @HeaderParam(HDR_COMMENT) final String comment,
+                                           @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final CallContext callContext = context.createCallContextWithAccountId(accountId, createdBy, reason, comment, request);
+        internalUserApi.rebuildUsageAggregates(accountId, callContext);
+        return Response.status(Status.NO_CONTENT).build();
+    }
+
+    @GET
+    @Path("/" + CACHE)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Retrieve the hit, miss, eviction, load time and size metrics of each cache", response = CacheStatsJson.class, responseContainer = "List")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Successful operation")})
+    public Response getCacheStats(@javax.ws.rs.core.Context final HttpServletRequest request) {
+        final List<CacheStatsJson> result = new ArrayList<CacheStatsJson>();
+        for (final CacheStats cacheStats : cacheControllerDispatcher.getStats()) {
+            result.add(new CacheStatsJson(cacheStats));
+        }
+        return Response.status(Status.OK).entity(result).build();
+    }
+
     @DELETE
     @Path("/" + CACHE)
     @Produces(APPLICATION_JSON)
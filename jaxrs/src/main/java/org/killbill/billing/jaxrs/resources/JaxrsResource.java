@@ -82,6 +82,7 @@ public interface JaxrsResource {
     String QUERY_ENTITLEMENT_POLICY = "entitlementPolicy";
     String QUERY_SEARCH_OFFSET = "offset";
     String QUERY_SEARCH_LIMIT = "limit";
+    String QUERY_FROM_ACCOUNT_RECORD_ID = "fromAccountRecordId";
     String QUERY_ENTITLEMENT_EFFECTIVE_FROM_DT = "effectiveFromDate";
     String QUERY_FORCE_NEW_BCD_WITH_PAST_EFFECTIVE_DATE = "forceNewBcdWithPastEffectiveDate";
 
@@ -240,6 +241,7 @@ public interface JaxrsResource {
 
     String USAGES = "usages";
     String USAGES_PATH = PREFIX + "/" + USAGES;
+    String AGGREGATES = "aggregates";
 
     String EXPORT = "export";
     String EXPORT_PATH = PREFIX + "/" + EXPORT;
@@ -17,7 +17,11 @@
 
 package org.killbill.billing.jaxrs.resources;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -35,8 +39,10 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
 import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.entitlement.EntitlementInternalApi;
 import org.killbill.billing.entitlement.api.Entitlement;
 import org.killbill.billing.entitlement.api.EntitlementApi;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
@@ -44,10 +50,13 @@ import org.killbill.billing.jaxrs.json.RolledUpUsageJson;
 import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson;
 import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UnitUsageRecordJson;
 import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordResultJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.InvoicePaymentApi;
 import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
 import org.killbill.billing.usage.api.RolledUpUsage;
 import org.killbill.billing.usage.api.SubscriptionUsageRecord;
 import org.killbill.billing.usage.api.UsageApiException;
@@ -80,7 +89,9 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 public class UsageResource extends JaxRsResourceBase {
 
     private final UsageUserApi usageUserApi;
+    private final InternalUserApi internalUserApi;
     private final EntitlementApi entitlementApi;
+    private final EntitlementInternalApi entitlementInternalApi;
 
     @Inject
     public UsageResource(final JaxrsUriBuilder uriBuilder,
@@ -89,14 +100,18 @@ public class UsageResource extends JaxRsResourceBase {
                          final AuditUserApi auditUserApi,
                          final AccountUserApi accountUserApi,
                          final UsageUserApi usageUserApi,
+                         final InternalUserApi internalUserApi,
                          final PaymentApi paymentApi,
                          final InvoicePaymentApi invoicePaymentApi,
                          final EntitlementApi entitlementApi,
+                         final EntitlementInternalApi entitlementInternalApi,
                          final Clock clock,
                          final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, invoicePaymentApi, null, clock, context);
         this.usageUserApi = usageUserApi;
+        this.internalUserApi = internalUserApi;
         this.entitlementApi = entitlementApi;
+        this.entitlementInternalApi = entitlementInternalApi;
     }
 
     @TimedResource
@@ -114,19 +129,7 @@ public class UsageResource extends JaxRsResourceBase {
                                 @javax.ws.rs.core.Context final UriInfo uriInfo) throws EntitlementApiException,
                                                                                         AccountApiException,
                                                                                         UsageApiException {
-        verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson body should be specified");
-        verifyNonNullOrEmpty(json.getSubscriptionId(), "SubscriptionUsageRecordJson subscriptionId needs to be set",
-                             json.getUnitUsageRecords(), "SubscriptionUsageRecordJson unitUsageRecords needs to be set");
-        Preconditions.checkArgument(!json.getUnitUsageRecords().isEmpty());
-        for (final UnitUsageRecordJson unitUsageRecordJson : json.getUnitUsageRecords()) {
-            verifyNonNullOrEmpty(unitUsageRecordJson.getUnitType(), "UnitUsageRecordJson unitType need to be set");
-            Preconditions.checkArgument(Iterables.size(unitUsageRecordJson.getUsageRecords()) > 0,
-                                        "UnitUsageRecordJson usageRecords must have at least one element.");
-            for (final UsageRecordJson usageRecordJson : unitUsageRecordJson.getUsageRecords()) {
-                verifyNonNull(usageRecordJson.getAmount(), "UsageRecordJson amount needs to be set");
-                verifyNonNull(usageRecordJson.getRecordDate(), "UsageRecordJson recordDate needs to be set");
-            }
-        }
+        verifySubscriptionUsageRecordJson(json);
         final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
         // Verify subscription exists..
         final Entitlement entitlement = entitlementApi.getEntitlementForId(json.getSubscriptionId(), callContext);
@@ -142,6 +145,76 @@ public class UsageResource extends JaxRsResourceBase {
         return Response.status(Status.CREATED).build();
     }
 
+    @TimedResource
+    @POST
+    @Path("/bulk")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Record usage for many subscriptions at once", response = SubscriptionUsageRecordResultJson.class, responseContainer = "List")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Successfully processed the usage records (see each result for its outcome)"),
+                           @ApiResponse(code = 400, message = "Invalid usage records")})
+    public Response recordUsages(final List<SubscriptionUsageRecordJson> json,
+                                 @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                 @HeaderParam(HDR_REASON) final String reason,
+                                 @HeaderParam(HDR_COMMENT) final String comment,
+                                 @javax.ws.rs.core.Context final HttpServletRequest request,
+                                 @javax.ws.rs.core.Context final UriInfo uriInfo) throws EntitlementApiException {
+        verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson list body should be specified");
+        for (final SubscriptionUsageRecordJson subscriptionUsageRecordJson : json) {
+            verifySubscriptionUsageRecordJson(subscriptionUsageRecordJson);
+        }
+        final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
+
+        // Same verification as for a single record, but all the subscriptions are looked up at once
+        final Set<UUID> subscriptionIds = new HashSet<UUID>();
+        for (final SubscriptionUsageRecordJson subscriptionUsageRecordJson : json) {
+            subscriptionIds.add(subscriptionUsageRecordJson.getSubscriptionId());
+        }
+        final Map<UUID, Entitlement> entitlements = entitlementInternalApi.getEntitlementsForIds(subscriptionIds, callContext);
+
+        final SubscriptionUsageRecordResultJson[] results = new SubscriptionUsageRecordResultJson[json.size()];
+        final List<SubscriptionUsageRecord> records = new ArrayList<SubscriptionUsageRecord>(json.size());
+        final List<Integer> recordIndexes = new ArrayList<Integer>(json.size());
+        for (int i = 0; i < json.size(); i++) {
+            final SubscriptionUsageRecordJson subscriptionUsageRecordJson = json.get(i);
+            final UUID subscriptionId = subscriptionUsageRecordJson.getSubscriptionId();
+            final Entitlement entitlement = entitlements.get(subscriptionId);
+            final LocalDate effectiveEndDate = entitlement == null ? null : entitlement.getEffectiveEndDate();
+            if (entitlement == null) {
+                results[i] = new SubscriptionUsageRecordResultJson(subscriptionId, subscriptionUsageRecordJson.getTrackingId(), false, ErrorCode.SUB_INVALID_SUBSCRIPTION_ID.getCode(), String.format(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID.getFormat(), subscriptionId));
+            } else if (effectiveEndDate != null && effectiveEndDate.compareTo(getHighestRecordDate(subscriptionUsageRecordJson.getUnitUsageRecords())) < 0) {
+                results[i] = new SubscriptionUsageRecordResultJson(subscriptionId, subscriptionUsageRecordJson.getTrackingId(), false, null, "Usage recorded after the subscription effective end date " + effectiveEndDate);
+            } else {
+                records.add(subscriptionUsageRecordJson.toSubscriptionUsageRecord());
+                recordIndexes.add(i);
+            }
+        }
+
+        if (!records.isEmpty()) {
+            final List<SubscriptionUsageRecordResult> recordResults = internalUserApi.recordRolledUpUsage(records, callContext);
+            for (int j = 0; j < recordResults.size(); j++) {
+                results[recordIndexes.get(j)] = new SubscriptionUsageRecordResultJson(recordResults.get(j));
+            }
+        }
+        return Response.status(Status.OK).entity(ImmutableList.<SubscriptionUsageRecordResultJson>copyOf(results)).build();
+    }
+
+    private void verifySubscriptionUsageRecordJson(final SubscriptionUsageRecordJson json) {
+        verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson body should be specified");
+        verifyNonNullOrEmpty(json.getSubscriptionId(), "SubscriptionUsageRecordJson subscriptionId needs to be set",
+                             json.getUnitUsageRecords(), "SubscriptionUsageRecordJson unitUsageRecords needs to be set");
+        Preconditions.checkArgument(!json.getUnitUsageRecords().isEmpty());
+        for (final UnitUsageRecordJson unitUsageRecordJson : json.getUnitUsageRecords()) {
+            verifyNonNullOrEmpty(unitUsageRecordJson.getUnitType(), "UnitUsageRecordJson unitType need to be set");
+            Preconditions.checkArgument(Iterables.size(unitUsageRecordJson.getUsageRecords()) > 0,
+                                        "UnitUsageRecordJson usageRecords must have at least one element.");
+            for (final UsageRecordJson usageRecordJson : unitUsageRecordJson.getUsageRecords()) {
+                verifyNonNull(usageRecordJson.getAmount(), "UsageRecordJson amount needs to be set");
+                verifyNonNull(usageRecordJson.getRecordDate(), "UsageRecordJson recordDate needs to be set");
+            }
+        }
+    }
+
     @VisibleForTesting
     LocalDate getHighestRecordDate(final List<UnitUsageRecordJson> records) {
         final Iterable<Iterable<LocalDate>> recordedDates = Iterables.transform(records, new Function<UnitUsageRecordJson, Iterable<LocalDate>>() {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.resources;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletRequest;
+import javax.ws.rs.core.Response;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.audit.AuditInternalApi;
+import org.killbill.billing.entitlement.api.SubscriptionApi;
+import org.killbill.billing.entitlement.api.SubscriptionBundle;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.invoice.api.InvoiceUserApi;
+import org.killbill.billing.jaxrs.JaxrsExecutors;
+import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.jaxrs.util.Context;
+import org.killbill.billing.payment.api.InvoicePaymentApi;
+import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentInternalApi;
+import org.killbill.billing.util.api.AuditUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.JaxrsConfig;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class TestAccountResource extends JaxrsTestSuiteNoDB {
+
+    private final UUID accountId = UUID.randomUUID();
+
+    private ListeningExecutorService executor;
+    private SubscriptionApi subscriptionApi;
+    private InvoiceUserApi invoiceUserApi;
+    private PaymentInternalApi paymentInternalApi;
+    private AccountResource accountResource;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(5));
+        final JaxrsExecutors jaxrsExecutors = Mockito.mock(JaxrsExecutors.class);
+        Mockito.when(jaxrsExecutors.getJaxrsExecutorService()).thenReturn(executor);
+        final JaxrsConfig jaxrsConfig = Mockito.mock(JaxrsConfig.class);
+        Mockito.when(jaxrsConfig.getJaxrsTimeout()).thenReturn(new TimeSpan("30s"));
+
+        final Context context = Mockito.mock(Context.class);
+        final TenantContext tenantContext = Mockito.mock(TenantContext.class);
+        Mockito.when(context.createTenantContextWithAccountId(Mockito.<UUID>any(), Mockito.<ServletRequest>any())).thenReturn(tenantContext);
+        final AccountUserApi accountUserApi = Mockito.mock(AccountUserApi.class);
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(accountId);
+        Mockito.when(accountUserApi.getAccountById(accountId, tenantContext)).thenReturn(account);
+
+        subscriptionApi = Mockito.mock(SubscriptionApi.class);
+        invoiceUserApi = Mockito.mock(InvoiceUserApi.class);
+        paymentInternalApi = Mockito.mock(PaymentInternalApi.class);
+        accountResource = new AccountResource(null, accountUserApi, invoiceUserApi, Mockito.mock(InvoicePaymentApi.class), Mockito.mock(PaymentApi.class), null,
+                                              Mockito.mock(AuditUserApi.class), null, subscriptionApi, null, null, jaxrsExecutors, jaxrsConfig, context, null, null,
+                                              paymentInternalApi, Mockito.mock(InvoiceInternalApi.class), Mockito.mock(AuditInternalApi.class));
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test(groups = "fast")
+    public void testParallelTimelineFailureCancelsOtherCalls() throws Exception {
+        final CountDownLatch bundlesInterrupted = blockBundlesUntilInterrupted();
+        Mockito.when(invoiceUserApi.getInvoicesByAccount(Mockito.eq(accountId), Mockito.anyBoolean(), Mockito.anyBoolean(), Mockito.<TenantContext>any()))
+               .thenThrow(new InvoiceApiException(ErrorCode.INVOICE_NOT_FOUND, accountId));
+
+        try {
+            accountResource.getAccountTimeline(accountId, true, null, null, null, new AuditMode("NONE"), null);
+            Assert.fail("Expected the invoices failure");
+        } catch (final InvoiceApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.INVOICE_NOT_FOUND.getCode());
+        }
+
+        // The bundles retrieval isn't left running
+        Assert.assertTrue(bundlesInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(groups = "fast")
+    public void testParallelTimelineTimeout() throws Exception {
+        final CountDownLatch bundlesInterrupted = blockBundlesUntilInterrupted();
+
+        // Per request deadline, much shorter than the jaxrs timeout
+        final long startMs = System.currentTimeMillis();
+        final Response response = accountResource.getAccountTimeline(accountId, true, 1L, null, null, new AuditMode("NONE"), null);
+        Assert.assertEquals(response.getStatus(), Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        Assert.assertTrue(System.currentTimeMillis() - startMs < 10000);
+
+        Assert.assertTrue(bundlesInterrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(groups = "fast")
+    public void testWindowedTimelineFailureBeforeStreaming() throws Exception {
+        Mockito.when(paymentInternalApi.getAccountPaymentsWithinDates(Mockito.eq(accountId), Mockito.<DateTime>any(), Mockito.<DateTime>any(), Mockito.anyBoolean(), Mockito.<TenantContext>any()))
+               .thenThrow(new PaymentApiException(ErrorCode.PAYMENT_NO_SUCH_PAYMENT, accountId));
+
+        // Reported as an error, rather than a 200 with a truncated body
+        try {
+            accountResource.getAccountTimeline(accountId, false, null, "2020-01-01", "2020-12-31", new AuditMode("NONE"), null);
+            Assert.fail("Expected the payments failure");
+        } catch (final PaymentApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.PAYMENT_NO_SUCH_PAYMENT.getCode());
+        }
+    }
+
+    private CountDownLatch blockBundlesUntilInterrupted() throws Exception {
+        final CountDownLatch bundlesInterrupted = new CountDownLatch(1);
+        Mockito.when(subscriptionApi.getSubscriptionBundlesForAccountId(Mockito.eq(accountId), Mockito.<TenantContext>any())).thenAnswer(new Answer<List<SubscriptionBundle>>() {
+            @Override
+            public List<SubscriptionBundle> answer(final InvocationOnMock invocation) throws Throwable {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    bundlesInterrupted.countDown();
+                    throw e;
+                }
+                return null;
+            }
+        });
+        return bundlesInterrupted;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.resources;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.jaxrs.json.OverdueReevaluationJson;
+import org.killbill.billing.jaxrs.util.Context;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus.State;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluator;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestAdminResource extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testOverdueReevaluation() throws Exception {
+        final CallContext callContext = Mockito.mock(CallContext.class);
+        final TenantContext tenantContext = Mockito.mock(TenantContext.class);
+        final Context context = Mockito.mock(Context.class);
+        Mockito.when(context.createCallContextNoAccountId(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.<HttpServletRequest>any())).thenReturn(callContext);
+        Mockito.when(context.createTenantContextNoAccountId(Mockito.<ServletRequest>any())).thenReturn(tenantContext);
+
+        final OverdueReevaluator overdueReevaluator = Mockito.mock(OverdueReevaluator.class);
+        final AdminResource adminResource = new AdminResource(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, overdueReevaluator, null, null, context);
+
+        // Nothing started yet on this node
+        Assert.assertEquals(adminResource.getOverdueReevaluation(null).getStatus(), Response.Status.NOT_FOUND.getStatusCode());
+        Assert.assertEquals(adminResource.stopOverdueReevaluation(null).getStatus(), Response.Status.NOT_FOUND.getStatusCode());
+
+        final OverdueReevaluationStatus runningStatus = createStatus(State.RUNNING);
+        Mockito.when(overdueReevaluator.start(Mockito.<Long>any(), Mockito.<CallContext>any())).thenReturn(runningStatus);
+        final Response startResponse = adminResource.triggerOverdueReevaluation(12L, "createdBy", "reason", "comment", null);
+        Assert.assertEquals(startResponse.getStatus(), Response.Status.ACCEPTED.getStatusCode());
+        Assert.assertEquals(((OverdueReevaluationJson) startResponse.getEntity()).getState(), State.RUNNING.toString());
+        Mockito.verify(overdueReevaluator, Mockito.times(1)).start(12L, callContext);
+
+        // A second start while the first one is running is rejected, with the progress of the running one
+        Mockito.when(overdueReevaluator.start(Mockito.<Long>any(), Mockito.<CallContext>any())).thenReturn(null);
+        Mockito.when(overdueReevaluator.getStatus(Mockito.<TenantContext>any())).thenReturn(runningStatus);
+        final Response conflictResponse = adminResource.triggerOverdueReevaluation(0L, "createdBy", "reason", "comment", null);
+        Assert.assertEquals(conflictResponse.getStatus(), Response.Status.CONFLICT.getStatusCode());
+        final OverdueReevaluationJson conflictJson = (OverdueReevaluationJson) conflictResponse.getEntity();
+        Assert.assertEquals(conflictJson.getState(), State.RUNNING.toString());
+        Assert.assertEquals(conflictJson.getLastAccountRecordId(), (Long) 42L);
+
+        final Response getResponse = adminResource.getOverdueReevaluation(null);
+        Assert.assertEquals(getResponse.getStatus(), Response.Status.OK.getStatusCode());
+        Assert.assertEquals(((OverdueReevaluationJson) getResponse.getEntity()).getNbAccountsProcessed(), (Long) 30L);
+
+        Mockito.when(overdueReevaluator.stop(Mockito.<TenantContext>any())).thenReturn(runningStatus);
+        Assert.assertEquals(adminResource.stopOverdueReevaluation(null).getStatus(), Response.Status.NO_CONTENT.getStatusCode());
+        Mockito.verify(overdueReevaluator, Mockito.times(2)).stop(tenantContext);
+    }
+
+    private OverdueReevaluationStatus createStatus(final State state) {
+        return new OverdueReevaluationStatus(state, new DateTime(), null, 12L, 42L, 30L, 2L, 0L, ImmutableList.<String>of(), 10.0);
+    }
+}
@@ -113,7 +113,7 @@ public class TestJaxRsResourceBase extends JaxrsTestSuiteNoDB {
 
     private static class UsageResourceTest extends UsageResource {
         public UsageResourceTest() {
-            super(null, null, null, null, null, null, null, null, null, null, null);
+            super(null, null, null, null, null, null, null, null, null, null, null, null, null);
         }
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.resources;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Response;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.entitlement.EntitlementInternalApi;
+import org.killbill.billing.entitlement.api.Entitlement;
+import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UnitUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson.UsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordResultJson;
+import org.killbill.billing.jaxrs.util.Context;
+import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestUsageResource extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testRecordUsages() throws Exception {
+        final UUID activeSubscriptionId = UUID.randomUUID();
+        final UUID endedSubscriptionId = UUID.randomUUID();
+        final UUID unknownSubscriptionId = UUID.randomUUID();
+
+        final CallContext callContext = Mockito.mock(CallContext.class);
+        final Context context = Mockito.mock(Context.class);
+        Mockito.when(context.createCallContextNoAccountId(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.<HttpServletRequest>any())).thenReturn(callContext);
+
+        final Entitlement activeEntitlement = Mockito.mock(Entitlement.class);
+        final Entitlement endedEntitlement = Mockito.mock(Entitlement.class);
+        Mockito.when(endedEntitlement.getEffectiveEndDate()).thenReturn(new LocalDate(2018, 3, 1));
+        final EntitlementInternalApi entitlementInternalApi = Mockito.mock(EntitlementInternalApi.class);
+        Mockito.when(entitlementInternalApi.getEntitlementsForIds(Mockito.anyCollectionOf(UUID.class), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableMap.<UUID, Entitlement>of(activeSubscriptionId, activeEntitlement, endedSubscriptionId, endedEntitlement));
+
+        // The usage API accepts the first record and rejects the duplicate tracking id
+        final SubscriptionUsageRecordResult accepted = createResult(activeSubscriptionId, "t1", null);
+        final SubscriptionUsageRecordResult duplicate = createResult(activeSubscriptionId, "t1", ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS);
+        final InternalUserApi internalUserApi = Mockito.mock(InternalUserApi.class);
+        Mockito.when(internalUserApi.recordRolledUpUsage(Mockito.<List<SubscriptionUsageRecord>>any(), Mockito.<CallContext>any()))
+               .thenReturn(ImmutableList.<SubscriptionUsageRecordResult>of(accepted, duplicate));
+
+        final UsageResource usageResource = new UsageResource(null, null, null, null, null, null, internalUserApi, null, null, null, entitlementInternalApi, null, context);
+        final Response response = usageResource.recordUsages(ImmutableList.<SubscriptionUsageRecordJson>of(createRecord(activeSubscriptionId, "t1"),
+                                                                                                           createRecord(unknownSubscriptionId, "t2"),
+                                                                                                           createRecord(endedSubscriptionId, "t3"),
+                                                                                                           createRecord(activeSubscriptionId, "t1")),
+                                                             "createdBy", "reason", "comment", null, null);
+        Assert.assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+
+        // One result per record, in the request order
+        final List<SubscriptionUsageRecordResultJson> results = (List<SubscriptionUsageRecordResultJson>) response.getEntity();
+        Assert.assertEquals(results.size(), 4);
+        Assert.assertTrue(results.get(0).isAccepted());
+        Assert.assertEquals(results.get(0).getSubscriptionId(), activeSubscriptionId);
+        Assert.assertFalse(results.get(1).isAccepted());
+        Assert.assertEquals(results.get(1).getSubscriptionId(), unknownSubscriptionId);
+        Assert.assertEquals(results.get(1).getErrorCode(), (Integer) ErrorCode.SUB_INVALID_SUBSCRIPTION_ID.getCode());
+        Assert.assertFalse(results.get(2).isAccepted());
+        Assert.assertEquals(results.get(2).getSubscriptionId(), endedSubscriptionId);
+        Assert.assertFalse(results.get(3).isAccepted());
+        Assert.assertEquals(results.get(3).getErrorCode(), (Integer) ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS.getCode());
+
+        // A single lookup for all the subscriptions
+        Mockito.verify(entitlementInternalApi, Mockito.times(1)).getEntitlementsForIds(Mockito.anyCollectionOf(UUID.class), Mockito.<TenantContext>any());
+
+        // Only the valid records are handed over to the usage API
+        final ArgumentCaptor<List> records = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(internalUserApi, Mockito.times(1)).recordRolledUpUsage(records.capture(), Mockito.<CallContext>any());
+        Assert.assertEquals(records.getValue().size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testRecordUsagesAllRejected() throws Exception {
+        final Context context = Mockito.mock(Context.class);
+        final EntitlementInternalApi entitlementInternalApi = Mockito.mock(EntitlementInternalApi.class);
+        Mockito.when(entitlementInternalApi.getEntitlementsForIds(Mockito.anyCollectionOf(UUID.class), Mockito.<TenantContext>any())).thenReturn(ImmutableMap.<UUID, Entitlement>of());
+        final InternalUserApi internalUserApi = Mockito.mock(InternalUserApi.class);
+
+        final UsageResource usageResource = new UsageResource(null, null, null, null, null, null, internalUserApi, null, null, null, entitlementInternalApi, null, context);
+        final Response response = usageResource.recordUsages(ImmutableList.<SubscriptionUsageRecordJson>of(createRecord(UUID.randomUUID(), "t1")),
+                                                             "createdBy", "reason", "comment", null, null);
+        final List<SubscriptionUsageRecordResultJson> results = (List<SubscriptionUsageRecordResultJson>) response.getEntity();
+        Assert.assertEquals(results.size(), 1);
+        Assert.assertFalse(results.get(0).isAccepted());
+        Mockito.verifyZeroInteractions(internalUserApi);
+    }
+
+    private SubscriptionUsageRecordJson createRecord(final UUID subscriptionId, final String trackingId) {
+        final List<UsageRecordJson> usageRecords = ImmutableList.<UsageRecordJson>of(new UsageRecordJson(new LocalDate(2018, 3, 4), 28L));
+        return new SubscriptionUsageRecordJson(subscriptionId, trackingId, ImmutableList.<UnitUsageRecordJson>of(new UnitUsageRecordJson("foo", usageRecords)));
+    }
+
+    private SubscriptionUsageRecordResult createResult(final UUID subscriptionId, final String trackingId, final ErrorCode errorCode) {
+        final SubscriptionUsageRecordResult result = Mockito.mock(SubscriptionUsageRecordResult.class);
+        Mockito.when(result.getSubscriptionId()).thenReturn(subscriptionId);
+        Mockito.when(result.getTrackingId()).thenReturn(trackingId);
+        Mockito.when(result.isAccepted()).thenReturn(errorCode == null);
+        Mockito.when(result.getErrorCode()).thenReturn(errorCode);
+        return result;
+    }
+}
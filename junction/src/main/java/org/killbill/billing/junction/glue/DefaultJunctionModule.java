@@ -20,10 +20,13 @@ package org.killbill.billing.junction.glue;
 
 import org.killbill.billing.glue.JunctionModule;
 import org.killbill.billing.junction.BillingInternalApi;
+import org.killbill.billing.junction.plumbing.billing.BillingEventsCache;
 import org.killbill.billing.junction.plumbing.billing.BlockingCalculator;
 import org.killbill.billing.junction.plumbing.billing.DefaultInternalBillingApi;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.config.definition.JunctionConfig;
 import org.killbill.billing.util.glue.KillBillModule;
+import org.skife.config.ConfigurationObjectFactory;
 
 public class DefaultJunctionModule extends KillBillModule implements JunctionModule {
 
@@ -33,8 +36,15 @@ public class DefaultJunctionModule extends KillBillModule implements JunctionMod
 
     @Override
     protected void configure() {
+        installConfig();
         installBillingApi();
         installBlockingCalculator();
+        installBillingEventsCache();
+    }
+
+    protected void installConfig() {
+        final JunctionConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(JunctionConfig.class);
+        bind(JunctionConfig.class).toInstance(config);
     }
 
     @Override
@@ -46,4 +56,8 @@ public class DefaultJunctionModule extends KillBillModule implements JunctionMod
         bind(BlockingCalculator.class).asEagerSingleton();
     }
 
+    public void installBillingEventsCache() {
+        bind(BillingEventsCache.class).asEagerSingleton();
+    }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+import org.killbill.billing.util.catalog.CatalogVersionHelper;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+//
+// Per-account memoized billing events, keyed on a change marker read from the database:
+// - the marker (see AuditDao#getLatestAuditLogRecordIdForAccountRecordId) changes in the same transaction as any change of the
+//   account, its subscriptions, blocking states or tags, on any node
+// - the marker is read before the billing events are computed, so a concurrent change only causes a recomputation
+// - the cached billing events are only valid for the catalog versions they were computed with (see CatalogVersionHelper): catalog
+//   instances can't be compared, as the catalog cache and catalog plugins may return a new instance on each call
+//
+public class BillingEventsCache {
+
+    private static final long MAX_CACHED_ACCOUNTS = 1000;
+
+    private final Cache<Long, CachedBillingEvents> cache;
+
+    public BillingEventsCache() {
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(MAX_CACHED_ACCOUNTS)
+                                 .build();
+    }
+
+    @Nullable
+    public DefaultBillingEventSet getBillingEvents(final Long marker, final VersionedCatalog catalog, final InternalTenantContext context) {
+        final CachedBillingEvents cachedBillingEvents = cache.getIfPresent(context.getAccountRecordId());
+        if (cachedBillingEvents == null ||
+            !cachedBillingEvents.getMarker().equals(marker) ||
+            !cachedBillingEvents.getCatalogVersionKey().equals(CatalogVersionHelper.getCatalogVersionKey(catalog))) {
+            return null;
+        }
+        // Callers own the returned set
+        return new DefaultBillingEventSet(cachedBillingEvents.getBillingEvents());
+    }
+
+    public void putBillingEvents(final Long marker, final VersionedCatalog catalog, final DefaultBillingEventSet billingEvents, final InternalTenantContext context) {
+        cache.put(context.getAccountRecordId(), new CachedBillingEvents(marker, CatalogVersionHelper.getCatalogVersionKey(catalog), new DefaultBillingEventSet(billingEvents)));
+    }
+
+    private static final class CachedBillingEvents {
+
+        private final Long marker;
+        private final String catalogVersionKey;
+        private final DefaultBillingEventSet billingEvents;
+
+        private CachedBillingEvents(final Long marker, final String catalogVersionKey, final DefaultBillingEventSet billingEvents) {
+            this.marker = marker;
+            this.catalogVersionKey = catalogVersionKey;
+            this.billingEvents = billingEvents;
+        }
+
+        public Long getMarker() {
+            return marker;
+        }
+
+        public String getCatalogVersionKey() {
+            return catalogVersionKey;
+        }
+
+        public DefaultBillingEventSet getBillingEvents() {
+            return billingEvents;
+        }
+    }
+}
@@ -89,15 +89,22 @@ public class BlockingCalculator {
 
         final List<BlockingState> blockingEvents = blockingApi.getBlockingAllForAccount(catalog, context);
 
-        final Iterable<BlockingState> accountBlockingEvents = Iterables.filter(blockingEvents, new Predicate<BlockingState>() {
+        // Blocking states and billing events are grouped (and sorted) once, so that each subscription only looks at its own
+        final List<BlockingState> accountBlockingEvents = Lists.newArrayList(Iterables.filter(blockingEvents, new Predicate<BlockingState>() {
             @Override
             public boolean apply(final BlockingState input) {
                 return BlockingStateType.ACCOUNT == input.getType();
             }
-        });
+        }));
+        Collections.sort(accountBlockingEvents);
 
         final Map<UUID, List<BlockingState>> perBundleBlockingEvents = getPerTypeBlockingEvents(BlockingStateType.SUBSCRIPTION_BUNDLE, blockingEvents);
         final Map<UUID, List<BlockingState>> perSubscriptionBlockingEvents = getPerTypeBlockingEvents(BlockingStateType.SUBSCRIPTION, blockingEvents);
+        for (final List<BlockingState> cur : Iterables.concat(perBundleBlockingEvents.values(), perSubscriptionBlockingEvents.values())) {
+            Collections.sort(cur);
+        }
+
+        final Map<UUID, SortedSet<BillingEvent>> perSubscriptionBillingEvents = getPerSubscriptionBillingEvents(billingEvents);
 
         for (final UUID bundleId : subscriptionsForAccount.keySet()) {
 
@@ -113,7 +120,7 @@ public class BlockingCalculator {
                 final List<BlockingState> aggregateSubscriptionBlockingEvents = getAggregateBlockingEventsPerSubscription(subscription.getEndDate(), subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
                 final List<DisabledDuration> accountBlockingDurations = createBlockingDurations(aggregateSubscriptionBlockingEvents);
 
-                final SortedSet<BillingEvent> subscriptionBillingEvents = filter(billingEvents, subscription);
+                final SortedSet<BillingEvent> subscriptionBillingEvents = perSubscriptionBillingEvents.get(subscription.getId()) != null ? perSubscriptionBillingEvents.get(subscription.getId()) : new TreeSet<BillingEvent>();
 
                 final SortedSet<BillingEvent> newEvents = createNewEvents(accountBlockingDurations, subscriptionBillingEvents, catalog, context);
                 billingEventsToAdd.addAll(newEvents);
@@ -134,20 +141,44 @@ public class BlockingCalculator {
         return !(billingEventsToAdd.isEmpty() && billingEventsToRemove.isEmpty());
     }
 
-    final List<BlockingState> getAggregateBlockingEventsPerSubscription(@Nullable final DateTime subscriptionEndDate, final Iterable<BlockingState> subscriptionBlockingEvents, final Iterable<BlockingState> bundleBlockingEvents, final Iterable<BlockingState> accountBlockingEvents) {
-        final Iterable<BlockingState> tmp = Iterables.concat(subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
-        final Iterable<BlockingState> allEventsPriorToCancelDate = Iterables.filter(tmp,
-                                                                                    new Predicate<BlockingState>() {
-                                                                                        @Override
-                                                                                        public boolean apply(final BlockingState input) {
-                                                                                            return subscriptionEndDate == null || input.getEffectiveDate().compareTo(subscriptionEndDate) <= 0;
-                                                                                        }
-                                                                                    });
-        final List<BlockingState> result = Lists.newArrayList(allEventsPriorToCancelDate);
-        Collections.sort(result);
+    // Merge the sorted subscription, bundle and account blocking states: on ties, the first list wins, which gives the same order as (stable) sorting their concatenation
+    final List<BlockingState> getAggregateBlockingEventsPerSubscription(@Nullable final DateTime subscriptionEndDate, final List<BlockingState> subscriptionBlockingEvents, final List<BlockingState> bundleBlockingEvents, final List<BlockingState> accountBlockingEvents) {
+        final List<List<BlockingState>> sortedBlockingEvents = ImmutableList.<List<BlockingState>>of(subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
+        final int[] positions = new int[sortedBlockingEvents.size()];
+
+        final List<BlockingState> result = new ArrayList<BlockingState>(subscriptionBlockingEvents.size() + bundleBlockingEvents.size() + accountBlockingEvents.size());
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < sortedBlockingEvents.size(); i++) {
+                if (positions[i] < sortedBlockingEvents.get(i).size() &&
+                    (next == -1 || sortedBlockingEvents.get(i).get(positions[i]).compareTo(sortedBlockingEvents.get(next).get(positions[next])) < 0)) {
+                    next = i;
+                }
+            }
+            if (next == -1) {
+                break;
+            }
+
+            final BlockingState cur = sortedBlockingEvents.get(next).get(positions[next]++);
+            if (subscriptionEndDate == null || cur.getEffectiveDate().compareTo(subscriptionEndDate) <= 0) {
+                result.add(cur);
+            }
+        }
         return result;
     }
 
+    // Billing events are sorted by subscription first
+    final Map<UUID, SortedSet<BillingEvent>> getPerSubscriptionBillingEvents(final SortedSet<BillingEvent> billingEvents) {
+        final Map<UUID, SortedSet<BillingEvent>> perSubscriptionBillingEvents = new HashMap<UUID, SortedSet<BillingEvent>>();
+        for (final BillingEvent cur : billingEvents) {
+            if (!perSubscriptionBillingEvents.containsKey(cur.getSubscriptionId())) {
+                perSubscriptionBillingEvents.put(cur.getSubscriptionId(), new TreeSet<BillingEvent>());
+            }
+            perSubscriptionBillingEvents.get(cur.getSubscriptionId()).add(cur);
+        }
+        return perSubscriptionBillingEvents;
+    }
+
     final Map<UUID, List<BlockingState>> getPerTypeBlockingEvents(final BlockingStateType type, final List<BlockingState> blockingEvents) {
         final Iterable<BlockingState> bundleBlockingEvents = Iterables.filter(blockingEvents, new Predicate<BlockingState>() {
             @Override
@@ -170,15 +201,15 @@ public class BlockingCalculator {
                                                      final SortedSet<BillingEvent> subscriptionBillingEvents) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
 
+        // Durations are sorted and disjoint: a single pass over the billing events
+        final List<BillingEvent> billingEvents = new ArrayList<BillingEvent>(subscriptionBillingEvents);
+        int position = 0;
         for (final DisabledDuration duration : disabledDuration) {
-            for (final BillingEvent event : subscriptionBillingEvents) {
-                if (duration.getEnd() == null || event.getEffectiveDate().isBefore(duration.getEnd())) {
-                    if (!event.getEffectiveDate().isBefore(duration.getStart())) {
-                        result.add(event);
-                    }
-                } else { //after the last event of the pair no need to keep checking
-                    break;
-                }
+            position = firstBillingEventNotBefore(duration.getStart(), billingEvents, position);
+            while (position < billingEvents.size() &&
+                   (duration.getEnd() == null || billingEvents.get(position).getEffectiveDate().isBefore(duration.getEnd()))) {
+                result.add(billingEvents.get(position));
+                position++;
             }
         }
         return result;
@@ -190,11 +221,19 @@ public class BlockingCalculator {
 
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
 
+        // Durations are sorted and disjoint: a single pass over the billing events
+        final List<BillingEvent> billingEvents = new ArrayList<BillingEvent>(subscriptionBillingEvents);
+        int position = 0;
         for (final DisabledDuration duration : disabledDuration) {
             // The first one before the blocked duration
-            final BillingEvent precedingInitialEvent = precedingBillingEventForSubscription(duration.getStart(), subscriptionBillingEvents);
+            position = firstBillingEventNotBefore(duration.getStart(), billingEvents, position);
+            final BillingEvent precedingInitialEvent = position > 0 ? billingEvents.get(position - 1) : null;
             // The last one during of before the duration
-            final BillingEvent precedingFinalEvent = precedingBillingEventForSubscription(duration.getEnd(), subscriptionBillingEvents);
+            BillingEvent precedingFinalEvent = null;
+            if (duration.getEnd() != null) {
+                position = firstBillingEventNotBefore(duration.getEnd(), billingEvents, position);
+                precedingFinalEvent = position > 0 ? billingEvents.get(position - 1) : null;
+            }
 
             if (precedingInitialEvent != null) { // there is a preceding billing event
                 result.add(createNewDisableEvent(duration.getStart(), precedingInitialEvent));
@@ -226,6 +265,19 @@ public class BlockingCalculator {
         return prev;
     }
 
+    // Index of the first billing event not strictly prior the specified date, resuming from a previous position when possible
+    private int firstBillingEventNotBefore(final DateTime date, final List<BillingEvent> billingEvents, final int fromPosition) {
+        int position = fromPosition;
+        if (position > 0 && !billingEvents.get(position - 1).getEffectiveDate().isBefore(date)) {
+            // Out of order lookup
+            position = 0;
+        }
+        while (position < billingEvents.size() && billingEvents.get(position).getEffectiveDate().isBefore(date)) {
+            position++;
+        }
+        return position;
+    }
+
     protected SortedSet<BillingEvent> filter(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
         for (final BillingEvent event : billingEvents) {
@@ -53,7 +53,9 @@ import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
 import org.killbill.billing.subscription.api.user.SubscriptionBillingEvent;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.audit.dao.AuditDao;
 import org.killbill.billing.util.bcd.BillCycleDayCalculator;
+import org.killbill.billing.util.config.definition.JunctionConfig;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.Tag;
 import org.slf4j.Logger;
@@ -75,24 +77,61 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
     private final CatalogInternalApi catalogInternalApi;
     private final BlockingCalculator blockCalculator;
     private final TagInternalApi tagApi;
+    private final JunctionConfig junctionConfig;
+    private final AuditDao auditDao;
+    private final BillingEventsCache billingEventsCache;
 
     @Inject
     public DefaultInternalBillingApi(final AccountInternalApi accountApi,
                                      final SubscriptionBaseInternalApi subscriptionApi,
                                      final BlockingCalculator blockCalculator,
                                      final CatalogInternalApi catalogInternalApi,
-                                     final TagInternalApi tagApi) {
+                                     final TagInternalApi tagApi,
+                                     final JunctionConfig junctionConfig,
+                                     final AuditDao auditDao,
+                                     final BillingEventsCache billingEventsCache) {
         this.accountApi = accountApi;
         this.subscriptionApi = subscriptionApi;
         this.catalogInternalApi = catalogInternalApi;
         this.blockCalculator = blockCalculator;
         this.tagApi = tagApi;
+        this.junctionConfig = junctionConfig;
+        this.auditDao = auditDao;
+        this.billingEventsCache = billingEventsCache;
     }
 
     @Override
     public BillingEventSet getBillingEventsForAccountAndUpdateAccountBCD(final UUID accountId, final DryRunArguments dryRunArguments, final InternalCallContext context) throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
         final VersionedCatalog fullCatalog = catalogInternalApi.getFullCatalog(true, true, context);
 
+        // Dry runs without any subscription action see the same billing events as a real invoice run
+        final boolean isCachable = junctionConfig.isBillingEventsCacheEnabled() && (dryRunArguments == null || dryRunArguments.getAction() == null);
+        if (!isCachable) {
+            return computeBillingEventsForAccountAndUpdateAccountBCD(accountId, dryRunArguments, fullCatalog, context);
+        }
+
+        // Read before the billing events are computed: a concurrent change will only cause a recomputation on the next call
+        final Long marker = auditDao.getLatestAuditLogRecordIdForAccountRecordId(context);
+
+        // Real invoice runs always recompute (and update the BCD)
+        if (dryRunArguments != null) {
+            final BillingEventSet cachedBillingEvents = billingEventsCache.getBillingEvents(marker, fullCatalog, context);
+            if (cachedBillingEvents != null) {
+                log.debug("Using cached billing events for accountId='{}'", accountId);
+                return cachedBillingEvents;
+            }
+        }
+
+        final DefaultBillingEventSet result = computeBillingEventsForAccountAndUpdateAccountBCD(accountId, dryRunArguments, fullCatalog, context);
+        billingEventsCache.putBillingEvents(marker, fullCatalog, result, context);
+        return result;
+    }
+
+    private DefaultBillingEventSet computeBillingEventsForAccountAndUpdateAccountBCD(final UUID accountId,
+                                                                                    final DryRunArguments dryRunArguments,
+                                                                                    final VersionedCatalog fullCatalog,
+                                                                                    final InternalCallContext context) throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
+
         // Check to see if billing is off for the account
         final List<Tag> tagsForAccount = tagApi.getTagsForAccount(false, context);
         final List<Tag> accountTags = getTagsForObjectType(ObjectType.ACCOUNT, tagsForAccount, null);
@@ -25,6 +25,8 @@ import org.killbill.billing.mock.glue.MockNonEntityDaoModule;
 import org.killbill.billing.mock.glue.MockSubscriptionModule;
 import org.killbill.billing.mock.glue.MockTagModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.audit.dao.AuditDao;
+import org.killbill.billing.util.audit.dao.MockAuditDao;
 import org.killbill.clock.ClockMock;
 
 public class TestJunctionModuleNoDB extends TestJunctionModule {
@@ -47,5 +49,6 @@ public class TestJunctionModuleNoDB extends TestJunctionModule {
         install(new MockSubscriptionModule(configSource));
         install(new MockEntitlementModuleForJunction(configSource));
         install(new MockTagModule(configSource));
+        bind(AuditDao.class).toInstance(new MockAuditDao());
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.StaticCatalog;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+import org.killbill.billing.junction.JunctionTestSuiteNoDB;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestBillingEventsCache extends JunctionTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testMarker() throws Exception {
+        final BillingEventsCache billingEventsCache = new BillingEventsCache();
+        final InternalTenantContext context = createContext(1L);
+        final VersionedCatalog catalog = createCatalog(new Date(1000L));
+        final DefaultBillingEventSet billingEvents = createBillingEvents();
+
+        assertNull(billingEventsCache.getBillingEvents(10L, catalog, context));
+
+        billingEventsCache.putBillingEvents(10L, catalog, billingEvents, context);
+
+        final DefaultBillingEventSet cachedBillingEvents = billingEventsCache.getBillingEvents(10L, catalog, context);
+        assertNotNull(cachedBillingEvents);
+        assertEquals(cachedBillingEvents, billingEvents);
+        assertEquals(cachedBillingEvents.getSubscriptionIdsWithAutoInvoiceOff(), billingEvents.getSubscriptionIdsWithAutoInvoiceOff());
+        assertTrue(cachedBillingEvents.isAccountAutoInvoiceDraft());
+        // Callers can't modify the cached billing events
+        cachedBillingEvents.clear();
+        assertEquals(billingEventsCache.getBillingEvents(10L, catalog, context), billingEvents);
+
+        // The account changed since the billing events were computed
+        assertNull(billingEventsCache.getBillingEvents(11L, catalog, context));
+
+        // Computed again, after the change
+        billingEventsCache.putBillingEvents(11L, catalog, billingEvents, context);
+        assertNull(billingEventsCache.getBillingEvents(10L, catalog, context));
+        assertNotNull(billingEventsCache.getBillingEvents(11L, catalog, context));
+
+        // Other account
+        assertNull(billingEventsCache.getBillingEvents(11L, catalog, createContext(2L)));
+    }
+
+    @Test(groups = "fast")
+    public void testCatalogChanges() throws Exception {
+        final BillingEventsCache billingEventsCache = new BillingEventsCache();
+        final InternalTenantContext context = createContext(1L);
+        final VersionedCatalog catalog = createCatalog(new Date(1000L));
+        final DefaultBillingEventSet billingEvents = createBillingEvents();
+
+        billingEventsCache.putBillingEvents(10L, catalog, billingEvents, context);
+        assertNotNull(billingEventsCache.getBillingEvents(10L, catalog, context));
+
+        // Same catalog, different instance (e.g. deserialized from the Redis catalog cache)
+        assertNotNull(billingEventsCache.getBillingEvents(10L, createCatalog(new Date(1000L)), context));
+
+        // Catalog update
+        assertNull(billingEventsCache.getBillingEvents(10L, createCatalog(new Date(1000L), new Date(2000L)), context));
+    }
+
+    private DefaultBillingEventSet createBillingEvents() throws Exception {
+        final DefaultBillingEventSet billingEvents = new DefaultBillingEventSet(false, true, false);
+        billingEvents.add(createEvent(subscription(UUID.randomUUID()), clock.getUTCNow(), SubscriptionBaseTransitionType.CREATE));
+        billingEvents.getSubscriptionIdsWithAutoInvoiceOff().add(UUID.randomUUID());
+        return billingEvents;
+    }
+
+    private VersionedCatalog createCatalog(final Date... effectiveDates) {
+        final ImmutableList.Builder<StaticCatalog> versions = ImmutableList.<StaticCatalog>builder();
+        for (final Date effectiveDate : effectiveDates) {
+            final StaticCatalog version = Mockito.mock(StaticCatalog.class);
+            Mockito.when(version.getEffectiveDate()).thenReturn(effectiveDate);
+            versions.add(version);
+        }
+
+        final VersionedCatalog catalog = Mockito.mock(VersionedCatalog.class);
+        Mockito.when(catalog.getCatalogName()).thenReturn("Firearms");
+        Mockito.when(catalog.getVersions()).thenReturn(versions.build());
+        return catalog;
+    }
+
+    private InternalTenantContext createContext(final Long accountRecordId) {
+        final InternalTenantContext context = Mockito.mock(InternalTenantContext.class);
+        Mockito.when(context.getAccountRecordId()).thenReturn(accountRecordId);
+        return context;
+    }
+}
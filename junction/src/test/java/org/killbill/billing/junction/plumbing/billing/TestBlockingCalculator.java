@@ -813,6 +813,68 @@ public class TestBlockingCalculator extends JunctionTestSuiteNoDB {
         assertEquals(events.get(4).getTransitionType(), SubscriptionBaseTransitionType.CHANGE);
     }
 
+    // Large account: each bundle is blocked and unblocked twice, before the whole account gets blocked
+    // B  -A----[----]-----P----[----]---------
+    // A  ---------------------------------[----
+    @Test(groups = "fast")
+    public void testInsertBlockingEventsForManyBundles() throws CatalogApiException {
+        final int nbBundles = 500;
+        final DateTime startDate = new LocalDate(2012, 5, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC);
+
+        final Map<UUID, List<SubscriptionBase>> subscriptionsForLargeAccount = new HashMap<UUID, List<SubscriptionBase>>();
+        final SortedSet<BillingEvent> billingEvents = new TreeSet<BillingEvent>();
+        final List<BlockingState> blockingStates = new ArrayList<BlockingState>();
+        for (int i = 0; i < nbBundles; i++) {
+            final UUID bundleId = UUID.randomUUID();
+            final SubscriptionBase subscription = Mockito.mock(SubscriptionBase.class);
+            Mockito.when(subscription.getId()).thenReturn(UUID.randomUUID());
+            Mockito.when(subscription.getBundleId()).thenReturn(bundleId);
+            subscriptionsForLargeAccount.put(bundleId, ImmutableList.<SubscriptionBase>of(subscription));
+
+            billingEvents.add(createRealEvent(subscription, startDate, SubscriptionBaseTransitionType.CREATE));
+            billingEvents.add(createRealEvent(subscription, startDate.plusDays(30), SubscriptionBaseTransitionType.PHASE));
+
+            // Not sorted on purpose
+            blockingStates.add(new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, CLEAR_BUNDLE, "test", false, false, false, startDate.plusDays(50)));
+            blockingStates.add(new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, DISABLED_BUNDLE, "test", true, true, true, startDate.plusDays(10)));
+            blockingStates.add(new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, CLEAR_BUNDLE, "test", false, false, false, startDate.plusDays(20)));
+            blockingStates.add(new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, DISABLED_BUNDLE, "test", true, true, true, startDate.plusDays(40)));
+        }
+        blockingStates.add(new DefaultBlockingState(account.getId(), BlockingStateType.ACCOUNT, "disabled-account", "test", true, true, true, startDate.plusDays(60)));
+
+        final boolean modified = blockingCalculator.insertBlockingEvents(billingEvents, new HashSet<UUID>(), subscriptionsForLargeAccount, catalog, blockingStates, internalCallContext);
+        Assert.assertTrue(modified);
+
+        assertEquals(billingEvents.size(), nbBundles * 7);
+        int nbDisabled = 0;
+        int nbReenabled = 0;
+        for (final BillingEvent billingEvent : billingEvents) {
+            if (billingEvent.getTransitionType() == SubscriptionBaseTransitionType.START_BILLING_DISABLED) {
+                nbDisabled++;
+            } else if (billingEvent.getTransitionType() == SubscriptionBaseTransitionType.END_BILLING_DISABLED) {
+                nbReenabled++;
+                // Each re-enable event closes its own disabled period
+                final BillingEvent previousEvent = billingEvents.headSet(billingEvent).last();
+                assertEquals(previousEvent.getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+            }
+        }
+        assertEquals(nbDisabled, nbBundles * 3);
+        assertEquals(nbReenabled, nbBundles * 2);
+
+        for (final List<SubscriptionBase> subscriptions : subscriptionsForLargeAccount.values()) {
+            final List<BillingEvent> subscriptionBillingEvents = new ArrayList<BillingEvent>(blockingCalculator.filter(billingEvents, subscriptions.get(0)));
+            assertEquals(subscriptionBillingEvents.size(), 7);
+            assertEquals(subscriptionBillingEvents.get(0).getTransitionType(), SubscriptionBaseTransitionType.CREATE);
+            assertEquals(subscriptionBillingEvents.get(1).getEffectiveDate(), startDate.plusDays(10));
+            assertEquals(subscriptionBillingEvents.get(2).getEffectiveDate(), startDate.plusDays(20));
+            assertEquals(subscriptionBillingEvents.get(3).getTransitionType(), SubscriptionBaseTransitionType.PHASE);
+            assertEquals(subscriptionBillingEvents.get(4).getEffectiveDate(), startDate.plusDays(40));
+            assertEquals(subscriptionBillingEvents.get(5).getEffectiveDate(), startDate.plusDays(50));
+            assertEquals(subscriptionBillingEvents.get(6).getEffectiveDate(), startDate.plusDays(60));
+            assertEquals(subscriptionBillingEvents.get(6).getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+        }
+    }
+
     private BillingEvent createBillingEvent(final SubscriptionBase subscription, final Long totalOrdering) {
         return createRealEvent(subscription, new DateTime(), SubscriptionBaseTransitionType.CREATE, totalOrdering);
     }
@@ -27,8 +27,10 @@ import org.joda.time.Period;
 import org.joda.time.ReadablePeriod;
 import org.joda.time.Seconds;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.api.TestApiListener.NextEvent;
 import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogInternalApi;
 import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
 import org.killbill.billing.catalog.api.PriceListSet;
 import org.killbill.billing.entitlement.api.BaseEntitlementWithAddOnsSpecifier;
@@ -38,20 +40,80 @@ import org.killbill.billing.entitlement.api.DefaultEntitlementApi;
 import org.killbill.billing.entitlement.api.DefaultEntitlementSpecifier;
 import org.killbill.billing.entitlement.api.Entitlement;
 import org.killbill.billing.entitlement.api.EntitlementSpecifier;
+import org.killbill.billing.invoice.api.DryRunArguments;
 import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.BillingInternalApi;
 import org.killbill.billing.junction.DefaultBlockingState;
 import org.killbill.billing.junction.JunctionTestSuiteWithEmbeddedDB;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.platform.api.KillbillService.KILLBILL_SERVICES;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.tag.TagInternalApi;
+import org.killbill.billing.util.audit.dao.AuditDao;
+import org.killbill.billing.util.config.definition.JunctionConfig;
+import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
 
 public class TestDefaultInternalBillingApi extends JunctionTestSuiteWithEmbeddedDB {
 
+    @Inject
+    protected AccountInternalApi accountInternalApi;
+    @Inject
+    protected BlockingCalculator blockingCalculator;
+    @Inject
+    protected CatalogInternalApi catalogInternalApi;
+    @Inject
+    protected TagInternalApi tagInternalApi;
+    @Inject
+    protected AuditDao auditDao;
+
+    @Test(groups = "slow")
+    public void testBillingEventsCacheWithChangeFollowedByDryRun() throws Exception {
+        final LocalDate initialDate = new LocalDate(2013, 8, 7);
+        clock.setDay(initialDate);
+
+        final JunctionConfig junctionConfig = Mockito.mock(JunctionConfig.class);
+        Mockito.when(junctionConfig.isBillingEventsCacheEnabled()).thenReturn(true);
+        final BillingInternalApi cachingBillingInternalApi = new DefaultInternalBillingApi(accountInternalApi, subscriptionInternalApi, blockingCalculator, catalogInternalApi,
+                                                                                         tagInternalApi, junctionConfig, auditDao, new BillingEventsCache());
+        // Dry run without any subscription action
+        final DryRunArguments dryRunArguments = Mockito.mock(DryRunArguments.class);
+
+        final Account account = createAccount(getAccountData(7));
+
+        final String bundleKey = UUID.randomUUID().toString();
+        final EntitlementSpecifier entitlementSpecifierBase = new DefaultEntitlementSpecifier(new PlanPhaseSpecifier("Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null));
+        final BaseEntitlementWithAddOnsSpecifier specifier = new DefaultBaseEntitlementWithAddOnsSpecifier(null, bundleKey, ImmutableList.of(entitlementSpecifierBase), null, null, false);
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        entitlementApi.createBaseEntitlementsWithAddOns(account.getId(),
+                                                        ImmutableList.of(specifier),
+                                                        false,
+                                                        ImmutableList.<PluginProperty>of(),
+                                                        callContext);
+        assertListenerStatus();
+
+        final List<BillingEvent> initialEvents = ImmutableList.<BillingEvent>copyOf(cachingBillingInternalApi.getBillingEventsForAccountAndUpdateAccountBCD(account.getId(), dryRunArguments, internalCallContext));
+        Assert.assertFalse(initialEvents.isEmpty());
+        Assert.assertFalse(hasTransition(initialEvents, SubscriptionBaseTransitionType.CHANGE));
+        // Served from the cache
+        Assert.assertEquals(ImmutableList.<BillingEvent>copyOf(cachingBillingInternalApi.getBillingEventsForAccountAndUpdateAccountBCD(account.getId(), dryRunArguments, internalCallContext)), initialEvents);
+
+        // Immediate change (TRIAL phase)
+        final Entitlement entitlement = entitlementApi.getAllEntitlementsForAccountId(account.getId(), callContext).get(0);
+        testListener.pushExpectedEvent(NextEvent.CHANGE);
+        entitlement.changePlan(new DefaultEntitlementSpecifier(new PlanPhaseSpecifier("Pistol", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null)), ImmutableList.<PluginProperty>of(), callContext);
+
+        // The dry run doesn't wait for the change event to be dispatched
+        final List<BillingEvent> events = ImmutableList.<BillingEvent>copyOf(cachingBillingInternalApi.getBillingEventsForAccountAndUpdateAccountBCD(account.getId(), dryRunArguments, internalCallContext));
+        Assert.assertTrue(hasTransition(events, SubscriptionBaseTransitionType.CHANGE));
+        assertListenerStatus();
+    }
+
     @Test(groups = "slow")
     public void testRecurringInArrear() throws Exception {
         final LocalDate initialDate = new LocalDate(2013, 8, 7);
@@ -436,6 +498,15 @@ public class TestDefaultInternalBillingApi extends JunctionTestSuiteWithEmbedded
         testUnblockThenBlockBlockingStatesWithSimilarEffectiveDate(Seconds.ONE);
     }
 
+    private boolean hasTransition(final Iterable<BillingEvent> events, final SubscriptionBaseTransitionType transitionType) {
+        for (final BillingEvent event : events) {
+            if (event.getTransitionType() == transitionType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void testUnblockThenBlockBlockingStatesWithSimilarEffectiveDate(final ReadablePeriod delay) throws Exception {
         final LocalDate initialDate = new LocalDate(2013, 8, 7);
         clock.setDay(initialDate);
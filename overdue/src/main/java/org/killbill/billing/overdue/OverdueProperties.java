@@ -19,6 +19,7 @@ package org.killbill.billing.overdue;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 import org.killbill.billing.util.config.definition.KillbillConfig;
 
@@ -28,4 +29,19 @@ public interface OverdueProperties extends KillbillConfig {
     @Default("NoOverdueConfig.xml")
     @Description("Overdue configuration location. Either in the classpath or in the filesystem")
     public String getConfigURI();
+
+    @Config("org.killbill.overdue.refreshCoalescingDelay")
+    @Default("0s")
+    @Description("Delay before processing an overdue refresh triggered by an invoice, payment or tag event (refreshes requested for the same account in the meantime are coalesced)")
+    public TimeSpan getRefreshCoalescingDelay();
+
+    @Config("org.killbill.overdue.reevaluation.nbThreads")
+    @Default("4")
+    @Description("Number of threads used to re-evaluate the overdue state of all accounts of a tenant (e.g. after an overdue config upload)")
+    public int getReevaluationThreadNb();
+
+    @Config("org.killbill.overdue.reevaluation.batchSize")
+    @Default("100")
+    @Description("Number of accounts fetched and re-evaluated at a time when re-evaluating the overdue state of all accounts of a tenant")
+    public int getReevaluationBatchSize();
 }
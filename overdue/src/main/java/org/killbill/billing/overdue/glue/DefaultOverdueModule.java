@@ -33,6 +33,7 @@ import org.killbill.billing.overdue.notification.OverdueCheckNotifier;
 import org.killbill.billing.overdue.notification.OverdueCheckPoster;
 import org.killbill.billing.overdue.notification.OverdueNotifier;
 import org.killbill.billing.overdue.notification.OverduePoster;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluator;
 import org.killbill.billing.overdue.service.DefaultOverdueService;
 import org.killbill.billing.overdue.wrapper.OverdueWrapperFactory;
 import org.killbill.billing.platform.api.KillbillConfigSource;
@@ -66,6 +67,7 @@ public class DefaultOverdueModule extends KillBillModule implements OverdueModul
         bind(OverdueProperties.class).toInstance(config);
 
         bind(OverdueListener.class).asEagerSingleton();
+        bind(OverdueReevaluator.class).asEagerSingleton();
 
         bind(OverdueNotifier.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_CHECK_NAMED)).to(OverdueCheckNotifier.class).asEagerSingleton();
         bind(OverdueNotifier.class).annotatedWith(Names.named(OVERDUE_NOTIFIER_ASYNC_BUS_NAMED)).to(OverdueAsyncBusNotifier.class).asEagerSingleton();
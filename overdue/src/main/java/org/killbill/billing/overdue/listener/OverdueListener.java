@@ -23,6 +23,7 @@ import java.util.UUID;
 
 import javax.inject.Named;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -34,6 +35,7 @@ import org.killbill.billing.events.InvoiceAdjustmentInternalEvent;
 import org.killbill.billing.events.InvoiceCreationInternalEvent;
 import org.killbill.billing.events.InvoicePaymentErrorInternalEvent;
 import org.killbill.billing.events.InvoicePaymentInfoInternalEvent;
+import org.killbill.billing.overdue.OverdueProperties;
 import org.killbill.billing.overdue.api.OverdueApiException;
 import org.killbill.billing.overdue.api.OverdueConfig;
 import org.killbill.billing.overdue.caching.OverdueConfigCache;
@@ -72,6 +74,7 @@ public class OverdueListener {
     private final OverdueConfigCache overdueConfigCache;
     private final NonEntityDao nonEntityDao;
     private final AccountInternalApi accountApi;
+    private final OverdueProperties overdueProperties;
 
     @Inject
     public OverdueListener(final NonEntityDao nonEntityDao,
@@ -80,7 +83,8 @@ public class OverdueListener {
                            @Named(DefaultOverdueModule.OVERDUE_NOTIFIER_ASYNC_BUS_NAMED)  final OverduePoster asyncPoster,
                            final OverdueConfigCache overdueConfigCache,
                            final InternalCallContextFactory internalCallContextFactory,
-                           final AccountInternalApi accountApi) {
+                           final AccountInternalApi accountApi,
+                           final OverdueProperties overdueProperties) {
         this.nonEntityDao = nonEntityDao;
         this.clock = clock;
         this.asyncPoster = asyncPoster;
@@ -88,6 +92,7 @@ public class OverdueListener {
         this.objectIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID);
         this.internalCallContextFactory = internalCallContextFactory;
         this.accountApi = accountApi;
+        this.overdueProperties = overdueProperties;
     }
 
     @AllowConcurrentEvents
@@ -158,8 +163,13 @@ public class OverdueListener {
             return;
         }
 
+        // Give a chance to the other events of the same operation (e.g. invoice creation and payment) to be coalesced into a single refresh
+        final DateTime notificationTime = action == OverdueAsyncBusNotificationAction.REFRESH ?
+                                          callContext.getCreatedDate().plus(overdueProperties.getRefreshCoalescingDelay().getMillis()) :
+                                          callContext.getCreatedDate();
+
         OverdueAsyncBusNotificationKey notificationKey = new OverdueAsyncBusNotificationKey(accountId, action);
-        asyncPoster.insertOverdueNotification(accountId, callContext.getCreatedDate(), OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, callContext);
+        asyncPoster.insertOverdueNotification(accountId, notificationTime, OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, callContext);
 
         try {
             // Refresh parent
@@ -168,7 +178,7 @@ public class OverdueListener {
                 final InternalTenantContext parentAccountInternalTenantContext = internalCallContextFactory.createInternalTenantContext(account.getParentAccountId(), callContext);
                 final InternalCallContext parentAccountContext = internalCallContextFactory.createInternalCallContext(parentAccountInternalTenantContext.getAccountRecordId(), callContext);
                 notificationKey = new OverdueAsyncBusNotificationKey(account.getParentAccountId(), action);
-                asyncPoster.insertOverdueNotification(account.getParentAccountId(), callContext.getCreatedDate(), OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, parentAccountContext);
+                asyncPoster.insertOverdueNotification(account.getParentAccountId(), notificationTime, OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, parentAccountContext);
             }
 
             // Refresh children
@@ -179,7 +189,7 @@ public class OverdueListener {
                         final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(childAccount.getId(), callContext);
                         final InternalCallContext accountContext = internalCallContextFactory.createInternalCallContext(internalTenantContext.getAccountRecordId(), callContext);
                         notificationKey = new OverdueAsyncBusNotificationKey(childAccount.getId(), action);
-                        asyncPoster.insertOverdueNotification(childAccount.getId(), callContext.getCreatedDate(), OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, accountContext);
+                        asyncPoster.insertOverdueNotification(childAccount.getId(), notificationTime, OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, accountContext);
                     }
                 }
             }
@@ -73,7 +73,7 @@ public abstract class DefaultOverduePosterBase implements OverduePoster {
                     final Iterable<NotificationEventWithMetadata<T>> futureNotifications = getFutureNotificationsForAccountInTransaction(entitySqlDaoWrapperFactory, overdueQueue,
                                                                                                                                          clazz, context);
 
-                    final boolean shouldInsertNewNotification = cleanupFutureNotificationsFormTransaction(entitySqlDaoWrapperFactory, futureNotifications, futureNotificationTime, overdueQueue);
+                    final boolean shouldInsertNewNotification = cleanupFutureNotificationsFormTransaction(entitySqlDaoWrapperFactory, futureNotifications, futureNotificationTime, notificationKey, overdueQueue);
                     if (shouldInsertNewNotification) {
                         log.debug("Queuing overdue check notification. Account id: {}, timestamp: {}", accountId.toString(), futureNotificationTime.toString());
                         overdueQueue.recordFutureNotificationFromTransaction(entitySqlDaoWrapperFactory.getHandle().getConnection(), futureNotificationTime, notificationKey, context.getUserToken(), context.getAccountRecordId(), context.getTenantRecordId());
@@ -128,6 +128,6 @@ public abstract class DefaultOverduePosterBase implements OverduePoster {
 
     protected abstract <T extends OverdueCheckNotificationKey> boolean cleanupFutureNotificationsFormTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
                                                                                                                  final Iterable<NotificationEventWithMetadata<T>> futureNotifications,
-                                                                                                                 final DateTime futureNotificationTime, final NotificationQueue overdueQueue);
+                                                                                                                 final DateTime futureNotificationTime, final T notificationKey, final NotificationQueue overdueQueue);
 
 }
@@ -18,9 +18,12 @@
 
 package org.killbill.billing.overdue.notification;
 
+import java.util.Iterator;
+
 import javax.inject.Named;
 
 import org.joda.time.DateTime;
+import org.killbill.billing.overdue.notification.OverdueAsyncBusNotificationKey.OverdueAsyncBusNotificationAction;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.NonEntityDao;
@@ -31,29 +34,61 @@ import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.skife.jdbi.v2.IDBI;
 
-import com.google.common.collect.Iterables;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Inject;
 
 import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 
 public class OverdueAsyncBusPoster extends DefaultOverduePosterBase {
 
+    private static final String COALESCED_REFRESHES_METRIC_NAME = MetricRegistry.name("killbill.overdue", "refreshes", "coalesced");
+
+    private final Counter coalescedRefreshes;
+
     @Inject
     public OverdueAsyncBusPoster(final NotificationQueueService notificationQueueService,
                                  final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher,
-                                 final NonEntityDao nonEntityDao, final InternalCallContextFactory internalCallContextFactory) {
+                                 final NonEntityDao nonEntityDao, final InternalCallContextFactory internalCallContextFactory, final MetricRegistry metricRegistry) {
         super(notificationQueueService, dbi, roDbi, clock, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory);
+        this.coalescedRefreshes = metricRegistry.counter(COALESCED_REFRESHES_METRIC_NAME);
     }
 
     @Override
     protected <T extends OverdueCheckNotificationKey> boolean cleanupFutureNotificationsFormTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
                                                                                                         final Iterable<NotificationEventWithMetadata<T>> futureNotifications,
                                                                                                         final DateTime futureNotificationTime,
+                                                                                                        final T notificationKey,
                                                                                                         final NotificationQueue overdueQueue) {
-        // If we already have notification for that account we don't insert the new one
-        // Note that this is slightly incorrect because we could for instance already have a REFRESH and insert a CLEAR, but if that were the case,
-        // if means overdue state would change very rapidly and the behavior would anyway be non deterministic
-        // Note: don't use isEmpty() to go through all results to close the connection
-        return Iterables.size(futureNotifications) == 0;
+        // A CLEAR supersedes the pending (possibly delayed, see OverdueProperties#getRefreshCoalescingDelay) notifications for that account
+        final boolean isClear = notificationKey instanceof OverdueAsyncBusNotificationKey &&
+                                ((OverdueAsyncBusNotificationKey) notificationKey).getAction() == OverdueAsyncBusNotificationAction.CLEAR;
+
+        int nbPendingNotifications = 0;
+        final Iterator<NotificationEventWithMetadata<T>> iterator = futureNotifications.iterator();
+        try {
+            while (iterator.hasNext()) {
+                final NotificationEventWithMetadata<T> cur = iterator.next();
+                if (isClear) {
+                    overdueQueue.removeNotificationFromTransaction(entitySqlDaoWrapperFactory.getHandle().getConnection(), cur.getRecordId());
+                }
+                nbPendingNotifications++;
+            }
+        } finally {
+            // Go through all results to close the connection
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+
+        if (isClear || nbPendingNotifications == 0) {
+            return true;
+        }
+
+        // If we already have a notification for that account, it will process the new invoice, payment or tag as well
+        // Note that this is slightly incorrect if the pending notification is a CLEAR, but if that were the case,
+        // it means overdue state would change very rapidly and the behavior would anyway be non deterministic
+        coalescedRefreshes.inc();
+        return false;
     }
 }
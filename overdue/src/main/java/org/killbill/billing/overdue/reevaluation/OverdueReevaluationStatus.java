@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.reevaluation;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+
+// Snapshot of the progress of a re-evaluation of all accounts of a tenant
+public class OverdueReevaluationStatus {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        STOPPED,
+        FAILED
+    }
+
+    private final State state;
+    private final DateTime startDate;
+    private final DateTime endDate;
+    private final Long fromAccountRecordId;
+    private final Long lastAccountRecordId;
+    private final long nbAccountsProcessed;
+    private final long nbAccountsDeferred;
+    private final long nbErrors;
+    private final List<String> lastErrors;
+    private final double accountsPerSecond;
+
+    public OverdueReevaluationStatus(final State state,
+                                     final DateTime startDate,
+                                     @Nullable final DateTime endDate,
+                                     final Long fromAccountRecordId,
+                                     final Long lastAccountRecordId,
+                                     final long nbAccountsProcessed,
+                                     final long nbAccountsDeferred,
+                                     final long nbErrors,
+                                     final List<String> lastErrors,
+                                     final double accountsPerSecond) {
+        this.state = state;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.fromAccountRecordId = fromAccountRecordId;
+        this.lastAccountRecordId = lastAccountRecordId;
+        this.nbAccountsProcessed = nbAccountsProcessed;
+        this.nbAccountsDeferred = nbAccountsDeferred;
+        this.nbErrors = nbErrors;
+        this.lastErrors = ImmutableList.<String>copyOf(lastErrors);
+        this.accountsPerSecond = accountsPerSecond;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    public DateTime getEndDate() {
+        return endDate;
+    }
+
+    public Long getFromAccountRecordId() {
+        return fromAccountRecordId;
+    }
+
+    // A stopped or failed re-evaluation can be resumed from there
+    public Long getLastAccountRecordId() {
+        return lastAccountRecordId;
+    }
+
+    public long getNbAccountsProcessed() {
+        return nbAccountsProcessed;
+    }
+
+    // Accounts locked by another operation (e.g. invoice generation) when first seen, re-evaluated at the end of their batch
+    public long getNbAccountsDeferred() {
+        return nbAccountsDeferred;
+    }
+
+    public long getNbErrors() {
+        return nbErrors;
+    }
+
+    public List<String> getLastErrors() {
+        return lastErrors;
+    }
+
+    public double getAccountsPerSecond() {
+        return accountsPerSecond;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.reevaluation;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.overdue.OverdueProperties;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus.State;
+import org.killbill.billing.overdue.wrapper.OverdueWrapper;
+import org.killbill.billing.overdue.wrapper.OverdueWrapperFactory;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.clock.Clock;
+import org.killbill.commons.locker.LockFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+//
+// Re-evaluation of the overdue state of all accounts of a tenant, triggered by an admin (e.g. after an overdue config upload,
+// as accounts are otherwise only re-evaluated on their next invoice, payment or tag event):
+// - accounts are fetched by batch, using keyset pagination on the account record id
+// - each batch is dispatched to a bounded pool of workers (shared by all tenants); accounts locked by another operation
+//   (invoice generation, payment, ...) are deferred to the end of the batch instead of tying up a worker while retrying the lock
+// - the last account record id of each completed batch is reported, so that a stopped or failed re-evaluation can be resumed
+// - the progress is only kept in memory, on the node running the re-evaluation: the status, the stop request and the check
+//   that a single re-evaluation runs per tenant only apply to this node (another node can run its own re-evaluation)
+//
+public class OverdueReevaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueReevaluator.class);
+
+    private static final String REEVALUATION_THREAD_PREFIX = "overdue-reevaluation-";
+    private static final int MAX_LAST_ERRORS = 10;
+
+    private final AccountInternalApi accountApi;
+    private final OverdueWrapperFactory factory;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final OverdueProperties properties;
+    private final Clock clock;
+
+    // Last re-evaluation of each tenant on this node
+    private final Map<Long, Reevaluation> reevaluations = new ConcurrentHashMap<Long, Reevaluation>();
+
+    private volatile ExecutorService reevaluationExecutor;
+
+    @Inject
+    public OverdueReevaluator(final AccountInternalApi accountApi,
+                              final OverdueWrapperFactory factory,
+                              final InternalCallContextFactory internalCallContextFactory,
+                              final OverdueProperties properties,
+                              final Clock clock) {
+        this.accountApi = accountApi;
+        this.factory = factory;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * @param fromAccountRecordId record id of the last account already re-evaluated (0 to re-evaluate all accounts)
+     * @return the status of the new re-evaluation, or null if one is already running for the tenant
+     */
+    @Nullable
+    public OverdueReevaluationStatus start(final Long fromAccountRecordId, final CallContext callContext) {
+        final InternalCallContext context = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(callContext);
+
+        final Reevaluation reevaluation;
+        synchronized (reevaluations) {
+            final Reevaluation existingReevaluation = reevaluations.get(context.getTenantRecordId());
+            if (existingReevaluation != null && existingReevaluation.getStatus().getState() == State.RUNNING) {
+                return null;
+            }
+            reevaluation = new Reevaluation(fromAccountRecordId, context);
+            reevaluations.put(context.getTenantRecordId(), reevaluation);
+        }
+
+        final Thread thread = new Thread(reevaluation, REEVALUATION_THREAD_PREFIX + context.getTenantRecordId());
+        thread.setDaemon(true);
+        thread.start();
+
+        return reevaluation.getStatus();
+    }
+
+    @Nullable
+    public OverdueReevaluationStatus getStatus(final TenantContext tenantContext) {
+        final Reevaluation reevaluation = getReevaluation(tenantContext);
+        return reevaluation != null ? reevaluation.getStatus() : null;
+    }
+
+    // The current batch is completed first
+    @Nullable
+    public OverdueReevaluationStatus stop(final TenantContext tenantContext) {
+        final Reevaluation reevaluation = getReevaluation(tenantContext);
+        if (reevaluation == null) {
+            return null;
+        }
+        reevaluation.requestStop();
+        return reevaluation.getStatus();
+    }
+
+    public void stop() {
+        for (final Reevaluation reevaluation : reevaluations.values()) {
+            reevaluation.requestStop();
+        }
+        if (reevaluationExecutor != null) {
+            reevaluationExecutor.shutdownNow();
+        }
+    }
+
+    private Reevaluation getReevaluation(final TenantContext tenantContext) {
+        final InternalTenantContext context = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(tenantContext);
+        return reevaluations.get(context.getTenantRecordId());
+    }
+
+    private ExecutorService getReevaluationExecutor() {
+        if (reevaluationExecutor == null) {
+            synchronized (this) {
+                if (reevaluationExecutor == null) {
+                    final int nbThreads = properties.getReevaluationThreadNb();
+                    final ThreadPoolExecutor executor = new ThreadPoolExecutor(nbThreads,
+                                                                               nbThreads,
+                                                                               1,
+                                                                               TimeUnit.MINUTES,
+                                                                               new LinkedBlockingQueue<Runnable>(),
+                                                                               new ThreadFactory() {
+
+                                                                                   @Override
+                                                                                   public Thread newThread(final Runnable r) {
+                                                                                       final Thread th = new Thread(r);
+                                                                                       th.setName(REEVALUATION_THREAD_PREFIX + "worker-" + th.getId());
+                                                                                       th.setDaemon(true);
+                                                                                       return th;
+                                                                                   }
+                                                                               });
+                    executor.allowCoreThreadTimeOut(true);
+                    reevaluationExecutor = executor;
+                }
+            }
+        }
+        return reevaluationExecutor;
+    }
+
+    private final class Reevaluation implements Runnable {
+
+        private final Long fromAccountRecordId;
+        private final InternalCallContext context;
+        private final DateTime startDate;
+        private final AtomicLong nbAccountsProcessed = new AtomicLong();
+        private final AtomicLong nbAccountsDeferred = new AtomicLong();
+        private final AtomicLong nbErrors = new AtomicLong();
+        private final LinkedList<String> lastErrors = new LinkedList<String>();
+
+        private volatile State state = State.RUNNING;
+        private volatile DateTime endDate;
+        private volatile Long lastAccountRecordId;
+        private volatile boolean stopRequested;
+
+        private Reevaluation(final Long fromAccountRecordId, final InternalCallContext context) {
+            this.fromAccountRecordId = fromAccountRecordId;
+            this.context = context;
+            this.startDate = clock.getUTCNow();
+            this.lastAccountRecordId = fromAccountRecordId;
+        }
+
+        @Override
+        public void run() {
+            final int batchSize = properties.getReevaluationBatchSize();
+            log.info("Starting overdue re-evaluation for tenantRecordId='{}', fromAccountRecordId='{}'", context.getTenantRecordId(), fromAccountRecordId);
+            try {
+                while (!stopRequested) {
+                    final List<Account> accounts = accountApi.getAccountsAfterRecordId(lastAccountRecordId, (long) batchSize, context);
+                    if (accounts.isEmpty()) {
+                        break;
+                    }
+
+                    lastAccountRecordId = reevaluateBatch(accounts);
+
+                    if (accounts.size() < batchSize) {
+                        break;
+                    }
+                }
+                finish(stopRequested ? State.STOPPED : State.COMPLETED);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finish(State.STOPPED);
+            } catch (final ExecutionException e) {
+                log.warn("Overdue re-evaluation failed for tenantRecordId='{}'", context.getTenantRecordId(), e.getCause());
+                addError(null, e.getCause().toString());
+                finish(State.FAILED);
+            } catch (final RuntimeException e) {
+                log.warn("Overdue re-evaluation failed for tenantRecordId='{}'", context.getTenantRecordId(), e);
+                addError(null, e.toString());
+                finish(State.FAILED);
+            }
+        }
+
+        // Return the record id of the last account of the batch
+        private Long reevaluateBatch(final List<Account> accounts) throws InterruptedException, ExecutionException {
+            final List<InternalCallContext> accountContexts = new ArrayList<InternalCallContext>(accounts.size());
+            final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(accounts.size());
+            for (final Account account : accounts) {
+                final InternalCallContext accountContext = createAccountContext(account);
+                accountContexts.add(accountContext);
+                tasks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return reevaluate(account, accountContext, false);
+                    }
+                });
+            }
+
+            final List<Callable<Boolean>> deferredTasks = new LinkedList<Callable<Boolean>>();
+            final List<Future<Boolean>> futures = getReevaluationExecutor().invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).get()) {
+                    final Account account = accounts.get(i);
+                    final InternalCallContext accountContext = createAccountContext(account);
+                    deferredTasks.add(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return reevaluate(account, accountContext, true);
+                        }
+                    });
+                }
+            }
+
+            // The locks have likely been released by now: wait for them this time
+            for (final Future<Boolean> future : getReevaluationExecutor().invokeAll(deferredTasks)) {
+                future.get();
+            }
+
+            return accountContexts.get(accountContexts.size() - 1).getAccountRecordId();
+        }
+
+        // Return false if the account was locked and should be retried later
+        private boolean reevaluate(final Account account, final InternalCallContext accountContext, final boolean waitForLock) {
+            try {
+                final OverdueWrapper wrapper = factory.createOverdueWrapperFor(account, accountContext);
+                if (!waitForLock) {
+                    wrapper.refreshIfNotLocked(accountContext.getCreatedDate(), accountContext);
+                } else if (wrapper.refresh(accountContext.getCreatedDate(), accountContext) == null) {
+                    // Lock still not available (see OverdueWrapper)
+                    addError(account.getId(), "Unable to acquire the account lock");
+                }
+                nbAccountsProcessed.incrementAndGet();
+                return true;
+            } catch (final LockFailedException e) {
+                nbAccountsDeferred.incrementAndGet();
+                return false;
+            } catch (final Exception e) {
+                log.warn("Error re-evaluating overdue state for accountId='{}'", account.getId(), e);
+                nbAccountsProcessed.incrementAndGet();
+                addError(account.getId(), e.toString());
+                return true;
+            }
+        }
+
+        // Contexts are created when the account is dispatched (again when deferred), for the overdue state to be computed as of then
+        private InternalCallContext createAccountContext(final Account account) {
+            return internalCallContextFactory.createInternalCallContext(account.getId(),
+                                                                        ObjectType.ACCOUNT,
+                                                                        context.getCreatedBy(),
+                                                                        CallOrigin.INTERNAL,
+                                                                        UserType.ADMIN,
+                                                                        context.getUserToken(),
+                                                                        context.getTenantRecordId());
+        }
+
+        private void addError(@Nullable final UUID accountId, final String error) {
+            nbErrors.incrementAndGet();
+            synchronized (lastErrors) {
+                lastErrors.addLast((accountId != null ? accountId + ": " : "") + error);
+                if (lastErrors.size() > MAX_LAST_ERRORS) {
+                    lastErrors.removeFirst();
+                }
+            }
+        }
+
+        private void finish(final State finalState) {
+            endDate = clock.getUTCNow();
+            state = finalState;
+            log.info("Overdue re-evaluation for tenantRecordId='{}' {}: nbAccountsProcessed='{}', lastAccountRecordId='{}'",
+                     context.getTenantRecordId(), finalState, nbAccountsProcessed.get(), lastAccountRecordId);
+        }
+
+        public void requestStop() {
+            stopRequested = true;
+        }
+
+        public OverdueReevaluationStatus getStatus() {
+            final List<String> lastErrorsSnapshot;
+            synchronized (lastErrors) {
+                lastErrorsSnapshot = new ArrayList<String>(lastErrors);
+            }
+            final DateTime currentEndDate = endDate;
+            final long elapsedMs = (currentEndDate != null ? currentEndDate : clock.getUTCNow()).getMillis() - startDate.getMillis();
+            final double accountsPerSecond = elapsedMs > 0 ? nbAccountsProcessed.get() * 1000.0 / elapsedMs : 0;
+            return new OverdueReevaluationStatus(state,
+                                                 startDate,
+                                                 currentEndDate,
+                                                 fromAccountRecordId,
+                                                 lastAccountRecordId,
+                                                 nbAccountsProcessed.get(),
+                                                 nbAccountsDeferred.get(),
+                                                 nbErrors.get(),
+                                                 lastErrorsSnapshot,
+                                                 accountsPerSecond);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.killbill.billing.overdue.caching.OverdueConfigCache;
 import org.killbill.billing.overdue.glue.DefaultOverdueModule;
 import org.killbill.billing.overdue.listener.OverdueListener;
 import org.killbill.billing.overdue.notification.OverdueNotifier;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluator;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
 import org.killbill.billing.tenant.api.TenantInternalApi;
@@ -50,6 +51,7 @@ public class DefaultOverdueService implements OverdueService {
     private final OverdueNotifier checkNotifier;
     private final BusService busService;
     private final OverdueListener listener;
+    private final OverdueReevaluator reevaluator;
 
     private final OverdueConfigCache overdueConfigCache;
     private final CacheInvalidationCallback overdueCacheInvalidationCallback;
@@ -63,6 +65,7 @@ public class DefaultOverdueService implements OverdueService {
                                  @Named(DefaultOverdueModule.OVERDUE_NOTIFIER_ASYNC_BUS_NAMED) final OverdueNotifier asyncNotifier,
                                  final BusService busService,
                                  final OverdueListener listener,
+                                 final OverdueReevaluator reevaluator,
                                  final OverdueConfigCache overdueConfigCache,
                                  @Named(DefaultOverdueModule.OVERDUE_INVALIDATION_CALLBACK) final CacheInvalidationCallback overdueCacheInvalidationCallback,
                                  final TenantInternalApi tenantInternalApi) {
@@ -71,6 +74,7 @@ public class DefaultOverdueService implements OverdueService {
         this.asyncNotifier = asyncNotifier;
         this.busService = busService;
         this.listener = listener;
+        this.reevaluator = reevaluator;
         this.isConfigLoaded = false;
         this.overdueConfigCache = overdueConfigCache;
         this.overdueCacheInvalidationCallback = overdueCacheInvalidationCallback;
@@ -128,6 +132,7 @@ public class DefaultOverdueService implements OverdueService {
         } catch (final EventBusException e) {
             log.error("Failed to unregister OverdueListener", e);
         }
+        reevaluator.stop();
         checkNotifier.stop();
         asyncNotifier.stop();
     }
@@ -99,6 +99,20 @@ public class OverdueWrapper {
         return null;
     }
 
+    // Single lock attempt, for callers which can come back to the account later (see OverdueReevaluator)
+    public OverdueState refreshIfNotLocked(final DateTime effectiveDate, final InternalCallContext context) throws LockFailedException, OverdueException, OverdueApiException {
+        if (overdueStateSet.size() < 1) { // No configuration available
+            return overdueStateSet.getClearState();
+        }
+
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), overdueable.getId().toString(), 1);
+        try {
+            return refreshWithLock(effectiveDate, context);
+        } finally {
+            lock.release();
+        }
+    }
+
     private OverdueState refreshWithLock(final DateTime effectiveDate, final InternalCallContext context) throws OverdueException, OverdueApiException {
         final BillingState billingState = billingState(context);
         final BlockingState blockingStateForService = api.getBlockingStateForService(overdueable.getId(), BlockingStateType.ACCOUNT, OverdueService.OVERDUE_SERVICE_NAME, context);
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.notification;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.overdue.OverdueTestSuiteWithEmbeddedDB;
+import org.killbill.billing.overdue.notification.OverdueAsyncBusNotificationKey.OverdueAsyncBusNotificationAction;
+import org.killbill.billing.overdue.service.DefaultOverdueService;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+public class TestOverdueAsyncBusPoster extends OverdueTestSuiteWithEmbeddedDB {
+
+    @Inject
+    protected MetricRegistry metricRegistry;
+
+    private EntitySqlDaoTransactionalJdbiWrapper entitySqlDaoTransactionalJdbiWrapper;
+    private NotificationQueue overdueQueue;
+
+    @Override
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        if (hasFailed()) {
+            return;
+        }
+
+        super.beforeMethod();
+        entitySqlDaoTransactionalJdbiWrapper = new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory);
+
+        overdueQueue = notificationQueueService.getNotificationQueue(DefaultOverdueService.OVERDUE_SERVICE_NAME,
+                                                                     OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE);
+        Assert.assertTrue(overdueQueue.isStarted());
+    }
+
+    @Test(groups = "slow")
+    public void testCoalesceRefreshes() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        // Far enough in the future for the notifications not to be processed
+        final DateTime notificationTime = clock.getUTCNow().plusDays(1);
+        final long coalescedRefreshes = metricRegistry.counter(MetricRegistry.name("killbill.overdue", "refreshes", "coalesced")).getCount();
+
+        final OverdueAsyncBusNotificationKey refreshKey = new OverdueAsyncBusNotificationKey(accountId, OverdueAsyncBusNotificationAction.REFRESH);
+        for (int i = 0; i < 3; i++) {
+            asyncPoster.insertOverdueNotification(accountId, notificationTime.plusSeconds(i), OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, refreshKey, internalCallContext);
+        }
+        List<NotificationEventWithMetadata<OverdueAsyncBusNotificationKey>> notifications = getNotifications();
+        Assert.assertEquals(notifications.size(), 1);
+        Assert.assertEquals(notifications.get(0).getEvent(), refreshKey);
+        Assert.assertEquals(notifications.get(0).getEffectiveDate().compareTo(notificationTime), 0);
+        Assert.assertEquals(metricRegistry.counter(MetricRegistry.name("killbill.overdue", "refreshes", "coalesced")).getCount(), coalescedRefreshes + 2);
+
+        // A CLEAR replaces the pending refresh
+        final OverdueAsyncBusNotificationKey clearKey = new OverdueAsyncBusNotificationKey(accountId, OverdueAsyncBusNotificationAction.CLEAR);
+        asyncPoster.insertOverdueNotification(accountId, notificationTime, OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, clearKey, internalCallContext);
+        notifications = getNotifications();
+        Assert.assertEquals(notifications.size(), 1);
+        Assert.assertEquals(notifications.get(0).getEvent(), clearKey);
+    }
+
+    private List<NotificationEventWithMetadata<OverdueAsyncBusNotificationKey>> getNotifications() {
+        return entitySqlDaoTransactionalJdbiWrapper.execute(true, new EntitySqlDaoTransactionWrapper<List<NotificationEventWithMetadata<OverdueAsyncBusNotificationKey>>>() {
+            @Override
+            public List<NotificationEventWithMetadata<OverdueAsyncBusNotificationKey>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                // This will go through all results to close the connection
+                return ImmutableList.<NotificationEventWithMetadata<OverdueAsyncBusNotificationKey>>copyOf(((OverdueAsyncBusPoster) asyncPoster).getFutureNotificationsForAccountInTransaction(entitySqlDaoWrapperFactory, overdueQueue, OverdueAsyncBusNotificationKey.class, internalCallContext));
+            }
+        });
+    }
+}
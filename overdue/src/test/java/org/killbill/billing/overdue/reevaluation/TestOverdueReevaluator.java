@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.reevaluation;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.overdue.OverdueProperties;
+import org.killbill.billing.overdue.OverdueTestSuiteNoDB;
+import org.killbill.billing.overdue.api.OverdueState;
+import org.killbill.billing.overdue.reevaluation.OverdueReevaluationStatus.State;
+import org.killbill.billing.overdue.wrapper.OverdueWrapper;
+import org.killbill.billing.overdue.wrapper.OverdueWrapperFactory;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.commons.locker.LockFailedException;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+public class TestOverdueReevaluator extends OverdueTestSuiteNoDB {
+
+    private static final Long TENANT_RECORD_ID = 1L;
+
+    // Account record id -> account, in record id order
+    private Map<Long, Account> accounts;
+    private Map<UUID, OverdueWrapper> wrappers;
+    private AccountInternalApi accountInternalApi;
+    private InternalCallContextFactory contextFactory;
+    private CallContext adminCallContext;
+
+    @Test(groups = "fast")
+    public void testLockedAccountsAreDeferredToTheEndOfTheBatch() throws Exception {
+        setupAccounts(3);
+        final OverdueWrapper lockedWrapper = wrappers.get(accounts.get(2L).getId());
+        Mockito.when(lockedWrapper.refreshIfNotLocked(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any())).thenThrow(new LockFailedException());
+        Mockito.when(lockedWrapper.refresh(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any())).thenReturn(Mockito.mock(OverdueState.class));
+        // Still locked once deferred (OverdueWrapper#refresh gives up and returns null)
+        final OverdueWrapper stillLockedWrapper = wrappers.get(accounts.get(3L).getId());
+        Mockito.when(stillLockedWrapper.refreshIfNotLocked(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any())).thenThrow(new LockFailedException());
+
+        final OverdueReevaluator reevaluator = createReevaluator(10);
+        try {
+            Assert.assertEquals(reevaluator.start(0L, adminCallContext).getState(), State.RUNNING);
+            final OverdueReevaluationStatus status = waitForCompletion(reevaluator);
+
+            Assert.assertEquals(status.getState(), State.COMPLETED);
+            Assert.assertEquals(status.getNbAccountsProcessed(), 3);
+            Assert.assertEquals(status.getNbAccountsDeferred(), 2);
+            Assert.assertEquals(status.getNbErrors(), 1);
+            Assert.assertEquals(status.getLastErrors().size(), 1);
+            Assert.assertTrue(status.getLastErrors().get(0).startsWith(accounts.get(3L).getId().toString()));
+            Assert.assertEquals(status.getLastAccountRecordId(), (Long) 3L);
+
+            // Deferred accounts wait for the lock the second time, the others are only evaluated once
+            final OverdueWrapper freeWrapper = wrappers.get(accounts.get(1L).getId());
+            Mockito.verify(freeWrapper, Mockito.times(1)).refreshIfNotLocked(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+            Mockito.verify(freeWrapper, Mockito.never()).refresh(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+            Mockito.verify(lockedWrapper, Mockito.times(1)).refresh(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+            Mockito.verify(stillLockedWrapper, Mockito.times(1)).refresh(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+        } finally {
+            reevaluator.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testStopAndResume() throws Exception {
+        setupAccounts(3);
+        final CountDownLatch firstAccountStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstAccount = new CountDownLatch(1);
+        blockAccount(1L, firstAccountStarted, releaseFirstAccount);
+
+        final OverdueReevaluator reevaluator = createReevaluator(1);
+        try {
+            reevaluator.start(0L, adminCallContext);
+            Assert.assertTrue(firstAccountStarted.await(5, SECONDS));
+
+            // The current batch is completed first
+            Assert.assertEquals(reevaluator.stop(Mockito.mock(TenantContext.class)).getState(), State.RUNNING);
+            releaseFirstAccount.countDown();
+            final OverdueReevaluationStatus stoppedStatus = waitForCompletion(reevaluator);
+            Assert.assertEquals(stoppedStatus.getState(), State.STOPPED);
+            Assert.assertEquals(stoppedStatus.getNbAccountsProcessed(), 1);
+            Assert.assertEquals(stoppedStatus.getLastAccountRecordId(), (Long) 1L);
+            Mockito.verifyZeroInteractions(wrappers.get(accounts.get(2L).getId()), wrappers.get(accounts.get(3L).getId()));
+
+            // Resume from the reported account record id
+            final OverdueReevaluationStatus resumedStatus = reevaluator.start(stoppedStatus.getLastAccountRecordId(), adminCallContext);
+            Assert.assertEquals(resumedStatus.getFromAccountRecordId(), (Long) 1L);
+            final OverdueReevaluationStatus completedStatus = waitForCompletion(reevaluator);
+            Assert.assertEquals(completedStatus.getState(), State.COMPLETED);
+            Assert.assertEquals(completedStatus.getNbAccountsProcessed(), 2);
+            Assert.assertEquals(completedStatus.getLastAccountRecordId(), (Long) 3L);
+
+            for (final Account account : accounts.values()) {
+                Mockito.verify(wrappers.get(account.getId()), Mockito.times(1)).refreshIfNotLocked(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any());
+            }
+        } finally {
+            reevaluator.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testOnlyOneReevaluationPerTenant() throws Exception {
+        setupAccounts(2);
+        final CountDownLatch firstAccountStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstAccount = new CountDownLatch(1);
+        blockAccount(1L, firstAccountStarted, releaseFirstAccount);
+
+        final OverdueReevaluator reevaluator = createReevaluator(10);
+        try {
+            Assert.assertNull(reevaluator.getStatus(Mockito.mock(TenantContext.class)));
+            Assert.assertNull(reevaluator.stop(Mockito.mock(TenantContext.class)));
+
+            Assert.assertNotNull(reevaluator.start(0L, adminCallContext));
+            Assert.assertTrue(firstAccountStarted.await(5, SECONDS));
+            Assert.assertNull(reevaluator.start(0L, adminCallContext));
+
+            releaseFirstAccount.countDown();
+            Assert.assertEquals(waitForCompletion(reevaluator).getState(), State.COMPLETED);
+
+            // A new one can be started once the previous one is over
+            Assert.assertNotNull(reevaluator.start(0L, adminCallContext));
+            Assert.assertEquals(waitForCompletion(reevaluator).getState(), State.COMPLETED);
+        } finally {
+            releaseFirstAccount.countDown();
+            reevaluator.stop();
+        }
+    }
+
+    private void blockAccount(final Long accountRecordId, final CountDownLatch started, final CountDownLatch release) throws Exception {
+        Mockito.when(wrappers.get(accounts.get(accountRecordId).getId()).refreshIfNotLocked(Mockito.<DateTime>any(), Mockito.<InternalCallContext>any()))
+               .thenAnswer(new Answer<OverdueState>() {
+                   @Override
+                   public OverdueState answer(final InvocationOnMock invocation) throws Throwable {
+                       started.countDown();
+                       release.await();
+                       return null;
+                   }
+               });
+    }
+
+    private OverdueReevaluationStatus waitForCompletion(final OverdueReevaluator reevaluator) {
+        await().atMost(10, SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return reevaluator.getStatus(Mockito.mock(TenantContext.class)).getState() != State.RUNNING;
+            }
+        });
+        return reevaluator.getStatus(Mockito.mock(TenantContext.class));
+    }
+
+    private OverdueReevaluator createReevaluator(final int batchSize) throws Exception {
+        final OverdueWrapperFactory wrapperFactory = Mockito.mock(OverdueWrapperFactory.class);
+        Mockito.when(wrapperFactory.createOverdueWrapperFor(Mockito.<Account>any(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<OverdueWrapper>() {
+            @Override
+            public OverdueWrapper answer(final InvocationOnMock invocation) throws Throwable {
+                return wrappers.get(((Account) invocation.getArguments()[0]).getId());
+            }
+        });
+
+        final OverdueProperties properties = Mockito.mock(OverdueProperties.class);
+        Mockito.when(properties.getReevaluationThreadNb()).thenReturn(2);
+        Mockito.when(properties.getReevaluationBatchSize()).thenReturn(batchSize);
+
+        return new OverdueReevaluator(accountInternalApi, wrapperFactory, contextFactory, properties, clock);
+    }
+
+    private void setupAccounts(final int nbAccounts) {
+        accounts = new LinkedHashMap<Long, Account>();
+        wrappers = new LinkedHashMap<UUID, OverdueWrapper>();
+        final Map<UUID, InternalCallContext> accountContexts = new LinkedHashMap<UUID, InternalCallContext>();
+        for (long recordId = 1; recordId <= nbAccounts; recordId++) {
+            final Account account = Mockito.mock(Account.class);
+            Mockito.when(account.getId()).thenReturn(UUID.randomUUID());
+            accounts.put(recordId, account);
+            wrappers.put(account.getId(), Mockito.mock(OverdueWrapper.class));
+
+            final InternalCallContext accountContext = Mockito.mock(InternalCallContext.class);
+            Mockito.when(accountContext.getAccountRecordId()).thenReturn(recordId);
+            Mockito.when(accountContext.getTenantRecordId()).thenReturn(TENANT_RECORD_ID);
+            Mockito.when(accountContext.getCreatedDate()).thenReturn(clock.getUTCNow());
+            accountContexts.put(account.getId(), accountContext);
+        }
+
+        // Keyset pagination on the account record id
+        accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getAccountsAfterRecordId(Mockito.<Long>any(), Mockito.<Long>any(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<List<Account>>() {
+            @Override
+            public List<Account> answer(final InvocationOnMock invocation) throws Throwable {
+                final Long fromRecordId = (Long) invocation.getArguments()[0];
+                final Long limit = (Long) invocation.getArguments()[1];
+                final List<Account> page = new LinkedList<Account>();
+                for (final Map.Entry<Long, Account> entry : accounts.entrySet()) {
+                    if (entry.getKey() > fromRecordId && page.size() < limit) {
+                        page.add(entry.getValue());
+                    }
+                }
+                return page;
+            }
+        });
+
+        final InternalCallContext tenantCallContext = Mockito.mock(InternalCallContext.class);
+        Mockito.when(tenantCallContext.getTenantRecordId()).thenReturn(TENANT_RECORD_ID);
+        final InternalTenantContext tenantContext = Mockito.mock(InternalTenantContext.class);
+        Mockito.when(tenantContext.getTenantRecordId()).thenReturn(TENANT_RECORD_ID);
+
+        adminCallContext = Mockito.mock(CallContext.class);
+        contextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(contextFactory.createInternalCallContextWithoutAccountRecordId(Mockito.<CallContext>any())).thenReturn(tenantCallContext);
+        Mockito.when(contextFactory.createInternalTenantContextWithoutAccountRecordId(Mockito.<TenantContext>any())).thenReturn(tenantContext);
+        Mockito.when(contextFactory.createInternalCallContext(Mockito.<UUID>any(),
+                                                              Mockito.eq(ObjectType.ACCOUNT),
+                                                              Mockito.<String>any(),
+                                                              Mockito.<CallOrigin>any(),
+                                                              Mockito.<UserType>any(),
+                                                              Mockito.<UUID>any(),
+                                                              Mockito.<Long>any())).thenAnswer(new Answer<InternalCallContext>() {
+            @Override
+            public InternalCallContext answer(final InvocationOnMock invocation) throws Throwable {
+                return accountContexts.get((UUID) invocation.getArguments()[0]);
+            }
+        });
+    }
+}
@@ -46,7 +46,7 @@ import org.killbill.billing.util.config.definition.PaymentConfig;
 
 import com.google.common.base.Joiner;
 
-import static org.killbill.billing.payment.dispatcher.PaymentPluginDispatcher.dispatchWithExceptionHandling;
+import static org.killbill.billing.payment.dispatcher.PaymentPluginDispatcher.dispatchControlWithExceptionHandling;
 
 public class DefaultPaymentGatewayApi extends DefaultApiBase implements PaymentGatewayApi {
 
@@ -133,85 +133,85 @@ public class DefaultPaymentGatewayApi extends DefaultApiBase implements PaymentG
         }
 
         final List<String> controlPluginNames = paymentOptions.getPaymentControlPluginNames();
-        return dispatchWithExceptionHandling(account,
-                                             JOINER.join(controlPluginNames),
-                                             new Callable<PluginDispatcherReturnType<T>>() {
-                                                 @Override
-                                                 public PluginDispatcherReturnType<T> call() throws Exception {
-                                                     final PriorPaymentControlResult priorCallResult;
-                                                     try {
-                                                         priorCallResult = controlPluginRunner.executePluginPriorCalls(account,
-                                                                                                                       paymentMethodId,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       PaymentApiType.HPP,
-                                                                                                                       null,
-                                                                                                                       HPPType.BUILD_FORM_DESCRIPTOR,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       true,
-                                                                                                                       paymentControlPluginNames,
-                                                                                                                       properties,
-                                                                                                                       callContext);
-
-                                                     } catch (final PaymentControlApiAbortException e) {
-                                                         throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_API_ABORTED, e.getPluginName());
-                                                     } catch (final PaymentControlApiException e) {
-                                                         throw new PaymentApiException(e, ErrorCode.PAYMENT_PLUGIN_EXCEPTION, e);
-                                                     }
-
-                                                     try {
-                                                         final T result = callback.doPaymentGatewayApiOperation(priorCallResult.getAdjustedPaymentMethodId(), priorCallResult.getAdjustedPluginProperties());
-                                                         controlPluginRunner.executePluginOnSuccessCalls(account,
-                                                                                                         paymentMethodId,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         PaymentApiType.HPP,
-                                                                                                         null,
-                                                                                                         HPPType.BUILD_FORM_DESCRIPTOR,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         true,
-                                                                                                         paymentControlPluginNames,
-                                                                                                         priorCallResult.getAdjustedPluginProperties(),
-                                                                                                         callContext);
-                                                         return PluginDispatcher.createPluginDispatcherReturnType(result);
-                                                     } catch (final PaymentApiException e) {
-                                                         controlPluginRunner.executePluginOnFailureCalls(account,
-                                                                                                         paymentMethodId,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         PaymentApiType.HPP,
-                                                                                                         null,
-                                                                                                         HPPType.BUILD_FORM_DESCRIPTOR,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         true,
-                                                                                                         paymentControlPluginNames,
-                                                                                                         priorCallResult.getAdjustedPluginProperties(),
-                                                                                                         callContext);
-                                                         throw e;
-                                                     }
-                                                 }
-                                             },
-                                             pluginDispatcher);
+        return dispatchControlWithExceptionHandling(account,
+                                                    JOINER.join(controlPluginNames),
+                                                    new Callable<PluginDispatcherReturnType<T>>() {
+                                                        @Override
+                                                        public PluginDispatcherReturnType<T> call() throws Exception {
+                                                            final PriorPaymentControlResult priorCallResult;
+                                                            try {
+                                                                priorCallResult = controlPluginRunner.executePluginPriorCalls(account,
+                                                                                                                              paymentMethodId,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              PaymentApiType.HPP,
+                                                                                                                              null,
+                                                                                                                              HPPType.BUILD_FORM_DESCRIPTOR,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              true,
+                                                                                                                              paymentControlPluginNames,
+                                                                                                                              properties,
+                                                                                                                              callContext);
+
+                                                            } catch (final PaymentControlApiAbortException e) {
+                                                                throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_API_ABORTED, e.getPluginName());
+                                                            } catch (final PaymentControlApiException e) {
+                                                                throw new PaymentApiException(e, ErrorCode.PAYMENT_PLUGIN_EXCEPTION, e);
+                                                            }
+
+                                                            try {
+                                                                final T result = callback.doPaymentGatewayApiOperation(priorCallResult.getAdjustedPaymentMethodId(), priorCallResult.getAdjustedPluginProperties());
+                                                                controlPluginRunner.executePluginOnSuccessCalls(account,
+                                                                                                                paymentMethodId,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                PaymentApiType.HPP,
+                                                                                                                null,
+                                                                                                                HPPType.BUILD_FORM_DESCRIPTOR,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                true,
+                                                                                                                paymentControlPluginNames,
+                                                                                                                priorCallResult.getAdjustedPluginProperties(),
+                                                                                                                callContext);
+                                                                return PluginDispatcher.createPluginDispatcherReturnType(result);
+                                                            } catch (final PaymentApiException e) {
+                                                                controlPluginRunner.executePluginOnFailureCalls(account,
+                                                                                                                paymentMethodId,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                PaymentApiType.HPP,
+                                                                                                                null,
+                                                                                                                HPPType.BUILD_FORM_DESCRIPTOR,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                true,
+                                                                                                                paymentControlPluginNames,
+                                                                                                                priorCallResult.getAdjustedPluginProperties(),
+                                                                                                                callContext);
+                                                                throw e;
+                                                            }
+                                                        }
+                                                    },
+                                                    pluginDispatcher);
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.api.svcs;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentInternalApi;
+import org.killbill.billing.payment.core.PaymentControlAwareRefresher;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+public class DefaultPaymentInternalApi implements PaymentInternalApi {
+
+    // Same as DefaultPaymentApi
+    private static final boolean IS_API_PAYMENT = true;
+
+    private final PaymentControlAwareRefresher paymentControlAwareRefresher;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    @Inject
+    public DefaultPaymentInternalApi(final PaymentControlAwareRefresher paymentControlAwareRefresher, final InternalCallContextFactory internalCallContextFactory) {
+        this.paymentControlAwareRefresher = paymentControlAwareRefresher;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    @Override
+    public List<Payment> getAccountPaymentsWithinDates(final UUID accountId, @Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final boolean withAttempts, final TenantContext context) throws PaymentApiException {
+        return paymentControlAwareRefresher.getAccountPaymentsWithinDates(fromDate, upToDate, false, withAttempts, IS_API_PAYMENT, context, internalCallContextFactory.createInternalTenantContext(accountId, context));
+    }
+}
@@ -164,6 +164,36 @@ public class MultiTenantPaymentConfig extends MultiTenantConfigBase implements P
         return staticConfig.getPaymentPluginThreadNb();
     }
 
+    @Override
+    public boolean isPaymentPluginBulkheadEnabled() {
+        return staticConfig.isPaymentPluginBulkheadEnabled();
+    }
+
+    @Override
+    public int getPaymentPluginBulkheadThreadNb() {
+        return staticConfig.getPaymentPluginBulkheadThreadNb();
+    }
+
+    @Override
+    public int getPaymentPluginBulkheadQueueSize() {
+        return staticConfig.getPaymentPluginBulkheadQueueSize();
+    }
+
+    @Override
+    public int getPaymentPluginInfoThreadNb() {
+        return staticConfig.getPaymentPluginInfoThreadNb();
+    }
+
+    @Override
+    public List<String> getPaymentPluginInfoBatchPluginNames() {
+        return staticConfig.getPaymentPluginInfoBatchPluginNames();
+    }
+
+    @Override
+    public TimeSpan getPaymentPluginInfoTimeout() {
+        return staticConfig.getPaymentPluginInfoTimeout();
+    }
+
     @Override
     public int getMaxGlobalLockRetries() {
         return staticConfig.getMaxGlobalLockRetries();
@@ -31,6 +31,7 @@ import org.killbill.billing.payment.dao.PaymentTransactionModelDao;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.definition.PaymentConfig;
 import org.killbill.clock.Clock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.notificationq.api.NotificationQueueService;
@@ -54,8 +55,10 @@ public class PaymentControlAwareRefresher extends PaymentRefresher {
                                         final Clock clock,
                                         final IncompletePaymentTransactionTask incompletePaymentTransactionTask,
                                         final NotificationQueueService notificationQueueService,
-                                        final IncompletePaymentAttemptTask incompletePaymentAttemptTask) {
-        super(paymentPluginServiceRegistration, accountUserApi, paymentDao, tagUserApi, locker, internalCallContextFactory, invoiceApi, clock, notificationQueueService, incompletePaymentTransactionTask);
+                                        final IncompletePaymentAttemptTask incompletePaymentAttemptTask,
+                                        final PaymentConfig paymentConfig,
+                                        final PaymentExecutors paymentExecutors) {
+        super(paymentPluginServiceRegistration, accountUserApi, paymentDao, tagUserApi, locker, internalCallContextFactory, invoiceApi, clock, notificationQueueService, incompletePaymentTransactionTask, paymentConfig, paymentExecutors);
         this.incompletePaymentAttemptTask = incompletePaymentAttemptTask;
     }
 
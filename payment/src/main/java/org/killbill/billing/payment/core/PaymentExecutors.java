@@ -17,6 +17,8 @@
 
 package org.killbill.billing.payment.core;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -24,12 +26,16 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.killbill.billing.util.config.definition.PaymentConfig;
 import org.killbill.commons.concurrent.Executors;
 import org.killbill.commons.concurrent.WithProfilingThreadPoolExecutor;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+
 public class PaymentExecutors {
 
     private static final long TIMEOUT_EXECUTOR_SEC = 3L;
@@ -43,14 +49,18 @@ public class PaymentExecutors {
     public static final String PLUGIN_EXECUTOR_NAMED = "PluginExecutor";
 
     private final PaymentConfig paymentConfig;
+    private final MetricRegistry metricRegistry;
+
+    // Per plugin(s) executors, when bulkheads are enabled
+    private final ConcurrentMap<String, PaymentPluginBulkhead> pluginBulkheads = new ConcurrentHashMap<String, PaymentPluginBulkhead>();
 
     private volatile ThreadPoolExecutor pluginExecutorService;
     private volatile ScheduledExecutorService janitorExecutorService;
 
     @Inject
-    public PaymentExecutors(PaymentConfig paymentConfig) {
+    public PaymentExecutors(PaymentConfig paymentConfig, MetricRegistry metricRegistry) {
         this.paymentConfig = paymentConfig;
-
+        this.metricRegistry = metricRegistry;
     }
 
     public void initialize() {
@@ -64,6 +74,12 @@ public class PaymentExecutors {
         pluginExecutorService.shutdownNow();
         janitorExecutorService.shutdownNow();
 
+        for (final PaymentPluginBulkhead pluginBulkhead : pluginBulkheads.values()) {
+            pluginBulkhead.shutdownNow();
+            pluginBulkhead.removeMetrics();
+        }
+        pluginBulkheads.clear();
+
         pluginExecutorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
         pluginExecutorService = null;
 
@@ -71,8 +87,26 @@ public class PaymentExecutors {
         janitorExecutorService = null;
     }
 
-    public ExecutorService getPluginExecutorService() {
-        return pluginExecutorService;
+    // Calls without plugin name (e.g. the calls through control plugins, see PaymentPluginDispatcher) are dispatched to the shared executor
+    public ExecutorService getPluginExecutorService(@Nullable final String pluginNames) {
+        if (!paymentConfig.isPaymentPluginBulkheadEnabled() || Strings.isNullOrEmpty(pluginNames)) {
+            return pluginExecutorService;
+        }
+
+        final PaymentPluginBulkhead pluginBulkhead = pluginBulkheads.get(pluginNames);
+        if (pluginBulkhead != null) {
+            return pluginBulkhead;
+        }
+
+        // Threads are only started on the first call, so it's cheap to discard the executor if another thread created one in the meantime
+        final PaymentPluginBulkhead newPluginBulkhead = createPluginBulkhead(pluginNames);
+        final PaymentPluginBulkhead existingPluginBulkhead = pluginBulkheads.putIfAbsent(pluginNames, newPluginBulkhead);
+        if (existingPluginBulkhead != null) {
+            newPluginBulkhead.shutdown();
+            return existingPluginBulkhead;
+        }
+        newPluginBulkhead.registerGauges();
+        return newPluginBulkhead;
     }
 
     public ScheduledExecutorService getJanitorExecutorService() {
@@ -98,6 +132,22 @@ public class PaymentExecutors {
 
     }
 
+    private PaymentPluginBulkhead createPluginBulkhead(final String pluginNames) {
+        return new PaymentPluginBulkhead(pluginNames,
+                                         paymentConfig.getPaymentPluginBulkheadThreadNb(),
+                                         paymentConfig.getPaymentPluginBulkheadQueueSize(),
+                                         new ThreadFactory() {
+
+                                             @Override
+                                             public Thread newThread(final Runnable r) {
+                                                 final Thread th = new Thread(new ThreadGroup(PAYMENT_PLUGIN_TH_GROUP_NAME), r);
+                                                 th.setName(PLUGIN_THREAD_PREFIX + pluginNames + "-" + th.getId());
+                                                 return th;
+                                             }
+                                         },
+                                         metricRegistry);
+    }
+
     private ScheduledExecutorService createJanitorExecutorService() {
         return Executors.newSingleThreadScheduledExecutor("PaymentJanitor");
     }
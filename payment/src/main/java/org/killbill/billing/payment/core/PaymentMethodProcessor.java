@@ -81,6 +81,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
+import static org.killbill.billing.payment.dispatcher.PaymentPluginDispatcher.dispatchControlWithExceptionHandling;
 import static org.killbill.billing.payment.dispatcher.PaymentPluginDispatcher.dispatchWithExceptionHandling;
 import static org.killbill.billing.util.entity.dao.DefaultPaginationHelper.getEntityPagination;
 import static org.killbill.billing.util.entity.dao.DefaultPaginationHelper.getEntityPaginationFromPlugins;
@@ -204,86 +205,86 @@ public class PaymentMethodProcessor extends ProcessorBase {
                                                   final PluginDispatcher<T> pluginDispatcher,
                                                   final WithPaymentMethodControlCallback<T> callback) throws PaymentApiException {
 
-        return dispatchWithExceptionHandling(account,
-                                             JOINER.join(paymentControlPluginNames),
-                                             new Callable<PluginDispatcherReturnType<T>>() {
-                                                 @Override
-                                                 public PluginDispatcherReturnType<T> call() throws Exception {
-                                                     final PriorPaymentControlResult priorCallResult;
-                                                     try {
-                                                         priorCallResult = controlPluginRunner.executePluginPriorCalls(account,
-                                                                                                                       null,
-                                                                                                                       paymentPluginServiceName,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       PaymentApiType.PAYMENT_METHOD,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       null,
-                                                                                                                       true,
-                                                                                                                       paymentControlPluginNames,
-                                                                                                                       properties,
-                                                                                                                       callContext);
-
-                                                     } catch (final PaymentControlApiAbortException e) {
-                                                         throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_API_ABORTED, e.getPluginName());
-                                                     } catch (final PaymentControlApiException e) {
-                                                         throw new PaymentApiException(e, ErrorCode.PAYMENT_PLUGIN_EXCEPTION, e);
-                                                     }
-
-                                                     try {
-                                                         final T result = callback.doPaymentMethodApiOperation(priorCallResult.getAdjustedPluginName(), priorCallResult.getAdjustedPluginProperties());
-                                                         controlPluginRunner.executePluginOnSuccessCalls(account,
-                                                                                                         null,
-                                                                                                         priorCallResult.getAdjustedPluginName(),
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         PaymentApiType.PAYMENT_METHOD,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         true,
-                                                                                                         paymentControlPluginNames,
-                                                                                                         priorCallResult.getAdjustedPluginProperties(),
-                                                                                                         callContext);
-                                                         return PluginDispatcher.createPluginDispatcherReturnType(result);
-                                                     } catch (final PaymentApiException e) {
-                                                         controlPluginRunner.executePluginOnFailureCalls(account,
-                                                                                                         null,
-                                                                                                         priorCallResult.getAdjustedPluginName(),
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         PaymentApiType.PAYMENT_METHOD,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         null,
-                                                                                                         true,
-                                                                                                         paymentControlPluginNames,
-                                                                                                         priorCallResult.getAdjustedPluginProperties(),
-                                                                                                         callContext);
-                                                         throw e;
-                                                     }
-                                                 }
-                                             },
-                                             pluginDispatcher);
+        return dispatchControlWithExceptionHandling(account,
+                                                    JOINER.join(paymentControlPluginNames),
+                                                    new Callable<PluginDispatcherReturnType<T>>() {
+                                                        @Override
+                                                        public PluginDispatcherReturnType<T> call() throws Exception {
+                                                            final PriorPaymentControlResult priorCallResult;
+                                                            try {
+                                                                priorCallResult = controlPluginRunner.executePluginPriorCalls(account,
+                                                                                                                              null,
+                                                                                                                              paymentPluginServiceName,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              PaymentApiType.PAYMENT_METHOD,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              null,
+                                                                                                                              true,
+                                                                                                                              paymentControlPluginNames,
+                                                                                                                              properties,
+                                                                                                                              callContext);
+
+                                                            } catch (final PaymentControlApiAbortException e) {
+                                                                throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_API_ABORTED, e.getPluginName());
+                                                            } catch (final PaymentControlApiException e) {
+                                                                throw new PaymentApiException(e, ErrorCode.PAYMENT_PLUGIN_EXCEPTION, e);
+                                                            }
+
+                                                            try {
+                                                                final T result = callback.doPaymentMethodApiOperation(priorCallResult.getAdjustedPluginName(), priorCallResult.getAdjustedPluginProperties());
+                                                                controlPluginRunner.executePluginOnSuccessCalls(account,
+                                                                                                                null,
+                                                                                                                priorCallResult.getAdjustedPluginName(),
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                PaymentApiType.PAYMENT_METHOD,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                true,
+                                                                                                                paymentControlPluginNames,
+                                                                                                                priorCallResult.getAdjustedPluginProperties(),
+                                                                                                                callContext);
+                                                                return PluginDispatcher.createPluginDispatcherReturnType(result);
+                                                            } catch (final PaymentApiException e) {
+                                                                controlPluginRunner.executePluginOnFailureCalls(account,
+                                                                                                                null,
+                                                                                                                priorCallResult.getAdjustedPluginName(),
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                PaymentApiType.PAYMENT_METHOD,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                null,
+                                                                                                                true,
+                                                                                                                paymentControlPluginNames,
+                                                                                                                priorCallResult.getAdjustedPluginProperties(),
+                                                                                                                callContext);
+                                                                throw e;
+                                                            }
+                                                        }
+                                                    },
+                                                    pluginDispatcher);
     }
 
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.commons.concurrent.WithProfilingThreadPoolExecutor;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+//
+// Dedicated executor for the calls to a payment plugin (see PaymentExecutors):
+// - the number of threads adapts to the load, up to the configured maximum (idle threads time out)
+// - the queue is bounded: when the plugin is saturated, new calls are rejected right away (RejectedExecutionException)
+//   instead of waiting behind the calls already queued
+// - the queue depth, number of active calls, wait time in the queue and execution time are exposed as metrics
+//
+public class PaymentPluginBulkhead extends WithProfilingThreadPoolExecutor {
+
+    private static final String METRIC_NAME_PREFIX = "killbill.payment.plugins";
+    private static final String QUEUE_DEPTH = "queueDepth";
+    private static final String ACTIVE_COUNT = "activeCount";
+    private static final String WAIT = "wait";
+    private static final String EXECUTION = "execution";
+
+    private final String pluginNames;
+    private final MetricRegistry metricRegistry;
+    private final Timer waitTimer;
+    private final Timer executionTimer;
+
+    public PaymentPluginBulkhead(final String pluginNames,
+                                 final int maxThreadNb,
+                                 final int queueSize,
+                                 final ThreadFactory threadFactory,
+                                 final MetricRegistry metricRegistry) {
+        super(maxThreadNb,
+              maxThreadNb,
+              10,
+              TimeUnit.MINUTES,
+              new ArrayBlockingQueue<Runnable>(queueSize),
+              threadFactory);
+        allowCoreThreadTimeOut(true);
+        this.pluginNames = pluginNames;
+        this.metricRegistry = metricRegistry;
+        this.waitTimer = metricRegistry.timer(metricName(WAIT));
+        this.executionTimer = metricRegistry.timer(metricName(EXECUTION));
+    }
+
+    public void registerGauges() {
+        metricRegistry.register(metricName(QUEUE_DEPTH), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueue().size();
+            }
+        });
+        metricRegistry.register(metricName(ACTIVE_COUNT), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getActiveCount();
+            }
+        });
+    }
+
+    public void removeMetrics() {
+        metricRegistry.remove(metricName(QUEUE_DEPTH));
+        metricRegistry.remove(metricName(ACTIVE_COUNT));
+        metricRegistry.remove(metricName(WAIT));
+        metricRegistry.remove(metricName(EXECUTION));
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final long submittedNanos = System.nanoTime();
+        super.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long startedNanos = System.nanoTime();
+                waitTimer.update(startedNanos - submittedNanos, TimeUnit.NANOSECONDS);
+                try {
+                    command.run();
+                } finally {
+                    executionTimer.update(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        });
+    }
+
+    private String metricName(final String name) {
+        return MetricRegistry.name(METRIC_NAME_PREFIX, pluginNames, name);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.shiro.util.ThreadContext;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.dao.PaymentModelDao;
+import org.killbill.billing.payment.dispatcher.CallableWithRequestData;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.PaymentConfig;
+import org.killbill.commons.request.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+
+//
+// Retrieval of the plugin info of many payments (see PaymentRefresher#getAccountPayments):
+// - there is one task per payment, or one task per payment method for the plugins listed in org.killbill.payment.plugin.info.batch.plugins
+//   (see the batch contract below)
+// - the tasks run on the plugin executors (the bulkhead of each plugin, if enabled), with at most org.killbill.payment.plugin.info.threads.nb
+//   tasks in flight per call across all plugins: the next tasks are only submitted as the previous ones complete, so a call never floods the
+//   executors shared with the live payments, and at most that many threads are held if the plugins ignore the cancellation
+// - a plugin which rejects a task (saturated bulkhead) isn't invoked again for that call
+// - once the deadline (org.killbill.payment.plugin.info.timeout) is reached, the tasks in flight are cancelled and the remaining ones
+//   aren't submitted: these payments are returned without plugin info, as when the plugin call fails
+//
+public class PaymentPluginInfoRetriever {
+
+    //
+    // Batch contract, for the plugins which opt in through org.killbill.payment.plugin.info.batch.plugins (plugins which aren't listed are
+    // never invoked with a null kbPaymentId). PaymentPluginApi#getPaymentInfo is invoked once per payment method, with:
+    // - kbAccountId: the account of the payments
+    // - kbPaymentId: null
+    // - properties: KB_PAYMENT_METHOD_ID_PROPERTY (UUID, the payment method of all the payments) and KB_PAYMENT_IDS_PROPERTY (List<UUID>)
+    // The plugin returns the transactions of all these payments, PaymentTransactionInfoPlugin#getKbPaymentId identifying their payment:
+    // a payment without any transaction in the result is handled as if getPaymentInfo had returned an empty list for it, and a
+    // PaymentPluginApiException leaves all the payments of the payment method without plugin info
+    //
+    public static final String KB_PAYMENT_METHOD_ID_PROPERTY = "kbPaymentMethodId";
+    public static final String KB_PAYMENT_IDS_PROPERTY = "kbPaymentIds";
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentPluginInfoRetriever.class);
+
+    private static final ImmutableList<PluginProperty> PLUGIN_PROPERTIES = ImmutableList.<PluginProperty>of();
+
+    private final PaymentConfig paymentConfig;
+    private final PaymentExecutors paymentExecutors;
+
+    public PaymentPluginInfoRetriever(final PaymentConfig paymentConfig, final PaymentExecutors paymentExecutors) {
+        this.paymentConfig = paymentConfig;
+        this.paymentExecutors = paymentExecutors;
+    }
+
+    // Payments with plugin info missing from the result are to be returned without plugin info
+    public Map<UUID, List<PaymentTransactionInfoPlugin>> getPaymentTransactionInfoPlugins(final ListMultimap<String, PaymentModelDao> paymentsByPluginName,
+                                                                                          final Map<String, PaymentPluginApi> pluginApiByPluginName,
+                                                                                          final TenantContext context) {
+        // Filled by the tasks as the plugins respond, so the results retrieved before the deadline are kept
+        final Map<UUID, List<PaymentTransactionInfoPlugin>> pluginInfoByPaymentId = new ConcurrentHashMap<UUID, List<PaymentTransactionInfoPlugin>>();
+
+        final List<PluginInfoTask> tasks = new LinkedList<PluginInfoTask>();
+        final List<String> batchPluginNames = paymentConfig.getPaymentPluginInfoBatchPluginNames();
+        for (final String pluginName : paymentsByPluginName.keySet()) {
+            final PaymentPluginApi pluginApi = pluginApiByPluginName.get(pluginName);
+            final List<PaymentModelDao> paymentsForPlugin = paymentsByPluginName.get(pluginName);
+            if (batchPluginNames.contains(pluginName)) {
+                final ListMultimap<UUID, PaymentModelDao> paymentsByPaymentMethodId = Multimaps.<UUID, PaymentModelDao>index(paymentsForPlugin,
+                                                                                                                              new Function<PaymentModelDao, UUID>() {
+                                                                                                                                  @Override
+                                                                                                                                  public UUID apply(final PaymentModelDao paymentModelDao) {
+                                                                                                                                      return paymentModelDao.getPaymentMethodId();
+                                                                                                                                  }
+                                                                                                                              });
+                for (final UUID paymentMethodId : paymentsByPaymentMethodId.keySet()) {
+                    final List<PaymentModelDao> paymentsForPaymentMethod = paymentsByPaymentMethodId.get(paymentMethodId);
+                    tasks.add(new PluginInfoTask(pluginName, new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            getPaymentTransactionInfoPlugins(pluginApi, paymentMethodId, paymentsForPaymentMethod, context, pluginInfoByPaymentId);
+                            return null;
+                        }
+                    }));
+                }
+            } else {
+                for (final PaymentModelDao paymentModelDao : paymentsForPlugin) {
+                    tasks.add(new PluginInfoTask(pluginName, new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            getPaymentTransactionInfoPlugins(pluginApi, paymentModelDao, context, pluginInfoByPaymentId);
+                            return null;
+                        }
+                    }));
+                }
+            }
+        }
+
+        runTasks(tasks);
+
+        // Tasks which were cancelled may still be running
+        return ImmutableMap.<UUID, List<PaymentTransactionInfoPlugin>>copyOf(pluginInfoByPaymentId);
+    }
+
+    private void runTasks(final Iterable<PluginInfoTask> tasks) {
+        final int maxTasksInFlight = Math.max(1, paymentConfig.getPaymentPluginInfoThreadNb());
+        final long timeoutMillis = paymentConfig.getPaymentPluginInfoTimeout().getMillis();
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        final BlockingQueue<Future<Void>> completedTasks = new LinkedBlockingQueue<Future<Void>>();
+        final Collection<Future<Void>> tasksInFlight = new HashSet<Future<Void>>();
+        final Set<String> saturatedPluginNames = new HashSet<String>();
+        final Iterator<PluginInfoTask> pendingTasks = tasks.iterator();
+        try {
+            while (true) {
+                while (tasksInFlight.size() < maxTasksInFlight && pendingTasks.hasNext()) {
+                    final PluginInfoTask task = pendingTasks.next();
+                    if (saturatedPluginNames.contains(task.getPluginName())) {
+                        continue;
+                    }
+
+                    final FutureTask<Void> futureTask = new FutureTask<Void>(wrapWithRequestData(task.getCallable())) {
+                        @Override
+                        protected void done() {
+                            completedTasks.add(this);
+                        }
+                    };
+                    try {
+                        paymentExecutors.getPluginExecutorService(task.getPluginName()).execute(futureTask);
+                        tasksInFlight.add(futureTask);
+                    } catch (final RejectedExecutionException e) {
+                        log.warn("Unable to retrieve plugin info: plugin {} is saturated", task.getPluginName());
+                        saturatedPluginNames.add(task.getPluginName());
+                    }
+                }
+
+                if (tasksInFlight.isEmpty()) {
+                    return;
+                }
+
+                final Future<Void> completedTask = completedTasks.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (completedTask == null) {
+                    log.warn("Unable to retrieve plugin info for all payments within {} ms, returning partial results", timeoutMillis);
+                    return;
+                }
+                tasksInFlight.remove(completedTask);
+
+                try {
+                    completedTask.get();
+                } catch (final ExecutionException e) {
+                    log.warn("Unable to retrieve plugin info", e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Future<Void> taskInFlight : tasksInFlight) {
+                taskInFlight.cancel(true);
+            }
+        }
+    }
+
+    private void getPaymentTransactionInfoPlugins(final PaymentPluginApi pluginApi,
+                                                  final PaymentModelDao paymentModelDao,
+                                                  final TenantContext context,
+                                                  final Map<UUID, List<PaymentTransactionInfoPlugin>> pluginInfoByPaymentId) {
+        try {
+            final List<PaymentTransactionInfoPlugin> pluginInfo = pluginApi.getPaymentInfo(paymentModelDao.getAccountId(), paymentModelDao.getId(), PLUGIN_PROPERTIES, context);
+            if (pluginInfo != null) {
+                pluginInfoByPaymentId.put(paymentModelDao.getId(), pluginInfo);
+            }
+        } catch (final PaymentPluginApiException e) {
+            log.warn("Unable to retrieve plugin info for payment " + paymentModelDao.getId());
+        }
+    }
+
+    private void getPaymentTransactionInfoPlugins(final PaymentPluginApi pluginApi,
+                                                  final UUID paymentMethodId,
+                                                  final List<PaymentModelDao> paymentsModelDao,
+                                                  final TenantContext context,
+                                                  final Map<UUID, List<PaymentTransactionInfoPlugin>> pluginInfoByPaymentId) {
+        final List<UUID> paymentIds = ImmutableList.<UUID>copyOf(Lists.<PaymentModelDao, UUID>transform(paymentsModelDao,
+                                                                                                       new Function<PaymentModelDao, UUID>() {
+                                                                                                           @Override
+                                                                                                           public UUID apply(final PaymentModelDao paymentModelDao) {
+                                                                                                               return paymentModelDao.getId();
+                                                                                                           }
+                                                                                                       }));
+        final List<PluginProperty> properties = ImmutableList.<PluginProperty>of(new PluginProperty(KB_PAYMENT_METHOD_ID_PROPERTY, paymentMethodId, false),
+                                                                                 new PluginProperty(KB_PAYMENT_IDS_PROPERTY, paymentIds, false));
+
+        final List<PaymentTransactionInfoPlugin> pluginInfos;
+        try {
+            pluginInfos = pluginApi.getPaymentInfo(paymentsModelDao.get(0).getAccountId(), null, properties, context);
+        } catch (final PaymentPluginApiException e) {
+            log.warn("Unable to retrieve plugin info for payments of payment method " + paymentMethodId);
+            return;
+        }
+
+        final ListMultimap<UUID, PaymentTransactionInfoPlugin> pluginInfosByPaymentId = LinkedListMultimap.<UUID, PaymentTransactionInfoPlugin>create();
+        if (pluginInfos != null) {
+            for (final PaymentTransactionInfoPlugin pluginInfo : pluginInfos) {
+                pluginInfosByPaymentId.put(pluginInfo.getKbPaymentId(), pluginInfo);
+            }
+        }
+        // Payments unknown to the plugin get no transaction, as when invoked for that payment only
+        for (final UUID paymentId : paymentIds) {
+            pluginInfoByPaymentId.put(paymentId, ImmutableList.<PaymentTransactionInfoPlugin>copyOf(pluginInfosByPaymentId.get(paymentId)));
+        }
+    }
+
+    // Wrap the task to keep the original requestId (see PluginDispatcher)
+    private Callable<Void> wrapWithRequestData(final Callable<Void> task) {
+        return new CallableWithRequestData<Void>(Request.getPerThreadRequestData(),
+                                                 UUIDs.getRandom(),
+                                                 ThreadContext.getSecurityManager(),
+                                                 ThreadContext.getSubject(),
+                                                 MDC.getCopyOfContextMap(),
+                                                 task);
+    }
+
+    private static final class PluginInfoTask {
+
+        private final String pluginName;
+        private final Callable<Void> callable;
+
+        private PluginInfoTask(final String pluginName, final Callable<Void> callable) {
+            this.pluginName = pluginName;
+            this.callable = callable;
+        }
+
+        public String getPluginName() {
+            return pluginName;
+        }
+
+        public Callable<Void> getCallable() {
+            return callable;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.UUID;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -58,6 +59,7 @@ import org.killbill.billing.platform.api.KillbillService.KILLBILL_SERVICES;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.PaymentConfig;
 import org.killbill.billing.util.entity.DefaultPagination;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.EntityPaginationBuilder;
@@ -78,8 +80,11 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
@@ -97,6 +102,7 @@ public class PaymentRefresher extends ProcessorBase {
 
     private final NotificationQueueService notificationQueueService;
     private final IncompletePaymentTransactionTask incompletePaymentTransactionTask;
+    private final PaymentPluginInfoRetriever paymentPluginInfoRetriever;
 
     @Inject
     public PaymentRefresher(final PaymentPluginServiceRegistration paymentPluginServiceRegistration,
@@ -108,10 +114,13 @@ public class PaymentRefresher extends ProcessorBase {
                             final InvoiceInternalApi invoiceApi,
                             final Clock clock,
                             final NotificationQueueService notificationQueueService,
-                            final IncompletePaymentTransactionTask incompletePaymentTransactionTask) {
+                            final IncompletePaymentTransactionTask incompletePaymentTransactionTask,
+                            final PaymentConfig paymentConfig,
+                            final PaymentExecutors paymentExecutors) {
         super(paymentPluginServiceRegistration, accountUserApi, paymentDao, tagUserApi, locker, internalCallContextFactory, invoiceApi, clock);
         this.notificationQueueService = notificationQueueService;
         this.incompletePaymentTransactionTask = incompletePaymentTransactionTask;
+        this.paymentPluginInfoRetriever = new PaymentPluginInfoRetriever(paymentConfig, paymentExecutors);
     }
 
     protected boolean invokeJanitor(final UUID accountId,
@@ -187,30 +196,38 @@ public class PaymentRefresher extends ProcessorBase {
                                             final InternalTenantContext tenantContext) throws PaymentApiException {
         final List<PaymentModelDao> paymentsModelDao = paymentDao.getPaymentsForAccount(accountId, tenantContext);
         final List<PaymentTransactionModelDao> transactionsModelDao = paymentDao.getTransactionsForAccount(accountId, tenantContext);
+        return toPayments(paymentsModelDao, transactionsModelDao, withPluginInfo, withAttempts, isApiPayment, context, tenantContext);
+    }
 
-        final Map<UUID, PaymentPluginApi> paymentPluginByPaymentMethodId = new HashMap<UUID, PaymentPluginApi>();
-        final Collection<UUID> absentPlugins = new HashSet<UUID>();
+    // Payments with at least one transaction effective within [fromDate, upToDate): only these (and their transactions) are retrieved
+    public List<Payment> getAccountPaymentsWithinDates(@Nullable final DateTime fromDate,
+                                                       @Nullable final DateTime upToDate,
+                                                       final boolean withPluginInfo,
+                                                       final boolean withAttempts,
+                                                       final boolean isApiPayment,
+                                                       final TenantContext context,
+                                                       final InternalTenantContext tenantContext) throws PaymentApiException {
+        final List<PaymentModelDao> paymentsModelDao = paymentDao.getPaymentsForAccountWithinDates(fromDate, upToDate, tenantContext);
+        final List<PaymentTransactionModelDao> transactionsModelDao = paymentDao.getTransactionsForAccountWithinDates(fromDate, upToDate, tenantContext);
+        return toPayments(paymentsModelDao, transactionsModelDao, withPluginInfo, withAttempts, isApiPayment, context, tenantContext);
+    }
+
+    private List<Payment> toPayments(final List<PaymentModelDao> paymentsModelDao,
+                                     final List<PaymentTransactionModelDao> transactionsModelDao,
+                                     final boolean withPluginInfo,
+                                     final boolean withAttempts,
+                                     final boolean isApiPayment,
+                                     final TenantContext context,
+                                     final InternalTenantContext tenantContext) throws PaymentApiException {
+        // The plugins are invoked upfront (in parallel), the Janitor is then invoked (if needed) in the transformation function
+        final Map<UUID, List<PaymentTransactionInfoPlugin>> pluginInfoByPaymentId = withPluginInfo ?
+                                                                                    getPaymentTransactionInfoPluginsForPayments(paymentsModelDao, context, tenantContext) :
+                                                                                    ImmutableMap.<UUID, List<PaymentTransactionInfoPlugin>>of();
         final List<Payment> transformedPayments = Lists.<PaymentModelDao, Payment>transform(paymentsModelDao,
                                                                                             new Function<PaymentModelDao, Payment>() {
                                                                                                 @Override
                                                                                                 public Payment apply(final PaymentModelDao paymentModelDao) {
-                                                                                                    List<PaymentTransactionInfoPlugin> pluginInfo = null;
-
-                                                                                                    if (withPluginInfo) {
-                                                                                                        PaymentPluginApi pluginApi = paymentPluginByPaymentMethodId.get(paymentModelDao.getPaymentMethodId());
-                                                                                                        if (pluginApi == null && !absentPlugins.contains(paymentModelDao.getPaymentMethodId())) {
-                                                                                                            try {
-                                                                                                                pluginApi = getPaymentProviderPlugin(paymentModelDao.getPaymentMethodId(), true, tenantContext);
-                                                                                                                paymentPluginByPaymentMethodId.put(paymentModelDao.getPaymentMethodId(), pluginApi);
-                                                                                                            } catch (final PaymentApiException e) {
-                                                                                                                log.warn("Unable to retrieve pluginApi for payment method " + paymentModelDao.getPaymentMethodId());
-                                                                                                                absentPlugins.add(paymentModelDao.getPaymentMethodId());
-                                                                                                            }
-                                                                                                        }
-
-                                                                                                        pluginInfo = getPaymentTransactionInfoPluginsIfNeeded(pluginApi, paymentModelDao, context);
-                                                                                                    }
-
+                                                                                                    final List<PaymentTransactionInfoPlugin> pluginInfo = pluginInfoByPaymentId.get(paymentModelDao.getId());
                                                                                                     return toPayment(paymentModelDao, transactionsModelDao, pluginInfo, withAttempts, isApiPayment, tenantContext);
                                                                                                 }
                                                                                             });
@@ -645,6 +662,39 @@ public class PaymentRefresher extends ProcessorBase {
         return tenantContextWithAccountRecordId;
     }
 
+    // Used in getAccountPayments: the plugins of the payments are resolved upfront, then invoked concurrently (see PaymentPluginInfoRetriever)
+    private Map<UUID, List<PaymentTransactionInfoPlugin>> getPaymentTransactionInfoPluginsForPayments(final Iterable<PaymentModelDao> paymentsModelDao,
+                                                                                                     final TenantContext context,
+                                                                                                     final InternalTenantContext tenantContext) {
+        final Map<UUID, String> pluginNameByPaymentMethodId = new HashMap<UUID, String>();
+        final Collection<UUID> absentPlugins = new HashSet<UUID>();
+        final Map<String, PaymentPluginApi> pluginApiByPluginName = new HashMap<String, PaymentPluginApi>();
+        final ListMultimap<String, PaymentModelDao> paymentsByPluginName = LinkedListMultimap.<String, PaymentModelDao>create();
+        for (final PaymentModelDao paymentModelDao : paymentsModelDao) {
+            final UUID paymentMethodId = paymentModelDao.getPaymentMethodId();
+            if (!pluginNameByPaymentMethodId.containsKey(paymentMethodId) && !absentPlugins.contains(paymentMethodId)) {
+                try {
+                    final String pluginName = getPaymentMethodById(paymentMethodId, true, tenantContext).getPluginName();
+                    if (!pluginApiByPluginName.containsKey(pluginName)) {
+                        pluginApiByPluginName.put(pluginName, getPaymentPluginApi(pluginName));
+                    }
+                    // Only once the plugin is resolved: the payments of an absent plugin are returned without plugin info
+                    pluginNameByPaymentMethodId.put(paymentMethodId, pluginName);
+                } catch (final PaymentApiException e) {
+                    log.warn("Unable to retrieve pluginApi for payment method " + paymentMethodId);
+                    absentPlugins.add(paymentMethodId);
+                }
+            }
+
+            final String pluginName = pluginNameByPaymentMethodId.get(paymentMethodId);
+            if (pluginName != null) {
+                paymentsByPluginName.put(pluginName, paymentModelDao);
+            }
+        }
+
+        return paymentPluginInfoRetriever.getPaymentTransactionInfoPlugins(paymentsByPluginName, pluginApiByPluginName, context);
+    }
+
     // Used in bulk get API (getAccountPayments / getPayments)
     private List<PaymentTransactionInfoPlugin> getPaymentTransactionInfoPluginsIfNeeded(@Nullable final PaymentPluginApi pluginApi, final PaymentModelDao paymentModelDao, final TenantContext context) {
         if (pluginApi == null) {
@@ -59,6 +59,15 @@ public abstract class OperationCallbackBase<CallbackOperationResult, CallbackOpe
     // callback to eventually throw a OperationException, that will be used to drive the state machine in the right direction.
     //
     protected <ExceptionType extends Exception> OperationResult dispatchWithAccountLockAndTimeout(final String pluginNames, final DispatcherCallback<PluginDispatcherReturnType<OperationResult>, ExceptionType> callback) throws OperationException {
+        return dispatchWithAccountLockAndTimeout(pluginNames, false, callback);
+    }
+
+    // Same as above for the calls through control plugins (see PaymentPluginDispatcher#dispatchControlWithExceptionHandling)
+    protected <ExceptionType extends Exception> OperationResult dispatchControlWithAccountLockAndTimeout(final String controlPluginNames, final DispatcherCallback<PluginDispatcherReturnType<OperationResult>, ExceptionType> callback) throws OperationException {
+        return dispatchWithAccountLockAndTimeout(controlPluginNames, true, callback);
+    }
+
+    private <ExceptionType extends Exception> OperationResult dispatchWithAccountLockAndTimeout(final String pluginNames, final boolean isControlDispatch, final DispatcherCallback<PluginDispatcherReturnType<OperationResult>, ExceptionType> callback) throws OperationException {
         final Account account = paymentStateContext.getAccount();
         logger.debug("Dispatching plugin call for account {}", account.getExternalKey());
 
@@ -67,8 +76,11 @@ public abstract class OperationCallbackBase<CallbackOperationResult, CallbackOpe
                                                                                                                                            account.getId(),
                                                                                                                                            paymentConfig,
                                                                                                                                            callback);
-            final OperationResult operationResult = PaymentPluginDispatcher.dispatchWithExceptionHandling(account, pluginNames, task, paymentPluginDispatcher);
-            return operationResult;
+            if (isControlDispatch) {
+                return PaymentPluginDispatcher.dispatchControlWithExceptionHandling(account, pluginNames, task, paymentPluginDispatcher);
+            } else {
+                return PaymentPluginDispatcher.dispatchWithExceptionHandling(account, pluginNames, task, paymentPluginDispatcher);
+            }
         } catch (final PaymentApiException e) {
             throw unwrapExceptionFromDispatchedTask(e);
         }
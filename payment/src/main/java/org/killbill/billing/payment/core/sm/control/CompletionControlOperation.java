@@ -69,7 +69,7 @@ public class CompletionControlOperation extends OperationControlCallback {
         final List<String> controlPluginNameList = paymentStateControlContext.getPaymentControlPluginNames();
         final String controlPluginNames = JOINER.join(controlPluginNameList);
 
-        return dispatchWithAccountLockAndTimeout(controlPluginNames, new DispatcherCallback<PluginDispatcherReturnType<OperationResult>, OperationException>() {
+        return dispatchControlWithAccountLockAndTimeout(controlPluginNames, new DispatcherCallback<PluginDispatcherReturnType<OperationResult>, OperationException>() {
 
             @Override
             public PluginDispatcherReturnType<OperationResult> doOperation() throws OperationException {
@@ -81,7 +81,7 @@ public abstract class OperationControlCallback extends OperationCallbackBase<Pay
         final List<String> pluginNameList = paymentStateControlContext.getPaymentControlPluginNames();
         final String pluginNames = JOINER.join(pluginNameList);
 
-        return dispatchWithAccountLockAndTimeout(pluginNames, new DispatcherCallback<PluginDispatcherReturnType<OperationResult>, OperationException>() {
+        return dispatchControlWithAccountLockAndTimeout(pluginNames, new DispatcherCallback<PluginDispatcherReturnType<OperationResult>, OperationException>() {
 
             @Override
             public PluginDispatcherReturnType<OperationResult> doOperation() throws OperationException {
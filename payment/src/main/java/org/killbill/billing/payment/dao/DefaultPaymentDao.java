@@ -505,6 +505,32 @@ public class DefaultPaymentDao extends EntityDaoBase<PaymentModelDao, Payment, P
         });
     }
 
+    @Override
+    public List<PaymentModelDao> getPaymentsForAccountWithinDates(@Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final InternalTenantContext context) {
+        Preconditions.checkArgument(context.getAccountRecordId() != null);
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<PaymentModelDao>>() {
+            @Override
+            public List<PaymentModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(PaymentSqlDao.class).getByAccountRecordIdWithinDates(fromDate != null ? fromDate.toDate() : null,
+                                                                                                              upToDate != null ? upToDate.toDate() : null,
+                                                                                                              context);
+            }
+        });
+    }
+
+    @Override
+    public List<PaymentTransactionModelDao> getTransactionsForAccountWithinDates(@Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final InternalTenantContext context) {
+        Preconditions.checkArgument(context.getAccountRecordId() != null);
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<PaymentTransactionModelDao>>() {
+            @Override
+            public List<PaymentTransactionModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(TransactionSqlDao.class).getByAccountRecordIdWithinDates(fromDate != null ? fromDate.toDate() : null,
+                                                                                                                  upToDate != null ? upToDate.toDate() : null,
+                                                                                                                  context);
+            }
+        });
+    }
+
     @Override
     public List<PaymentTransactionModelDao> getTransactionsForPayment(final UUID paymentId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<PaymentTransactionModelDao>>() {
@@ -107,6 +107,12 @@ public interface PaymentDao extends EntityDao<PaymentModelDao, Payment, PaymentA
 
     public List<PaymentTransactionModelDao> getTransactionsForPayment(UUID paymentId, InternalTenantContext context);
 
+    // Payments of the account with at least one transaction effective within [fromDate, upToDate) (null bounds are ignored)
+    public List<PaymentModelDao> getPaymentsForAccountWithinDates(DateTime fromDate, DateTime upToDate, InternalTenantContext context);
+
+    // All the transactions of the payments returned by getPaymentsForAccountWithinDates
+    public List<PaymentTransactionModelDao> getTransactionsForAccountWithinDates(DateTime fromDate, DateTime upToDate, InternalTenantContext context);
+
     public PaymentAttemptModelDao getPaymentAttempt(UUID attemptId, InternalTenantContext context);
 
     public PaymentMethodModelDao insertPaymentMethod(PaymentMethodModelDao paymentMethod, InternalCallContext context);
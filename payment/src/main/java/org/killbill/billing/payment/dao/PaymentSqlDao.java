@@ -40,6 +40,12 @@ import org.skife.jdbi.v2.unstable.BindIn;
 @KillBillSqlDaoStringTemplate
 public interface PaymentSqlDao extends EntitySqlDao<PaymentModelDao, Payment> {
 
+    // Payments with at least one transaction effective within [fromDate, upToDate) (null bounds are ignored)
+    @SqlQuery
+    List<PaymentModelDao> getByAccountRecordIdWithinDates(@Bind("fromDate") @Define("fromDate") final Date fromDate,
+                                                          @Bind("upToDate") @Define("upToDate") final Date upToDate,
+                                                          @SmartBindBean final InternalTenantContext context);
+
     @SqlUpdate
     @Audited(ChangeType.UPDATE)
     void updatePaymentForNewTransaction(@Bind("id") final String paymentId,
@@ -69,6 +69,12 @@ public interface TransactionSqlDao extends EntitySqlDao<PaymentTransactionModelD
                                                                                       @Bind("rowCount") final Long rowCount,
                                                                                       @Define("ordering") final String ordering);
 
+    // All the transactions of the payments returned by PaymentSqlDao#getByAccountRecordIdWithinDates
+    @SqlQuery
+    List<PaymentTransactionModelDao> getByAccountRecordIdWithinDates(@Bind("fromDate") @Define("fromDate") final Date fromDate,
+                                                                     @Bind("upToDate") @Define("upToDate") final Date upToDate,
+                                                                     @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public List<PaymentTransactionModelDao> getByPaymentId(@Bind("paymentId") final UUID paymentId,
                                                            @SmartBindBean final InternalTenantContext context);
@@ -20,6 +20,7 @@ package org.killbill.billing.payment.dispatcher;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nullable;
@@ -38,19 +39,35 @@ public class PaymentPluginDispatcher {
 
     private static final Logger log = LoggerFactory.getLogger(PaymentPluginDispatcher.class);
 
+    // Calls to a payment plugin are dispatched to the bulkhead of the plugin, if enabled
     public static <ReturnType> ReturnType dispatchWithExceptionHandling(@Nullable final Account account, final String pluginNames, final Callable<PluginDispatcherReturnType<ReturnType>> callable, final PluginDispatcher<ReturnType> pluginDispatcher) throws PaymentApiException {
+        return dispatchWithExceptionHandling(account, pluginNames, pluginNames, callable, pluginDispatcher);
+    }
+
+    // Calls through control plugins wrap the call to the payment plugin, which the control plugins may pick (e.g. by changing the payment method):
+    // they are dispatched to the shared executor, as a bulkhead per set of control plugins would be shared by all the payment plugins behind them
+    // (e.g. all invoice payments). The wrapped call to the payment plugin is then dispatched to the bulkhead of the payment plugin.
+    public static <ReturnType> ReturnType dispatchControlWithExceptionHandling(@Nullable final Account account, final String controlPluginNames, final Callable<PluginDispatcherReturnType<ReturnType>> callable, final PluginDispatcher<ReturnType> pluginDispatcher) throws PaymentApiException {
+        return dispatchWithExceptionHandling(account, controlPluginNames, null, callable, pluginDispatcher);
+    }
+
+    private static <ReturnType> ReturnType dispatchWithExceptionHandling(@Nullable final Account account, final String pluginNames, @Nullable final String bulkheadPluginNames, final Callable<PluginDispatcherReturnType<ReturnType>> callable, final PluginDispatcher<ReturnType> pluginDispatcher) throws PaymentApiException {
         final UUID accountId = account != null ? account.getId() : null;
         final String accountExternalKey = account != null ? account.getExternalKey() : "";
 
         try {
             log.debug("Calling plugin(s) {}", pluginNames);
-            final ReturnType result = pluginDispatcher.dispatchWithTimeout(callable);
+            final ReturnType result = pluginDispatcher.dispatchWithTimeout(bulkheadPluginNames, callable);
             log.debug("Successful plugin(s) call of {} for account {} with result {}", pluginNames, accountExternalKey, result);
             return result;
         } catch (final TimeoutException e) {
             final String errorMessage = String.format("Call TIMEOUT for accountId='%s' accountExternalKey='%s' plugin='%s'", accountId, accountExternalKey, pluginNames);
             log.warn(errorMessage);
             throw new PaymentApiException(ErrorCode.PAYMENT_PLUGIN_TIMEOUT, accountId, errorMessage);
+        } catch (final RejectedExecutionException e) {
+            final String errorMessage = String.format("Call REJECTED (plugin saturated) for accountId='%s' accountExternalKey='%s' plugin='%s'", accountId, accountExternalKey, pluginNames);
+            log.warn(errorMessage);
+            throw new PaymentApiException(ErrorCode.PAYMENT_INTERNAL_ERROR, errorMessage);
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             final String errorMessage = String.format("Call was interrupted for accountId='%s' accountExternalKey='%s' plugin='%s'", accountId, accountExternalKey, pluginNames);
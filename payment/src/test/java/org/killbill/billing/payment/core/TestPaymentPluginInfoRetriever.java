@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.dao.PaymentModelDao;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.PaymentConfig;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class TestPaymentPluginInfoRetriever extends PaymentTestSuiteNoDB {
+
+    private static final UUID ACCOUNT_ID = UUID.randomUUID();
+
+    @Test(groups = "fast")
+    public void testBatchPlugin() throws Exception {
+        final ListMultimap<String, PaymentModelDao> paymentsByPluginName = LinkedListMultimap.<String, PaymentModelDao>create();
+        final UUID batchPaymentMethodId = UUID.randomUUID();
+        final List<PaymentModelDao> batchPayments = createPayments(paymentsByPluginName, "batchPlugin", batchPaymentMethodId, 3);
+        final UUID otherBatchPaymentMethodId = UUID.randomUUID();
+        final List<PaymentModelDao> otherBatchPayments = createPayments(paymentsByPluginName, "batchPlugin", otherBatchPaymentMethodId, 1);
+        final List<PaymentModelDao> payments = createPayments(paymentsByPluginName, "plugin", UUID.randomUUID(), 2);
+
+        // The batch plugin doesn't know the last payment of each payment method
+        final List<UUID> batchPaymentMethodIds = new CopyOnWriteArrayList<UUID>();
+        final PaymentPluginApi batchPluginApi = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(batchPluginApi.getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenAnswer(new Answer<List<PaymentTransactionInfoPlugin>>() {
+            @Override
+            public List<PaymentTransactionInfoPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                Assert.assertEquals(invocation.getArguments()[0], ACCOUNT_ID);
+                Assert.assertNull(invocation.getArguments()[1]);
+                final List<PluginProperty> properties = ImmutableList.<PluginProperty>copyOf((Iterable<PluginProperty>) invocation.getArguments()[2]);
+                Assert.assertEquals(properties.size(), 2);
+                Assert.assertEquals(properties.get(0).getKey(), PaymentPluginInfoRetriever.KB_PAYMENT_METHOD_ID_PROPERTY);
+                batchPaymentMethodIds.add((UUID) properties.get(0).getValue());
+                Assert.assertEquals(properties.get(1).getKey(), PaymentPluginInfoRetriever.KB_PAYMENT_IDS_PROPERTY);
+                final List<UUID> kbPaymentIds = (List<UUID>) properties.get(1).getValue();
+                final List<PaymentTransactionInfoPlugin> pluginInfos = new LinkedList<PaymentTransactionInfoPlugin>();
+                for (final UUID kbPaymentId : kbPaymentIds.subList(0, kbPaymentIds.size() - 1)) {
+                    pluginInfos.add(createPluginInfo(kbPaymentId));
+                    pluginInfos.add(createPluginInfo(kbPaymentId));
+                }
+                return pluginInfos;
+            }
+        });
+        final PaymentPluginApi pluginApi = createPluginApi(null, null);
+
+        final PaymentExecutors executors = createPaymentExecutors(false, 1, 1);
+        try {
+            final PaymentConfig config = createPaymentConfig(false, 4, "10s", ImmutableList.<String>of("batchPlugin"));
+            final Map<UUID, List<PaymentTransactionInfoPlugin>> result = new PaymentPluginInfoRetriever(config, executors).getPaymentTransactionInfoPlugins(paymentsByPluginName,
+                                                                                                                                                          ImmutableMap.<String, PaymentPluginApi>of("batchPlugin", batchPluginApi, "plugin", pluginApi),
+                                                                                                                                                          callContext);
+            Assert.assertEquals(result.size(), 6);
+            Assert.assertEquals(result.get(batchPayments.get(0).getId()).size(), 2);
+            Assert.assertEquals(result.get(batchPayments.get(1).getId()).size(), 2);
+            Assert.assertEquals(result.get(batchPayments.get(2).getId()).size(), 0);
+            Assert.assertEquals(result.get(otherBatchPayments.get(0).getId()).size(), 0);
+            for (final PaymentModelDao payment : payments) {
+                Assert.assertEquals(result.get(payment.getId()).size(), 1);
+            }
+
+            // One call per payment method for the batch plugin, one call per payment otherwise
+            Mockito.verify(batchPluginApi, Mockito.times(2)).getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any());
+            Assert.assertEquals(ImmutableSet.<UUID>copyOf(batchPaymentMethodIds), ImmutableSet.<UUID>of(batchPaymentMethodId, otherBatchPaymentMethodId));
+            Mockito.verify(pluginApi, Mockito.times(2)).getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any());
+        } finally {
+            executors.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testDeadlineWithPartialResults() throws Exception {
+        final ListMultimap<String, PaymentModelDao> paymentsByPluginName = LinkedListMultimap.<String, PaymentModelDao>create();
+        final List<PaymentModelDao> payments = createPayments(paymentsByPluginName, "plugin", UUID.randomUUID(), 4);
+
+        // The plugin hangs on the first payment (until interrupted)
+        final CountDownLatch hangingCallLatch = new CountDownLatch(1);
+        final CountDownLatch interruptedLatch = new CountDownLatch(1);
+        final PaymentPluginApi pluginApi = createPluginApi(payments.get(0).getId(), new Answer<List<PaymentTransactionInfoPlugin>>() {
+            @Override
+            public List<PaymentTransactionInfoPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                try {
+                    hangingCallLatch.await();
+                } catch (final InterruptedException e) {
+                    interruptedLatch.countDown();
+                    throw e;
+                }
+                return ImmutableList.<PaymentTransactionInfoPlugin>of();
+            }
+        });
+
+        final PaymentExecutors executors = createPaymentExecutors(true, 2, 10);
+        try {
+            final PaymentConfig config = createPaymentConfig(true, 2, "1s", ImmutableList.<String>of());
+            final Map<UUID, List<PaymentTransactionInfoPlugin>> result = new PaymentPluginInfoRetriever(config, executors).getPaymentTransactionInfoPlugins(paymentsByPluginName,
+                                                                                                                                                          ImmutableMap.<String, PaymentPluginApi>of("plugin", pluginApi),
+                                                                                                                                                          callContext);
+            // The other payments went through the second slot in the meantime
+            Assert.assertEquals(result.size(), 3);
+            Assert.assertFalse(result.containsKey(payments.get(0).getId()));
+
+            // The hanging call is cancelled once the deadline is reached
+            Assert.assertTrue(interruptedLatch.await(5, SECONDS));
+        } finally {
+            hangingCallLatch.countDown();
+            executors.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testSaturatedPlugin() throws Exception {
+        final ListMultimap<String, PaymentModelDao> paymentsByPluginName = LinkedListMultimap.<String, PaymentModelDao>create();
+        createPayments(paymentsByPluginName, "saturatedPlugin", UUID.randomUUID(), 3);
+        final List<PaymentModelDao> payments = createPayments(paymentsByPluginName, "plugin", UUID.randomUUID(), 2);
+        final PaymentPluginApi saturatedPluginApi = createPluginApi(null, null);
+        final PaymentPluginApi pluginApi = createPluginApi(null, null);
+
+        final PaymentExecutors executors = createPaymentExecutors(true, 1, 1);
+        final CountDownLatch saturatedPluginLatch = new CountDownLatch(1);
+        try {
+            // Saturate the bulkhead of the plugin: one call in progress, one call queued
+            for (int i = 0; i < 2; i++) {
+                executors.getPluginExecutorService("saturatedPlugin").submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            saturatedPluginLatch.await();
+                        } catch (final InterruptedException ignored) {
+                        }
+                    }
+                });
+            }
+
+            final PaymentConfig config = createPaymentConfig(true, 4, "10s", ImmutableList.<String>of());
+            final Map<UUID, List<PaymentTransactionInfoPlugin>> result = new PaymentPluginInfoRetriever(config, executors).getPaymentTransactionInfoPlugins(paymentsByPluginName,
+                                                                                                                                                          ImmutableMap.<String, PaymentPluginApi>of("saturatedPlugin", saturatedPluginApi, "plugin", pluginApi),
+                                                                                                                                                          callContext);
+            // The payments of the saturated plugin are returned without plugin info, right away
+            Assert.assertEquals(result.size(), 2);
+            for (final PaymentModelDao payment : payments) {
+                Assert.assertTrue(result.containsKey(payment.getId()));
+            }
+            Mockito.verifyZeroInteractions(saturatedPluginApi);
+        } finally {
+            saturatedPluginLatch.countDown();
+            executors.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentCallsAreBoundedAcrossPlugins() throws Exception {
+        final AtomicInteger nbConcurrentCalls = new AtomicInteger();
+        final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        final Answer<List<PaymentTransactionInfoPlugin>> slowAnswer = new Answer<List<PaymentTransactionInfoPlugin>>() {
+            @Override
+            public List<PaymentTransactionInfoPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                final int current = nbConcurrentCalls.incrementAndGet();
+                synchronized (maxConcurrentCalls) {
+                    maxConcurrentCalls.set(Math.max(maxConcurrentCalls.get(), current));
+                }
+                Thread.sleep(20);
+                nbConcurrentCalls.decrementAndGet();
+                return ImmutableList.<PaymentTransactionInfoPlugin>of(createPluginInfo((UUID) invocation.getArguments()[1]));
+            }
+        };
+
+        final ListMultimap<String, PaymentModelDao> paymentsByPluginName = LinkedListMultimap.<String, PaymentModelDao>create();
+        final Map<String, PaymentPluginApi> pluginApiByPluginName = new HashMap<String, PaymentPluginApi>();
+        for (int i = 0; i < 3; i++) {
+            final String pluginName = "plugin" + i;
+            createPayments(paymentsByPluginName, pluginName, UUID.randomUUID(), 5);
+            final PaymentPluginApi pluginApi = Mockito.mock(PaymentPluginApi.class);
+            Mockito.when(pluginApi.getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenAnswer(slowAnswer);
+            pluginApiByPluginName.put(pluginName, pluginApi);
+        }
+
+        // Each plugin could run all its calls at once
+        final PaymentExecutors executors = createPaymentExecutors(true, 5, 10);
+        try {
+            final PaymentConfig config = createPaymentConfig(true, 2, "10s", ImmutableList.<String>of());
+            final Map<UUID, List<PaymentTransactionInfoPlugin>> result = new PaymentPluginInfoRetriever(config, executors).getPaymentTransactionInfoPlugins(paymentsByPluginName, pluginApiByPluginName, callContext);
+            Assert.assertEquals(result.size(), 15);
+            Assert.assertTrue(maxConcurrentCalls.get() <= 2, "maxConcurrentCalls=" + maxConcurrentCalls.get());
+        } finally {
+            executors.stop();
+        }
+    }
+
+    private List<PaymentModelDao> createPayments(final ListMultimap<String, PaymentModelDao> paymentsByPluginName, final String pluginName, final UUID paymentMethodId, final int nbPayments) {
+        final List<PaymentModelDao> payments = new ArrayList<PaymentModelDao>(nbPayments);
+        for (int i = 0; i < nbPayments; i++) {
+            final PaymentModelDao payment = Mockito.mock(PaymentModelDao.class);
+            Mockito.when(payment.getId()).thenReturn(UUID.randomUUID());
+            Mockito.when(payment.getAccountId()).thenReturn(ACCOUNT_ID);
+            Mockito.when(payment.getPaymentMethodId()).thenReturn(paymentMethodId);
+            payments.add(payment);
+            paymentsByPluginName.put(pluginName, payment);
+        }
+        return payments;
+    }
+
+    // Return the plugin info of each payment, except for the specified payment (if any) which gets the specified answer
+    private PaymentPluginApi createPluginApi(final UUID specialPaymentId, final Answer<List<PaymentTransactionInfoPlugin>> specialAnswer) throws Exception {
+        final PaymentPluginApi pluginApi = Mockito.mock(PaymentPluginApi.class);
+        Mockito.when(pluginApi.getPaymentInfo(Mockito.<UUID>any(), Mockito.<UUID>any(), Mockito.<Iterable<PluginProperty>>any(), Mockito.<TenantContext>any())).thenAnswer(new Answer<List<PaymentTransactionInfoPlugin>>() {
+            @Override
+            public List<PaymentTransactionInfoPlugin> answer(final InvocationOnMock invocation) throws Throwable {
+                final UUID kbPaymentId = (UUID) invocation.getArguments()[1];
+                if (kbPaymentId.equals(specialPaymentId)) {
+                    return specialAnswer.answer(invocation);
+                }
+                return ImmutableList.<PaymentTransactionInfoPlugin>of(createPluginInfo(kbPaymentId));
+            }
+        });
+        return pluginApi;
+    }
+
+    private PaymentTransactionInfoPlugin createPluginInfo(final UUID kbPaymentId) {
+        final PaymentTransactionInfoPlugin pluginInfo = Mockito.mock(PaymentTransactionInfoPlugin.class);
+        Mockito.when(pluginInfo.getKbPaymentId()).thenReturn(kbPaymentId);
+        return pluginInfo;
+    }
+
+    private PaymentConfig createPaymentConfig(final boolean bulkheadEnabled, final int pluginInfoThreadNb, final String pluginInfoTimeout, final List<String> batchPluginNames) {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.isPaymentPluginBulkheadEnabled()).thenReturn(bulkheadEnabled);
+        Mockito.when(config.getPaymentPluginInfoThreadNb()).thenReturn(pluginInfoThreadNb);
+        Mockito.when(config.getPaymentPluginInfoTimeout()).thenReturn(new TimeSpan(pluginInfoTimeout));
+        Mockito.when(config.getPaymentPluginInfoBatchPluginNames()).thenReturn(batchPluginNames);
+        return config;
+    }
+
+    private PaymentExecutors createPaymentExecutors(final boolean bulkheadEnabled, final int bulkheadThreadNb, final int bulkheadQueueSize) {
+        final PaymentConfig config = Mockito.mock(PaymentConfig.class);
+        Mockito.when(config.getPaymentPluginThreadNb()).thenReturn(10);
+        Mockito.when(config.isPaymentPluginBulkheadEnabled()).thenReturn(bulkheadEnabled);
+        Mockito.when(config.getPaymentPluginBulkheadThreadNb()).thenReturn(bulkheadThreadNb);
+        Mockito.when(config.getPaymentPluginBulkheadQueueSize()).thenReturn(bulkheadQueueSize);
+        final PaymentExecutors executors = new PaymentExecutors(config, new MetricRegistry());
+        executors.initialize();
+        return executors;
+    }
+}
@@ -99,6 +99,25 @@ public class TestPaymentProcessor extends PaymentTestSuiteWithEmbeddedDB {
         paymentBusListener.verify(1, 0, 1, account.getId(), paymentId, TEN, TransactionStatus.SUCCESS);
     }
 
+    @Test(groups = "slow")
+    public void testGetAccountPaymentsWithPluginInfo() throws Exception {
+        final List<UUID> paymentIds = new LinkedList<UUID>();
+        for (int i = 0; i < 7; i++) {
+            final Payment purchase = paymentProcessor.createPurchase(true, null, account, null, null, TEN, CURRENCY, null, UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+                                                                     null, null, SHOULD_LOCK_ACCOUNT, PLUGIN_PROPERTIES, callContext, internalCallContext);
+            paymentIds.add(purchase.getId());
+        }
+
+        // The plugin info is retrieved concurrently, but the payments are still returned in order
+        final List<Payment> payments = paymentRefresher.getAccountPayments(account.getId(), true, false, true, callContext, internalCallContext);
+        Assert.assertEquals(payments.size(), paymentIds.size());
+        for (int i = 0; i < payments.size(); i++) {
+            Assert.assertEquals(payments.get(i).getId(), paymentIds.get(i));
+            Assert.assertEquals(payments.get(i).getTransactions().size(), 1);
+            Assert.assertNotNull(payments.get(i).getTransactions().get(0).getPaymentInfoPlugin());
+        }
+    }
+
     @Test(groups = "slow")
     public void testClassicFlow() throws Exception {
         final String paymentExternalKey = UUID.randomUUID().toString();
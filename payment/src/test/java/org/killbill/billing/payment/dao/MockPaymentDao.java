@@ -334,6 +334,16 @@ public class MockPaymentDao extends MockEntityDaoBase<PaymentModelDao, Payment,
         }
     }
 
+    @Override
+    public List<PaymentModelDao> getPaymentsForAccountWithinDates(@Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<PaymentTransactionModelDao> getTransactionsForAccountWithinDates(@Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public PaymentAttemptModelDao getPaymentAttempt(final UUID attemptId, final InternalTenantContext context) {
         synchronized (this) {
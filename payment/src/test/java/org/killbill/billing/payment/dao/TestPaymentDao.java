@@ -383,6 +383,52 @@ public class TestPaymentDao extends PaymentTestSuiteWithEmbeddedDB {
 
     }
 
+    @Test(groups = "slow")
+    public void testPaymentsAndTransactionsWithinDates() {
+        final UUID paymentMethodId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final DateTime initialTime = clock.getUTCNow();
+
+        // First payment: a single transaction at initialTime
+        final PaymentModelDao firstPayment = new PaymentModelDao(initialTime, initialTime, accountId, paymentMethodId, UUID.randomUUID().toString());
+        final PaymentTransactionModelDao firstTransaction = new PaymentTransactionModelDao(initialTime, initialTime, null, UUID.randomUUID().toString(),
+                                                                                           firstPayment.getId(), TransactionType.AUTHORIZE, initialTime,
+                                                                                           TransactionStatus.SUCCESS, BigDecimal.TEN, Currency.USD,
+                                                                                           null, null);
+        paymentDao.insertPaymentWithFirstTransaction(firstPayment, firstTransaction, internalCallContext);
+
+        // Second payment: an authorization at initialTime, captured 10 days later
+        final PaymentModelDao secondPayment = new PaymentModelDao(initialTime, initialTime, accountId, paymentMethodId, UUID.randomUUID().toString());
+        final PaymentTransactionModelDao authorization = new PaymentTransactionModelDao(initialTime, initialTime, null, UUID.randomUUID().toString(),
+                                                                                        secondPayment.getId(), TransactionType.AUTHORIZE, initialTime,
+                                                                                        TransactionStatus.SUCCESS, BigDecimal.TEN, Currency.USD,
+                                                                                        null, null);
+        paymentDao.insertPaymentWithFirstTransaction(secondPayment, authorization, internalCallContext);
+        final PaymentTransactionModelDao capture = new PaymentTransactionModelDao(initialTime, initialTime, null, UUID.randomUUID().toString(),
+                                                                                  secondPayment.getId(), TransactionType.CAPTURE, initialTime.plusDays(10),
+                                                                                  TransactionStatus.SUCCESS, BigDecimal.TEN, Currency.USD,
+                                                                                  null, null);
+        paymentDao.updatePaymentWithNewTransaction(secondPayment.getId(), capture, internalCallContext);
+
+        // Both payments have a transaction in that window
+        assertEquals(paymentDao.getPaymentsForAccountWithinDates(initialTime.minusDays(1), initialTime.plusDays(1), internalCallContext).size(), 2);
+        assertEquals(paymentDao.getTransactionsForAccountWithinDates(initialTime.minusDays(1), initialTime.plusDays(1), internalCallContext).size(), 3);
+
+        // Only the capture is in that window, but all the transactions of its payment are returned
+        final List<PaymentModelDao> payments = paymentDao.getPaymentsForAccountWithinDates(initialTime.plusDays(5), null, internalCallContext);
+        assertEquals(payments.size(), 1);
+        assertEquals(payments.get(0).getId(), secondPayment.getId());
+        final List<PaymentTransactionModelDao> transactions = paymentDao.getTransactionsForAccountWithinDates(initialTime.plusDays(5), null, internalCallContext);
+        assertEquals(transactions.size(), 2);
+        for (final PaymentTransactionModelDao transaction : transactions) {
+            assertEquals(transaction.getPaymentId(), secondPayment.getId());
+        }
+
+        // The upper bound is exclusive
+        assertEquals(paymentDao.getPaymentsForAccountWithinDates(initialTime.plusDays(5), initialTime.plusDays(10), internalCallContext).size(), 0);
+        assertEquals(paymentDao.getTransactionsForAccountWithinDates(initialTime.plusDays(5), initialTime.plusDays(10), internalCallContext).size(), 0);
+    }
+
     @Test(groups = "slow")
     public void testPaymentByStatesAcrossTenants() throws Exception {
         final String externalKey1 = UUID.randomUUID().toString();
@@ -19,22 +19,31 @@
 package org.killbill.billing.payment.dispatcher;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.payment.PaymentTestSuiteNoDB;
 import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.core.PaymentExecutors;
 import org.killbill.billing.payment.dispatcher.PluginDispatcher.PluginDispatcherReturnType;
 import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.config.definition.PaymentConfig;
 import org.killbill.commons.request.Request;
 import org.killbill.commons.request.RequestData;
+import org.mockito.Mockito;
 import org.slf4j.MDC;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+
 public class TestPluginDispatcher extends PaymentTestSuiteNoDB {
 
     private PluginDispatcher<Void> voidPluginDispatcher;
@@ -151,4 +160,123 @@ public class TestPluginDispatcher extends PaymentTestSuiteNoDB {
         Assert.assertEquals(actualRequestId, requestId);
     }
 
+    @Test(groups = "fast")
+    public void testDispatchWithBulkheads() throws Exception {
+        final PaymentConfig bulkheadPaymentConfig = Mockito.mock(PaymentConfig.class);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginThreadNb()).thenReturn(10);
+        Mockito.when(bulkheadPaymentConfig.isPaymentPluginBulkheadEnabled()).thenReturn(true);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginBulkheadThreadNb()).thenReturn(1);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginBulkheadQueueSize()).thenReturn(1);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final PaymentExecutors bulkheadPaymentExecutors = new PaymentExecutors(bulkheadPaymentConfig, metricRegistry);
+        bulkheadPaymentExecutors.initialize();
+
+        final CountDownLatch slowPluginLatch = new CountDownLatch(1);
+        final Callable<PluginDispatcherReturnType<String>> slowCall = new Callable<PluginDispatcherReturnType<String>>() {
+            @Override
+            public PluginDispatcherReturnType<String> call() throws Exception {
+                slowPluginLatch.await();
+                return PluginDispatcher.<String>createPluginDispatcherReturnType("slow");
+            }
+        };
+        final Callable<PluginDispatcherReturnType<String>> fastCall = new Callable<PluginDispatcherReturnType<String>>() {
+            @Override
+            public PluginDispatcherReturnType<String> call() throws Exception {
+                return PluginDispatcher.<String>createPluginDispatcherReturnType("fast");
+            }
+        };
+
+        final PluginDispatcher<String> pluginDispatcher = new PluginDispatcher<String>(1, bulkheadPaymentExecutors);
+        try {
+            // Saturate the slow plugin: one call in progress, one call queued
+            for (int i = 0; i < 2; i++) {
+                try {
+                    pluginDispatcher.dispatchWithTimeout("slowPlugin", slowCall, 100, TimeUnit.MILLISECONDS);
+                    Assert.fail("Failed : should have had Timeout exception");
+                } catch (final TimeoutException e) {
+                }
+            }
+            Assert.assertEquals(metricRegistry.getGauges().get(MetricRegistry.name("killbill.payment.plugins", "slowPlugin", "activeCount")).getValue(), 1);
+            Assert.assertEquals(metricRegistry.getGauges().get(MetricRegistry.name("killbill.payment.plugins", "slowPlugin", "queueDepth")).getValue(), 1);
+
+            try {
+                pluginDispatcher.dispatchWithTimeout("slowPlugin", slowCall, 100, TimeUnit.MILLISECONDS);
+                Assert.fail("Failed : should have had RejectedExecutionException");
+            } catch (final RejectedExecutionException e) {
+            }
+
+            // The other plugins aren't impacted
+            Assert.assertEquals(pluginDispatcher.dispatchWithTimeout("fastPlugin", fastCall, 100, TimeUnit.MILLISECONDS), "fast");
+            Assert.assertEquals(pluginDispatcher.dispatchWithTimeout(fastCall, 100, TimeUnit.MILLISECONDS), "fast");
+            Assert.assertEquals(metricRegistry.timer(MetricRegistry.name("killbill.payment.plugins", "fastPlugin", "execution")).getCount(), 1);
+        } finally {
+            slowPluginLatch.countDown();
+            bulkheadPaymentExecutors.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testControlDispatchesWithBulkheads() throws Exception {
+        final PaymentConfig bulkheadPaymentConfig = Mockito.mock(PaymentConfig.class);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginThreadNb()).thenReturn(10);
+        Mockito.when(bulkheadPaymentConfig.isPaymentPluginBulkheadEnabled()).thenReturn(true);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginBulkheadThreadNb()).thenReturn(1);
+        Mockito.when(bulkheadPaymentConfig.getPaymentPluginBulkheadQueueSize()).thenReturn(1);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final PaymentExecutors bulkheadPaymentExecutors = new PaymentExecutors(bulkheadPaymentConfig, metricRegistry);
+        bulkheadPaymentExecutors.initialize();
+
+        final CountDownLatch slowGatewayLatch = new CountDownLatch(1);
+        final PluginDispatcher<String> controlPluginDispatcher = new PluginDispatcher<String>(1, bulkheadPaymentExecutors);
+        final PluginDispatcher<String> paymentPluginDispatcher = new PluginDispatcher<String>(1, bulkheadPaymentExecutors);
+        try {
+            // Saturate the slow gateway through the invoice control plugin: one call in progress, one call queued, one call rejected
+            for (int i = 0; i < 3; i++) {
+                try {
+                    dispatchThroughControlPlugin("slowGateway", slowGatewayLatch, controlPluginDispatcher, paymentPluginDispatcher);
+                    Assert.fail("Failed : should have had PaymentApiException");
+                } catch (final PaymentApiException e) {
+                    Assert.assertEquals(e.getCode(), i < 2 ? ErrorCode.PAYMENT_PLUGIN_TIMEOUT.getCode() : ErrorCode.PAYMENT_INTERNAL_ERROR.getCode());
+                }
+            }
+            Assert.assertEquals(metricRegistry.getGauges().get(MetricRegistry.name("killbill.payment.plugins", "slowGateway", "activeCount")).getValue(), 1);
+            Assert.assertEquals(metricRegistry.getGauges().get(MetricRegistry.name("killbill.payment.plugins", "slowGateway", "queueDepth")).getValue(), 1);
+
+            // The payments to the other gateway behind the same control plugin aren't impacted
+            Assert.assertEquals(dispatchThroughControlPlugin("fastGateway", null, controlPluginDispatcher, paymentPluginDispatcher), "fastGateway");
+            Assert.assertEquals(metricRegistry.timer(MetricRegistry.name("killbill.payment.plugins", "fastGateway", "execution")).getCount(), 1);
+
+            // No bulkhead is shared by all the payments going through the control plugin
+            Assert.assertFalse(metricRegistry.getGauges().containsKey(MetricRegistry.name("killbill.payment.plugins", "__INVOICE_PAYMENT_CONTROL_PLUGIN__", "activeCount")));
+        } finally {
+            slowGatewayLatch.countDown();
+            bulkheadPaymentExecutors.stop();
+        }
+    }
+
+    // Same nesting as the payment state machine: the call through the control plugin wraps the call to the gateway
+    private String dispatchThroughControlPlugin(final String gateway,
+                                                @Nullable final CountDownLatch gatewayLatch,
+                                                final PluginDispatcher<String> controlPluginDispatcher,
+                                                final PluginDispatcher<String> paymentPluginDispatcher) throws PaymentApiException {
+        final Callable<PluginDispatcherReturnType<String>> gatewayCall = new Callable<PluginDispatcherReturnType<String>>() {
+            @Override
+            public PluginDispatcherReturnType<String> call() throws Exception {
+                if (gatewayLatch != null) {
+                    gatewayLatch.await();
+                }
+                return PluginDispatcher.<String>createPluginDispatcherReturnType(gateway);
+            }
+        };
+        return PaymentPluginDispatcher.dispatchControlWithExceptionHandling(null,
+                                                                           "__INVOICE_PAYMENT_CONTROL_PLUGIN__",
+                                                                           new Callable<PluginDispatcherReturnType<String>>() {
+                                                                               @Override
+                                                                               public PluginDispatcherReturnType<String> call() throws Exception {
+                                                                                   final String result = PaymentPluginDispatcher.dispatchWithExceptionHandling(null, gateway, gatewayCall, paymentPluginDispatcher);
+                                                                                   return PluginDispatcher.<String>createPluginDispatcherReturnType(result);
+                                                                               }
+                                                                           },
+                                                                           controlPluginDispatcher);
+    }
 }
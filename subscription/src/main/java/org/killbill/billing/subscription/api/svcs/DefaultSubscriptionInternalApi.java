@@ -212,6 +212,16 @@ public class DefaultSubscriptionInternalApi extends DefaultSubscriptionBaseCreat
         return dao.getSubscriptionBundleForAccount(accountId, context);
     }
 
+    @Override
+    public Map<Long, List<SubscriptionBaseBundle>> getBundlesForAccounts(final Collection<Long> accountRecordIds, final InternalTenantContext tenantContext) {
+        return dao.getSubscriptionBundlesForAccounts(accountRecordIds, tenantContext);
+    }
+
+    @Override
+    public Map<UUID, Long> getAccountRecordIdsForSubscriptions(final Collection<UUID> subscriptionIds, final InternalTenantContext tenantContext) {
+        return dao.getAccountRecordIdsForSubscriptions(subscriptionIds, tenantContext);
+    }
+
     @Override
     public List<SubscriptionBaseBundle> getBundlesForKey(final String bundleKey, final InternalTenantContext context) {
         return dao.getSubscriptionBundlesForKey(bundleKey, context);
@@ -300,6 +310,26 @@ public class DefaultSubscriptionInternalApi extends DefaultSubscriptionBaseCreat
         }
     }
 
+    @Override
+    public Map<Long, Map<UUID, List<SubscriptionBase>>> getSubscriptionsForAccounts(final VersionedCatalog publicCatalog, final Collection<InternalTenantContext> contexts) throws SubscriptionBaseApiException {
+        try {
+            final SubscriptionCatalog catalog = DefaultSubscriptionCatalogApi.wrapCatalog(publicCatalog, clock);
+            final Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> internalSubscriptions = dao.getSubscriptionsForAccounts(catalog, contexts);
+            final Map<Long, Map<UUID, List<SubscriptionBase>>> result = new HashMap<Long, Map<UUID, List<SubscriptionBase>>>();
+            for (final Long accountRecordId : internalSubscriptions.keySet()) {
+                final Map<UUID, List<SubscriptionBase>> subscriptionsForAccount = new HashMap<UUID, List<SubscriptionBase>>();
+                for (final UUID bundleId : internalSubscriptions.get(accountRecordId).keySet()) {
+                    final List<DefaultSubscriptionBase> subscriptionsForApiUse = createSubscriptionsForApiUse(internalSubscriptions.get(accountRecordId).get(bundleId));
+                    subscriptionsForAccount.put(bundleId, new ArrayList<SubscriptionBase>(subscriptionsForApiUse));
+                }
+                result.put(accountRecordId, subscriptionsForAccount);
+            }
+            return result;
+        } catch (final CatalogApiException e) {
+            throw new SubscriptionBaseApiException(e);
+        }
+    }
+
     @Override
     public SubscriptionBase getBaseSubscription(final UUID bundleId, final InternalTenantContext context) throws SubscriptionBaseApiException {
         try {
@@ -41,6 +41,7 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.CatalogInternalApi;
 import org.killbill.billing.catalog.api.Plan;
 import org.killbill.billing.catalog.api.Product;
 import org.killbill.billing.catalog.api.ProductCategory;
@@ -112,11 +113,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
@@ -131,12 +134,14 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     private final AddonUtils addonUtils;
     private final PersistentBus eventBus;
     private final AuditDao auditDao;
+    private final CatalogInternalApi catalogInternalApi;
 
     @Inject
     public DefaultSubscriptionDao(final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi, final Clock clock, final AddonUtils addonUtils,
                                   final NotificationQueueService notificationQueueService, final PersistentBus eventBus,
                                   final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao,
                                   final AuditDao auditDao,
+                                  final CatalogInternalApi catalogInternalApi,
                                   final InternalCallContextFactory internalCallContextFactory) {
         super(nonEntityDao, cacheControllerDispatcher, new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory), BundleSqlDao.class);
         this.clock = clock;
@@ -144,6 +149,7 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         this.addonUtils = addonUtils;
         this.eventBus = eventBus;
         this.auditDao = auditDao;
+        this.catalogInternalApi = catalogInternalApi;
     }
 
     @Override
@@ -179,6 +185,48 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         });
     }
 
+    @Override
+    public Map<UUID, Long> getAccountRecordIdsForSubscriptions(final Collection<UUID> subscriptionIds, final InternalTenantContext tenantContext) {
+        if (subscriptionIds.isEmpty()) {
+            return ImmutableMap.<UUID, Long>of();
+        }
+
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<UUID, Long>>() {
+            @Override
+            public Map<UUID, Long> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final Collection<String> ids = Collections2.<UUID, String>transform(subscriptionIds, new Function<UUID, String>() {
+                    @Override
+                    public String apply(final UUID input) {
+                        return input.toString();
+                    }
+                });
+
+                final Map<UUID, Long> result = new HashMap<UUID, Long>();
+                for (final SubscriptionModelDao model : entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByIds(ids, tenantContext)) {
+                    result.put(model.getId(), model.getAccountRecordId());
+                }
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public Map<Long, List<SubscriptionBaseBundle>> getSubscriptionBundlesForAccounts(final Collection<Long> accountRecordIds, final InternalTenantContext tenantContext) {
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<Long, List<SubscriptionBaseBundle>>>() {
+            @Override
+            public Map<Long, List<SubscriptionBaseBundle>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final Map<Long, List<SubscriptionBaseBundle>> result = new HashMap<Long, List<SubscriptionBaseBundle>>();
+                for (final SubscriptionBundleModelDao model : entitySqlDaoWrapperFactory.become(BundleSqlDao.class).getByAccountRecordIds(accountRecordIds, tenantContext)) {
+                    if (result.get(model.getAccountRecordId()) == null) {
+                        result.put(model.getAccountRecordId(), new LinkedList<SubscriptionBaseBundle>());
+                    }
+                    result.get(model.getAccountRecordId()).add(SubscriptionBundleModelDao.toSubscriptionBundle(model));
+                }
+                return result;
+            }
+        });
+    }
+
     @Override
     public SubscriptionBaseBundle getSubscriptionBundleFromId(final UUID bundleId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<SubscriptionBaseBundle>() {
@@ -452,23 +500,89 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
 
         final List<SubscriptionBaseEvent> eventsForAccount = getEventsForAccountId(context);
 
-        final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>();
-        for (final UUID bundleId : subscriptionsFromAccountId.keySet()) {
+        // Load all the overridden plans of the account at once, rather than one by one when rebuilding the transitions
+        catalogInternalApi.prefetchOverriddenPlans(getPlanNames(eventsForAccount), context);
 
-            final List<DefaultSubscriptionBase> subscriptionsForBundle = subscriptionsFromAccountId.get(bundleId);
-            final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
+        return buildSubscriptionsForAccount(subscriptionsFromAccountId, eventsForAccount, catalog, context);
+    }
 
-            for (final SubscriptionBase cur : subscriptionsForBundle) {
-                final Collection<SubscriptionBaseEvent> events = Collections2.filter(eventsForAccount, new Predicate<SubscriptionBaseEvent>() {
-                    @Override
-                    public boolean apply(final SubscriptionBaseEvent input) {
-                        return input.getSubscriptionId().equals(cur.getId());
+    @Override
+    public Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> getSubscriptionsForAccounts(final SubscriptionCatalog catalog, final Collection<InternalTenantContext> contexts) throws CatalogApiException {
+        if (contexts.isEmpty()) {
+            return ImmutableMap.<Long, Map<UUID, List<DefaultSubscriptionBase>>>of();
+        }
+
+        // All accounts belong to the same tenant
+        final InternalTenantContext tenantContext = contexts.iterator().next();
+        final Collection<Long> accountRecordIds = new ArrayList<Long>(Collections2.transform(contexts, new Function<InternalTenantContext, Long>() {
+            @Override
+            public Long apply(final InternalTenantContext input) {
+                return input.getAccountRecordId();
+            }
+        }));
+
+        final Map<Long, List<DefaultSubscriptionBase>> subscriptionsPerAccount = transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<Long, List<DefaultSubscriptionBase>>>() {
+            @Override
+            public Map<Long, List<DefaultSubscriptionBase>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final List<SubscriptionBundleModelDao> bundleModels = entitySqlDaoWrapperFactory.become(BundleSqlDao.class).getByAccountRecordIds(accountRecordIds, tenantContext);
+                final List<SubscriptionModelDao> subscriptionModels = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordIds(accountRecordIds, tenantContext);
+
+                final Map<Long, List<DefaultSubscriptionBase>> result = new HashMap<Long, List<DefaultSubscriptionBase>>();
+                final Map<UUID, SubscriptionBundleModelDao> bundleModelsPerId = getBundleModelsPerId(bundleModels);
+                for (final SubscriptionModelDao subscriptionModel : subscriptionModels) {
+                    if (result.get(subscriptionModel.getAccountRecordId()) == null) {
+                        result.put(subscriptionModel.getAccountRecordId(), new LinkedList<DefaultSubscriptionBase>());
+                    }
+                    result.get(subscriptionModel.getAccountRecordId()).add(SubscriptionModelDao.toSubscription(subscriptionModel, bundleModelsPerId.get(subscriptionModel.getBundleId()).getExternalKey()));
+                }
+                return result;
+            }
+        });
 
+        final Map<Long, List<SubscriptionEventModelDao>> eventModelsPerAccount = transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<Long, List<SubscriptionEventModelDao>>>() {
+            @Override
+            public Map<Long, List<SubscriptionEventModelDao>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final Map<Long, List<SubscriptionEventModelDao>> result = new HashMap<Long, List<SubscriptionEventModelDao>>();
+                for (final SubscriptionEventModelDao eventModel : entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordIds(accountRecordIds, tenantContext)) {
+                    if (result.get(eventModel.getAccountRecordId()) == null) {
+                        result.put(eventModel.getAccountRecordId(), new LinkedList<SubscriptionEventModelDao>());
                     }
-                });
-                eventsForSubscriptions.putAll(cur.getId(), ImmutableList.copyOf(events));
+                    result.get(eventModel.getAccountRecordId()).add(eventModel);
+                }
+                return result;
             }
+        });
 
+        final Map<Long, List<SubscriptionBaseEvent>> eventsPerAccount = new HashMap<Long, List<SubscriptionBaseEvent>>();
+        for (final Long accountRecordId : eventModelsPerAccount.keySet()) {
+            eventsPerAccount.put(accountRecordId, filterSubscriptionBaseEvents(eventModelsPerAccount.get(accountRecordId)));
+        }
+
+        // Overridden plans are per tenant: load them for all the accounts at once
+        catalogInternalApi.prefetchOverriddenPlans(getPlanNames(Iterables.concat(eventsPerAccount.values())), tenantContext);
+
+        final Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> result = new HashMap<Long, Map<UUID, List<DefaultSubscriptionBase>>>();
+        for (final InternalTenantContext context : contexts) {
+            final List<DefaultSubscriptionBase> subscriptionsForAccount = MoreObjects.firstNonNull(subscriptionsPerAccount.get(context.getAccountRecordId()), ImmutableList.<DefaultSubscriptionBase>of());
+            final List<SubscriptionBaseEvent> eventsForAccount = MoreObjects.firstNonNull(eventsPerAccount.get(context.getAccountRecordId()), ImmutableList.<SubscriptionBaseEvent>of());
+            result.put(context.getAccountRecordId(), buildSubscriptionsForAccount(getSubscriptionsPerBundle(subscriptionsForAccount), eventsForAccount, catalog, context));
+        }
+        return result;
+    }
+
+    private Map<UUID, List<DefaultSubscriptionBase>> buildSubscriptionsForAccount(final Map<UUID, List<DefaultSubscriptionBase>> subscriptionsFromAccountId,
+                                                                                  final Iterable<SubscriptionBaseEvent> eventsForAccount,
+                                                                                  final SubscriptionCatalog catalog,
+                                                                                  final InternalTenantContext context) throws CatalogApiException {
+        // Events are dispatched in one pass (preserving their order), instead of filtering all the events of the account for each subscription
+        final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
+        for (final SubscriptionBaseEvent event : eventsForAccount) {
+            eventsForSubscriptions.put(event.getSubscriptionId(), event);
+        }
+
+        final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>();
+        for (final UUID bundleId : subscriptionsFromAccountId.keySet()) {
+            final List<DefaultSubscriptionBase> subscriptionsForBundle = subscriptionsFromAccountId.get(bundleId);
             result.put(bundleId, buildBundleSubscriptions(subscriptionsForBundle, eventsForSubscriptions, null, catalog, context));
         }
         return result;
@@ -480,25 +594,32 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
             public List<DefaultSubscriptionBase> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
 
                 final List<SubscriptionBundleModelDao> bundleModels = entitySqlDaoWrapperFactory.become(BundleSqlDao.class).getByAccountRecordId(context);
+                final Map<UUID, SubscriptionBundleModelDao> bundleModelsPerId = getBundleModelsPerId(bundleModels);
 
                 final List<SubscriptionModelDao> subscriptionModels = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
                 return new ArrayList<DefaultSubscriptionBase>(Collections2.transform(subscriptionModels, new Function<SubscriptionModelDao, DefaultSubscriptionBase>() {
                     @Override
                     public DefaultSubscriptionBase apply(final SubscriptionModelDao input) {
-                        final SubscriptionBundleModelDao bundleModel = Iterables.find(bundleModels, new Predicate<SubscriptionBundleModelDao>() {
-                            @Override
-                            public boolean apply(final SubscriptionBundleModelDao bundleInput) {
-                                return bundleInput.getId().equals(input.getBundleId());
-                            }
-                        });
-                        return SubscriptionModelDao.toSubscription(input, bundleModel.getExternalKey());
+                        return SubscriptionModelDao.toSubscription(input, bundleModelsPerId.get(input.getBundleId()).getExternalKey());
                     }
                 }));
             }
         });
 
+        return getSubscriptionsPerBundle(allSubscriptions);
+    }
+
+    private Map<UUID, SubscriptionBundleModelDao> getBundleModelsPerId(final Iterable<SubscriptionBundleModelDao> bundleModels) {
+        final Map<UUID, SubscriptionBundleModelDao> bundleModelsPerId = new HashMap<UUID, SubscriptionBundleModelDao>();
+        for (final SubscriptionBundleModelDao bundleModel : bundleModels) {
+            bundleModelsPerId.put(bundleModel.getId(), bundleModel);
+        }
+        return bundleModelsPerId;
+    }
+
+    private Map<UUID, List<DefaultSubscriptionBase>> getSubscriptionsPerBundle(final Iterable<DefaultSubscriptionBase> subscriptions) {
         final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>();
-        for (final DefaultSubscriptionBase subscriptionBase : allSubscriptions) {
+        for (final DefaultSubscriptionBase subscriptionBase : subscriptions) {
             if (result.get(subscriptionBase.getBundleId()) == null) {
                 result.put(subscriptionBase.getBundleId(), new LinkedList<DefaultSubscriptionBase>());
             }
@@ -803,6 +924,16 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
         }));
     }
 
+    private Set<String> getPlanNames(final Iterable<SubscriptionBaseEvent> events) {
+        final Set<String> planNames = new HashSet<String>();
+        for (final SubscriptionBaseEvent event : events) {
+            if (event instanceof ApiEvent && ((ApiEvent) event).getEventPlan() != null) {
+                planNames.add(((ApiEvent) event).getEventPlan());
+            }
+        }
+        return planNames;
+    }
+
     private List<SubscriptionBaseEvent> getEventsForAccountId(final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<SubscriptionBaseEvent>>() {
             @Override
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.subscription.engine.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -47,6 +48,11 @@ public interface SubscriptionDao extends EntityDao<SubscriptionBundleModelDao, S
     // Bundle apis
     List<SubscriptionBaseBundle> getSubscriptionBundleForAccount(UUID accountId, InternalTenantContext context);
 
+    // Map account record id -> bundles, for accounts of the same tenant
+    Map<Long, List<SubscriptionBaseBundle>> getSubscriptionBundlesForAccounts(Collection<Long> accountRecordIds, InternalTenantContext tenantContext);
+
+    Map<UUID, Long> getAccountRecordIdsForSubscriptions(Collection<UUID> subscriptionIds, InternalTenantContext tenantContext);
+
     List<SubscriptionBaseBundle> getSubscriptionBundlesForKey(String bundleKey, InternalTenantContext context);
 
     Pagination<SubscriptionBundleModelDao> searchSubscriptionBundles(String searchKey, Long offset, Long limit, InternalTenantContext context);
@@ -74,6 +80,9 @@ public interface SubscriptionDao extends EntityDao<SubscriptionBundleModelDao, S
 
     Map<UUID, List<DefaultSubscriptionBase>> getSubscriptionsForAccount(final SubscriptionCatalog catalog, InternalTenantContext context) throws CatalogApiException;
 
+    // Map account record id -> (bundle id -> subscriptions), for accounts of the same tenant
+    Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> getSubscriptionsForAccounts(final SubscriptionCatalog catalog, Collection<InternalTenantContext> contexts) throws CatalogApiException;
+
     // Update
     void updateChargedThroughDate(DefaultSubscriptionBase subscription, InternalCallContext context);
 
@@ -20,6 +20,7 @@ package org.killbill.billing.subscription.engine.dao;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -124,6 +125,16 @@ public class MockSubscriptionDaoMemory extends MockEntityDaoBase<SubscriptionBun
         return results;
     }
 
+    @Override
+    public Map<Long, List<SubscriptionBaseBundle>> getSubscriptionBundlesForAccounts(final Collection<Long> accountRecordIds, final InternalTenantContext tenantContext) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<UUID, Long> getAccountRecordIdsForSubscriptions(final Collection<UUID> subscriptionIds, final InternalTenantContext tenantContext) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<SubscriptionBaseBundle> getSubscriptionBundlesForKey(final String bundleKey, final InternalTenantContext context) {
         final List<SubscriptionBaseBundle> results = new ArrayList<SubscriptionBaseBundle>();
@@ -274,6 +285,15 @@ public class MockSubscriptionDaoMemory extends MockEntityDaoBase<SubscriptionBun
         return results;
     }
 
+    @Override
+    public Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> getSubscriptionsForAccounts(final SubscriptionCatalog catalog, final Collection<InternalTenantContext> contexts) {
+        final Map<Long, Map<UUID, List<DefaultSubscriptionBase>>> results = new HashMap<Long, Map<UUID, List<DefaultSubscriptionBase>>>();
+        for (final InternalTenantContext context : contexts) {
+            results.put(context.getAccountRecordId(), getSubscriptionsForAccount(catalog, context));
+        }
+        return results;
+    }
+
     @Override
     public List<SubscriptionBaseEvent> getEventsForSubscription(final UUID subscriptionId, final InternalTenantContext context) {
         synchronized (events) {
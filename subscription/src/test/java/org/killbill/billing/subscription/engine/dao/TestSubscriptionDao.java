@@ -368,6 +368,7 @@ public class TestSubscriptionDao extends SubscriptionTestSuiteWithEmbeddedDB {
                                                                            controlCacheDispatcher,
                                                                            nonEntityDao,
                                                                            auditDao,
+                                                                           catalogInternalApi,
                                                                            internalCallContextFactory);
         Mockito.verify(dbiSpy, Mockito.times(0)).open();
         Mockito.verify(roDbiSpy, Mockito.times(0)).open();
@@ -24,6 +24,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.tenant.dao.TenantDao;
@@ -31,6 +32,8 @@ import org.killbill.billing.tenant.dao.TenantModelDao;
 import org.killbill.billing.tenant.glue.DefaultTenantModule;
 import org.killbill.billing.util.LocaleUtils;
 
+import com.google.common.base.Preconditions;
+
 /**
  * This is the private API which is used to extract per tenant objects (catalog, overdue, invoice templates, ..)
  * <p/>
@@ -46,12 +49,15 @@ import org.killbill.billing.util.LocaleUtils;
 public class DefaultTenantInternalApi implements TenantInternalApi {
 
     private final TenantDao tenantDao;
+    private final TenantDao writableTenantDao;
     private final TenantCacheInvalidation tenantCacheInvalidation;
 
     @Inject
     public DefaultTenantInternalApi(@Named(DefaultTenantModule.NO_CACHING_TENANT) final TenantDao tenantDao,
+                                    final TenantDao writableTenantDao,
                                     final TenantCacheInvalidation tenantCacheInvalidation) {
         this.tenantDao = tenantDao;
+        this.writableTenantDao = writableTenantDao;
         this.tenantCacheInvalidation = tenantCacheInvalidation;
     }
 
@@ -120,6 +126,12 @@ public class DefaultTenantInternalApi implements TenantInternalApi {
         return tenantDao.getTenantValueForKey(key, tenantContext);
     }
 
+    @Override
+    public void updateInternalTenantValueForKey(final String key, final String value, final InternalCallContext context) {
+        Preconditions.checkArgument(key.startsWith(INTERNAL_KEY_PREFIX), "Key %s cannot be updated through the internal API", key);
+        writableTenantDao.updateTenantLastKeyValue(key, value, context);
+    }
+
     @Override
     public Tenant getTenantByApiKey(final String key) throws TenantApiException {
         final TenantModelDao tenant = tenantDao.getTenantByApiKey(key);
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.tenant.api;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process transport: only the listeners of this node are notified, other nodes rely on the (database) polling fallback.
+ */
+public class LoopbackTenantBroadcastTransport implements TenantBroadcastTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackTenantBroadcastTransport.class);
+
+    private final List<TenantBroadcastListener> listeners = new CopyOnWriteArrayList<TenantBroadcastListener>();
+
+    @Override
+    public void publish(final Long tenantRecordId) {
+        for (final TenantBroadcastListener listener : listeners) {
+            try {
+                listener.onBroadcast(tenantRecordId);
+            } catch (final RuntimeException e) {
+                // The writer transaction has already been committed, the polling fallback will pick up the entries
+                logger.warn("Failed to notify tenant broadcast listener {}", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(final TenantBroadcastListener listener) {
+        listeners.add(listener);
+        // Always connected: simply catch up with entries written before the subscription
+        listener.onReconnect();
+    }
+
+    @Override
+    public void unsubscribe(final TenantBroadcastListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public boolean isClusterWide() {
+        // Writes made on the other nodes are only picked up by the polling
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.tenant.api;
+
+/**
+ * Channel used to notify the nodes that new tenant_broadcasts entries have been written, so that they don't have to wait
+ * for the next poll. Notifications don't carry the entries: these are always read from the database, from the latest
+ * record id processed by the node, which also makes replaying notifications missed while disconnected trivial.
+ */
+public interface TenantBroadcastTransport {
+
+    // Invoked by writers, once the transaction inserting the tenant_broadcasts entries has been committed
+    public void publish(Long tenantRecordId);
+
+    public void subscribe(TenantBroadcastListener listener);
+
+    public void unsubscribe(TenantBroadcastListener listener);
+
+    // Whether notifications reach the other nodes (and not only the listeners of this node)
+    public boolean isClusterWide();
+
+    public interface TenantBroadcastListener {
+
+        // New tenant_broadcasts entries are available
+        public void onBroadcast(Long tenantRecordId);
+
+        // The transport (re-)connected: notifications may have been missed in the meantime
+        public void onReconnect();
+    }
+}
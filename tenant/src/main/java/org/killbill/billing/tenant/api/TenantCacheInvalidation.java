@@ -18,9 +18,13 @@
 package org.killbill.billing.tenant.api;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
@@ -28,6 +32,7 @@ import javax.inject.Named;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.events.BusInternalEvent;
+import org.killbill.billing.tenant.api.TenantBroadcastTransport.TenantBroadcastListener;
 import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.tenant.api.user.DefaultTenantConfigChangeInternalEvent;
@@ -41,9 +46,11 @@ import org.killbill.billing.util.config.definition.TenantConfig;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
 import org.killbill.commons.concurrent.Executors;
+import org.skife.config.TimeSpan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
@@ -59,6 +66,11 @@ import com.google.common.collect.Multimap;
  * <p/>
  * When this class initializes, it reads the current entry in the tenant_broadcasts table and from then on, keeps polling for new entries; when new
  * entries are found, it invokes the callback to invalidate the current caching and force the TenantCacheLoader to be invoked again.
+ * <p/>
+ * In push mode, the TenantBroadcastTransport notifies the nodes as soon as new entries are written (or when the transport reconnects),
+ * which triggers a single (coalesced) run of the task. Since entries are always read from the latest record id processed, notifications
+ * missed while disconnected are replayed by the next run. The polling then only acts as a fallback (at a slower rate), unless the
+ * transport doesn't reach the other nodes (e.g. the default loopback one), in which case it keeps running at the regular rate.
  */
 public class TenantCacheInvalidation {
 
@@ -71,21 +83,39 @@ public class TenantCacheInvalidation {
     private final TenantConfig tenantConfig;
     private final PersistentBus eventBus;
     private final TenantDao tenantDao;
+    private final TenantBroadcastTransport broadcastTransport;
+    private final TenantBroadcastListener broadcastListener;
+    private final AtomicBoolean isRefreshPending;
     private AtomicLong latestRecordIdProcessed;
     private volatile boolean isStopped;
 
     private ScheduledExecutorService tenantExecutor;
+    private TenantCacheInvalidationRunnable invalidationRunnable;
 
     @Inject
     public TenantCacheInvalidation(@Named(DefaultTenantModule.NO_CACHING_TENANT) final TenantBroadcastDao broadcastDao,
                                    @Named(DefaultTenantModule.NO_CACHING_TENANT) final TenantDao tenantDao,
                                    final PersistentBus eventBus,
-                                   final TenantConfig tenantConfig) {
+                                   final TenantConfig tenantConfig,
+                                   final TenantBroadcastTransport broadcastTransport) {
         this.cache = HashMultimap.<TenantKey, CacheInvalidationCallback>create();
         this.broadcastDao = broadcastDao;
         this.tenantConfig = tenantConfig;
         this.tenantDao = tenantDao;
         this.eventBus = eventBus;
+        this.broadcastTransport = broadcastTransport;
+        this.isRefreshPending = new AtomicBoolean(false);
+        this.broadcastListener = new TenantBroadcastListener() {
+            @Override
+            public void onBroadcast(final Long tenantRecordId) {
+                triggerRefresh();
+            }
+
+            @Override
+            public void onReconnect() {
+                triggerRefresh();
+            }
+        };
         this.isStopped = false;
     }
 
@@ -93,14 +123,33 @@ public class TenantCacheInvalidation {
         final TenantBroadcastModelDao entry = broadcastDao.getLatestEntry();
         this.latestRecordIdProcessed = entry != null ? new AtomicLong(entry.getRecordId()) : new AtomicLong(0L);
         this.tenantExecutor = Executors.newSingleThreadScheduledExecutor("TenantExecutor");
+        this.invalidationRunnable = new TenantCacheInvalidationRunnable(this, broadcastDao, tenantDao);
+        this.isRefreshPending.set(false);
         this.isStopped = false;
     }
 
     public void start() {
-        final TimeUnit pendingRateUnit = tenantConfig.getTenantBroadcastServiceRunningRate().getUnit();
-        final long pendingPeriod = tenantConfig.getTenantBroadcastServiceRunningRate().getPeriod();
-        tenantExecutor.scheduleAtFixedRate(new TenantCacheInvalidationRunnable(this, broadcastDao, tenantDao), pendingPeriod, pendingPeriod, pendingRateUnit);
+        final TimeSpan pendingRate = getPollingRate();
+        final TimeUnit pendingRateUnit = pendingRate.getUnit();
+        final long pendingPeriod = pendingRate.getPeriod();
+        tenantExecutor.scheduleAtFixedRate(invalidationRunnable, pendingPeriod, pendingPeriod, pendingRateUnit);
 
+        if (tenantConfig.isTenantBroadcastPushEnabled()) {
+            broadcastTransport.subscribe(broadcastListener);
+        }
+    }
+
+    @VisibleForTesting
+    TimeSpan getPollingRate() {
+        if (!tenantConfig.isTenantBroadcastPushEnabled()) {
+            return tenantConfig.getTenantBroadcastServiceRunningRate();
+        } else if (!broadcastTransport.isClusterWide()) {
+            // Only the writes made on this node would be pushed: keep polling at the regular rate for the others
+            logger.warn("Tenant broadcast push is enabled but the TenantBroadcastTransport {} doesn't reach the other nodes, keeping the regular polling rate", broadcastTransport);
+            return tenantConfig.getTenantBroadcastServiceRunningRate();
+        } else {
+            return tenantConfig.getTenantBroadcastFallbackRate();
+        }
     }
 
     public void stop() {
@@ -108,6 +157,9 @@ public class TenantCacheInvalidation {
             logger.warn("TenantExecutor is already in a stopped state");
             return;
         }
+        if (tenantConfig.isTenantBroadcastPushEnabled()) {
+            broadcastTransport.unsubscribe(broadcastListener);
+        }
         try {
             tenantExecutor.shutdown();
             boolean success = tenantExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
@@ -122,6 +174,25 @@ public class TenantCacheInvalidation {
         }
     }
 
+    // Bursts of notifications result in at most one queued run, which processes all the entries written in the meantime
+    public void triggerRefresh() {
+        if (isStopped || !isRefreshPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            tenantExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    isRefreshPending.set(false);
+                    invalidationRunnable.run();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            isRefreshPending.set(false);
+            logger.debug("TenantExecutor has been shutdown, ignoring refresh");
+        }
+    }
+
     public void registerCallback(final TenantKey key, final CacheInvalidationCallback value) {
         cache.put(key, value);
 
@@ -168,49 +239,73 @@ public class TenantCacheInvalidation {
             }
 
             final List<TenantBroadcastModelDao> entries = broadcastDao.getLatestEntriesFrom(parent.getLatestRecordIdProcessed().get());
-            for (TenantBroadcastModelDao cur : entries) {
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            for (final TenantBroadcastModelDao cur : coalesce(entries)) {
                 if (parent.isStopped()) {
                     return;
                 }
 
                 try {
-                    final TenantKeyAndCookie tenantKeyAndCookie = extractTenantKeyAndCookie(cur.getType());
-                    if (tenantKeyAndCookie != null) {
-                        final Collection<CacheInvalidationCallback> callbacks = parent.getCacheInvalidations(tenantKeyAndCookie.getTenantKey());
-                        if (!callbacks.isEmpty()) {
-                            final InternalTenantContext tenantContext = new InternalTenantContext(cur.getTenantRecordId());
-                            // TODO In case of Redis, we don't want any invalidation, but we still want the events to notify the plugins (ideally, our bus would also support a Topic model)
-                            for (final CacheInvalidationCallback callback : callbacks) {
-                                callback.invalidateCache(tenantKeyAndCookie.getTenantKey(), tenantKeyAndCookie.getCookie(), tenantContext);
-                            }
-
-                            final Long tenantKvsTargetRecordId = cur.getTargetRecordId();
-                            final BusInternalEvent event;
-                            if (tenantKvsTargetRecordId != null) {
-                                final TenantKVModelDao tenantModelDao = tenantDao.getKeyByRecordId(tenantKvsTargetRecordId, tenantContext);
-                                if (tenantModelDao == null) {
-                                    // Probably inactive entry
-                                    continue;
-                                }
-                                event = new DefaultTenantConfigChangeInternalEvent(tenantModelDao.getId(), cur.getType(),
-                                                                                   null, tenantContext.getTenantRecordId(), cur.getUserToken());
-                            } else {
-                                event = new DefaultTenantConfigDeletionInternalEvent(cur.getType(),
-                                                                                     null, tenantContext.getTenantRecordId(), cur.getUserToken());
-                            }
-                            try {
-                                parent.getEventBus().post(event);
-                            } catch (final EventBusException e) {
-                                logger.warn("Failed to post event {}", event, e);
-                            }
+                    processEntry(cur);
+                } catch (final RuntimeException e) {
+                    // Leave the marker before that entry, so that it (and the following ones) are retried by the next run
+                    logger.warn("Failed to process tenant broadcast entry recordId='{}', will retry", cur.getRecordId(), e);
+                    return;
+                }
+
+                // Entries coalesced into this one have a lower record id, and those coalesced into a later one will be re-read from there
+                parent.setLatestRecordIdProcessed(cur.getRecordId());
+            }
+        }
+
+        private void processEntry(final TenantBroadcastModelDao cur) {
+            final TenantKeyAndCookie tenantKeyAndCookie = extractTenantKeyAndCookie(cur.getType());
+            if (tenantKeyAndCookie != null) {
+                final Collection<CacheInvalidationCallback> callbacks = parent.getCacheInvalidations(tenantKeyAndCookie.getTenantKey());
+                if (!callbacks.isEmpty()) {
+                    final InternalTenantContext tenantContext = new InternalTenantContext(cur.getTenantRecordId());
+                    // TODO In case of Redis, we don't want any invalidation, but we still want the events to notify the plugins (ideally, our bus would also support a Topic model)
+                    for (final CacheInvalidationCallback callback : callbacks) {
+                        callback.invalidateCache(tenantKeyAndCookie.getTenantKey(), tenantKeyAndCookie.getCookie(), tenantContext);
+                    }
+
+                    final Long tenantKvsTargetRecordId = cur.getTargetRecordId();
+                    final BusInternalEvent event;
+                    if (tenantKvsTargetRecordId != null) {
+                        final TenantKVModelDao tenantModelDao = tenantDao.getKeyByRecordId(tenantKvsTargetRecordId, tenantContext);
+                        if (tenantModelDao == null) {
+                            // Probably inactive entry
+                            return;
                         }
+                        event = new DefaultTenantConfigChangeInternalEvent(tenantModelDao.getId(), cur.getType(),
+                                                                           null, tenantContext.getTenantRecordId(), cur.getUserToken());
                     } else {
-                        logger.warn("Failed to find CacheInvalidationCallback for " + cur.getType());
+                        event = new DefaultTenantConfigDeletionInternalEvent(cur.getType(),
+                                                                             null, tenantContext.getTenantRecordId(), cur.getUserToken());
+                    }
+                    try {
+                        parent.getEventBus().post(event);
+                    } catch (final EventBusException e) {
+                        logger.warn("Failed to post event {}", event, e);
                     }
-                } finally {
-                    parent.setLatestRecordIdProcessed(cur.getRecordId());
                 }
+            } else {
+                logger.warn("Failed to find CacheInvalidationCallback for " + cur.getType());
+            }
+        }
+
+        // Only keep the latest entry for a given tenant and key (including its cookie), in record id order
+        private Iterable<TenantBroadcastModelDao> coalesce(final List<TenantBroadcastModelDao> entries) {
+            final Map<String, TenantBroadcastModelDao> latestEntries = new LinkedHashMap<String, TenantBroadcastModelDao>();
+            for (final TenantBroadcastModelDao cur : entries) {
+                final String coalescingKey = cur.getTenantRecordId() + "::" + cur.getType();
+                latestEntries.remove(coalescingKey);
+                latestEntries.put(coalescingKey, cur);
             }
+            return latestEntries.values();
         }
 
         private TenantKeyAndCookie extractTenantKeyAndCookie(final String key) {
@@ -32,6 +32,7 @@ import org.killbill.billing.tenant.api.DefaultTenant;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.api.TenantData;
+import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.tenant.dao.TenantDao;
@@ -45,6 +46,7 @@ import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -133,6 +135,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
     @Override
     public List<String> getTenantValuesForKey(final String key, final TenantContext context) throws TenantApiException {
+        checkNotInternalKey(key);
         final InternalTenantContext internalContext = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(context);
         if (!isCachedInTenantKVCache(key)) {
             return tenantDao.getTenantValueForKey(key, internalContext);
@@ -143,6 +146,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
     @Override
     public void addTenantKeyValue(final String key, final String value, final CallContext context) throws TenantApiException {
+        checkNotInternalKey(key);
         // Invalidate tenantKVCache after we store (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
         final String tenantKey = getCacheKeyName(key, internalContext);
@@ -152,6 +156,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
     @Override
     public void updateTenantKeyValue(final String key, final String value, final CallContext context) throws TenantApiException {
+        checkNotInternalKey(key);
         // Invalidate tenantKVCache after we store (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
         final String tenantKey = getCacheKeyName(key, internalContext);
@@ -161,6 +166,7 @@ public class DefaultTenantUserApi implements TenantUserApi {
 
     @Override
     public void deleteTenantKey(final String key, final CallContext context) throws TenantApiException {
+        checkNotInternalKey(key);
         // Invalidate tenantKVCache after we delete (to avoid race conditions). Multi-node invalidation will follow the TenantBroadcast pattern
         final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContextWithoutAccountRecordId(context);
         final String tenantKey = getCacheKeyName(key, internalContext);
@@ -174,6 +180,9 @@ public class DefaultTenantUserApi implements TenantUserApi {
         final List<TenantKVModelDao> daoResult = tenantDao.searchTenantKeyValues(searchKey, internalContext);
         final Map<String, List<String>> result = new HashMap<String, List<String>>();
         for (final TenantKVModelDao cur : daoResult) {
+            if (cur.getTenantKey().startsWith(TenantInternalApi.INTERNAL_KEY_PREFIX)) {
+                continue;
+            }
             if (!result.containsKey(cur.getTenantKey())) {
                 result.put(cur.getTenantKey(), new ArrayList<String>());
             }
@@ -183,6 +192,11 @@ public class DefaultTenantUserApi implements TenantUserApi {
     }
 
 
+    // Internal keys (e.g. compiled catalogs) are only managed by Kill Bill
+    private void checkNotInternalKey(final String key) {
+        Preconditions.checkArgument(!key.startsWith(TenantInternalApi.INTERNAL_KEY_PREFIX), "Key %s is reserved", key);
+    }
+
     private List<String> getCachedTenantValuesForKey(final String key, final InternalTenantContext internalContext) {
         final String tenantKey = getCacheKeyName(key, internalContext);
         final Object cachedTenantValues = tenantKVCache.get(tenantKey, new CacheLoaderArgument(ObjectType.TENANT_KVS));
@@ -36,6 +36,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.entity.EntityPersistenceException;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.tenant.api.TenantBroadcastTransport;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.util.UUIDs;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
@@ -65,12 +66,15 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
     private final RandomNumberGenerator rng = new SecureRandomNumberGenerator();
 
     private final SecurityConfig securityConfig;
+    private final TenantBroadcastTransport broadcastTransport;
 
     @Inject
     public DefaultTenantDao(final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher,
-                            final NonEntityDao nonEntityDao, final InternalCallContextFactory internalCallContextFactory, final SecurityConfig securityConfig) {
+                            final NonEntityDao nonEntityDao, final InternalCallContextFactory internalCallContextFactory, final SecurityConfig securityConfig,
+                            final TenantBroadcastTransport broadcastTransport) {
         super(nonEntityDao, cacheControllerDispatcher, new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory), TenantSqlDao.class);
         this.securityConfig = securityConfig;
+        this.broadcastTransport = broadcastTransport;
     }
 
     @Override
@@ -155,6 +159,7 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
                 return null;
             }
         });
+        publishConfigurationChange(key, context);
     }
 
     @Override
@@ -180,7 +185,7 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
                 return null;
             }
         });
-
+        publishConfigurationChange(key, context);
     }
 
     @Override
@@ -193,6 +198,7 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
                 return null;
             }
         });
+        publishConfigurationChange(key, context);
     }
 
     @Override
@@ -234,6 +240,13 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
         }
     }
 
+    // Notify the nodes once the broadcast entry is visible (i.e. after the transaction has been committed)
+    private void publishConfigurationChange(final String key, final InternalCallContext context) {
+        if (isSystemKey(key)) {
+            broadcastTransport.publish(context.getTenantRecordId());
+        }
+    }
+
     //
     // For now we restrict the caching to the (system) TenantKey keys
     //
@@ -22,6 +22,8 @@ import org.killbill.billing.glue.TenantModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.tenant.api.DefaultTenantInternalApi;
 import org.killbill.billing.tenant.api.DefaultTenantService;
+import org.killbill.billing.tenant.api.LoopbackTenantBroadcastTransport;
+import org.killbill.billing.tenant.api.TenantBroadcastTransport;
 import org.killbill.billing.tenant.api.TenantCacheInvalidation;
 import org.killbill.billing.tenant.api.TenantCacheInvalidationCallback;
 import org.killbill.billing.tenant.api.TenantInternalApi;
@@ -78,6 +80,10 @@ public class DefaultTenantModule extends KillBillModule implements TenantModule
         bind(TenantCacheInvalidation.class).asEagerSingleton();
     }
 
+    public void installTenantBroadcastTransport() {
+        bind(TenantBroadcastTransport.class).to(LoopbackTenantBroadcastTransport.class).asEagerSingleton();
+    }
+
     @Override
     protected void configure() {
         installConfig();
@@ -85,5 +91,6 @@ public class DefaultTenantModule extends KillBillModule implements TenantModule
         installTenantService();
         installTenantUserApi();
         installTenantCacheInvalidation();
+        installTenantBroadcastTransport();
     }
 }
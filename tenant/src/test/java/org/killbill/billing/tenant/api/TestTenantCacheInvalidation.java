@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.tenant.api;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.tenant.TenantTestSuiteNoDB;
+import org.killbill.billing.tenant.api.TenantCacheInvalidation.TenantCacheInvalidationRunnable;
+import org.killbill.billing.tenant.api.TenantInternalApi.CacheInvalidationCallback;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.billing.tenant.dao.TenantBroadcastDao;
+import org.killbill.billing.tenant.dao.TenantBroadcastModelDao;
+import org.killbill.billing.tenant.dao.TenantDao;
+import org.killbill.billing.util.config.definition.TenantConfig;
+import org.killbill.bus.api.BusEvent;
+import org.killbill.bus.api.PersistentBus;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestTenantCacheInvalidation extends TenantTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testCoalesceEntriesPerTenantKey() throws Exception {
+        final TenantBroadcastDao broadcastDao = Mockito.mock(TenantBroadcastDao.class);
+        final PersistentBus bus = Mockito.mock(PersistentBus.class);
+        final TenantCacheInvalidation tenantCacheInvalidation = new TenantCacheInvalidation(broadcastDao,
+                                                                                            Mockito.mock(TenantDao.class),
+                                                                                            bus,
+                                                                                            Mockito.mock(TenantConfig.class),
+                                                                                            new LoopbackTenantBroadcastTransport());
+        tenantCacheInvalidation.initialize();
+
+        final AtomicInteger invalidations = new AtomicInteger();
+        tenantCacheInvalidation.registerCallback(TenantKey.PLUGIN_CONFIG_, new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                invalidations.incrementAndGet();
+            }
+        });
+
+        Mockito.when(broadcastDao.getLatestEntriesFrom(0L)).thenReturn(ImmutableList.<TenantBroadcastModelDao>of(createEntry(1L, 1L, "PLUGIN_CONFIG_foo"),
+                                                                                                                  createEntry(2L, 1L, "PLUGIN_CONFIG_foo"),
+                                                                                                                  createEntry(3L, 1L, "PLUGIN_CONFIG_bar"),
+                                                                                                                  createEntry(4L, 2L, "PLUGIN_CONFIG_foo"),
+                                                                                                                  createEntry(5L, 1L, "PLUGIN_CONFIG_foo")));
+
+        new TenantCacheInvalidationRunnable(tenantCacheInvalidation, broadcastDao, Mockito.mock(TenantDao.class)).run();
+
+        // foo (tenant 1), bar (tenant 1) and foo (tenant 2)
+        Assert.assertEquals(invalidations.get(), 3);
+        Mockito.verify(bus, Mockito.times(3)).post(Mockito.<BusEvent>any());
+        Assert.assertEquals(tenantCacheInvalidation.getLatestRecordIdProcessed().get(), 5L);
+
+        tenantCacheInvalidation.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testFailedInvalidationIsRetried() throws Exception {
+        final TenantBroadcastDao broadcastDao = Mockito.mock(TenantBroadcastDao.class);
+        final PersistentBus bus = Mockito.mock(PersistentBus.class);
+        final TenantCacheInvalidation tenantCacheInvalidation = new TenantCacheInvalidation(broadcastDao,
+                                                                                            Mockito.mock(TenantDao.class),
+                                                                                            bus,
+                                                                                            Mockito.mock(TenantConfig.class),
+                                                                                            new LoopbackTenantBroadcastTransport());
+        tenantCacheInvalidation.initialize();
+
+        final AtomicInteger invalidations = new AtomicInteger();
+        final AtomicInteger failuresLeft = new AtomicInteger(1);
+        tenantCacheInvalidation.registerCallback(TenantKey.PLUGIN_CONFIG_, new CacheInvalidationCallback() {
+            @Override
+            public void invalidateCache(final TenantKey key, final Object cookie, final InternalTenantContext tenantContext) {
+                if ("bar".equals(cookie) && failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Simulated failure");
+                }
+                invalidations.incrementAndGet();
+            }
+        });
+
+        final TenantBroadcastModelDao foo = createEntry(1L, 1L, "PLUGIN_CONFIG_foo");
+        final TenantBroadcastModelDao bar = createEntry(2L, 1L, "PLUGIN_CONFIG_bar");
+        final TenantBroadcastModelDao fooTenant2 = createEntry(3L, 2L, "PLUGIN_CONFIG_foo");
+        Mockito.when(broadcastDao.getLatestEntriesFrom(0L)).thenReturn(ImmutableList.<TenantBroadcastModelDao>of(foo, bar, fooTenant2));
+        Mockito.when(broadcastDao.getLatestEntriesFrom(1L)).thenReturn(ImmutableList.<TenantBroadcastModelDao>of(bar, fooTenant2));
+
+        final TenantCacheInvalidationRunnable runnable = new TenantCacheInvalidationRunnable(tenantCacheInvalidation, broadcastDao, Mockito.mock(TenantDao.class));
+
+        // The failed entry (and the following one) are not marked as processed
+        runnable.run();
+        Assert.assertEquals(invalidations.get(), 1);
+        Mockito.verify(bus, Mockito.times(1)).post(Mockito.<BusEvent>any());
+        Assert.assertEquals(tenantCacheInvalidation.getLatestRecordIdProcessed().get(), 1L);
+
+        // ...and are processed by the next run
+        runnable.run();
+        Assert.assertEquals(invalidations.get(), 3);
+        Mockito.verify(bus, Mockito.times(3)).post(Mockito.<BusEvent>any());
+        Assert.assertEquals(tenantCacheInvalidation.getLatestRecordIdProcessed().get(), 3L);
+
+        tenantCacheInvalidation.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testPollingRate() throws Exception {
+        final TenantConfig tenantConfig = Mockito.mock(TenantConfig.class);
+        final TimeSpan runningRate = new TimeSpan("5s");
+        final TimeSpan fallbackRate = new TimeSpan("1m");
+        Mockito.when(tenantConfig.getTenantBroadcastServiceRunningRate()).thenReturn(runningRate);
+        Mockito.when(tenantConfig.getTenantBroadcastFallbackRate()).thenReturn(fallbackRate);
+
+        // Polling only
+        Assert.assertEquals(createTenantCacheInvalidation(tenantConfig, new LoopbackTenantBroadcastTransport()).getPollingRate(), runningRate);
+
+        // The loopback transport doesn't notify the other nodes
+        Mockito.when(tenantConfig.isTenantBroadcastPushEnabled()).thenReturn(true);
+        Assert.assertEquals(createTenantCacheInvalidation(tenantConfig, new LoopbackTenantBroadcastTransport()).getPollingRate(), runningRate);
+
+        final TenantBroadcastTransport clusterWideTransport = Mockito.mock(TenantBroadcastTransport.class);
+        Mockito.when(clusterWideTransport.isClusterWide()).thenReturn(true);
+        Assert.assertEquals(createTenantCacheInvalidation(tenantConfig, clusterWideTransport).getPollingRate(), fallbackRate);
+    }
+
+    private TenantCacheInvalidation createTenantCacheInvalidation(final TenantConfig tenantConfig, final TenantBroadcastTransport broadcastTransport) {
+        return new TenantCacheInvalidation(Mockito.mock(TenantBroadcastDao.class),
+                                           Mockito.mock(TenantDao.class),
+                                           Mockito.mock(PersistentBus.class),
+                                           tenantConfig,
+                                           broadcastTransport);
+    }
+
+    private TenantBroadcastModelDao createEntry(final Long recordId, final Long tenantRecordId, final String type) {
+        final TenantBroadcastModelDao entry = new TenantBroadcastModelDao(null, type, UUID.randomUUID());
+        entry.setRecordId(recordId);
+        entry.setTenantRecordId(tenantRecordId);
+        return entry;
+    }
+}
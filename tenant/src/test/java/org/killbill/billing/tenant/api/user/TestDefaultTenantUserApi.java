@@ -26,6 +26,7 @@ import org.killbill.billing.tenant.api.DefaultTenant;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.api.TenantData;
+import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -71,6 +72,39 @@ public class TestDefaultTenantUserApi extends TenantTestSuiteWithEmbeddedDb {
         Assert.assertEquals(value.size(), 0);
     }
 
+    @Test(groups = "slow")
+    public void testInternalKeysAreReserved() throws Exception {
+        final String internalKey = TenantInternalApi.INTERNAL_KEY_PREFIX + "COMPILED_CATALOG";
+        tenantDao.updateTenantLastKeyValue(internalKey, "TheInternalValue", internalCallContext);
+
+        try {
+            tenantUserApi.addTenantKeyValue(internalKey, "TheValue", callContext);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            tenantUserApi.updateTenantKeyValue(internalKey, "TheValue", callContext);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            tenantUserApi.deleteTenantKey(internalKey, callContext);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            tenantUserApi.getTenantValuesForKey(internalKey, callContext);
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        Assert.assertTrue(tenantUserApi.searchTenantKeyValues(TenantInternalApi.INTERNAL_KEY_PREFIX, callContext).isEmpty());
+
+        // Untouched
+        final List<String> values = tenantDao.getTenantValueForKey(internalKey, internalCallContext);
+        Assert.assertEquals(values.size(), 1);
+        Assert.assertEquals(values.get(0), "TheInternalValue");
+    }
+
     @Test(groups = "slow", description = "https://github.com/killbill/killbill/issues/297")
     public void testVerifyCacheOnAbsentValues() throws Exception {
         final String tenantKey = TenantKey.PLUGIN_CONFIG_.toString() + "MyPluginName";
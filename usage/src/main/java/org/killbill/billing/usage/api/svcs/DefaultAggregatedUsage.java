@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-2019 Groupon, Inc
+ * Copyright 2014-2019 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.svcs;
+
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.usage.AggregatedUsageRecord;
+
+public class DefaultAggregatedUsage extends DefaultRawUsage implements AggregatedUsageRecord {
+
+    private final Long maxAmount;
+    private final Long recordCount;
+
+    public DefaultAggregatedUsage(final UUID subscriptionId, final LocalDate recordDate, final String unitType, final Long amount, final Long maxAmount, final Long recordCount) {
+        super(subscriptionId, recordDate, unitType, amount, null);
+        this.maxAmount = maxAmount;
+        this.recordCount = recordCount;
+    }
+
+    @Override
+    public Long getMaxAmount() {
+        return maxAmount;
+    }
+
+    @Override
+    public Long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultAggregatedUsage{");
+        sb.append("subscriptionId=").append(getSubscriptionId());
+        sb.append(", recordDate=").append(getDate());
+        sb.append(", unitType='").append(getUnitType()).append('\'');
+        sb.append(", amount=").append(getAmount());
+        sb.append(", maxAmount=").append(maxAmount);
+        sb.append(", recordCount=").append(recordCount);
+        sb.append('}');
+        return sb.toString();
+    }
+}
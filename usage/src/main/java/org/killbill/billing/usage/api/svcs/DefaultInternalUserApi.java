@@ -17,28 +17,81 @@
 
 package org.killbill.billing.usage.api.svcs;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import javax.inject.Inject;
 
 import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
 import org.killbill.billing.usage.api.BaseUserApi;
 import org.killbill.billing.usage.api.RawUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageAggregateModelDao;
 import org.killbill.billing.usage.dao.RolledUpUsageDao;
 import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
 import org.killbill.billing.usage.plugin.api.UsagePluginApi;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.DefaultPagination;
+import org.killbill.billing.util.entity.Pagination;
 
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
 
 public class DefaultInternalUserApi extends BaseUserApi implements InternalUserApi {
 
+    private static final Function<RolledUpUsageModelDao, RawUsageRecord> TO_RAW_USAGE = new Function<RolledUpUsageModelDao, RawUsageRecord>() {
+        @Override
+        public RawUsageRecord apply(final RolledUpUsageModelDao input) {
+            return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getTrackingId());
+        }
+    };
+
+    private static final Function<RolledUpUsageAggregateModelDao, RawUsageRecord> TO_AGGREGATED_USAGE = new Function<RolledUpUsageAggregateModelDao, RawUsageRecord>() {
+        @Override
+        public RawUsageRecord apply(final RolledUpUsageAggregateModelDao input) {
+            return new DefaultAggregatedUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getMaxAmount(), input.getRecordCount());
+        }
+    };
+
+    // Same ordering as the streaming queries
+    private static final Ordering<RawUsageRecord> SUBSCRIPTION_DATE_ORDERING = Ordering.natural().onResultOf(new Function<RawUsageRecord, String>() {
+        @Override
+        public String apply(final RawUsageRecord input) {
+            return input.getSubscriptionId().toString();
+        }
+    }).compound(Ordering.natural().onResultOf(new Function<RawUsageRecord, LocalDate>() {
+        @Override
+        public LocalDate apply(final RawUsageRecord input) {
+            return input.getDate();
+        }
+    }));
+
     private final RolledUpUsageDao rolledUpUsageDao;
     private final InternalCallContextFactory internalCallContextFactory;
 
@@ -62,11 +115,167 @@ public class DefaultInternalUserApi extends BaseUserApi implements InternalUserA
         }
 
         final List<RolledUpUsageModelDao> usage = rolledUpUsageDao.getRawUsageForAccount(startDate, endDate, internalTenantContext);
-        return ImmutableList.copyOf(Iterables.transform(usage, new Function<RolledUpUsageModelDao, RawUsageRecord>() {
-            @Override
-            public RawUsageRecord apply(final RolledUpUsageModelDao input) {
-                return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getTrackingId());
+        return ImmutableList.copyOf(Iterables.transform(usage, TO_RAW_USAGE));
+    }
+
+    @Override
+    public List<RawUsageRecord> getAggregatedUsageForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext internalTenantContext) {
+
+        final TenantContext tenantContext = internalCallContextFactory.createTenantContext(internalTenantContext);
+
+        final List<RawUsageRecord> resultFromPlugin = getAccountUsageFromPlugin(startDate, endDate, tenantContext);
+        if (resultFromPlugin != null) {
+            return resultFromPlugin;
+        }
+
+        final List<RolledUpUsageAggregateModelDao> usage = rolledUpUsageDao.getAggregatedUsageForAccount(startDate, endDate, internalTenantContext);
+        return ImmutableList.copyOf(Iterables.transform(usage, TO_AGGREGATED_USAGE));
+    }
+
+    @Override
+    public Pagination<RawUsageRecord> getRawUsageStreamForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext internalTenantContext) {
+
+        final TenantContext tenantContext = internalCallContextFactory.createTenantContext(internalTenantContext);
+
+        final List<RawUsageRecord> resultFromPlugin = getAccountUsageFromPlugin(startDate, endDate, tenantContext);
+        if (resultFromPlugin != null) {
+            return fromPluginResult(resultFromPlugin);
+        }
+
+        final Iterator<RolledUpUsageModelDao> usage = rolledUpUsageDao.getRawUsageStreamForAccount(startDate, endDate, internalTenantContext);
+        return new DefaultPagination<RawUsageRecord>(null, new TransformingCursor<RolledUpUsageModelDao>(usage, TO_RAW_USAGE));
+    }
+
+    @Override
+    public Pagination<RawUsageRecord> getAggregatedUsageStreamForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext internalTenantContext) {
+
+        final TenantContext tenantContext = internalCallContextFactory.createTenantContext(internalTenantContext);
+
+        final List<RawUsageRecord> resultFromPlugin = getAccountUsageFromPlugin(startDate, endDate, tenantContext);
+        if (resultFromPlugin != null) {
+            return fromPluginResult(resultFromPlugin);
+        }
+
+        final Iterator<RolledUpUsageAggregateModelDao> usage = rolledUpUsageDao.getAggregatedUsageStreamForAccount(startDate, endDate, internalTenantContext);
+        return new DefaultPagination<RawUsageRecord>(null, new TransformingCursor<RolledUpUsageAggregateModelDao>(usage, TO_AGGREGATED_USAGE));
+    }
+
+    private Pagination<RawUsageRecord> fromPluginResult(final List<RawUsageRecord> resultFromPlugin) {
+        return new DefaultPagination<RawUsageRecord>((long) resultFromPlugin.size(), SUBSCRIPTION_DATE_ORDERING.sortedCopy(resultFromPlugin).iterator());
+    }
+
+    @Override
+    public void rebuildUsageAggregates(final UUID accountId, final CallContext callContext) {
+        rolledUpUsageDao.rebuildAggregates(internalCallContextFactory.createInternalCallContext(accountId, callContext));
+    }
+
+    @Override
+    public List<SubscriptionUsageRecordResult> recordRolledUpUsage(final List<SubscriptionUsageRecord> records, final CallContext callContext) {
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(callContext);
+
+        // Single (set based) lookup for all the supplied tracking ids, instead of one query per record
+        final Set<String> trackingIds = new HashSet<String>();
+        for (final SubscriptionUsageRecord record : records) {
+            if (!Strings.isNullOrEmpty(record.getTrackingId())) {
+                trackingIds.add(record.getTrackingId());
             }
-        }));
+        }
+        final Set<List<Object>> recordedTrackingIds = new HashSet<List<Object>>();
+        for (final RolledUpUsageModelDao existing : rolledUpUsageDao.getExistingTrackingIds(trackingIds, internalTenantContext)) {
+            recordedTrackingIds.add(Arrays.<Object>asList(existing.getSubscriptionId(), existing.getTrackingId()));
+        }
+
+        final Map<UUID, InternalCallContext> contextPerSubscription = new HashMap<UUID, InternalCallContext>();
+        final Map<Long, InternalCallContext> contextPerAccount = new HashMap<Long, InternalCallContext>();
+        final Map<InternalCallContext, List<RolledUpUsageModelDao>> usagesPerAccount = new LinkedHashMap<InternalCallContext, List<RolledUpUsageModelDao>>();
+        final List<SubscriptionUsageRecordResult> results = new ArrayList<SubscriptionUsageRecordResult>(records.size());
+        for (final SubscriptionUsageRecord record : records) {
+            InternalCallContext internalCallContext = contextPerSubscription.get(record.getSubscriptionId());
+            if (internalCallContext == null) {
+                try {
+                    internalCallContext = internalCallContextFactory.createInternalCallContext(record.getSubscriptionId(), ObjectType.SUBSCRIPTION, callContext);
+                } catch (final IllegalStateException e) {
+                    // Unknown subscription, or subscription from another tenant
+                    results.add(rejected(record, ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, record.getSubscriptionId()));
+                    continue;
+                }
+                // Share a single context per account, so that all of its subscriptions end up in the same batch
+                final InternalCallContext accountContext = contextPerAccount.get(internalCallContext.getAccountRecordId());
+                if (accountContext == null) {
+                    contextPerAccount.put(internalCallContext.getAccountRecordId(), internalCallContext);
+                } else {
+                    internalCallContext = accountContext;
+                }
+                contextPerSubscription.put(record.getSubscriptionId(), internalCallContext);
+            }
+
+            final String trackingId;
+            if (Strings.isNullOrEmpty(record.getTrackingId())) {
+                trackingId = UUIDs.randomUUID().toString();
+            // Reject tracking ids already recorded, as well as duplicates within this batch
+            } else if (!recordedTrackingIds.add(Arrays.<Object>asList(record.getSubscriptionId(), record.getTrackingId()))) {
+                results.add(rejected(record, ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS, record.getTrackingId()));
+                continue;
+            } else {
+                trackingId = record.getTrackingId();
+            }
+
+            List<RolledUpUsageModelDao> usages = usagesPerAccount.get(internalCallContext);
+            if (usages == null) {
+                usages = new ArrayList<RolledUpUsageModelDao>();
+                usagesPerAccount.put(internalCallContext, usages);
+            }
+            for (final UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
+                for (final UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
+                    usages.add(new RolledUpUsageModelDao(record.getSubscriptionId(), unitUsageRecord.getUnitType(), usageRecord.getDate(), usageRecord.getAmount(), trackingId));
+                }
+            }
+            results.add(new DefaultSubscriptionUsageRecordResult(record.getSubscriptionId(), trackingId, null, null));
+        }
+
+        if (!usagesPerAccount.isEmpty()) {
+            rolledUpUsageDao.record(usagesPerAccount);
+        }
+        return results;
+    }
+
+    private SubscriptionUsageRecordResult rejected(final SubscriptionUsageRecord record, final ErrorCode errorCode, final Object... args) {
+        return new DefaultSubscriptionUsageRecordResult(record.getSubscriptionId(), record.getTrackingId(), errorCode, String.format(errorCode.getFormat(), args));
+    }
+
+    // Unlike Iterators.transform, keeps the JDBI cursor closeable, so that DefaultPagination#close releases it instead of draining it
+    private static final class TransformingCursor<F> implements Iterator<RawUsageRecord>, Closeable {
+
+        private final Iterator<F> cursor;
+        private final Function<F, RawUsageRecord> function;
+
+        private TransformingCursor(final Iterator<F> cursor, final Function<F, RawUsageRecord> function) {
+            this.cursor = cursor;
+            this.function = function;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public RawUsageRecord next() {
+            return function.apply(cursor.next());
+        }
+
+        @Override
+        public void remove() {
+            cursor.remove();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cursor instanceof Closeable) {
+                ((Closeable) cursor).close();
+            } else {
+                Iterators.size(cursor);
+            }
+        }
     }
 }
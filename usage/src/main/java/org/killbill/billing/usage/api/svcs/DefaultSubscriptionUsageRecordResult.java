@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.svcs;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
+
+public class DefaultSubscriptionUsageRecordResult implements SubscriptionUsageRecordResult {
+
+    private final UUID subscriptionId;
+    private final String trackingId;
+    private final ErrorCode errorCode;
+    private final String errorMessage;
+
+    public DefaultSubscriptionUsageRecordResult(final UUID subscriptionId, final String trackingId, @Nullable final ErrorCode errorCode, @Nullable final String errorMessage) {
+        this.subscriptionId = subscriptionId;
+        this.trackingId = trackingId;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    @Override
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    @Override
+    public boolean isAccepted() {
+        return errorCode == null;
+    }
+
+    @Override
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultSubscriptionUsageRecordResult{");
+        sb.append("subscriptionId=").append(subscriptionId);
+        sb.append(", trackingId='").append(trackingId).append('\'');
+        sb.append(", errorCode=").append(errorCode);
+        sb.append(", errorMessage='").append(errorMessage).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
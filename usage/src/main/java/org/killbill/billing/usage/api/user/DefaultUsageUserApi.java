@@ -40,6 +40,7 @@ import org.killbill.billing.usage.api.UnitUsageRecord;
 import org.killbill.billing.usage.api.UsageApiException;
 import org.killbill.billing.usage.api.UsageRecord;
 import org.killbill.billing.usage.api.UsageUserApi;
+import org.killbill.billing.usage.dao.RolledUpUsageAggregateModelDao;
 import org.killbill.billing.usage.dao.RolledUpUsageDao;
 import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
 import org.killbill.billing.usage.plugin.api.UsagePluginApi;
@@ -97,7 +98,7 @@ public class DefaultUsageUserApi extends BaseUserApi implements UsageUserApi {
             return new DefaultRolledUpUsage(subscriptionId, startDate, endDate, rolledUpAmount);
         }
 
-        final List<RolledUpUsageModelDao> usageForSubscription = rolledUpUsageDao.getUsageForSubscription(subscriptionId, startDate, endDate, unitType, internalCallContextFactory.createInternalTenantContext(subscriptionId, ObjectType.SUBSCRIPTION, tenantContext));
+        final List<RolledUpUsageAggregateModelDao> usageForSubscription = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, unitType, internalCallContextFactory.createInternalTenantContext(subscriptionId, ObjectType.SUBSCRIPTION, tenantContext));
         final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usageForSubscription);
         return new DefaultRolledUpUsage(subscriptionId, startDate, endDate, rolledUpAmount);
     }
@@ -116,7 +117,7 @@ public class DefaultUsageUserApi extends BaseUserApi implements UsageUserApi {
                     final List<RolledUpUnit> rolledUpAmount = getRolledUpUnitsForRawPluginUsage(subscriptionId, null, rawUsage);
                     result.add(new DefaultRolledUpUsage(subscriptionId, prevDate, curDate, rolledUpAmount));
                 } else {
-                    final List<RolledUpUsageModelDao> usageForSubscription = rolledUpUsageDao.getAllUsageForSubscription(subscriptionId, prevDate, curDate, internalCallContext);
+                    final List<RolledUpUsageAggregateModelDao> usageForSubscription = rolledUpUsageDao.getAllAggregatedUsageForSubscription(subscriptionId, prevDate, curDate, internalCallContext);
                     final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usageForSubscription);
                     result.add(new DefaultRolledUpUsage(subscriptionId, prevDate, curDate, rolledUpAmount));
                 }
@@ -150,16 +151,11 @@ public class DefaultUsageUserApi extends BaseUserApi implements UsageUserApi {
         return result;
     }
 
-    private List<RolledUpUnit> getRolledUpUnits(final List<RolledUpUsageModelDao> usageForSubscription) {
-        final Map<String, Long> tmp = new HashMap<String, Long>();
-        for (RolledUpUsageModelDao cur : usageForSubscription) {
-            Long currentAmount = tmp.get(cur.getUnitType());
-            Long updatedAmount = (currentAmount != null) ? currentAmount + cur.getAmount() : cur.getAmount();
-            tmp.put(cur.getUnitType(), updatedAmount);
-        }
-        final List<RolledUpUnit> result = new ArrayList<RolledUpUnit>(tmp.size());
-        for (final String unitType : tmp.keySet()) {
-            result.add(new DefaultRolledUpUnit(unitType, tmp.get(unitType)));
+    // The aggregates are already summed up per unit type for the period
+    private List<RolledUpUnit> getRolledUpUnits(final List<RolledUpUsageAggregateModelDao> usageForSubscription) {
+        final List<RolledUpUnit> result = new ArrayList<RolledUpUnit>(usageForSubscription.size());
+        for (final RolledUpUsageAggregateModelDao cur : usageForSubscription) {
+            result.add(new DefaultRolledUpUnit(cur.getUnitType(), cur.getAmount()));
         }
         return result;
     }
@@ -18,7 +18,14 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -28,22 +35,98 @@ import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.entity.dao.DBRouter;
+import org.killbill.commons.jdbi.mapper.LowerToCamelBeanMapperFactory;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 
 public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultRolledUpUsageDao.class);
+
+    private static final int TRACKING_IDS_CHUNK_SIZE = 1000;
+
+    private final IDBI dbi;
     private final DBRouter<RolledUpUsageSqlDao> dbRouter;
+    private final DBRouter<RolledUpUsageAggregateSqlDao> aggregateDbRouter;
 
     @Inject
     public DefaultRolledUpUsageDao(final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi) {
+        this.dbi = dbi;
         this.dbRouter = new DBRouter<RolledUpUsageSqlDao>(dbi, roDbi, RolledUpUsageSqlDao.class);
+        this.aggregateDbRouter = new DBRouter<RolledUpUsageAggregateSqlDao>(dbi, roDbi, RolledUpUsageAggregateSqlDao.class);
+        // The aggregates are not entities, so their mapper isn't registered by IDBISetup
+        ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(RolledUpUsageAggregateModelDao.class));
+        if (roDbi != dbi) {
+            ((DBI) roDbi).registerMapper(new LowerToCamelBeanMapperFactory(RolledUpUsageAggregateModelDao.class));
+        }
     }
 
     @Override
     public void record(final Iterable<RolledUpUsageModelDao> usages, final InternalCallContext context) {
-        dbRouter.onDemand(false).create(usages, context);
+        record(ImmutableMap.<InternalCallContext, Iterable<RolledUpUsageModelDao>>of(context, usages));
+    }
+
+    @Override
+    public void record(final Map<InternalCallContext, ? extends Iterable<RolledUpUsageModelDao>> usagesPerAccount) {
+        final Map<InternalCallContext, Collection<RolledUpUsageAggregateModelDao>> aggregatesPerAccount = new LinkedHashMap<InternalCallContext, Collection<RolledUpUsageAggregateModelDao>>();
+        for (final Entry<InternalCallContext, ? extends Iterable<RolledUpUsageModelDao>> entry : usagesPerAccount.entrySet()) {
+            aggregatesPerAccount.put(entry.getKey(), aggregate(entry.getValue()));
+        }
+
+        try {
+            recordWithAggregates(usagesPerAccount, aggregatesPerAccount);
+        } catch (final UnableToExecuteStatementException e) {
+            // A concurrent writer may have created one of our aggregate rows first: the whole transaction was rolled back,
+            // retry once (those rows will now be updated in place). If the failure was caused by something else, it will happen again.
+            log.debug("Failed to record usage, retrying once", e);
+            recordWithAggregates(usagesPerAccount, aggregatesPerAccount);
+        }
+    }
+
+    private void recordWithAggregates(final Map<InternalCallContext, ? extends Iterable<RolledUpUsageModelDao>> usagesPerAccount,
+                                      final Map<InternalCallContext, Collection<RolledUpUsageAggregateModelDao>> aggregatesPerAccount) {
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final RolledUpUsageSqlDao sqlDao = handle.attach(RolledUpUsageSqlDao.class);
+                final RolledUpUsageAggregateSqlDao aggregateSqlDao = handle.attach(RolledUpUsageAggregateSqlDao.class);
+                for (final Entry<InternalCallContext, ? extends Iterable<RolledUpUsageModelDao>> entry : usagesPerAccount.entrySet()) {
+                    sqlDao.create(entry.getValue(), entry.getKey());
+                    addToAggregates(aggregateSqlDao, aggregatesPerAccount.get(entry.getKey()), entry.getKey());
+                }
+                return null;
+            }
+        });
+    }
+
+    private void addToAggregates(final RolledUpUsageAggregateSqlDao aggregateSqlDao, final Collection<RolledUpUsageAggregateModelDao> aggregates, final InternalCallContext context) {
+        if (aggregates.isEmpty()) {
+            return;
+        }
+
+        final int[] updatedRows = aggregateSqlDao.addToAggregates(aggregates, context);
+
+        final List<RolledUpUsageAggregateModelDao> newAggregates = new ArrayList<RolledUpUsageAggregateModelDao>();
+        int i = 0;
+        for (final RolledUpUsageAggregateModelDao cur : aggregates) {
+            if (updatedRows[i++] == 0) {
+                newAggregates.add(cur);
+            }
+        }
+        if (!newAggregates.isEmpty()) {
+            aggregateSqlDao.create(newAggregates, context);
+        }
     }
 
     @Override
@@ -51,6 +134,21 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
         return dbRouter.onDemand(false).recordsWithTrackingIdExist(subscriptionId, trackingId, context) != null;
     }
 
+    @Override
+    public List<RolledUpUsageModelDao> getExistingTrackingIds(final Collection<String> trackingIds, final InternalTenantContext context) {
+        final List<RolledUpUsageModelDao> result = new ArrayList<RolledUpUsageModelDao>();
+        if (trackingIds.isEmpty()) {
+            return result;
+        }
+
+        // Keep the IN clause to a reasonable size for very large ingestion batches
+        final RolledUpUsageSqlDao sqlDao = dbRouter.onDemand(false);
+        for (final List<String> chunk : Iterables.partition(trackingIds, TRACKING_IDS_CHUNK_SIZE)) {
+            result.addAll(sqlDao.getExistingTrackingIds(chunk, context));
+        }
+        return result;
+    }
+
     @Override
     public List<RolledUpUsageModelDao> getUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final String unitType, final InternalTenantContext context) {
         return dbRouter.onDemand(true).getUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitType, context);
@@ -65,4 +163,59 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
     public List<RolledUpUsageModelDao> getRawUsageForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
         return dbRouter.onDemand(true).getRawUsageForAccount(startDate.toDate(), endDate.toDate(), context);
     }
+
+    @Override
+    public Iterator<RolledUpUsageModelDao> getRawUsageStreamForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return dbRouter.onDemand(true).getRawUsageStreamForAccount(startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public Iterator<RolledUpUsageAggregateModelDao> getAggregatedUsageStreamForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return aggregateDbRouter.onDemand(true).getAggregatedUsageStreamForAccount(startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public List<RolledUpUsageAggregateModelDao> getAggregatedUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final String unitType, final InternalTenantContext context) {
+        return aggregateDbRouter.onDemand(true).getAggregatedUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitType, context);
+    }
+
+    @Override
+    public List<RolledUpUsageAggregateModelDao> getAllAggregatedUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return aggregateDbRouter.onDemand(true).getAllAggregatedUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public List<RolledUpUsageAggregateModelDao> getAggregatedUsageForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return aggregateDbRouter.onDemand(true).getAggregatedUsageForAccount(startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public void rebuildAggregates(final InternalCallContext context) {
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final RolledUpUsageAggregateSqlDao aggregateSqlDao = handle.attach(RolledUpUsageAggregateSqlDao.class);
+                aggregateSqlDao.deleteAggregatesForAccount(context);
+                aggregateSqlDao.rebuildAggregatesForAccount(context);
+                return null;
+            }
+        });
+    }
+
+    // Pre-aggregate the batch in memory, so we issue at most one update (or insert) per {subscriptionId, unitType, recordDate}
+    private Collection<RolledUpUsageAggregateModelDao> aggregate(final Iterable<RolledUpUsageModelDao> usages) {
+        final Map<List<Object>, RolledUpUsageAggregateModelDao> aggregates = new LinkedHashMap<List<Object>, RolledUpUsageAggregateModelDao>();
+        for (final RolledUpUsageModelDao usage : usages) {
+            final List<Object> key = Arrays.<Object>asList(usage.getSubscriptionId(), usage.getUnitType(), usage.getRecordDate());
+            final RolledUpUsageAggregateModelDao existing = aggregates.get(key);
+            if (existing == null) {
+                aggregates.put(key, new RolledUpUsageAggregateModelDao(usage.getSubscriptionId(), usage.getUnitType(), usage.getRecordDate(), usage.getAmount(), usage.getAmount(), 1L));
+            } else {
+                existing.setAmount(existing.getAmount() + usage.getAmount());
+                existing.setMaxAmount(Math.max(existing.getMaxAmount(), usage.getAmount()));
+                existing.setRecordCount(existing.getRecordCount() + 1);
+            }
+        }
+        return aggregates.values();
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014-2019 Groupon, Inc
+ * Copyright 2014-2019 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.dao;
+
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+//
+// Per {subscriptionId, unitType, recordDate} rollup of the rolled_up_usage rows, maintained alongside each insert.
+// There is a single row per key (unique index): a concurrent writer creating the same row fails and is retried once (see DefaultRolledUpUsageDao#record).
+// Rows can be rebuilt from the raw usage of an account through the admin API (PUT /1.0/kb/admin/usages/{accountId}/aggregates).
+//
+public class RolledUpUsageAggregateModelDao {
+
+    private Long recordId;
+    private UUID subscriptionId;
+    private String unitType;
+    private LocalDate recordDate;
+    private Long amount;
+    private Long maxAmount;
+    private Long recordCount;
+
+    public RolledUpUsageAggregateModelDao() { /* For the DAO mapper */ }
+
+    public RolledUpUsageAggregateModelDao(final UUID subscriptionId, final String unitType, final LocalDate recordDate, final Long amount, final Long maxAmount, final Long recordCount) {
+        this.subscriptionId = subscriptionId;
+        this.unitType = unitType;
+        this.recordDate = recordDate;
+        this.amount = amount;
+        this.maxAmount = maxAmount;
+        this.recordCount = recordCount;
+    }
+
+    public Long getRecordId() {
+        return recordId;
+    }
+
+    public void setRecordId(final Long recordId) {
+        this.recordId = recordId;
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public void setSubscriptionId(final UUID subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
+    public String getUnitType() {
+        return unitType;
+    }
+
+    public void setUnitType(final String unitType) {
+        this.unitType = unitType;
+    }
+
+    public LocalDate getRecordDate() {
+        return recordDate;
+    }
+
+    public void setRecordDate(final LocalDate recordDate) {
+        this.recordDate = recordDate;
+    }
+
+    public Long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(final Long amount) {
+        this.amount = amount;
+    }
+
+    public Long getMaxAmount() {
+        return maxAmount;
+    }
+
+    public void setMaxAmount(final Long maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+
+    public Long getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(final Long recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RolledUpUsageAggregateModelDao{");
+        sb.append("recordId=").append(recordId);
+        sb.append(", subscriptionId=").append(subscriptionId);
+        sb.append(", unitType='").append(unitType).append('\'');
+        sb.append(", recordDate=").append(recordDate);
+        sb.append(", amount=").append(amount);
+        sb.append(", maxAmount=").append(maxAmount);
+        sb.append(", recordCount=").append(recordCount);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final RolledUpUsageAggregateModelDao that = (RolledUpUsageAggregateModelDao) o;
+
+        if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
+            return false;
+        }
+        if (unitType != null ? !unitType.equals(that.unitType) : that.unitType != null) {
+            return false;
+        }
+        if (recordDate != null ? recordDate.compareTo(that.recordDate) != 0 : that.recordDate != null) {
+            return false;
+        }
+        if (amount != null ? !amount.equals(that.amount) : that.amount != null) {
+            return false;
+        }
+        if (maxAmount != null ? !maxAmount.equals(that.maxAmount) : that.maxAmount != null) {
+            return false;
+        }
+        return recordCount != null ? recordCount.equals(that.recordCount) : that.recordCount == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
+        result = 31 * result + (unitType != null ? unitType.hashCode() : 0);
+        result = 31 * result + (recordDate != null ? recordDate.hashCode() : 0);
+        result = 31 * result + (amount != null ? amount.hashCode() : 0);
+        result = 31 * result + (maxAmount != null ? maxAmount.hashCode() : 0);
+        result = 31 * result + (recordCount != null ? recordCount.hashCode() : 0);
+        return result;
+    }
+}
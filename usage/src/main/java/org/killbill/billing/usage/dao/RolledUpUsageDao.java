@@ -16,7 +16,10 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -27,11 +30,30 @@ public interface RolledUpUsageDao {
 
     void record(Iterable<RolledUpUsageModelDao> usages, InternalCallContext context);
 
+    // Record usage for several accounts in a single transaction (one batch per account, the account_record_id comes from its context)
+    void record(Map<InternalCallContext, ? extends Iterable<RolledUpUsageModelDao>> usagesPerAccount);
+
     Boolean recordsWithTrackingIdExist(UUID subscriptionId, String trackingId, InternalTenantContext context);
 
+    // Only subscriptionId and trackingId are populated
+    List<RolledUpUsageModelDao> getExistingTrackingIds(Collection<String> trackingIds, InternalTenantContext context);
+
     List<RolledUpUsageModelDao> getUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, String unitType, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getAllUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getRawUsageForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    // Streaming variants, ordered by subscriptionId (the iterator needs to be closed or fully consumed)
+    Iterator<RolledUpUsageModelDao> getRawUsageStreamForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    Iterator<RolledUpUsageAggregateModelDao> getAggregatedUsageStreamForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    List<RolledUpUsageAggregateModelDao> getAggregatedUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, String unitType, InternalTenantContext context);
+
+    List<RolledUpUsageAggregateModelDao> getAllAggregatedUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    List<RolledUpUsageAggregateModelDao> getAggregatedUsageForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    void rebuildAggregates(InternalCallContext context);
 }
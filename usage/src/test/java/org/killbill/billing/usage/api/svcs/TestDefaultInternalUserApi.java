@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.svcs;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.GuicyKillbillTestSuiteNoDB;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.osgi.api.OSGIServiceRegistration;
+import org.killbill.billing.usage.SubscriptionUsageRecordResult;
+import org.killbill.billing.usage.api.RawUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.usage.plugin.api.UsagePluginApi;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.entity.Pagination;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class TestDefaultInternalUserApi extends GuicyKillbillTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testStreamClosesCursor() throws Exception {
+        final UUID subscriptionId = UUID.randomUUID();
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final MockCursor cursor = new MockCursor(ImmutableList.<RolledUpUsageModelDao>of(new RolledUpUsageModelDao(subscriptionId, "foo", startDate, 1L, UUID.randomUUID().toString()),
+                                                                                        new RolledUpUsageModelDao(subscriptionId, "foo", startDate.plusDays(1), 2L, UUID.randomUUID().toString())).iterator());
+
+        final RolledUpUsageDao rolledUpUsageDao = Mockito.mock(RolledUpUsageDao.class);
+        Mockito.when(rolledUpUsageDao.getRawUsageStreamForAccount(Mockito.<LocalDate>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(cursor);
+        final OSGIServiceRegistration<UsagePluginApi> pluginRegistry = Mockito.mock(OSGIServiceRegistration.class);
+        Mockito.when(pluginRegistry.getAllServices()).thenReturn(ImmutableSet.<String>of());
+        final DefaultInternalUserApi internalUserApi = new DefaultInternalUserApi(rolledUpUsageDao, Mockito.mock(InternalCallContextFactory.class), pluginRegistry);
+
+        final Pagination<RawUsageRecord> usage = internalUserApi.getRawUsageStreamForAccount(startDate, startDate.plusMonths(1), Mockito.mock(InternalTenantContext.class));
+        Assert.assertEquals(usage.iterator().next().getAmount(), (Long) 1L);
+
+        // Early exit: the cursor is closed, not drained
+        usage.close();
+        Assert.assertTrue(cursor.isClosed());
+        Assert.assertTrue(cursor.hasNext());
+    }
+
+    @Test(groups = "fast")
+    public void testRecordRolledUpUsage() throws Exception {
+        final UUID subscriptionId = UUID.randomUUID();
+        final UUID unknownSubscriptionId = UUID.randomUUID();
+        final CallContext callContext = Mockito.mock(CallContext.class);
+
+        final InternalCallContext internalCallContext = Mockito.mock(InternalCallContext.class);
+        Mockito.when(internalCallContext.getAccountRecordId()).thenReturn(1L);
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(callContext)).thenReturn(Mockito.mock(InternalTenantContext.class));
+        Mockito.when(internalCallContextFactory.createInternalCallContext(subscriptionId, ObjectType.SUBSCRIPTION, callContext)).thenReturn(internalCallContext);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(unknownSubscriptionId, ObjectType.SUBSCRIPTION, callContext)).thenThrow(new IllegalStateException("Unknown subscription"));
+
+        final RolledUpUsageDao rolledUpUsageDao = Mockito.mock(RolledUpUsageDao.class);
+        Mockito.when(rolledUpUsageDao.getExistingTrackingIds(Mockito.anyCollectionOf(String.class), Mockito.<InternalTenantContext>any()))
+               .thenReturn(ImmutableList.<RolledUpUsageModelDao>of(new RolledUpUsageModelDao(subscriptionId, "foo", new LocalDate(2013, 1, 1), 1L, "recorded")));
+        final OSGIServiceRegistration<UsagePluginApi> pluginRegistry = Mockito.mock(OSGIServiceRegistration.class);
+        final DefaultInternalUserApi internalUserApi = new DefaultInternalUserApi(rolledUpUsageDao, internalCallContextFactory, pluginRegistry);
+
+        final List<SubscriptionUsageRecordResult> results = internalUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId, "new"),
+                                                                                                                                       createRecord(subscriptionId, "new"),
+                                                                                                                                       createRecord(subscriptionId, "recorded"),
+                                                                                                                                       createRecord(unknownSubscriptionId, "other"),
+                                                                                                                                       createRecord(subscriptionId, null)),
+                                                                                                 callContext);
+        Assert.assertEquals(results.size(), 5);
+        Assert.assertTrue(results.get(0).isAccepted());
+        Assert.assertEquals(results.get(0).getTrackingId(), "new");
+        // Duplicate within the batch
+        Assert.assertFalse(results.get(1).isAccepted());
+        Assert.assertEquals(results.get(1).getErrorCode(), ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS);
+        // Already recorded
+        Assert.assertFalse(results.get(2).isAccepted());
+        Assert.assertEquals(results.get(2).getErrorCode(), ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS);
+        Assert.assertFalse(results.get(3).isAccepted());
+        Assert.assertEquals(results.get(3).getErrorCode(), ErrorCode.SUB_INVALID_SUBSCRIPTION_ID);
+        // A tracking id is generated
+        Assert.assertTrue(results.get(4).isAccepted());
+        Assert.assertNotNull(results.get(4).getTrackingId());
+
+        // Only the accepted records are written, in a single call
+        final ArgumentCaptor<Map> usagesPerAccount = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(rolledUpUsageDao, Mockito.times(1)).record(usagesPerAccount.capture());
+        Assert.assertEquals(usagesPerAccount.getValue().size(), 1);
+        Assert.assertEquals(((List) usagesPerAccount.getValue().get(internalCallContext)).size(), 2);
+    }
+
+    private SubscriptionUsageRecord createRecord(final UUID subscriptionId, final String trackingId) {
+        final List<UsageRecord> usageRecords = ImmutableList.<UsageRecord>of(new UsageRecord(new LocalDate(2013, 1, 2), 5L));
+        return new SubscriptionUsageRecord(subscriptionId, trackingId, ImmutableList.<UnitUsageRecord>of(new UnitUsageRecord("foo", usageRecords)));
+    }
+
+    private static final class MockCursor implements Iterator<RolledUpUsageModelDao>, Closeable {
+
+        private final Iterator<RolledUpUsageModelDao> delegate;
+        private boolean closed;
+
+        private MockCursor(final Iterator<RolledUpUsageModelDao> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public RolledUpUsageModelDao next() {
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -22,11 +22,15 @@ import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.usage.UsageTestSuiteWithEmbeddedDB;
 import org.killbill.billing.util.UUIDs;
 import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.fail;
 
@@ -170,4 +174,114 @@ public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
         assertEquals(rolledUpUsageDao.recordsWithTrackingIdExist(subscriptionId, trackingId, internalCallContext),
                      Boolean.TRUE);
     }
-}
\ No newline at end of file
+
+    @Test(groups = "slow")
+    public void testAggregates() {
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String unitType1 = "foo";
+        final String unitType2 = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        final List<RolledUpUsageModelDao> usages1 = new ArrayList<RolledUpUsageModelDao>();
+        usages1.add(new RolledUpUsageModelDao(subscriptionId, unitType1, startDate, 10L, UUIDs.randomUUID().toString()));
+        usages1.add(new RolledUpUsageModelDao(subscriptionId, unitType1, startDate, 3L, UUIDs.randomUUID().toString()));
+        usages1.add(new RolledUpUsageModelDao(subscriptionId, unitType2, startDate.plusDays(1), 7L, UUIDs.randomUUID().toString()));
+        rolledUpUsageDao.record(usages1, internalCallContext);
+
+        // Second batch updates the existing aggregates in place
+        final List<RolledUpUsageModelDao> usages2 = new ArrayList<RolledUpUsageModelDao>();
+        usages2.add(new RolledUpUsageModelDao(subscriptionId, unitType1, startDate, 12L, UUIDs.randomUUID().toString()));
+        usages2.add(new RolledUpUsageModelDao(subscriptionId, unitType1, startDate.plusDays(2), 1L, UUIDs.randomUUID().toString()));
+        rolledUpUsageDao.record(usages2, internalCallContext);
+
+        final List<RolledUpUsageAggregateModelDao> aggregates = rolledUpUsageDao.getAggregatedUsageForAccount(startDate, endDate, internalCallContext);
+        assertEquals(aggregates.size(), 3);
+        checkAggregate(aggregates.get(0), subscriptionId, unitType1, startDate, 25L, 12L, 3L);
+        checkAggregate(aggregates.get(1), subscriptionId, unitType2, startDate.plusDays(1), 7L, 7L, 1L);
+        checkAggregate(aggregates.get(2), subscriptionId, unitType1, startDate.plusDays(2), 1L, 1L, 1L);
+
+        final List<RolledUpUsageAggregateModelDao> unitType1Usage = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, unitType1, internalCallContext);
+        assertEquals(unitType1Usage.size(), 1);
+        assertEquals(unitType1Usage.get(0).getAmount(), (Long) 26L);
+
+        final List<RolledUpUsageAggregateModelDao> allUsage = rolledUpUsageDao.getAllAggregatedUsageForSubscription(subscriptionId, startDate, startDate.plusDays(2), internalCallContext);
+        assertEquals(allUsage.size(), 2);
+        assertEquals(allUsage.get(0).getUnitType(), unitType2);
+        assertEquals(allUsage.get(0).getAmount(), (Long) 7L);
+        assertEquals(allUsage.get(1).getUnitType(), unitType1);
+        assertEquals(allUsage.get(1).getAmount(), (Long) 25L);
+
+        // Rebuilding from the raw usage yields the same aggregates
+        rolledUpUsageDao.rebuildAggregates(internalCallContext);
+        assertEquals(rolledUpUsageDao.getAggregatedUsageForAccount(startDate, endDate, internalCallContext), aggregates);
+    }
+
+    @Test(groups = "slow")
+    public void testUsageStreamForAccount() {
+        final UUID subscriptionId1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        final UUID subscriptionId2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId2, unitType, startDate, 1L, UUID.randomUUID().toString()));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate.plusDays(2), 2L, UUID.randomUUID().toString()));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate.plusDays(1), 3L, UUID.randomUUID().toString()));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, endDate, 4L, UUID.randomUUID().toString()));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        // Raw usage is streamed per subscription, then per date
+        final List<RolledUpUsageModelDao> rawUsage = ImmutableList.<RolledUpUsageModelDao>copyOf(rolledUpUsageDao.getRawUsageStreamForAccount(startDate, endDate, internalCallContext));
+        assertEquals(rawUsage.size(), 3);
+        assertEquals(rawUsage.get(0).getAmount(), (Long) 3L);
+        assertEquals(rawUsage.get(1).getAmount(), (Long) 2L);
+        assertEquals(rawUsage.get(2).getSubscriptionId(), subscriptionId2);
+
+        final List<RolledUpUsageAggregateModelDao> aggregatedUsage = ImmutableList.<RolledUpUsageAggregateModelDao>copyOf(rolledUpUsageDao.getAggregatedUsageStreamForAccount(startDate, endDate, internalCallContext));
+        assertEquals(aggregatedUsage.size(), 3);
+        checkAggregate(aggregatedUsage.get(0), subscriptionId1, unitType, startDate.plusDays(1), 3L, 3L, 1L);
+        checkAggregate(aggregatedUsage.get(1), subscriptionId1, unitType, startDate.plusDays(2), 2L, 2L, 1L);
+        checkAggregate(aggregatedUsage.get(2), subscriptionId2, unitType, startDate, 1L, 1L, 1L);
+    }
+
+    @Test(groups = "slow")
+    public void testBulkRecordAndExistingTrackingIds() {
+        final UUID subscriptionId1 = UUID.randomUUID();
+        final UUID subscriptionId2 = UUID.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+        final String trackingId1 = UUID.randomUUID().toString();
+        final String trackingId2 = UUID.randomUUID().toString();
+
+        assertEquals(rolledUpUsageDao.getExistingTrackingIds(ImmutableList.<String>of(trackingId1, trackingId2), internalCallContext).size(), 0);
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate, 1L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate.plusDays(1), 2L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId2, unitType, startDate, 3L, trackingId2));
+        rolledUpUsageDao.record(ImmutableMap.<InternalCallContext, List<RolledUpUsageModelDao>>of(internalCallContext, usages));
+
+        final List<RolledUpUsageModelDao> existingTrackingIds = rolledUpUsageDao.getExistingTrackingIds(ImmutableList.<String>of(trackingId1, trackingId2, UUID.randomUUID().toString()), internalCallContext);
+        assertEquals(existingTrackingIds.size(), 2);
+        for (final RolledUpUsageModelDao existing : existingTrackingIds) {
+            assertEquals(existing.getTrackingId(), existing.getSubscriptionId().equals(subscriptionId1) ? trackingId1 : trackingId2);
+        }
+
+        final List<RolledUpUsageAggregateModelDao> aggregatedUsage = rolledUpUsageDao.getAllAggregatedUsageForSubscription(subscriptionId1, startDate, endDate, internalCallContext);
+        assertEquals(aggregatedUsage.size(), 1);
+        assertEquals(aggregatedUsage.get(0).getAmount(), (Long) 3L);
+    }
+
+    private void checkAggregate(final RolledUpUsageAggregateModelDao aggregate, final UUID subscriptionId, final String unitType, final LocalDate recordDate,
+                                final Long amount, final Long maxAmount, final Long recordCount) {
+        assertEquals(aggregate.getSubscriptionId(), subscriptionId);
+        assertEquals(aggregate.getUnitType(), unitType);
+        assertEquals(aggregate.getRecordDate().compareTo(recordDate), 0);
+        assertEquals(aggregate.getAmount(), amount);
+        assertEquals(aggregate.getMaxAmount(), maxAmount);
+        assertEquals(aggregate.getRecordCount(), recordCount);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.audit;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.audit.AuditInternalApi;
+import org.killbill.billing.util.api.AuditLevel;
+import org.killbill.billing.util.audit.dao.AuditDao;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+public class DefaultAuditInternalApi implements AuditInternalApi {
+
+    private final AuditDao auditDao;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    @Inject
+    public DefaultAuditInternalApi(final AuditDao auditDao, final InternalCallContextFactory internalCallContextFactory) {
+        this.auditDao = auditDao;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    @Override
+    public AccountAuditLogs getAccountAuditLogsWithinDates(final UUID accountId, @Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final AuditLevel auditLevel, final TenantContext tenantContext) {
+        // Same optimization as DefaultAuditUserApi
+        if (AuditLevel.NONE.equals(auditLevel)) {
+            return new DefaultAccountAuditLogs(accountId);
+        }
+
+        return auditDao.getAuditLogsForAccountRecordIdWithinDates(fromDate, upToDate, auditLevel, internalCallContextFactory.createInternalTenantContext(accountId, tenantContext));
+    }
+}
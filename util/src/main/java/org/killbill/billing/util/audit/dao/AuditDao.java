@@ -19,6 +19,7 @@ package org.killbill.billing.util.audit.dao;
 import java.util.List;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.api.AuditLevel;
 import org.killbill.billing.util.audit.AuditLog;
@@ -36,6 +37,12 @@ public interface AuditDao {
     // Make sure to consume all or call close() when done to release the connection
     public DefaultAccountAuditLogsForObjectType getAuditLogsForAccountRecordId(TableName tableName, AuditLevel auditLevel, InternalTenantContext context);
 
+    // Same as above, restricted to the audit logs recorded within [fromDate, upToDate) (null bounds are ignored)
+    public DefaultAccountAuditLogs getAuditLogsForAccountRecordIdWithinDates(DateTime fromDate, DateTime upToDate, AuditLevel auditLevel, InternalTenantContext context);
+
+    // Cheap change marker for all the data of an account
+    public Long getLatestAuditLogRecordIdForAccountRecordId(InternalTenantContext context);
+
     public List<AuditLog> getAuditLogsForId(TableName tableName, UUID objectId, AuditLevel auditLevel, InternalTenantContext context);
 
     List<AuditLogWithHistory> getAuditLogsWithHistoryForId(HistorySqlDao sqlDao, TableName tableName, UUID objectId, AuditLevel auditLevel, InternalTenantContext context);
@@ -24,9 +24,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.api.AuditLevel;
@@ -86,6 +88,19 @@ public class DefaultAuditDao implements AuditDao {
         return new DefaultAccountAuditLogs(accountId, auditLevel, allAuditLogs);
     }
 
+    @Override
+    public DefaultAccountAuditLogs getAuditLogsForAccountRecordIdWithinDates(@Nullable final DateTime fromDate, @Nullable final DateTime upToDate, final AuditLevel auditLevel, final InternalTenantContext context) {
+        final UUID accountId = dbRouter.onDemand(true).getIdFromObject(context.getAccountRecordId(), TableName.ACCOUNT.getTableName());
+
+        final EntitySqlDao auditSqlDao = transactionalSqlDao.onDemandForStreamingResults(EntitySqlDao.class);
+        final Iterator<AuditLogModelDao> auditLogsForAccountRecordId = auditSqlDao.getAuditLogsForAccountRecordIdWithinDates(fromDate != null ? fromDate.toDate() : null,
+                                                                                                                             upToDate != null ? upToDate.toDate() : null,
+                                                                                                                             context);
+        final Iterator<AuditLog> allAuditLogs = buildAuditLogsFromModelDao(auditLogsForAccountRecordId, context);
+
+        return new DefaultAccountAuditLogs(accountId, auditLevel, allAuditLogs);
+    }
+
     @Override
     public DefaultAccountAuditLogsForObjectType getAuditLogsForAccountRecordId(final TableName tableName, final AuditLevel auditLevel, final InternalTenantContext context) {
         final String actualTableName;
@@ -105,6 +120,16 @@ public class DefaultAuditDao implements AuditDao {
         return new DefaultAccountAuditLogsForObjectType(auditLevel, allAuditLogs);
     }
 
+    @Override
+    public Long getLatestAuditLogRecordIdForAccountRecordId(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Long>() {
+            @Override
+            public Long inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.become(EntitySqlDao.class).getLatestAuditLogRecordIdForAccountRecordId(context);
+            }
+        });
+    }
+
     private Iterator<AuditLog> buildAuditLogsFromModelDao(final Iterator<AuditLogModelDao> auditLogsForAccountRecordId, final InternalTenantContext tenantContext) {
         final Map<TableName, Map<Long, UUID>> recordIdIdsCache = new HashMap<TableName, Map<Long, UUID>>();
         final Map<TableName, Map<Long, UUID>> historyRecordIdIdsCache = new HashMap<TableName, Map<Long, UUID>>();
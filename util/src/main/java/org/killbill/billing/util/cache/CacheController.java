@@ -41,4 +41,10 @@ public interface CacheController<K, V> {
     void removeAll();
 
     CacheType getCacheType();
+
+    // Number of concurrent misses which waited for an in-flight load instead of computing the value again
+    long getDuplicateLoadsAvoided();
+
+    // Hit, miss, eviction counters, load times and current size
+    CacheStats getStats();
 }
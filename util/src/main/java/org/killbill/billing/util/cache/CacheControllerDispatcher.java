@@ -16,7 +16,9 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -54,6 +56,14 @@ public class CacheControllerDispatcher {
         }
     }
 
+    public List<CacheStats> getStats() {
+        final List<CacheStats> stats = new ArrayList<CacheStats>(caches.size());
+        for (final CacheController<Object, Object> cacheController : caches.values()) {
+            stats.add(cacheController.getStats());
+        }
+        return stats;
+    }
+
     @SuppressWarnings("unchecked")
     private static <K, V> CacheController<K, V> cast(final CacheController<?, ?> cache) {
         return (CacheController<K, V>) cache;
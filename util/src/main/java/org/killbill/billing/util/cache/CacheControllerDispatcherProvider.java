@@ -22,30 +22,48 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.config.definition.RedisCacheConfig;
+import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
+import com.google.inject.name.Named;
+
+import static org.killbill.billing.util.glue.CacheModule.REDIS_CACHE_CLIENT;
 
 // Build the abstraction layer between JCache and Kill Bill
 public class CacheControllerDispatcherProvider implements Provider<CacheControllerDispatcher> {
 
     private static final Logger logger = LoggerFactory.getLogger(CacheControllerDispatcherProvider.class);
 
+    private static final String NEAR_CACHE_INVALIDATION_TOPIC_PREFIX = "killbill-near-cache-invalidation-";
+
     private final CacheManager cacheManager;
     private final Set<BaseCacheLoader> cacheLoaders;
+    private final MetricRegistry metricRegistry;
+    private final RedisCacheConfig redisCacheConfig;
+    private final RedissonClient redissonClient;
 
     @Inject
     public CacheControllerDispatcherProvider(final CacheManager cacheManager,
-                                             final Set<BaseCacheLoader> cacheLoaders) {
+                                             final Set<BaseCacheLoader> cacheLoaders,
+                                             final MetricRegistry metricRegistry,
+                                             final RedisCacheConfig redisCacheConfig,
+                                             @Nullable @Named(REDIS_CACHE_CLIENT) final RedissonClient redissonClient) {
         this.cacheManager = cacheManager;
         this.cacheLoaders = cacheLoaders;
+        this.metricRegistry = metricRegistry;
+        this.redisCacheConfig = redisCacheConfig;
+        this.redissonClient = redissonClient;
     }
 
     @Override
@@ -61,10 +79,26 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
             }
             Preconditions.checkState(!cache.isClosed(), "Cache '%s' should not be closed", cacheType.getCacheName());
 
-            final CacheController<Object, Object> killBillCacheController = new KillBillCacheController<Object, Object>(cache, cacheLoader);
-            cacheControllers.put(cacheType, killBillCacheController);
+            final CacheController<Object, Object> killBillCacheController = new KillBillCacheController<Object, Object>(cache, cacheLoader, metricRegistry);
+            if (isNearCacheEnabled(cacheType)) {
+                cacheControllers.put(cacheType, new NearCacheController<Object, Object>(killBillCacheController,
+                                                                                        redisCacheConfig.getNearCacheMaxSize(),
+                                                                                        redisCacheConfig.getNearCacheTtl().getMillis(),
+                                                                                        redissonClient.getTopic(NEAR_CACHE_INVALIDATION_TOPIC_PREFIX + cacheType.getCacheName()),
+                                                                                        metricRegistry));
+            } else {
+                cacheControllers.put(cacheType, killBillCacheController);
+            }
         }
 
         return new CacheControllerDispatcher(cacheControllers);
     }
+
+    // The near cache only makes sense in front of a remote cache (EhCache is already on-heap), which also carries its invalidations
+    private boolean isNearCacheEnabled(final CacheType cacheType) {
+        return redisCacheConfig.isRedisCachingEnabled() &&
+               redissonClient != null &&
+               redisCacheConfig.isNearCacheEnabled() &&
+               redisCacheConfig.getNearCacheNames().contains(cacheType.getCacheName());
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+// Point in time view of the metrics of a cache (counters are since startup, load times are in milliseconds)
+public class CacheStats {
+
+    private final String cacheName;
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long duplicateLoadsAvoided;
+    private final long loads;
+    private final double meanLoadTimeMs;
+    private final double p95LoadTimeMs;
+    private final double p99LoadTimeMs;
+    private final double maxLoadTimeMs;
+
+    public CacheStats(final String cacheName,
+                      final int size,
+                      final long hits,
+                      final long misses,
+                      final long evictions,
+                      final long duplicateLoadsAvoided,
+                      final long loads,
+                      final double meanLoadTimeMs,
+                      final double p95LoadTimeMs,
+                      final double p99LoadTimeMs,
+                      final double maxLoadTimeMs) {
+        this.cacheName = cacheName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.duplicateLoadsAvoided = duplicateLoadsAvoided;
+        this.loads = loads;
+        this.meanLoadTimeMs = meanLoadTimeMs;
+        this.p95LoadTimeMs = p95LoadTimeMs;
+        this.p99LoadTimeMs = p99LoadTimeMs;
+        this.maxLoadTimeMs = maxLoadTimeMs;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getDuplicateLoadsAvoided() {
+        return duplicateLoadsAvoided;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    public double getMeanLoadTimeMs() {
+        return meanLoadTimeMs;
+    }
+
+    public double getP95LoadTimeMs() {
+        return p95LoadTimeMs;
+    }
+
+    public double getP99LoadTimeMs() {
+        return p99LoadTimeMs;
+    }
+
+    public double getMaxLoadTimeMs() {
+        return maxLoadTimeMs;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CacheStats{");
+        sb.append("cacheName='").append(cacheName).append('\'');
+        sb.append(", size=").append(size);
+        sb.append(", hits=").append(hits);
+        sb.append(", misses=").append(misses);
+        sb.append(", evictions=").append(evictions);
+        sb.append(", duplicateLoadsAvoided=").append(duplicateLoadsAvoided);
+        sb.append(", loads=").append(loads);
+        sb.append(", meanLoadTimeMs=").append(meanLoadTimeMs);
+        sb.append(", p95LoadTimeMs=").append(p95LoadTimeMs);
+        sb.append(", p99LoadTimeMs=").append(p99LoadTimeMs);
+        sb.append(", maxLoadTimeMs=").append(maxLoadTimeMs);
+        sb.append('}');
+        return sb.toString();
+    }
+}
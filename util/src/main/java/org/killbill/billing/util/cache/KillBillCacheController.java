@@ -21,6 +21,12 @@ package org.killbill.billing.util.cache;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.cache.Cache;
 import javax.cache.Cache.Entry;
@@ -30,6 +36,12 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -38,12 +50,52 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
 
     private static final Logger logger = LoggerFactory.getLogger(KillBillCacheController.class);
 
+    private static final String METRIC_PREFIX = "killbill.cache";
+    // Computing the size requires iterating over the cache (e.g. scanning Redis): don't do it on every metrics report
+    private static final long SIZE_GAUGE_REFRESH_MINUTES = 1;
+
     private final Cache<K, V> cache;
     private final BaseCacheLoader<K, V> baseCacheLoader;
+    // Loads in progress: concurrent misses on the same key wait for the in-flight computation instead of starting their own
+    private final ConcurrentMap<K, FutureTask<V>> inFlightLoads = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Counter evictions;
+    private final Counter duplicateLoadsAvoided;
+    private final Timer loadTimer;
+    private final CachedGauge<Integer> sizeGauge;
 
     public KillBillCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader) {
+        this(cache, baseCacheLoader, new MetricRegistry());
+    }
+
+    public KillBillCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader, final MetricRegistry metricRegistry) {
         this.cache = cache;
         this.baseCacheLoader = baseCacheLoader;
+
+        final String cacheName = baseCacheLoader.getCacheType().getCacheName();
+        this.hits = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, cacheName, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, cacheName, "misses"));
+        this.evictions = metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, cacheName, "evictions"));
+        this.duplicateLoadsAvoided = metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, cacheName, "duplicateLoadsAvoided"));
+        this.loadTimer = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, cacheName, "loads"));
+
+        // Re-create the gauge, as it is bound to this cache instance (e.g. in tests, caches are re-created)
+        final String sizeGaugeName = MetricRegistry.name(METRIC_PREFIX, cacheName, "size");
+        metricRegistry.remove(sizeGaugeName);
+        this.sizeGauge = new CachedGauge<Integer>(SIZE_GAUGE_REFRESH_MINUTES, TimeUnit.MINUTES) {
+            @Override
+            protected Integer loadValue() {
+                try {
+                    return size();
+                } catch (final CacheException e) {
+                    logger.warn("Unable to compute size of cache='{}'", cacheName, e);
+                    return -1;
+                }
+            }
+        };
+        metricRegistry.register(sizeGaugeName, sizeGauge);
     }
 
     @Override
@@ -71,13 +123,16 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
 
         V value;
         try {
-            if (!isKeyInCache(key)) {
-                value = computeAndCacheValue(key, cacheLoaderArgument);
+            value = cache.get(key);
+            if (value == null) {
+                misses.mark();
+                value = loadAndCacheValue(key, cacheLoaderArgument);
             } else {
-                value = cache.get(key);
+                hits.mark();
             }
         } catch (final CacheException e) {
             logger.warn("Unable to retrieve cached value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
+            misses.mark();
             value = computeValue(key, cacheLoaderArgument);
         }
 
@@ -95,8 +150,11 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
 
     @Override
     public boolean remove(final K key) {
+        // Callers coming after the invalidation shouldn't wait for a load which started before it
+        inFlightLoads.remove(key);
         if (isKeyInCache(key)) {
             cache.remove(key);
+            evictions.inc();
             return true;
         } else {
             return false;
@@ -105,6 +163,13 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
 
     @Override
     public void remove(final Function<K, Boolean> keyMatcher) {
+        // Same as remove(key), for all the matching keys
+        for (final K key : inFlightLoads.keySet()) {
+            if (keyMatcher.apply(key) == Boolean.TRUE) {
+                inFlightLoads.remove(key);
+            }
+        }
+
         final Set<K> toRemove = new HashSet<K>();
         for (final Object key : getKeys()) {
             if (keyMatcher.apply((K) key) == Boolean.TRUE) {
@@ -112,11 +177,18 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
             }
         }
         cache.removeAll(toRemove);
+        evictions.inc(toRemove.size());
     }
 
     @Override
     public void removeAll() {
+        inFlightLoads.clear();
+        // Approximate count, to avoid iterating over the whole cache
+        final int size = sizeGauge.getValue();
         cache.clear();
+        if (size > 0) {
+            evictions.inc(size);
+        }
     }
 
     @Override
@@ -129,26 +201,93 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
         return baseCacheLoader.getCacheType();
     }
 
+    @Override
+    public long getDuplicateLoadsAvoided() {
+        return duplicateLoadsAvoided.getCount();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        final Snapshot loadTimes = loadTimer.getSnapshot();
+        return new CacheStats(getCacheType().getCacheName(),
+                              sizeGauge.getValue(),
+                              hits.getCount(),
+                              misses.getCount(),
+                              evictions.getCount(),
+                              duplicateLoadsAvoided.getCount(),
+                              loadTimer.getCount(),
+                              toMillis(loadTimes.getMean()),
+                              toMillis(loadTimes.get95thPercentile()),
+                              toMillis(loadTimes.get99thPercentile()),
+                              toMillis(loadTimes.getMax()));
+    }
+
+    private static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private V loadAndCacheValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
+        final FutureTask<V> load = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() {
+                return computeAndCacheValue(key, cacheLoaderArgument);
+            }
+        });
+
+        final FutureTask<V> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            duplicateLoadsAvoided.inc();
+            return waitForLoad(inFlightLoad);
+        }
+
+        try {
+            load.run();
+            return waitForLoad(load);
+        } finally {
+            inFlightLoads.remove(key, load);
+        }
+    }
+
+    private V waitForLoad(final FutureTask<V> load) {
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private V computeAndCacheValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
         final V value = computeValue(key, cacheLoaderArgument);
         if (value == null) {
             return null;
         }
 
-        // Race condition, we may compute it for nothing
-        putIfAbsent(key, value);
+        try {
+            putIfAbsent(key, value);
+        } catch (final CacheException e) {
+            logger.warn("Unable to cache value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
+        }
 
         return value;
     }
 
     private V computeValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
         final V value;
+        final Timer.Context loadTimerContext = loadTimer.time();
         try {
             value = baseCacheLoader.compute(key, cacheLoaderArgument);
         } catch (final Exception e) {
             // Remove noisy log (might be expected, see https://github.com/killbill/killbill/issues/842)
             //logger.warn("Unable to compute cached value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
             throw new RuntimeException(e);
+        } finally {
+            loadTimerContext.stop();
         }
         return value;
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.redisson.api.RTopic;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.api.listener.MessageListener;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+//
+// Two-level cache: a bounded local (on-heap) LRU in front of a shared (Redis) cache.
+//
+// Each removal made through this controller is published on a per cache Redis topic, and every other node drops
+// its local copies when it receives it (the whole near cache for remove(Function) and removeAll(), since the matcher
+// can't be sent). Pub/sub delivery is best effort: the near cache is cleared each time the topic is (re)subscribed,
+// to cover the messages missed while disconnected, and entries expire after a TTL to bound the staleness otherwise.
+//
+public class NearCacheController<K, V> implements CacheController<K, V> {
+
+    private final CacheController<K, V> delegate;
+    private final Cache<K, V> nearCache;
+    private final RTopic invalidationTopic;
+    private final String nodeId;
+    private final Meter nearCacheHits;
+
+    public NearCacheController(final CacheController<K, V> delegate,
+                               final int maxSize,
+                               final long ttlMs,
+                               final RTopic invalidationTopic,
+                               final MetricRegistry metricRegistry) {
+        this.delegate = delegate;
+        this.nearCache = CacheBuilder.newBuilder()
+                                     .maximumSize(maxSize)
+                                     .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                                     .build();
+        this.invalidationTopic = invalidationTopic;
+        this.nodeId = UUID.randomUUID().toString();
+        this.nearCacheHits = metricRegistry.meter(MetricRegistry.name("killbill.cache", delegate.getCacheType().getCacheName(), "nearCacheHits"));
+
+        invalidationTopic.addListener(NearCacheInvalidation.class, new MessageListener<NearCacheInvalidation>() {
+            @Override
+            public void onMessage(final CharSequence channel, final NearCacheInvalidation invalidation) {
+                onInvalidation(invalidation);
+            }
+        });
+        invalidationTopic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(final String channel) {
+                nearCache.invalidateAll();
+            }
+        });
+    }
+
+    @Override
+    public List<K> getKeys() {
+        return delegate.getKeys();
+    }
+
+    @Override
+    public boolean isKeyInCache(final K key) {
+        return nearCache.getIfPresent(key) != null || delegate.isKeyInCache(key);
+    }
+
+    @Override
+    public V get(final K key, final CacheLoaderArgument cacheLoaderArgument) {
+        if (key == null) {
+            return null;
+        }
+
+        V value = nearCache.getIfPresent(key);
+        if (value != null) {
+            nearCacheHits.mark();
+            return value;
+        }
+
+        value = delegate.get(key, cacheLoaderArgument);
+        if (value != null) {
+            nearCache.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean remove(final K key) {
+        nearCache.invalidate(key);
+        final boolean removed = delegate.remove(key);
+        invalidationTopic.publish(new NearCacheInvalidation(nodeId, key));
+        return removed;
+    }
+
+    @Override
+    public void remove(final Function<K, Boolean> keyMatcher) {
+        final Set<K> toRemove = new HashSet<K>();
+        for (final K key : nearCache.asMap().keySet()) {
+            if (keyMatcher.apply(key) == Boolean.TRUE) {
+                toRemove.add(key);
+            }
+        }
+        nearCache.invalidateAll(toRemove);
+        delegate.remove(keyMatcher);
+        invalidationTopic.publish(new NearCacheInvalidation(nodeId, null));
+    }
+
+    @Override
+    public void putIfAbsent(final K key, final V value) {
+        delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void removeAll() {
+        nearCache.invalidateAll();
+        delegate.removeAll();
+        invalidationTopic.publish(new NearCacheInvalidation(nodeId, null));
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return delegate.getCacheType();
+    }
+
+    @Override
+    public long getDuplicateLoadsAvoided() {
+        return delegate.getDuplicateLoadsAvoided();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        // Near cache hits don't reach the shared cache
+        final CacheStats stats = delegate.getStats();
+        return new CacheStats(stats.getCacheName(),
+                              stats.getSize(),
+                              stats.getHits() + nearCacheHits.getCount(),
+                              stats.getMisses(),
+                              stats.getEvictions(),
+                              stats.getDuplicateLoadsAvoided(),
+                              stats.getLoads(),
+                              stats.getMeanLoadTimeMs(),
+                              stats.getP95LoadTimeMs(),
+                              stats.getP99LoadTimeMs(),
+                              stats.getMaxLoadTimeMs());
+    }
+
+    void onInvalidation(final NearCacheInvalidation invalidation) {
+        if (nodeId.equals(invalidation.getNodeId())) {
+            // Already applied locally
+            return;
+        }
+
+        if (invalidation.getKey() == null) {
+            nearCache.invalidateAll();
+        } else {
+            nearCache.invalidate(invalidation.getKey());
+        }
+    }
+
+    // Sent through the Redis codec (JDK serialization), as the cache keys
+    public static final class NearCacheInvalidation implements Serializable {
+
+        private final String nodeId;
+        // Null to invalidate all the entries
+        private final Object key;
+
+        public NearCacheInvalidation(final String nodeId, final Object key) {
+            this.nodeId = nodeId;
+            this.key = key;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.catalog;
+
+import org.killbill.billing.catalog.api.StaticCatalog;
+import org.killbill.billing.catalog.api.VersionedCatalog;
+
+public abstract class CatalogVersionHelper {
+
+    // Identifies the content of a tenant catalog across instances (e.g. deserialized from the Redis catalog cache or returned by
+    // a catalog plugin): versions are immutable once uploaded, and any upload adds a version with a new effective date
+    public static String getCatalogVersionKey(final VersionedCatalog catalog) {
+        final StringBuilder key = new StringBuilder(String.valueOf(catalog.getCatalogName()));
+        for (final StaticCatalog version : catalog.getVersions()) {
+            key.append('|').append(version.getEffectiveDate().getTime());
+        }
+        return key.toString();
+    }
+}
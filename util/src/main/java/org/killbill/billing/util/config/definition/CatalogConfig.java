@@ -27,4 +27,9 @@ public interface CatalogConfig extends KillbillConfig {
     @Default("SpyCarBasic.xml")
     @Description("Default Catalog location, either in the classpath or in the filesystem. For multi-tenancy, one should use APIs to load per-tenant catalog")
     String getCatalogURI();
+
+    @Config("org.killbill.catalog.snapshot.enabled")
+    @Default("false")
+    @Description("Whether compiled per-tenant catalogs should be persisted when the catalog is updated, to avoid parsing and validating the catalog XMLs on each cache load (catalogs not updated since then are still loaded from their XMLs)")
+    boolean isCatalogSnapshotEnabled();
 }
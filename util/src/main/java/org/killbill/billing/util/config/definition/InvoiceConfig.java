@@ -83,6 +83,56 @@ public interface InvoiceConfig extends KillbillConfig {
     @Description("Maximum number of past billing periods we use to fetch raw usage data (usage optimization)")
     int getMaxRawUsagePreviousPeriod(@Param("dummy") final InternalTenantContext tenantContext);
 
+    @Config("org.killbill.invoice.readUsageAggregates")
+    @Default("false")
+    @Description("Whether usage in arrear is computed from the daily usage aggregates instead of the raw usage records (invoice tracking ids are then not recorded)")
+    boolean isReadUsageAggregatesEnabled();
+
+    @Config("org.killbill.invoice.readUsageAggregates")
+    @Default("false")
+    @Description("Whether usage in arrear is computed from the daily usage aggregates instead of the raw usage records (invoice tracking ids are then not recorded)")
+    boolean isReadUsageAggregatesEnabled(@Param("dummy") final InternalTenantContext tenantContext);
+
+    @Config("org.killbill.invoice.incrementalGeneration")
+    @Default("false")
+    @Description("Whether recurring and fixed items are only reconciled past the per-subscription billing watermarks recorded by the previous run (full rebuild on any change in history)")
+    boolean isIncrementalGenerationEnabled();
+
+    @Config("org.killbill.invoice.incrementalGeneration")
+    @Default("false")
+    @Description("Whether recurring and fixed items are only reconciled past the per-subscription billing watermarks recorded by the previous run (full rebuild on any change in history)")
+    boolean isIncrementalGenerationEnabled(@Param("dummy") final InternalTenantContext tenantContext);
+
+    @Config("org.killbill.invoice.arrayItemTree")
+    @Default("false")
+    @Description("Whether existing and proposed items are reconciled using the array-backed item tree (same resulting items)")
+    boolean isArrayItemTreeEnabled();
+
+    @Config("org.killbill.invoice.arrayItemTree")
+    @Default("false")
+    @Description("Whether existing and proposed items are reconciled using the array-backed item tree (same resulting items)")
+    boolean isArrayItemTreeEnabled(@Param("dummy") final InternalTenantContext tenantContext);
+
+    @Config("org.killbill.invoice.parallelItemGeneration")
+    @Default("false")
+    @Description("Whether recurring and fixed items are generated and reconciled concurrently for each subscription (same resulting items)")
+    boolean isParallelItemGenerationEnabled();
+
+    @Config("org.killbill.invoice.parallelItemGeneration")
+    @Default("false")
+    @Description("Whether recurring and fixed items are generated and reconciled concurrently for each subscription (same resulting items)")
+    boolean isParallelItemGenerationEnabled(@Param("dummy") final InternalTenantContext tenantContext);
+
+    @Config("org.killbill.invoice.parallelItemGeneration.threads.nb")
+    @Default("4")
+    @Description("Number of threads for the parallel item generation pool")
+    int getParallelItemGenerationThreads();
+
+    @Config("org.killbill.invoice.parallelItemGeneration.queue.size")
+    @Default("100")
+    @Description("Size of the queue of the parallel item generation pool (tasks are run by the invoicing thread when the queue is full)")
+    int getParallelItemGenerationQueueSize();
+
     @Config("org.killbill.invoice.globalLock.retries")
     @Default("50")
     @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
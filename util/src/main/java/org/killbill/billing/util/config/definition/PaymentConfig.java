@@ -125,6 +125,36 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Number of threads for plugin executor dispatcher")
     int getPaymentPluginThreadNb();
 
+    @Config("org.killbill.payment.plugin.bulkhead.enabled")
+    @Default("false")
+    @Description("Whether to dispatch the calls to each payment plugin to a dedicated executor with a bounded queue, so that a slow plugin doesn't delay the calls to the other ones")
+    boolean isPaymentPluginBulkheadEnabled();
+
+    @Config("org.killbill.payment.plugin.bulkhead.threads.nb")
+    @Default("10")
+    @Description("Maximum number of concurrent calls to each payment plugin, when bulkheads are enabled")
+    int getPaymentPluginBulkheadThreadNb();
+
+    @Config("org.killbill.payment.plugin.bulkhead.queue.size")
+    @Default("100")
+    @Description("Maximum number of calls waiting for each payment plugin when bulkheads are enabled, beyond which new calls are rejected")
+    int getPaymentPluginBulkheadQueueSize();
+
+    @Config("org.killbill.payment.plugin.info.threads.nb")
+    @Default("4")
+    @Description("Maximum number of concurrent calls to the payment plugins, across all plugins, when retrieving the plugin info of all the payments of an account")
+    int getPaymentPluginInfoThreadNb();
+
+    @Config("org.killbill.payment.plugin.info.batch.plugins")
+    @Default("")
+    @Description("Payment plugins which opt in to retrieve the info of all the payments of a payment method in one getPaymentInfo call (null kbPaymentId, kbPaymentMethodId and kbPaymentIds plugin properties, see PaymentPluginInfoRetriever)")
+    List<String> getPaymentPluginInfoBatchPluginNames();
+
+    @Config("org.killbill.payment.plugin.info.timeout")
+    @Default("10s")
+    @Description("Maximum time to retrieve the plugin info of all the payments of an account, beyond which the remaining payments are returned without plugin info")
+    TimeSpan getPaymentPluginInfoTimeout();
+
     @Config("org.killbill.payment.globalLock.retries")
     @Default("50")
     @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
@@ -17,9 +17,12 @@
 
 package org.killbill.billing.util.config.definition;
 
+import java.util.List;
+
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface RedisCacheConfig extends KillbillConfig {
 
@@ -37,4 +40,24 @@ public interface RedisCacheConfig extends KillbillConfig {
     @Default("1")
     @Description("Minimum number of connections")
     public int getConnectionMinimumIdleSize();
+
+    @Config("org.killbill.cache.config.redis.nearCache")
+    @Default("false")
+    @Description("Whether to keep a bounded local (on-heap) copy of the entries of some caches in front of Redis")
+    public boolean isNearCacheEnabled();
+
+    @Config("org.killbill.cache.config.redis.nearCache.cacheNames")
+    @Default("record-id,account-record-id,tenant-record-id,object-id")
+    @Description("Caches with a near cache tier")
+    public List<String> getNearCacheNames();
+
+    @Config("org.killbill.cache.config.redis.nearCache.maxSize")
+    @Default("10000")
+    @Description("Maximum number of entries in each near cache (least recently used entries are evicted first)")
+    public int getNearCacheMaxSize();
+
+    @Config("org.killbill.cache.config.redis.nearCache.ttl")
+    @Default("5m")
+    @Description("Maximum time a near cache entry is kept, which bounds the staleness if an invalidation message from another node is lost")
+    public TimeSpan getNearCacheTtl();
 }
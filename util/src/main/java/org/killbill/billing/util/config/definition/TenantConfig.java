@@ -29,4 +29,13 @@ public interface TenantConfig extends KillbillConfig {
     @Description("Rate at which tenant broadcast task is scheduled")
     public TimeSpan getTenantBroadcastServiceRunningRate();
 
+    @Config("org.killbill.tenant.broadcast.push")
+    @Default("false")
+    @Description("Whether tenant broadcasts are pushed to the nodes (polling is then only used as a fallback)")
+    public boolean isTenantBroadcastPushEnabled();
+
+    @Config("org.killbill.tenant.broadcast.push.fallbackRate")
+    @Default("1m")
+    @Description("Rate at which tenant broadcast task is scheduled when broadcasts are pushed to all the nodes (ignored with the in-process transport)")
+    public TimeSpan getTenantBroadcastFallbackRate();
 }
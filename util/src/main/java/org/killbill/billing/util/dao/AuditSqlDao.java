@@ -18,6 +18,7 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -49,6 +50,18 @@ public interface AuditSqlDao {
     @SmartFetchSize(shouldStream = true)
     public Iterator<AuditLogModelDao> getAuditLogsForAccountRecordId(@SmartBindBean final InternalTenantContext context);
 
+    // Audit logs recorded within [fromDate, upToDate) (null bounds are ignored)
+    @SqlQuery
+    @SmartFetchSize(shouldStream = true)
+    public Iterator<AuditLogModelDao> getAuditLogsForAccountRecordIdWithinDates(@Bind("fromDate") @Define("fromDate") final Date fromDate,
+                                                                                @Bind("upToDate") @Define("upToDate") final Date upToDate,
+                                                                                @SmartBindBean final InternalTenantContext context);
+
+    // Audit logs are never updated nor deleted: this changes on each committed change for the account (0 if the account has no audit log).
+    // Unlike a count, this only needs the last entry of the (tenant_record_id, account_record_id) index
+    @SqlQuery
+    public Long getLatestAuditLogRecordIdForAccountRecordId(@SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     @SmartFetchSize(shouldStream = true)
     public Iterator<AuditLogModelDao> getAuditLogsForTableNameAndAccountRecordId(@Bind("tableName") final String tableName,
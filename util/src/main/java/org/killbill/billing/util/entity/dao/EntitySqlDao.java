@@ -86,6 +86,11 @@ public interface EntitySqlDao<M extends EntityModelDao<E>, E extends Entity> ext
     @SqlQuery
     public List<M> getByAccountRecordIdIncludedDeleted(@SmartBindBean final InternalTenantContext context);
 
+    // Only the tenant record id of the context is used
+    @SqlQuery
+    public List<M> getByAccountRecordIds(@BindIn("accountRecordIds") final Collection<Long> accountRecordIds,
+                                         @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public Long getRecordId(@Bind("id") final String id,
                             @SmartBindBean final InternalTenantContext context);
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 
@@ -64,6 +65,7 @@ import org.skife.jdbi.v2.unstable.BindIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -81,7 +83,11 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
 
     private final Logger logger = LoggerFactory.getLogger(EntitySqlDaoWrapperInvocationHandler.class);
 
-    private final Map<String, Annotation[][]> parameterAnnotationsByMethod = new ConcurrentHashMap<String, Annotation[][]>();
+    // Dispatch plans are computed once per SqlDao class and method (handlers are created for each transaction)
+    private static final ConcurrentMap<Class<?>, Map<Method, MethodPlan>> methodPlansBySqlDaoClass = new ConcurrentHashMap<Class<?>, Map<Method, MethodPlan>>();
+
+    private final Map<Method, MethodPlan> methodPlans;
+    private final String historyAndAuditProfilingId;
 
     private final Class<S> sqlDaoClass;
     private final S sqlDao;
@@ -106,15 +112,44 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.internalCallContextFactory = internalCallContextFactory;
         this.prof = new Profiling<Object, Throwable>();
+        this.methodPlans = getMethodPlans(sqlDaoClass);
+        this.historyAndAuditProfilingId = getProfilingId(sqlDaoClass, "history/audit", null);
+    }
+
+    private static Map<Method, MethodPlan> getMethodPlans(final Class<?> sqlDaoClass) {
+        Map<Method, MethodPlan> methodPlans = methodPlansBySqlDaoClass.get(sqlDaoClass);
+        if (methodPlans == null) {
+            methodPlans = new ConcurrentHashMap<Method, MethodPlan>();
+            final Map<Method, MethodPlan> existingMethodPlans = methodPlansBySqlDaoClass.putIfAbsent(sqlDaoClass, methodPlans);
+            if (existingMethodPlans != null) {
+                methodPlans = existingMethodPlans;
+            }
+        }
+        return methodPlans;
+    }
+
+    private MethodPlan getMethodPlan(final Method method) {
+        MethodPlan methodPlan = methodPlans.get(method);
+        if (methodPlan == null) {
+            // Benign race: plans are immutable and equivalent
+            methodPlan = new MethodPlan(sqlDaoClass, method);
+            methodPlans.put(method, methodPlan);
+        }
+        return methodPlan;
     }
 
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
         try {
-            return prof.executeWithProfiling(ProfilingFeatureType.DAO, getProfilingId(null, method), new WithProfilingCallback<Object, Throwable>() {
+            final MethodPlan methodPlan = getMethodPlan(method);
+            if (!isProfilingEnabled()) {
+                return invokeSafely(methodPlan, method, args);
+            }
+
+            return prof.executeWithProfiling(ProfilingFeatureType.DAO, methodPlan.profilingId, new WithProfilingCallback<Object, Throwable>() {
                 @Override
                 public Object execute() throws Throwable {
-                    return invokeSafely(method, args);
+                    return invokeSafely(methodPlan, method, args);
                 }
             });
         } catch (final Throwable t) {
@@ -182,56 +217,69 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         errorDuringTransaction(t, method, null);
     }
 
-    private Object invokeSafely(final Method method, final Object[] args) throws Throwable {
-        final Audited auditedAnnotation = method.getAnnotation(Audited.class);
-
-        final boolean isROQuery = method.getAnnotation(SqlQuery.class) != null;
-        Preconditions.checkState(auditedAnnotation != null || isROQuery, "Non-@SqlQuery method %s without @Audited annotation", method);
+    private boolean isProfilingEnabled() {
+        // Profiling is only turned on per request (see ProfilingContainerResponseFilter): avoid allocating the callbacks otherwise
+        return Profiling.getPerThreadProfilingData() != null;
+    }
 
+    private Object invokeSafely(final MethodPlan methodPlan, final Method method, final Object[] args) throws Throwable {
         // This can't be AUDIT'ed and CACHABLE'd at the same time as we only cache 'get'
-        if (auditedAnnotation != null) {
-            return invokeWithAuditAndHistory(auditedAnnotation, method, args);
+        if (methodPlan.auditedChangeType != null) {
+            return invokeWithAuditAndHistory(methodPlan, method, args);
         } else {
-            return invokeRaw(method, args);
+            return invokeRaw(methodPlan, method, args);
         }
     }
 
-    private Object invokeRaw(final Method method, final Object[] args) throws Throwable {
-        return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("raw", method), new WithProfilingCallback<Object, Throwable>() {
+    private Object invokeRaw(final MethodPlan methodPlan, final Method method, final Object[] args) throws Throwable {
+        if (!isProfilingEnabled()) {
+            return invokeRawUnprofiled(methodPlan, method, args);
+        }
+
+        return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, methodPlan.rawProfilingId, new WithProfilingCallback<Object, Throwable>() {
             @Override
             public Object execute() throws Throwable {
-                // Real jdbc call
-                final Object result = executeJDBCCall(method, args);
-                // This is *almost* the default invocation except that we want to intercept getById calls to populate the caches; the pattern is to always fetch
-                // the object after it was created, which means this method is (by pattern) first called right after object creation and contains all the goodies we care
-                // about (record_id, account_record_id, object_id, tenant_record_id)
-                //
-                if (result != null && method.getName().equals("getById")) {
-                    populateCacheOnGetByIdInvocation((M) result);
-                }
-                return result;
+                return invokeRawUnprofiled(methodPlan, method, args);
             }
         });
     }
 
-    private Object invokeWithAuditAndHistory(final Audited auditedAnnotation, final Method method, final Object[] args) throws Throwable {
+    private Object invokeRawUnprofiled(final MethodPlan methodPlan, final Method method, final Object[] args) throws Throwable {
+        // Real jdbc call
+        final Object result = executeJDBCCall(method, args);
+        // This is *almost* the default invocation except that we want to intercept getById calls to populate the caches; the pattern is to always fetch
+        // the object after it was created, which means this method is (by pattern) first called right after object creation and contains all the goodies we care
+        // about (record_id, account_record_id, object_id, tenant_record_id)
+        //
+        if (result != null && methodPlan.isGetById) {
+            populateCacheOnGetByIdInvocation((M) result);
+        }
+        return result;
+    }
+
+    private Object invokeWithAuditAndHistory(final MethodPlan methodPlan, final Method method, final Object[] args) throws Throwable {
         final InternalCallContext contextMaybeWithoutAccountRecordId = retrieveContextFromArguments(args);
-        final List<String> entityIds = retrieveEntityIdsFromArguments(method, args);
+        final List<String> entityIds = retrieveEntityIdsFromArguments(methodPlan, args);
         Preconditions.checkState(!entityIds.isEmpty(), "@Audited Sql method must have entities (@Bind(\"id\")) as arguments");
         // We cannot always infer the TableName from the signature
         TableName tableName = retrieveTableNameFromArgumentsIfPossible(Arrays.asList(args));
-        final ChangeType changeType = auditedAnnotation.value();
-        final boolean isBatchQuery = method.getAnnotation(SqlBatch.class) != null;
+        final ChangeType changeType = methodPlan.auditedChangeType;
+        final boolean isBatchQuery = methodPlan.isBatchQuery;
 
         // Get the current state before deletion for the history tables
         final Map<Long, M> deletedAndUpdatedEntities = new HashMap<Long, M>();
         // Real jdbc call
-        final Object obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("raw", method), new WithProfilingCallback<Object, Throwable>() {
-            @Override
-            public Object execute() throws Throwable {
-                return executeJDBCCall(method, args);
-            }
-        });
+        final Object obj;
+        if (!isProfilingEnabled()) {
+            obj = executeJDBCCall(method, args);
+        } else {
+            obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, methodPlan.rawProfilingId, new WithProfilingCallback<Object, Throwable>() {
+                @Override
+                public Object execute() throws Throwable {
+                    return executeJDBCCall(method, args);
+                }
+            });
+        }
 
         if (entityIds.isEmpty() ) {
             return obj;
@@ -284,7 +332,7 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         }
 
         final Collection<M> reHydratedEntities = updateHistoryAndAudit(entityRecordIds, deletedAndUpdatedEntities, tableName, changeType, context);
-        if (method.getReturnType().equals(Void.TYPE)) {
+        if (methodPlan.isVoid) {
             // Return early
             return null;
         } else if (isBatchQuery) {
@@ -363,39 +411,49 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                                                 final TableName tableName,
                                                 final ChangeType changeType,
                                                 final InternalCallContext context) throws Throwable {
-        final Object reHydratedEntitiesOrNull = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("history/audit", null), new WithProfilingCallback<Object, Throwable>() {
+        if (!isProfilingEnabled()) {
+            return updateHistoryAndAuditUnprofiled(entityRecordIds, deletedAndUpdatedEntities, tableName, changeType, context);
+        }
+
+        final Object reHydratedEntitiesOrNull = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, historyAndAuditProfilingId, new WithProfilingCallback<Object, Throwable>() {
             @Override
             public Collection<M> execute() {
-                if (tableName.getHistoryTableName() == null) {
-                    insertAudits(entityRecordIds, tableName, changeType, context);
-                    return deletedAndUpdatedEntities.values();
-                } else {
-                    // Make sure to re-hydrate the objects first (especially needed for create calls)
-                    final Collection<M> reHydratedEntities = new ArrayList<>(entityRecordIds.size());
-                    if (deletedAndUpdatedEntities.isEmpty()) {
-                        reHydratedEntities.addAll((List<M>) sqlDao.getByRecordIds(entityRecordIds, context));
-                        printSQLWarnings();
-                    } else {
-                        reHydratedEntities.addAll(deletedAndUpdatedEntities.values());
-                    }
-                    Preconditions.checkState(reHydratedEntities.size() == entityRecordIds.size(), "Wrong number of reHydratedEntities=%s (entityRecordIds=%s)", reHydratedEntities, entityRecordIds);
-
-                    final Collection<Long> auditTargetRecordIds = insertHistories(reHydratedEntities, changeType, context);
-                    // Note: audit entries point to the history record id
-                    Preconditions.checkState(auditTargetRecordIds.size() == entityRecordIds.size(), "Wrong number of auditTargetRecordIds=%s (entityRecordIds=%s)", auditTargetRecordIds, entityRecordIds);
-                    insertAudits(auditTargetRecordIds, tableName, changeType, context);
-
-                    return reHydratedEntities;
-                }
+                return updateHistoryAndAuditUnprofiled(entityRecordIds, deletedAndUpdatedEntities, tableName, changeType, context);
             }
         });
         //noinspection unchecked
         return (Collection<M>) reHydratedEntitiesOrNull;
     }
 
-    private List<String> retrieveEntityIdsFromArguments(final Method method, final Object[] args) {
-        final Annotation[][] parameterAnnotations = getAnnotations(method);
+    private Collection<M> updateHistoryAndAuditUnprofiled(final List<Long> entityRecordIds,
+                                                          final Map<Long, M> deletedAndUpdatedEntities,
+                                                          final TableName tableName,
+                                                          final ChangeType changeType,
+                                                          final InternalCallContext context) {
+        if (tableName.getHistoryTableName() == null) {
+            insertAudits(entityRecordIds, tableName, changeType, context);
+            return deletedAndUpdatedEntities.values();
+        } else {
+            // Make sure to re-hydrate the objects first (especially needed for create calls)
+            final Collection<M> reHydratedEntities = new ArrayList<>(entityRecordIds.size());
+            if (deletedAndUpdatedEntities.isEmpty()) {
+                reHydratedEntities.addAll((List<M>) sqlDao.getByRecordIds(entityRecordIds, context));
+                printSQLWarnings();
+            } else {
+                reHydratedEntities.addAll(deletedAndUpdatedEntities.values());
+            }
+            Preconditions.checkState(reHydratedEntities.size() == entityRecordIds.size(), "Wrong number of reHydratedEntities=%s (entityRecordIds=%s)", reHydratedEntities, entityRecordIds);
+
+            final Collection<Long> auditTargetRecordIds = insertHistories(reHydratedEntities, changeType, context);
+            // Note: audit entries point to the history record id
+            Preconditions.checkState(auditTargetRecordIds.size() == entityRecordIds.size(), "Wrong number of auditTargetRecordIds=%s (entityRecordIds=%s)", auditTargetRecordIds, entityRecordIds);
+            insertAudits(auditTargetRecordIds, tableName, changeType, context);
+
+            return reHydratedEntities;
+        }
+    }
 
+    private List<String> retrieveEntityIdsFromArguments(final MethodPlan methodPlan, final Object[] args) {
         int i = -1;
         for (final Object arg : args) {
             i++;
@@ -414,30 +472,15 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                 }
             }
 
-            for (final Annotation annotation : parameterAnnotations[i]) {
-                if (arg instanceof String && Bind.class.equals(annotation.annotationType()) && ("id").equals(((Bind) annotation).value())) {
-                    return ImmutableList.<String>of((String) arg);
-                } else if (arg instanceof Collection && BindIn.class.equals(annotation.annotationType()) && ("ids").equals(((BindIn) annotation).value())) {
-                    return ImmutableList.<String>copyOf((Collection) arg);
-                }
+            if (i == methodPlan.idParameterIndex && arg instanceof String) {
+                return ImmutableList.<String>of((String) arg);
+            } else if (i == methodPlan.idsParameterIndex && arg instanceof Collection) {
+                return ImmutableList.<String>copyOf((Collection) arg);
             }
         }
         return ImmutableList.<String>of();
     }
 
-    private Annotation[][] getAnnotations(final Method method) {
-        // Expensive to compute
-        final String methodString = method.toString();
-
-        // Method.getParameterAnnotations() generates lots of garbage objects
-        Annotation[][] parameterAnnotations = parameterAnnotationsByMethod.get(methodString);
-        if (parameterAnnotations == null) {
-            parameterAnnotations = method.getParameterAnnotations();
-            parameterAnnotationsByMethod.put(methodString, parameterAnnotations);
-        }
-        return parameterAnnotations;
-    }
-
     private Builder<String> extractEntityIdsFromBatchArgument(final Iterable arg) {
         final Iterator iterator = arg.iterator();
         final Builder<String> entityIds = new Builder<String>();
@@ -522,7 +565,7 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         printSQLWarnings();
     }
 
-    private String getProfilingId(@Nullable final String prefix, @Nullable final Method method) {
+    private static String getProfilingId(final Class<?> sqlDaoClass, @Nullable final String prefix, @Nullable final Method method) {
         final StringBuilder stringBuilder = new StringBuilder().append(sqlDaoClass.getSimpleName());
 
         if (prefix != null) {
@@ -537,4 +580,48 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
 
         return stringBuilder.toString();
     }
+
+    // Everything that can be inferred from the method signature, computed once instead of on each call
+    @VisibleForTesting
+    static final class MethodPlan {
+
+        final ChangeType auditedChangeType;
+        final boolean isBatchQuery;
+        final boolean isGetById;
+        final boolean isVoid;
+        // Position of the @Bind("id") String and @BindIn("ids") Collection parameters (-1 if none)
+        final int idParameterIndex;
+        final int idsParameterIndex;
+        final String profilingId;
+        final String rawProfilingId;
+
+        MethodPlan(final Class<?> sqlDaoClass, final Method method) {
+            final Audited auditedAnnotation = method.getAnnotation(Audited.class);
+            final boolean isROQuery = method.getAnnotation(SqlQuery.class) != null;
+            Preconditions.checkState(auditedAnnotation != null || isROQuery, "Non-@SqlQuery method %s without @Audited annotation", method);
+
+            this.auditedChangeType = auditedAnnotation != null ? auditedAnnotation.value() : null;
+            this.isBatchQuery = method.getAnnotation(SqlBatch.class) != null;
+            this.isGetById = method.getName().equals("getById");
+            this.isVoid = method.getReturnType().equals(Void.TYPE);
+
+            int idParameterIndex = -1;
+            int idsParameterIndex = -1;
+            final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                for (final Annotation annotation : parameterAnnotations[i]) {
+                    if (idParameterIndex == -1 && Bind.class.equals(annotation.annotationType()) && ("id").equals(((Bind) annotation).value())) {
+                        idParameterIndex = i;
+                    } else if (idsParameterIndex == -1 && BindIn.class.equals(annotation.annotationType()) && ("ids").equals(((BindIn) annotation).value())) {
+                        idsParameterIndex = i;
+                    }
+                }
+            }
+            this.idParameterIndex = idParameterIndex;
+            this.idsParameterIndex = idsParameterIndex;
+
+            this.profilingId = getProfilingId(sqlDaoClass, null, method);
+            this.rawProfilingId = getProfilingId(sqlDaoClass, "raw", method);
+        }
+    }
 }
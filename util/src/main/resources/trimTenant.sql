@@ -80,6 +80,7 @@ BEGIN
     DELETE FROM payment_transactions WHERE tenant_record_id = v_tenant_record_id;
     DELETE FROM payments WHERE tenant_record_id = v_tenant_record_id;
     DELETE FROM rolled_up_usage WHERE tenant_record_id = v_tenant_record_id;
+    DELETE FROM rolled_up_usage_aggregates WHERE tenant_record_id = v_tenant_record_id;
     DELETE FROM subscription_events WHERE tenant_record_id = v_tenant_record_id;
     DELETE FROM subscriptions WHERE tenant_record_id = v_tenant_record_id;
     DELETE FROM tag_definition_history WHERE tenant_record_id = v_tenant_record_id;
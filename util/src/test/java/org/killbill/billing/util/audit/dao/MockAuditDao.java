@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.api.AuditLevel;
 import org.killbill.billing.util.audit.AuditLog;
@@ -64,6 +65,16 @@ public class MockAuditDao implements AuditDao {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public DefaultAccountAuditLogs getAuditLogsForAccountRecordIdWithinDates(final DateTime fromDate, final DateTime upToDate, final AuditLevel auditLevel, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long getLatestAuditLogRecordIdForAccountRecordId(final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<AuditLog> getAuditLogsForId(final TableName tableName, final UUID objectId, final AuditLevel auditLevel, final InternalTenantContext context) {
         final Map<UUID, List<AuditLog>> auditLogsForTableName = auditLogsForTables.get(tableName);
@@ -91,6 +91,24 @@ public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(secondAuditLogs.get(1).getChangeType(), ChangeType.DELETE);
     }
 
+    @Test(groups = "slow")
+    public void testLatestAuditLogRecordIdChangesOnEachChange() throws Exception {
+        addTag();
+        final Long firstMarker = auditDao.getLatestAuditLogRecordIdForAccountRecordId(internalCallContext);
+        Assert.assertTrue(firstMarker > 0);
+        // Stable as long as nothing changes
+        Assert.assertEquals(auditDao.getLatestAuditLogRecordIdForAccountRecordId(internalCallContext), firstMarker);
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        tagDao.deleteTag(tag.getObjectId(), tag.getObjectType(), tag.getTagDefinitionId(), internalCallContext);
+        assertListenerStatus();
+
+        final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.TAG, tag.getId(), AuditLevel.FULL, internalCallContext);
+        Assert.assertEquals(auditLogs.size(), 2);
+        final Long secondMarker = auditDao.getLatestAuditLogRecordIdForAccountRecordId(internalCallContext);
+        Assert.assertTrue(secondMarker > firstMarker);
+    }
+
     private void addTag() throws TagDefinitionApiException, TagApiException {
         // Create a tag definition
         eventsListener.pushExpectedEvent(NextEvent.TAG_DEFINITION);
@@ -17,17 +17,31 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.cache.Cache;
 import javax.cache.CacheException;
 
 import org.killbill.billing.util.UtilTestSuiteNoDB;
 import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Function;
+
 public class TestKillBillCacheController extends UtilTestSuiteNoDB {
 
     @Test(groups = "fast")
@@ -64,4 +78,212 @@ public class TestKillBillCacheController extends UtilTestSuiteNoDB {
         // This will go back to the cache loader
         Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
     }
+
+    @Test(groups = "fast")
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final Cache cache = Mockito.mock(Cache.class);
+
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final AtomicInteger nbLoads = new AtomicInteger(0);
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.RECORD_ID;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                nbLoads.incrementAndGet();
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Long.valueOf(key);
+            }
+        };
+
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+
+        final int nbThreads = 5;
+        final ExecutorService executorService = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<Long>> results = new ArrayList<Future<Long>>();
+            final Callable<Long> get = new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return killBillCacheController.get("12", null);
+                }
+            };
+            results.add(executorService.submit(get));
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < nbThreads; i++) {
+                results.add(executorService.submit(get));
+            }
+
+            // Wait for the other threads to join the in-flight load
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (killBillCacheController.getDuplicateLoadsAvoided() < nbThreads - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            releaseLoad.countDown();
+
+            for (final Future<Long> result : results) {
+                Assert.assertEquals(result.get(10, TimeUnit.SECONDS), new Long(12));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assert.assertEquals(nbLoads.get(), 1);
+        Assert.assertEquals(killBillCacheController.getDuplicateLoadsAvoided(), nbThreads - 1);
+    }
+
+    @Test(groups = "fast")
+    public void testRemoveAllDiscardsInFlightLoads() throws Exception {
+        testInvalidationDiscardsInFlightLoads(new Function<KillBillCacheController<String, Long>, Void>() {
+            @Override
+            public Void apply(final KillBillCacheController<String, Long> killBillCacheController) {
+                killBillCacheController.removeAll();
+                return null;
+            }
+        });
+    }
+
+    @Test(groups = "fast")
+    public void testRemoveMatchingDiscardsInFlightLoads() throws Exception {
+        testInvalidationDiscardsInFlightLoads(new Function<KillBillCacheController<String, Long>, Void>() {
+            @Override
+            public Void apply(final KillBillCacheController<String, Long> killBillCacheController) {
+                killBillCacheController.remove(new Function<String, Boolean>() {
+                    @Override
+                    public Boolean apply(final String key) {
+                        return "12".equals(key);
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
+    // A get coming after the invalidation must start its own load, instead of joining the one started before it
+    private void testInvalidationDiscardsInFlightLoads(final Function<KillBillCacheController<String, Long>, Void> invalidation) throws Exception {
+        final Cache cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.iterator()).thenReturn(Collections.emptyIterator());
+
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final AtomicInteger nbLoads = new AtomicInteger(0);
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.RECORD_ID;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                // Only the first load blocks, the one after the invalidation sees the new value
+                if (nbLoads.incrementAndGet() == 1) {
+                    loadStarted.countDown();
+                    try {
+                        releaseLoad.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                }
+                return 2L;
+            }
+        };
+
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Long> staleLoad = executorService.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return killBillCacheController.get("12", null);
+                }
+            });
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+
+            invalidation.apply(killBillCacheController);
+
+            // Doesn't block on the stale load
+            Assert.assertEquals(killBillCacheController.get("12", null), new Long(2));
+            Assert.assertEquals(killBillCacheController.getDuplicateLoadsAvoided(), 0);
+
+            releaseLoad.countDown();
+            Assert.assertEquals(staleLoad.get(10, TimeUnit.SECONDS), new Long(1));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assert.assertEquals(nbLoads.get(), 2);
+        Mockito.verify(cache, Mockito.times(2)).putIfAbsent(Matchers.eq("12"), Matchers.any());
+    }
+
+    @Test(groups = "fast")
+    public void testStats() {
+        final Cache cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.get("12")).thenReturn(null, 12L);
+        Mockito.when(cache.containsKey("12")).thenReturn(true);
+        Mockito.when(cache.iterator()).thenReturn(Collections.emptyIterator());
+
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.RECORD_ID;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                return Long.valueOf(key);
+            }
+        };
+
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertTrue(killBillCacheController.remove("12"));
+
+        final CacheStats stats = killBillCacheController.getStats();
+        Assert.assertEquals(stats.getCacheName(), CacheType.RECORD_ID.getCacheName());
+        Assert.assertEquals(stats.getMisses(), 1);
+        Assert.assertEquals(stats.getHits(), 1);
+        Assert.assertEquals(stats.getLoads(), 1);
+        Assert.assertEquals(stats.getEvictions(), 1);
+        Assert.assertEquals(stats.getSize(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testStatsDontScanTheCache() {
+        final Cache cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.iterator()).thenReturn(Collections.emptyIterator());
+
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.RECORD_ID;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                return Long.valueOf(key);
+            }
+        };
+
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(killBillCacheController.getStats().getSize(), 0);
+            killBillCacheController.removeAll();
+        }
+
+        // The size is only computed once per refresh period of the gauge
+        Mockito.verify(cache, Mockito.times(1)).iterator();
+        Mockito.verify(cache, Mockito.times(5)).clear();
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.NearCacheController.NearCacheInvalidation;
+import org.mockito.Mockito;
+import org.redisson.api.RTopic;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TestNearCacheController extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testNearCache() {
+        final CacheController<String, Long> delegate = Mockito.mock(CacheController.class);
+        Mockito.when(delegate.getCacheType()).thenReturn(CacheType.RECORD_ID);
+        Mockito.when(delegate.get("12", null)).thenReturn(12L);
+
+        final RTopic topic = Mockito.mock(RTopic.class);
+
+        final NearCacheController<String, Long> nearCacheController = new NearCacheController<String, Long>(delegate, 10, 60000L, topic, new MetricRegistry());
+
+        // Only the first lookup reaches the shared cache
+        Assert.assertEquals(nearCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(nearCacheController.get("12", null), new Long(12));
+        Mockito.verify(delegate, Mockito.times(1)).get("12", null);
+
+        // Invalidations clear both tiers
+        nearCacheController.remove("12");
+        Mockito.verify(delegate, Mockito.times(1)).remove("12");
+        Assert.assertEquals(nearCacheController.get("12", null), new Long(12));
+        Mockito.verify(delegate, Mockito.times(2)).get("12", null);
+
+        // ...and are broadcast to the other nodes
+        Mockito.verify(topic, Mockito.times(1)).publish(Mockito.<Object>any());
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidationFromOtherNode() {
+        final CacheController<String, Long> delegate = Mockito.mock(CacheController.class);
+        Mockito.when(delegate.getCacheType()).thenReturn(CacheType.RECORD_ID);
+        Mockito.when(delegate.get("12", null)).thenReturn(12L);
+        Mockito.when(delegate.get("13", null)).thenReturn(13L);
+        final RTopic topic = Mockito.mock(RTopic.class);
+
+        final NearCacheController<String, Long> nearCacheController = new NearCacheController<String, Long>(delegate, 10, 60000L, topic, new MetricRegistry());
+        nearCacheController.get("12", null);
+        nearCacheController.get("13", null);
+
+        // Single key removed on another node
+        nearCacheController.onInvalidation(new NearCacheInvalidation("otherNode", "12"));
+        nearCacheController.get("12", null);
+        nearCacheController.get("13", null);
+        Mockito.verify(delegate, Mockito.times(2)).get("12", null);
+        Mockito.verify(delegate, Mockito.times(1)).get("13", null);
+
+        // Bulk removal on another node
+        nearCacheController.onInvalidation(new NearCacheInvalidation("otherNode", null));
+        nearCacheController.get("12", null);
+        nearCacheController.get("13", null);
+        Mockito.verify(delegate, Mockito.times(3)).get("12", null);
+        Mockito.verify(delegate, Mockito.times(2)).get("13", null);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014-2020 Groupon, Inc
+ * Copyright 2014-2020 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.util.Collection;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperInvocationHandler.MethodPlan;
+import org.killbill.billing.util.tag.dao.TagSqlDao;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestEntitySqlDaoWrapperInvocationHandler extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testMethodPlanForQuery() throws Exception {
+        final MethodPlan getById = new MethodPlan(TagSqlDao.class, EntitySqlDao.class.getMethod("getById", String.class, InternalTenantContext.class));
+        Assert.assertNull(getById.auditedChangeType);
+        Assert.assertTrue(getById.isGetById);
+        Assert.assertFalse(getById.isBatchQuery);
+        Assert.assertFalse(getById.isVoid);
+        Assert.assertEquals(getById.idParameterIndex, 0);
+        Assert.assertEquals(getById.idsParameterIndex, -1);
+        Assert.assertEquals(getById.profilingId, "TagSqlDao: getById");
+        Assert.assertEquals(getById.rawProfilingId, "TagSqlDao (raw): getById");
+
+        final MethodPlan getByIds = new MethodPlan(TagSqlDao.class, EntitySqlDao.class.getMethod("getByIds", Collection.class, InternalTenantContext.class));
+        Assert.assertFalse(getByIds.isGetById);
+        Assert.assertEquals(getByIds.idParameterIndex, -1);
+        Assert.assertEquals(getByIds.idsParameterIndex, 0);
+    }
+
+    @Test(groups = "fast")
+    public void testMethodPlanForAuditedCalls() throws Exception {
+        final MethodPlan create = new MethodPlan(TagSqlDao.class, EntitySqlDao.class.getMethod("create", EntityModelDao.class, InternalCallContext.class));
+        Assert.assertEquals(create.auditedChangeType, ChangeType.INSERT);
+        Assert.assertFalse(create.isBatchQuery);
+        Assert.assertEquals(create.idParameterIndex, -1);
+
+        final MethodPlan batchCreate = new MethodPlan(TagSqlDao.class, EntitySqlDao.class.getMethod("create", Iterable.class, InternalCallContext.class));
+        Assert.assertEquals(batchCreate.auditedChangeType, ChangeType.INSERT);
+        Assert.assertTrue(batchCreate.isBatchQuery);
+
+        final MethodPlan markTagAsDeleted = new MethodPlan(TagSqlDao.class, TagSqlDao.class.getMethod("markTagAsDeleted", String.class, InternalCallContext.class));
+        Assert.assertEquals(markTagAsDeleted.auditedChangeType, ChangeType.DELETE);
+        Assert.assertTrue(markTagAsDeleted.isVoid);
+        Assert.assertEquals(markTagAsDeleted.idParameterIndex, 0);
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalStateException.class)
+    public void testMethodPlanForNonAuditedUpdate() throws Exception {
+        new MethodPlan(TagSqlDao.class, EntitySqlDao.class.getMethod("test", InternalTenantContext.class));
+    }
+}